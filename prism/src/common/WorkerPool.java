@@ -0,0 +1,143 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import prism.PrismException;
+
+/**
+ * Static helpers for running a number of independent tasks on a shared pool of worker threads.
+ * <br>
+ * Tasks are identified by their index. Any exceptions are reported in index order,
+ * so the observable outcome of a call does not depend on the thread scheduling.
+ * Calls may be nested, i.e., a task may itself call {@link #run(int, int, Task)}.
+ */
+public class WorkerPool
+{
+	/** Functional interface for a task, identified by its index */
+	@FunctionalInterface
+	public interface Task
+	{
+		/** Perform the task with index {@code index} */
+		public void run(int index) throws PrismException;
+	}
+
+	/** The shared pools, one per number of worker threads (created lazily) */
+	private static final Map<Integer, ForkJoinPool> pools = new HashMap<>();
+
+	/**
+	 * Get the shared pool with the given number of worker threads, creating it if necessary.
+	 * Pools are never shut down (their threads are daemon threads, which end when idle),
+	 * so callers can keep the returned pool for as long as they need it.
+	 */
+	public static synchronized ForkJoinPool getPool(int numThreads)
+	{
+		ForkJoinPool pool = pools.get(numThreads);
+		if (pool == null) {
+			pool = new ForkJoinPool(numThreads);
+			pools.put(numThreads, pool);
+		}
+		return pool;
+	}
+
+	/** Get the number of processors available to the JVM (a sensible default for the number of threads) */
+	public static int getNumProcessors()
+	{
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Run the tasks with indices {@code 0, ..., numTasks-1}, using up to {@code numThreads} threads,
+	 * and wait until all of them are finished.
+	 * If {@code numThreads <= 1} or there is only a single task, the tasks are run
+	 * sequentially (in index order) in the calling thread.
+	 * <br>
+	 * If one or more tasks throw an exception, the exception of the task with the
+	 * lowest index is rethrown (unchecked exceptions are wrapped in a PrismException).
+	 */
+	public static void run(int numThreads, int numTasks, Task task) throws PrismException
+	{
+		if (numThreads <= 1 || numTasks <= 1) {
+			for (int i = 0; i < numTasks; i++) {
+				task.run(i);
+			}
+			return;
+		}
+
+		ForkJoinPool p = getPool(numThreads);
+		final Exception[] errors = new Exception[numTasks];
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[numTasks];
+		Thread current = Thread.currentThread();
+		boolean inPool = current instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) current).getPool() == p;
+		for (int i = 0; i < numTasks; i++) {
+			final int index = i;
+			tasks[i] = ForkJoinTask.adapt(() -> {
+				try {
+					task.run(index);
+				} catch (Exception e) {
+					errors[index] = e;
+				}
+			}, null);
+			if (inPool) {
+				// nested call: fork, so that joining helps with the work
+				tasks[i].fork();
+			} else {
+				p.execute(tasks[i]);
+			}
+		}
+		for (int i = 0; i < numTasks; i++) {
+			tasks[i].join();
+		}
+		for (int i = 0; i < numTasks; i++) {
+			if (errors[i] instanceof PrismException) {
+				throw (PrismException) errors[i];
+			} else if (errors[i] != null) {
+				PrismException e = new PrismException("Error in worker thread: " + errors[i]);
+				e.initCause(errors[i]);
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Split the range {@code 0, ..., n-1} into (at most) {@code numChunks} contiguous chunks
+	 * of (roughly) equal size. Returns an array {@code bounds} of size (number of chunks + 1),
+	 * chunk {@code i} being {@code bounds[i], ..., bounds[i+1]-1}.
+	 */
+	public static int[] splitRange(int n, int numChunks)
+	{
+		numChunks = Math.max(1, Math.min(numChunks, n));
+		int[] bounds = new int[numChunks + 1];
+		for (int i = 0; i <= numChunks; i++) {
+			bounds[i] = (int) (((long) n * i) / numChunks);
+		}
+		return bounds;
+	}
+}
@@ -0,0 +1,773 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+
+package explicit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import parser.PackedStateList;
+import parser.State;
+import parser.StatePacker;
+import parser.VarList;
+import parser.ast.Declaration;
+import parser.ast.DeclarationBool;
+import parser.ast.DeclarationInt;
+import parser.ast.Expression;
+import parser.ast.ExpressionIdent;
+import parser.ast.ExpressionLiteral;
+import parser.ast.LabelList;
+import parser.ast.Module;
+import parser.ast.ModulesFile;
+import parser.type.TypeBool;
+import prism.ModelType;
+import prism.PrismException;
+import prism.PrismLangException;
+import prism.PrismNotSupportedException;
+
+/**
+ * Binary file format for storing built explicit-state models (DTMCs and MDPs),
+ * designed so that models can be loaded again quickly.
+ * <br>
+ * A file consists of a fixed-size header, followed by a number of sections,
+ * each starting at an (8-byte aligned) offset stored in the header:
+ * <ul>
+ * <li> ROWS: {@code int[numStates+1]}, start of the transitions (DTMC) or choices (MDP) of each state
+ * <li> CHOICES: {@code int[numChoices+1]}, start of the transitions of each choice (MDPs only)
+ * <li> COLUMNS: {@code int[numTransitions]}, target state of each transition
+ * <li> PROBS: {@code double[numTransitions]}, probability of each transition
+ * <li> ACTIONS: {@code int[numChoices]}, index of the action of each choice in the action table, or -1 (MDPs only)
+ * <li> INFO: model type, initial and deadlock states, action table, labels (as bitmaps) and variables
+ * <li> STATES: {@code long[numStates*numWords]}, the variable values of each state, packed by a {@link StatePacker} (optional)
+ * </ul>
+ * The numbers of choices and transitions are stored as longs in the header, but, since the
+ * array sections store int indices, both are limited to {@code Integer.MAX_VALUE}.
+ * All numbers are stored little-endian. The array sections have exactly the layout of
+ * the arrays of {@link DTMCSparse} and {@link MDPSparse}, so loading just memory-maps the file
+ * and transfers each section in bulk, without any parsing. Alternatively, the sections
+ * can be used in place, as the matrix of an off-heap model (see {@link #buildModelOffHeap}).
+ */
+public class BinaryModelFile
+{
+	/** Magic number at the start of each file */
+	private static final byte[] MAGIC = "PRISMBIN".getBytes(StandardCharsets.US_ASCII);
+	/** Current version of the format */
+	public static final int VERSION = 1;
+
+	// Sections
+	private static final int ROWS = 0;
+	private static final int CHOICES = 1;
+	private static final int COLUMNS = 2;
+	private static final int PROBS = 3;
+	private static final int ACTIONS = 4;
+	private static final int INFO = 5;
+	private static final int STATES = 6;
+	private static final int NUM_SECTIONS = 7;
+
+	/** Header: magic, version, numStates, numChoices, numTransitions, section offsets */
+	private static final int HEADER_SIZE = 8 + 4 + 4 + 8 + 8 + 8 * NUM_SECTIONS;
+	/** Max. number of bytes mapped at once */
+	private static final int MAX_MAP_SIZE = 1 << 30;
+
+	// Info from the header
+
+	private File file;
+	private int numStates;
+	private int numChoices;
+	private int numTransitions;
+	private long offsets[] = new long[NUM_SECTIONS];
+
+	// Info from the INFO section
+
+	private ModelType modelType;
+	private int initialStates[];
+	private int deadlockStates[];
+	private List<String> actionTable;
+	private List<String> labelNames;
+	private List<BitSet> labelStates;
+	private String varNames[];
+	private boolean varIsBool[];
+	private int varLows[];
+	private int varHighs[];
+
+	// Writing
+
+	/**
+	 * Write a (DTMC or MDP) model to a file in binary format.
+	 * Actions are stored as strings. Labels are stored in the order of {@link Model#getLabels()}.
+	 */
+	public static void write(Model model, File file) throws PrismException
+	{
+		write(model, null, file);
+	}
+
+	/**
+	 * Write a (DTMC or MDP) model to a file in binary format.
+	 * Actions are stored as strings.
+	 * Labels are stored (and restored when loading) in the order given by {@code labelNames},
+	 * typically that of the model's {@link prism.ModelInfo}, followed by any other labels
+	 * of the model; names in {@code labelNames} that are not labels of the model are skipped.
+	 * @param model The model
+	 * @param labelNames Order of the labels (null: that of {@link Model#getLabels()})
+	 * @param file File to write to
+	 */
+	public static void write(Model model, List<String> labelNames, File file) throws PrismException
+	{
+		ModelType modelType = model.getModelType();
+		if (modelType != ModelType.DTMC && modelType != ModelType.MDP) {
+			throw new PrismNotSupportedException("Binary model files are not supported for " + modelType + "s");
+		}
+		int numStates = model.getNumStates();
+		long offsets[] = new long[NUM_SECTIONS];
+		int numChoices = 0;
+		int numTransitions = 0;
+		List<String> actionTable = new ArrayList<String>();
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			Output out = new Output(channel);
+			// leave space for the header
+			for (int i = 0; i < HEADER_SIZE; i++) {
+				out.putByte((byte) 0);
+			}
+
+			if (modelType == ModelType.DTMC) {
+				DTMC dtmc = (DTMC) model;
+				offsets[ROWS] = out.startSection();
+				out.putInt(0);
+				for (int s = 0; s < numStates; s++) {
+					numTransitions = Math.addExact(numTransitions, dtmc.getNumTransitions(s));
+					out.putInt(numTransitions);
+				}
+				offsets[COLUMNS] = out.startSection();
+				for (int s = 0; s < numStates; s++) {
+					for (Iterator<Entry<Integer, Double>> it = dtmc.getTransitionsIterator(s); it.hasNext();) {
+						out.putInt(it.next().getKey());
+					}
+				}
+				offsets[PROBS] = out.startSection();
+				for (int s = 0; s < numStates; s++) {
+					for (Iterator<Entry<Integer, Double>> it = dtmc.getTransitionsIterator(s); it.hasNext();) {
+						out.putDouble(it.next().getValue());
+					}
+				}
+			} else {
+				MDP mdp = (MDP) model;
+				offsets[ROWS] = out.startSection();
+				out.putInt(0);
+				for (int s = 0; s < numStates; s++) {
+					numChoices = Math.addExact(numChoices, mdp.getNumChoices(s));
+					out.putInt(numChoices);
+				}
+				offsets[CHOICES] = out.startSection();
+				out.putInt(0);
+				for (int s = 0; s < numStates; s++) {
+					int n = mdp.getNumChoices(s);
+					for (int i = 0; i < n; i++) {
+						numTransitions = Math.addExact(numTransitions, mdp.getNumTransitions(s, i));
+						out.putInt(numTransitions);
+					}
+				}
+				offsets[COLUMNS] = out.startSection();
+				for (int s = 0; s < numStates; s++) {
+					int n = mdp.getNumChoices(s);
+					for (int i = 0; i < n; i++) {
+						for (Iterator<Entry<Integer, Double>> it = mdp.getTransitionsIterator(s, i); it.hasNext();) {
+							out.putInt(it.next().getKey());
+						}
+					}
+				}
+				offsets[PROBS] = out.startSection();
+				for (int s = 0; s < numStates; s++) {
+					int n = mdp.getNumChoices(s);
+					for (int i = 0; i < n; i++) {
+						for (Iterator<Entry<Integer, Double>> it = mdp.getTransitionsIterator(s, i); it.hasNext();) {
+							out.putDouble(it.next().getValue());
+						}
+					}
+				}
+				offsets[ACTIONS] = out.startSection();
+				Map<String, Integer> actionIndices = new HashMap<String, Integer>();
+				for (int s = 0; s < numStates; s++) {
+					int n = mdp.getNumChoices(s);
+					for (int i = 0; i < n; i++) {
+						Object action = mdp.getAction(s, i);
+						if (action == null) {
+							out.putInt(-1);
+							continue;
+						}
+						String name = action.toString();
+						Integer index = actionIndices.get(name);
+						if (index == null) {
+							index = actionTable.size();
+							actionIndices.put(name, index);
+							actionTable.add(name);
+						}
+						out.putInt(index);
+					}
+				}
+			}
+
+			// Info
+			offsets[INFO] = out.startSection();
+			out.putString(modelType.name());
+			out.putInt(model.getNumInitialStates());
+			for (int s : model.getInitialStates()) {
+				out.putInt(s);
+			}
+			out.putInt(model.getNumDeadlockStates());
+			for (int s : model.getDeadlockStates()) {
+				out.putInt(s);
+			}
+			out.putInt(actionTable.size());
+			for (String action : actionTable) {
+				out.putString(action);
+			}
+			List<String> labels = new ArrayList<String>();
+			if (labelNames != null) {
+				for (String label : labelNames) {
+					if (model.hasLabel(label) && !labels.contains(label)) {
+						labels.add(label);
+					}
+				}
+			}
+			for (String label : model.getLabels()) {
+				if (!labels.contains(label)) {
+					labels.add(label);
+				}
+			}
+			int numWords = (numStates + 63) / 64;
+			out.putInt(labels.size());
+			for (String label : labels) {
+				out.putString(label);
+				long words[] = Arrays.copyOf(model.getLabelStates(label).toLongArray(), numWords);
+				for (long word : words) {
+					out.putLong(word);
+				}
+			}
+			// Variables (only if the states can be stored)
+			VarList varList = model.getVarList();
+			List<State> statesList = model.getStatesList();
+			boolean storeStates = statesList != null && statesList.size() == numStates && StatePacker.canPack(varList);
+			int numVars = storeStates ? varList.getNumVars() : 0;
+			out.putInt(numVars);
+			for (int v = 0; v < numVars; v++) {
+				boolean isBool = varList.getDeclaration(v).getDeclType() instanceof DeclarationBool;
+				out.putString(varList.getName(v));
+				out.putByte((byte) (isBool ? 1 : 0));
+				out.putInt(isBool ? 0 : varList.getLow(v));
+				out.putInt(isBool ? 1 : varList.getHigh(v));
+			}
+
+			// States
+			if (storeStates) {
+				StatePacker packer = new StatePacker(varList);
+				long words[] = new long[packer.getNumWords()];
+				offsets[STATES] = out.startSection();
+				for (State state : statesList) {
+					packer.pack(state, words, 0);
+					for (long word : words) {
+						out.putLong(word);
+					}
+				}
+			}
+			out.flush();
+
+			// Header
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.put(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(numStates);
+			header.putLong(numChoices);
+			header.putLong(numTransitions);
+			for (long offset : offsets) {
+				header.putLong(offset);
+			}
+			header.flip();
+			long pos = 0;
+			while (header.hasRemaining()) {
+				pos += channel.write(header, pos);
+			}
+		} catch (IOException e) {
+			throw new PrismException("File I/O error writing to \"" + file + "\": " + e.getMessage());
+		} catch (ArithmeticException e) {
+			throw new PrismNotSupportedException("Model is too large to be stored in a binary model file");
+		}
+	}
+
+	/**
+	 * Buffered output to a file channel, little-endian.
+	 */
+	private static class Output
+	{
+		private FileChannel channel;
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+		Output(FileChannel channel)
+		{
+			this.channel = channel;
+		}
+
+		/** Start a new section (aligned to 8 bytes), returning its offset */
+		long startSection() throws IOException
+		{
+			while (position() % 8 != 0) {
+				putByte((byte) 0);
+			}
+			return position();
+		}
+
+		long position() throws IOException
+		{
+			return channel.position() + buffer.position();
+		}
+
+		void ensure(int n) throws IOException
+		{
+			if (buffer.remaining() < n)
+				flush();
+		}
+
+		void flush() throws IOException
+		{
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		void putByte(byte b) throws IOException
+		{
+			ensure(1);
+			buffer.put(b);
+		}
+
+		void putInt(int i) throws IOException
+		{
+			ensure(4);
+			buffer.putInt(i);
+		}
+
+		void putLong(long l) throws IOException
+		{
+			ensure(8);
+			buffer.putLong(l);
+		}
+
+		void putDouble(double d) throws IOException
+		{
+			ensure(8);
+			buffer.putDouble(d);
+		}
+
+		void putString(String s) throws IOException
+		{
+			byte bytes[] = s.getBytes(StandardCharsets.UTF_8);
+			putInt(bytes.length);
+			for (byte b : bytes) {
+				putByte(b);
+			}
+		}
+	}
+
+	// Reading
+
+	/**
+	 * Open a binary model file, reading its header and model info
+	 * (but not yet the transitions, see {@link #buildModel(ModulesFile)}).
+	 */
+	public BinaryModelFile(File file) throws PrismException
+	{
+		this.file = file;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE)
+				throw new PrismException("\"" + file + "\" is not a binary model file");
+			ByteBuffer header = map(channel, 0, HEADER_SIZE);
+			byte magic[] = new byte[MAGIC.length];
+			header.get(magic);
+			if (!Arrays.equals(magic, MAGIC))
+				throw new PrismException("\"" + file + "\" is not a binary model file");
+			int version = header.getInt();
+			if (version != VERSION)
+				throw new PrismException("Unsupported version " + version + " of binary model file \"" + file + "\" (expected " + VERSION + ")");
+			numStates = checkCount(header.getInt(), "states");
+			numChoices = checkCount(header.getLong(), "choices");
+			numTransitions = checkCount(header.getLong(), "transitions");
+			for (int i = 0; i < NUM_SECTIONS; i++) {
+				offsets[i] = header.getLong();
+			}
+			long end = (offsets[STATES] != 0) ? offsets[STATES] : channel.size();
+			readInfo(map(channel, offsets[INFO], end - offsets[INFO]));
+		} catch (IOException | RuntimeException e) {
+			throw new PrismException("Error reading binary model file \"" + file + "\": " + e);
+		}
+	}
+
+	/**
+	 * Check that a (state/choice/transition) count from the header fits in an int, which is the limit
+	 * for the array sections of the format, and return it as an int.
+	 */
+	private int checkCount(long count, String what) throws PrismException
+	{
+		if (count < 0)
+			throw new PrismException("Binary model file \"" + file + "\" has an invalid number of " + what + " (" + count + ")");
+		if (count > Integer.MAX_VALUE)
+			throw new PrismException("Binary model file \"" + file + "\" has too many " + what + " (" + count + "); at most " + Integer.MAX_VALUE + " are supported");
+		return (int) count;
+	}
+
+	/**
+	 * Check that the array sections, whose sizes follow from the counts in the header,
+	 * fit into the file without overlapping each other, i.e., that the header matches the file.
+	 */
+	private void checkSections(long fileSize) throws PrismException
+	{
+		long sizes[] = new long[NUM_SECTIONS];
+		sizes[ROWS] = 4L * (numStates + 1);
+		sizes[COLUMNS] = 4L * numTransitions;
+		sizes[PROBS] = 8L * numTransitions;
+		if (modelType != ModelType.DTMC) {
+			sizes[CHOICES] = 4L * (numChoices + 1);
+			sizes[ACTIONS] = 4L * numChoices;
+		}
+		for (int i = 0; i < INFO; i++) {
+			if (sizes[i] == 0 && offsets[i] == 0)
+				continue;
+			// the section ends before the next one that is present
+			long next = fileSize;
+			for (int j = i + 1; j < NUM_SECTIONS; j++) {
+				if (offsets[j] != 0) {
+					next = offsets[j];
+					break;
+				}
+			}
+			if (offsets[i] < HEADER_SIZE || offsets[i] + sizes[i] > next)
+				throw headerMismatch();
+		}
+	}
+
+	/**
+	 * Check that the last entry of an index array (rows or choice starts) read from the file
+	 * matches the corresponding count in the header.
+	 */
+	private void checkEnd(int[] starts, int count) throws PrismException
+	{
+		if (starts[starts.length - 1] != count)
+			throw headerMismatch();
+	}
+
+	/** Exception for a file whose header does not match its contents */
+	private PrismException headerMismatch()
+	{
+		return new PrismException("Binary model file \"" + file + "\" is inconsistent: its header (" + numStates + " states, " + numChoices + " choices, "
+				+ numTransitions + " transitions) does not match its contents");
+	}
+
+	/**
+	 * Read the INFO section.
+	 */
+	private void readInfo(ByteBuffer in)
+	{
+		modelType = ModelType.valueOf(getString(in));
+		initialStates = new int[in.getInt()];
+		in.asIntBuffer().get(initialStates);
+		in.position(in.position() + 4 * initialStates.length);
+		deadlockStates = new int[in.getInt()];
+		in.asIntBuffer().get(deadlockStates);
+		in.position(in.position() + 4 * deadlockStates.length);
+		int numActions = in.getInt();
+		actionTable = new ArrayList<String>(numActions);
+		for (int i = 0; i < numActions; i++) {
+			actionTable.add(getString(in));
+		}
+		int numLabels = in.getInt();
+		int numWords = (numStates + 63) / 64;
+		labelNames = new ArrayList<String>(numLabels);
+		labelStates = new ArrayList<BitSet>(numLabels);
+		for (int i = 0; i < numLabels; i++) {
+			labelNames.add(getString(in));
+			long words[] = new long[numWords];
+			in.asLongBuffer().get(words);
+			in.position(in.position() + 8 * numWords);
+			labelStates.add(BitSet.valueOf(words));
+		}
+		int numVars = in.getInt();
+		varNames = new String[numVars];
+		varIsBool = new boolean[numVars];
+		varLows = new int[numVars];
+		varHighs = new int[numVars];
+		for (int v = 0; v < numVars; v++) {
+			varNames[v] = getString(in);
+			varIsBool[v] = in.get() != 0;
+			varLows[v] = in.getInt();
+			varHighs[v] = in.getInt();
+		}
+	}
+
+	/**
+	 * Get the type of the stored model.
+	 */
+	public ModelType getModelType()
+	{
+		return modelType;
+	}
+
+	/**
+	 * Get the number of states of the stored model.
+	 */
+	public int getNumStates()
+	{
+		return numStates;
+	}
+
+	/**
+	 * Build a (partial) ModulesFile corresponding to the stored model,
+	 * i.e., storing the model type, variable info and labels
+	 * (like for {@link parser.ExplicitFiles2ModulesFile}).
+	 * If no states are stored, there is a single variable {@code x} whose value is the state index.
+	 */
+	public ModulesFile createModulesFile() throws PrismException
+	{
+		ModulesFile modulesFile = new ModulesFile();
+		Module m = new Module("M");
+		if (varNames.length > 0) {
+			for (int v = 0; v < varNames.length; v++) {
+				Declaration d;
+				if (varIsBool[v]) {
+					d = new Declaration(varNames[v], new DeclarationBool());
+					d.setStart(Expression.False());
+				} else {
+					d = new Declaration(varNames[v], new DeclarationInt(Expression.Int(varLows[v]), Expression.Int(varHighs[v])));
+					d.setStart(Expression.Int(varLows[v]));
+				}
+				m.addDeclaration(d);
+			}
+		} else {
+			Declaration d = new Declaration("x", new DeclarationInt(Expression.Int(0), Expression.Int(Math.max(numStates - 1, 1))));
+			d.setStart(Expression.Int(0));
+			m.addDeclaration(d);
+		}
+		modulesFile.addModule(m);
+		// Labels: the definitions are irrelevant, the states are stored in the model
+		LabelList labelList = new LabelList();
+		for (String label : labelNames) {
+			labelList.addLabel(new ExpressionIdent(label), new ExpressionLiteral(TypeBool.getInstance(), false));
+		}
+		modulesFile.setLabelList(labelList);
+		modulesFile.tidyUp();
+		modulesFile.setModelType(modelType);
+		return modulesFile;
+	}
+
+	/**
+	 * Load the stored model, as a {@link DTMCSparse} or {@link MDPSparse}.
+	 * @param modulesFile modules file (normally created with {@link #createModulesFile()}), for variable info
+	 */
+	public ModelExplicit buildModel(ModulesFile modulesFile) throws PrismException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ModelExplicit model;
+			checkSections(channel.size());
+			int rows[] = readInts(channel, offsets[ROWS], numStates + 1);
+			checkEnd(rows, modelType == ModelType.DTMC ? numTransitions : numChoices);
+			int columns[] = readInts(channel, offsets[COLUMNS], numTransitions);
+			double probs[] = readDoubles(channel, offsets[PROBS], numTransitions);
+			if (modelType == ModelType.DTMC) {
+				model = new DTMCSparse(numStates, rows, columns, probs);
+			} else {
+				int choiceStarts[] = readInts(channel, offsets[CHOICES], numChoices + 1);
+				checkEnd(choiceStarts, numTransitions);
+				model = new MDPSparse(numStates, rows, choiceStarts, columns, probs, readActions(channel));
+			}
+			addModelInfo(model, modulesFile, channel);
+			return model;
+		} catch (PrismLangException e) {
+			throw new PrismException("Error reading states from binary model file \"" + file + "\": " + e.getMessage());
+		} catch (IOException | RuntimeException e) {
+			throw new PrismException("Error reading binary model file \"" + file + "\": " + e);
+		}
+	}
+
+	/**
+	 * Load the stored model, as a {@link DTMCOffHeap} or {@link MDPOffHeap}.
+	 * The target states and probabilities of the transitions are not read into memory:
+	 * the corresponding sections of the file are memory-mapped and used directly
+	 * (so the file should not be modified while the model is in use).
+	 * @param modulesFile modules file (normally created with {@link #createModulesFile()}), for variable info
+	 * @param dir Directory for memory-mapped files storing the rest of the matrix (null: use direct buffers)
+	 */
+	public ModelExplicit buildModelOffHeap(ModulesFile modulesFile, File dir) throws PrismException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ModelExplicit model;
+			checkSections(channel.size());
+			int rows[] = readInts(channel, offsets[ROWS], numStates + 1);
+			checkEnd(rows, modelType == ModelType.DTMC ? numTransitions : numChoices);
+			OffHeapArray columns = OffHeapArray.mapInts(file, offsets[COLUMNS], numTransitions);
+			OffHeapArray probs = OffHeapArray.mapDoubles(file, offsets[PROBS], numTransitions);
+			if (modelType == ModelType.DTMC) {
+				OffHeapArray rowsLong = OffHeapArray.allocateLongs(numStates + 1L, dir);
+				for (int s = 0; s <= numStates; s++) {
+					rowsLong.setLong(s, rows[s]);
+				}
+				model = new DTMCOffHeap(numStates, rowsLong, columns, probs);
+			} else {
+				OffHeapArray rowsInt = OffHeapArray.allocateInts(numStates + 1L, dir);
+				for (int s = 0; s <= numStates; s++) {
+					rowsInt.setInt(s, rows[s]);
+				}
+				rows = null;
+				int choiceStarts[] = readInts(channel, offsets[CHOICES], numChoices + 1);
+				checkEnd(choiceStarts, numTransitions);
+				OffHeapArray choiceStartsLong = OffHeapArray.allocateLongs(numChoices + 1L, dir);
+				for (int i = 0; i <= numChoices; i++) {
+					choiceStartsLong.setLong(i, choiceStarts[i]);
+				}
+				choiceStarts = null;
+				model = new MDPOffHeap(numStates, rowsInt, choiceStartsLong, columns, probs, readActions(channel));
+			}
+			addModelInfo(model, modulesFile, channel);
+			return model;
+		} catch (PrismLangException e) {
+			throw new PrismException("Error reading states from binary model file \"" + file + "\": " + e.getMessage());
+		} catch (IOException | RuntimeException e) {
+			throw new PrismException("Error reading binary model file \"" + file + "\": " + e);
+		}
+	}
+
+	/**
+	 * Read the action of each choice (null if there are no actions).
+	 */
+	private Object[] readActions(FileChannel channel) throws IOException
+	{
+		if (actionTable.isEmpty())
+			return null;
+		int actionIndices[] = readInts(channel, offsets[ACTIONS], numChoices);
+		Object actions[] = new Object[numChoices];
+		for (int i = 0; i < numChoices; i++) {
+			actions[i] = actionIndices[i] == -1 ? null : actionTable.get(actionIndices[i]);
+		}
+		return actions;
+	}
+
+	/**
+	 * Add the initial states, deadlocks, labels and states (or, if none are stored, states
+	 * with a single variable x whose value is the state index) to a loaded model.
+	 */
+	private void addModelInfo(ModelExplicit model, ModulesFile modulesFile, FileChannel channel) throws PrismException, IOException
+	{
+		for (int s : initialStates) {
+			model.addInitialState(s);
+		}
+		for (int s : deadlockStates) {
+			model.addDeadlockState(s);
+		}
+		for (int i = 0; i < labelNames.size(); i++) {
+			model.addLabel(labelNames.get(i), labelStates.get(i));
+		}
+		if (offsets[STATES] != 0) {
+			VarList varList = new VarList(modulesFile);
+			StatePacker packer = new StatePacker(varList);
+			long words[] = readLongs(channel, offsets[STATES], Math.multiplyExact(numStates, packer.getNumWords()));
+			model.setVarList(varList);
+			model.setStatesList(new PackedStateList(packer, words));
+		} else {
+			// as for imported .tra files: a single variable x, with value corresponding to the state index
+			List<State> states = new ArrayList<State>(numStates);
+			for (int i = 0; i < numStates; i++) {
+				State s = new State(1);
+				s.setValue(0, i);
+				states.add(s);
+			}
+			model.setStatesList(states);
+		}
+	}
+
+	/** Map a region of a file into memory (read-only, little-endian) */
+	private static ByteBuffer map(FileChannel channel, long offset, long size) throws IOException
+	{
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+		return buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/** Read an int array of size {@code n}, stored at {@code offset} */
+	private static int[] readInts(FileChannel channel, long offset, int n) throws IOException
+	{
+		int result[] = new int[n];
+		int chunk = MAX_MAP_SIZE / 4;
+		for (int i = 0; i < n; i += chunk) {
+			int len = Math.min(chunk, n - i);
+			map(channel, offset + 4L * i, 4L * len).asIntBuffer().get(result, i, len);
+		}
+		return result;
+	}
+
+	/** Read a long array of size {@code n}, stored at {@code offset} */
+	private static long[] readLongs(FileChannel channel, long offset, int n) throws IOException
+	{
+		long result[] = new long[n];
+		int chunk = MAX_MAP_SIZE / 8;
+		for (int i = 0; i < n; i += chunk) {
+			int len = Math.min(chunk, n - i);
+			map(channel, offset + 8L * i, 8L * len).asLongBuffer().get(result, i, len);
+		}
+		return result;
+	}
+
+	/** Read a double array of size {@code n}, stored at {@code offset} */
+	private static double[] readDoubles(FileChannel channel, long offset, int n) throws IOException
+	{
+		double result[] = new double[n];
+		int chunk = MAX_MAP_SIZE / 8;
+		for (int i = 0; i < n; i += chunk) {
+			int len = Math.min(chunk, n - i);
+			map(channel, offset + 8L * i, 8L * len).asDoubleBuffer().get(result, i, len);
+		}
+		return result;
+	}
+
+	/** Read a (length-prefixed, UTF-8) string */
+	private static String getString(ByteBuffer in)
+	{
+		byte bytes[] = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,295 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package explicit;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Class storing an indexed set of objects of type T that can be added to concurrently.
+ * Typically used for storing the state space during multi-threaded reachability.
+ * <br>
+ * The set is split into shards (selected by the hash code of the objects), each protected
+ * by its own lock, so threads adding different objects rarely contend. Indices are assigned
+ * in the order in which objects are added, so, when used concurrently, they depend on the
+ * thread scheduling; {@link #buildSortingPermutation()} can be used to obtain a canonical order.
+ * <br>
+ * Only {@link #putIfAbsent(Comparable)}, {@link #get(Comparable)}, {@link #contains(Comparable)}
+ * and {@link #size()} may be called concurrently. In particular, {@link #add(Comparable)} and
+ * {@link #getIndexOfLastAdd()} are only meaningful if called from a single thread.
+ */
+public class ConcurrentIndexedSet<T extends Comparable<T>> implements StateStorage<T>
+{
+	/** Number of objects per block of the index-to-object table (as a power of two) */
+	private static final int BLOCK_BITS = 16;
+	private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+	private static final int MAX_BLOCKS = (Integer.MAX_VALUE >> BLOCK_BITS) + 1;
+
+	/** The shards, mapping objects to indices */
+	private final List<HashMap<T, Integer>> shards;
+	/** Number of bits used to select a shard */
+	private final int shardBits;
+	/** Number of objects stored */
+	private final AtomicInteger size = new AtomicInteger(0);
+	/** Objects by index (blocks are allocated on demand) */
+	private AtomicReferenceArray<Object[]> blocks = new AtomicReferenceArray<Object[]>(MAX_BLOCKS);
+	/** Index of the last object added via {@link #add(Comparable)} */
+	private int indexOfLastAdd = -1;
+
+	/**
+	 * Constructor.
+	 * @param numThreads The number of threads expected to access the set (used to choose the number of shards)
+	 */
+	public ConcurrentIndexedSet(int numThreads)
+	{
+		int bits = 0;
+		while ((1 << bits) < 16 * Math.max(1, numThreads) && bits < 12) {
+			bits++;
+		}
+		shardBits = bits;
+		int numShards = 1 << bits;
+		shards = new ArrayList<HashMap<T, Integer>>(numShards);
+		for (int i = 0; i < numShards; i++) {
+			shards.add(new HashMap<T, Integer>());
+		}
+	}
+
+	/** Get the shard for object {@code t} */
+	private HashMap<T, Integer> shard(T t)
+	{
+		if (shardBits == 0)
+			return shards.get(0);
+		// use the high bits of a scrambled hash code, the low ones are used by the shard itself
+		int h = t.hashCode() * 0x9E3779B9;
+		return shards.get(h >>> (32 - shardBits));
+	}
+
+	/**
+	 * Add an object to the set, if it is not already present.
+	 * Returns the index of the object if it was already present, or {@code -(index + 1)}
+	 * if it was added, where {@code index} is the newly assigned index.
+	 * May be called concurrently.
+	 */
+	public int putIfAbsent(T t)
+	{
+		HashMap<T, Integer> shard = shard(t);
+		int index;
+		synchronized (shard) {
+			Integer i = shard.get(t);
+			if (i != null)
+				return i;
+			index = size.getAndIncrement();
+			if (index < 0) {
+				size.decrementAndGet();
+				throw new IllegalStateException("Too many objects for an indexed set");
+			}
+			shard.put(t, index);
+		}
+		store(index, t);
+		return -(index + 1);
+	}
+
+	/** Store object {@code t} in the index-to-object table */
+	private void store(int index, T t)
+	{
+		int b = index >>> BLOCK_BITS;
+		Object[] block = blocks.get(b);
+		if (block == null) {
+			blocks.compareAndSet(b, null, new Object[BLOCK_SIZE]);
+			block = blocks.get(b);
+		}
+		// the table is only read once all additions are finished,
+		// so a plain write is sufficient here
+		block[index & (BLOCK_SIZE - 1)] = t;
+	}
+
+	/**
+	 * Get the object with index {@code index}.
+	 * Must not be called while objects are being added concurrently.
+	 */
+	@SuppressWarnings("unchecked")
+	public T getObject(int index)
+	{
+		return (T) blocks.get(index >>> BLOCK_BITS)[index & (BLOCK_SIZE - 1)];
+	}
+
+	@Override
+	public int get(T t)
+	{
+		HashMap<T, Integer> shard = shard(t);
+		synchronized (shard) {
+			return shard.get(t);
+		}
+	}
+
+	@Override
+	public boolean add(T state)
+	{
+		int i = putIfAbsent(state);
+		if (i < 0) {
+			indexOfLastAdd = -(i + 1);
+			return true;
+		} else {
+			indexOfLastAdd = i;
+			return false;
+		}
+	}
+
+	@Override
+	public void clear()
+	{
+		for (HashMap<T, Integer> shard : shards) {
+			synchronized (shard) {
+				shard.clear();
+			}
+		}
+		size.set(0);
+		blocks = new AtomicReferenceArray<Object[]>(MAX_BLOCKS);
+		indexOfLastAdd = -1;
+	}
+
+	@Override
+	public boolean contains(T state)
+	{
+		HashMap<T, Integer> shard = shard(state);
+		synchronized (shard) {
+			return shard.containsKey(state);
+		}
+	}
+
+	@Override
+	public int getIndexOfLastAdd()
+	{
+		return indexOfLastAdd;
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return size.get() == 0;
+	}
+
+	@Override
+	public int size()
+	{
+		return size.get();
+	}
+
+	/**
+	 * Get a set of the map entries (a copy, combining all shards).
+	 */
+	@Override
+	public Set<Map.Entry<T, Integer>> getEntrySet()
+	{
+		Set<Map.Entry<T, Integer>> entries = new HashSet<Map.Entry<T, Integer>>();
+		for (HashMap<T, Integer> shard : shards) {
+			synchronized (shard) {
+				for (Map.Entry<T, Integer> e : shard.entrySet()) {
+					entries.add(new AbstractMap.SimpleImmutableEntry<T, Integer>(e));
+				}
+			}
+		}
+		return entries;
+	}
+
+	@Override
+	public ArrayList<T> toArrayList()
+	{
+		ArrayList<T> list = new ArrayList<T>(size());
+		toArrayList(list);
+		return list;
+	}
+
+	@Override
+	public void toArrayList(ArrayList<T> list)
+	{
+		int n = size();
+		for (int i = 0; i < n; i++) {
+			list.add(getObject(i));
+		}
+	}
+
+	@Override
+	public ArrayList<T> toPermutedArrayList(int permut[])
+	{
+		ArrayList<T> list = new ArrayList<T>(size());
+		toPermutedArrayList(permut, list);
+		return list;
+	}
+
+	@Override
+	public void toPermutedArrayList(int permut[], ArrayList<T> list)
+	{
+		int n = size();
+		for (int i = 0; i < n; i++)
+			list.add(null);
+		for (int i = 0; i < n; i++) {
+			list.set(permut[i], getObject(i));
+		}
+	}
+
+	/**
+	 * Build sort permutation, i.e., a permutation (integer array) mapping current indices
+	 * to new indices under the natural ordering of the objects.
+	 * Unlike for {@link IndexedSet}, the objects are explicitly sorted here (in parallel, where possible).
+	 */
+	@Override
+	public int[] buildSortingPermutation()
+	{
+		int n = size();
+		@SuppressWarnings("unchecked")
+		T[] sorted = (T[]) new Comparable<?>[n];
+		for (int i = 0; i < n; i++) {
+			sorted[i] = getObject(i);
+		}
+		Arrays.parallelSort(sorted);
+		int perm[] = new int[n];
+		for (int i = 0; i < n; i++) {
+			perm[get(sorted[i])] = i;
+		}
+		return perm;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder s = new StringBuilder("{");
+		int n = size();
+		for (int i = 0; i < n; i++) {
+			if (i > 0)
+				s.append(", ");
+			s.append(getObject(i)).append("=").append(i);
+		}
+		return s.append("}").toString();
+	}
+}
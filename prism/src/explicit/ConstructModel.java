@@ -29,11 +29,24 @@ package explicit;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import parser.PackedState;
+import parser.PackedStateList;
 import parser.State;
+import parser.StatePacker;
 import parser.Values;
 import parser.VarList;
 import prism.ModelGenerator;
@@ -44,8 +57,11 @@ import prism.PrismException;
 import prism.PrismLog;
 import prism.PrismNotSupportedException;
 import prism.PrismPrintStreamLog;
+import prism.PrismSettings;
 import prism.ProgressDisplay;
+import prism.SuccessorBuffer;
 import prism.UndefinedConstants;
+import common.WorkerPool;
 
 /**
  * Class to perform explicit-state reachability and model construction.
@@ -67,6 +83,18 @@ public class ConstructModel extends PrismComponent
 	protected boolean distinguishActions = true;
 	/** Should labels be processed and attached to the model? */
 	protected boolean attachLabels = true; 
+	/** Number of worker threads for state space exploration (1 means sequential exploration) */
+	protected int numThreads = 1;
+	/** Store states in packed form (see {@link StatePacker}), if possible? */
+	protected boolean packStates = true;
+	/** Build sparse DTMCs/MDPs with the transition matrix stored off the Java heap
+	 *  (see {@link OffHeapModelBuilder})? */
+	protected boolean buildOffHeap = false;
+	/** Directory for memory-mapped files storing off-heap models (null: use direct buffers) */
+	protected File offHeapDir = null;
+
+	/** Number of states passed to {@link ModelGenerator#exploreStates} at a time */
+	protected static final int EXPLORE_BLOCK_SIZE = 256;
 
 	// Details of built model:
 
@@ -76,6 +104,13 @@ public class ConstructModel extends PrismComponent
 	public ConstructModel(PrismComponent parent) throws PrismException
 	{
 		super(parent);
+		if (settings != null) {
+			numThreads = settings.getInteger(PrismSettings.PRISM_NUM_THREADS);
+			packStates = settings.getBoolean(PrismSettings.PRISM_EXPLICIT_PACK_STATES);
+			buildOffHeap = settings.getBoolean(PrismSettings.PRISM_EXPLICIT_OFF_HEAP);
+			String dir = settings.getString(PrismSettings.PRISM_OFF_HEAP_DIR);
+			offHeapDir = "".equals(dir) ? null : new File(dir);
+		}
 	}
 
 	/**
@@ -120,6 +155,40 @@ public class ConstructModel extends PrismComponent
 		this.attachLabels = attachLabels;
 	}
 
+	/**
+	 * Set the number of worker threads for state space exploration.
+	 * Multi-threaded exploration is only used if the ModelGenerator supports
+	 * {@link ModelGenerator#createCopy()}; the resulting model is the same either way.
+	 */
+	public void setNumThreads(int numThreads)
+	{
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * Store states in packed form during construction and in the list of reachable states, if possible?
+	 * This is only possible if all variables are bounded integers or Booleans (see {@link StatePacker})
+	 * and greatly reduces memory usage, at the expense of creating State objects on demand.
+	 */
+	public void setPackStates(boolean packStates)
+	{
+		this.packStates = packStates;
+	}
+
+	/**
+	 * Build sparse DTMCs/MDPs (see {@link #setBuildSparse(boolean)}) with the transition matrix
+	 * stored off the Java heap, i.e. as {@link DTMCOffHeap}/{@link MDPOffHeap}?
+	 * The matrix is then built off-heap directly, so it is not limited by the heap size
+	 * or by the maximum size of Java arrays.
+	 * @param buildOffHeap Whether to build models off-heap
+	 * @param dir Directory for memory-mapped files storing the matrix (null: use direct buffers)
+	 */
+	public void setBuildOffHeap(boolean buildOffHeap, File dir)
+	{
+		this.buildOffHeap = buildOffHeap;
+		this.offHeapDir = dir;
+	}
+
 	/**
 	 * Build the set of reachable states for a model and return it.
 	 * @param modelGen The ModelGenerator interface providing the model 
@@ -147,13 +216,31 @@ public class ConstructModel extends PrismComponent
 	 * @param justReach If true, just build the reachable state set, not the model
 	 */
 	public Model constructModel(ModelGenerator modelGen, boolean justReach) throws PrismException
+	{
+		VarList varList = modelGen.createVarList();
+		if (packStates && StatePacker.canPack(varList)) {
+			return constructModel(modelGen, justReach, new PackedEncoding(new StatePacker(varList)));
+		} else {
+			return constructModel(modelGen, justReach, new IdentityEncoding());
+		}
+	}
+
+	/**
+	 * Construct an explicit-state model and return it,
+	 * storing states during construction as specified by {@code encoding}.
+	 * If {@code justReach} is true, no model is built and null is returned.
+	 * @param modelGen The ModelGenerator interface providing the model 
+	 * @param justReach If true, just build the reachable state set, not the model
+	 * @param encoding How to store states
+	 */
+	private <K extends Comparable<K>> Model constructModel(ModelGenerator modelGen, boolean justReach, StateEncoding<K> encoding) throws PrismException
 	{
 		// Model info
 		ModelType modelType;
 		// State storage
-		StateStorage<State> states;
-		LinkedList<State> explore;
-		State state, stateNew;
+		StateStorage<K> states;
+		LinkedList<K> explore;
+		K stateNew;
 		// Explicit model storage
 		ModelSimple modelSimple = null;
 		DTMCSimple dtmc = null;
@@ -162,8 +249,11 @@ public class ConstructModel extends PrismComponent
 		CTMDPSimple ctmdp = null;
 		ModelExplicit model = null;
 		Distribution distr = null;
+		// Alternatively, sparse (on- or off-heap) model built directly
+		DirectModelBuilder builder = null;
+		DistributionPrimitive distrPrim = null;
 		// Misc
-		int i, j, nc, nt, src, dest;
+		int b, i, j, nb, nc, nt, src, dest;
 		long timer;
 
 		// Get model info
@@ -182,7 +272,15 @@ public class ConstructModel extends PrismComponent
 		timer = System.currentTimeMillis();
 
 		// Create model storage
-		if (!justReach) {
+		if (!justReach && buildSparse && (modelType == ModelType.DTMC || modelType == ModelType.MDP)) {
+			// Build the sparse matrix directly
+			if (buildOffHeap) {
+				builder = new OffHeapModelBuilder(modelType.nondeterministic(), offHeapDir);
+			} else {
+				builder = new SparseModelBuilder(modelType.nondeterministic());
+			}
+			distrPrim = new DistributionPrimitive();
+		} else if (!justReach) {
 			// Create a (simple, mutable) model of the appropriate type
 			switch (modelType) {
 			case DTMC:
@@ -209,89 +307,130 @@ public class ConstructModel extends PrismComponent
 			}
 		}
 
-		// Initialise states storage
-		states = new IndexedSet<State>(true);
-		explore = new LinkedList<State>();
-		// Add initial state(s) to 'explore', 'states' and to the model
-		for (State initState : modelGen.getInitialStates()) {
-			explore.add(initState);
-			states.add(initState);
-			if (!justReach) {
-				modelSimple.addState();
-				modelSimple.addInitialState(modelSimple.getNumStates() - 1);
+		ModelGenerator modelGenCopy = (numThreads > 1) ? modelGen.createCopy() : null;
+		if (modelGenCopy != null) {
+			// Explore using several worker threads
+			states = exploreConcurrently(modelGen, modelGenCopy, justReach, modelSimple, builder, progress, encoding);
+			src = states.size() - 1;
+		} else {
+			// Initialise states storage
+			states = encoding.createStateStorage();
+			explore = new LinkedList<K>();
+			// Add initial state(s) to 'explore', 'states' and to the model
+			for (State initState : modelGen.getInitialStates()) {
+				K init = encoding.encode(initState);
+				explore.add(init);
+				states.add(init);
+				if (builder != null) {
+					builder.addInitialState(states.getIndexOfLastAdd());
+				} else if (!justReach) {
+					modelSimple.addState();
+					modelSimple.addInitialState(modelSimple.getNumStates() - 1);
+				}
 			}
-		}
-		// Explore...
-		src = -1;
-		while (!explore.isEmpty()) {
-			// Pick next state to explore
-			// (they are stored in order found so know index is src+1)
-			state = explore.removeFirst();
-			src++;
-			// Explore all choices/transitions from this state
-			modelGen.exploreState(state);
-			// Look at each outgoing choice in turn
-			nc = modelGen.getNumChoices();
-			for (i = 0; i < nc; i++) {
-				// For nondet models, collect transitions in a Distribution
-				if (!justReach && modelType.nondeterministic()) {
-					distr = new Distribution();
+			// Explore...
+			SuccessorBuffer buffer = encoding.createSuccessorBuffer();
+			List<State> block = new ArrayList<State>(EXPLORE_BLOCK_SIZE);
+			src = -1;
+			while (!explore.isEmpty()) {
+				// Pick next block of states to explore
+				// (they are stored in order found so know indices are src+1, src+2, ...)
+				block.clear();
+				while (!explore.isEmpty() && block.size() < EXPLORE_BLOCK_SIZE) {
+					block.add(encoding.decode(explore.removeFirst()));
 				}
-				// Look at each transition in the choice
-				nt = modelGen.getNumTransitions(i);
-				for (j = 0; j < nt; j++) {
-					stateNew = modelGen.computeTransitionTarget(i, j);
-					// Is this a new state?
-					if (states.add(stateNew)) {
-						// If so, add to the explore list
-						explore.add(stateNew);
-						// And to model
-						if (!justReach) {
-							modelSimple.addState();
-						}
+				// Explore all choices/transitions from these states
+				modelGen.exploreStates(block, buffer);
+				nb = block.size();
+				for (b = 0; b < nb; b++) {
+					src++;
+					if (builder != null) {
+						builder.addState();
+						distrPrim.clear();
 					}
-					// Get index of state in state set
-					dest = states.getIndexOfLastAdd();
-					// Add transitions to model
-					if (!justReach) {
-						switch (modelType) {
-						case DTMC:
-							dtmc.addToProbability(src, dest, modelGen.getTransitionProbability(i, j));
-							break;
-						case CTMC:
-							ctmc.addToProbability(src, dest, modelGen.getTransitionProbability(i, j));
-							break;
-						case MDP:
-						case CTMDP:
-							distr.add(dest, modelGen.getTransitionProbability(i, j));
-							break;
-						case STPG:
-						case SMG:
-						case PTA:
-						case LTS:
-							throw new PrismNotSupportedException("Model construction not supported for " + modelType + "s");
+					// Look at each outgoing choice in turn
+					nc = buffer.getChoiceStart(b + 1);
+					for (i = buffer.getChoiceStart(b); i < nc; i++) {
+						// For nondet models, collect transitions in a Distribution
+						if (builder != null) {
+							if (modelType.nondeterministic())
+								distrPrim.clear();
+						} else if (!justReach && modelType.nondeterministic()) {
+							distr = new Distribution();
 						}
-					}
-				}
-				// For nondet models, add collated transition to model 
-				if (!justReach) {
-					if (modelType == ModelType.MDP) {
-						if (distinguishActions) {
-							mdp.addActionLabelledChoice(src, distr, modelGen.getChoiceAction(i));
-						} else {
-							mdp.addChoice(src, distr);
+						// Look at each transition in the choice
+						nt = buffer.getTransitionStart(i + 1);
+						for (j = buffer.getTransitionStart(i); j < nt; j++) {
+							// Is this a new state?
+							try {
+								stateNew = encoding.addTarget(states, buffer, j);
+							} catch (IllegalStateException e) {
+								// State storage is full
+								throw new PrismException(e.getMessage());
+							}
+							if (stateNew != null) {
+								// If so, add to the explore list
+								explore.add(stateNew);
+								// And to model
+								if (modelSimple != null) {
+									modelSimple.addState();
+								}
+							}
+							// Get index of state in state set
+							dest = states.getIndexOfLastAdd();
+							// Add transitions to model
+							if (builder != null) {
+								distrPrim.add(dest, buffer.getProbability(j));
+							} else if (!justReach) {
+								switch (modelType) {
+								case DTMC:
+									dtmc.addToProbability(src, dest, buffer.getProbability(j));
+									break;
+								case CTMC:
+									ctmc.addToProbability(src, dest, buffer.getProbability(j));
+									break;
+								case MDP:
+								case CTMDP:
+									distr.add(dest, buffer.getProbability(j));
+									break;
+								case STPG:
+								case SMG:
+								case PTA:
+								case LTS:
+									throw new PrismNotSupportedException("Model construction not supported for " + modelType + "s");
+								}
+							}
 						}
-					} else if (modelType == ModelType.CTMDP) {
-						if (distinguishActions) {
-							ctmdp.addActionLabelledChoice(src, distr, modelGen.getChoiceAction(i));
-						} else {
-							ctmdp.addChoice(src, distr);
+						// For nondet models, add collated transition to model 
+						if (builder != null) {
+							if (modelType.nondeterministic()) {
+								builder.addChoice(distrPrim, distinguishActions ? buffer.getAction(buffer.getChoiceActionIndex(i)) : null);
+							}
+						} else if (!justReach) {
+							if (modelType == ModelType.MDP) {
+								if (distinguishActions) {
+									mdp.addActionLabelledChoice(src, distr, buffer.getAction(buffer.getChoiceActionIndex(i)));
+								} else {
+									mdp.addChoice(src, distr);
+								}
+							} else if (modelType == ModelType.CTMDP) {
+								if (distinguishActions) {
+									ctmdp.addActionLabelledChoice(src, distr, buffer.getAction(buffer.getChoiceActionIndex(i)));
+								} else {
+									ctmdp.addChoice(src, distr);
+								}
+							}
 						}
 					}
+					// For DTMCs built directly, add the collated transitions of all choices
+					if (builder != null && !modelType.nondeterministic()) {
+						builder.setDistribution(distrPrim);
+					}
+					// Print some progress info occasionally
+					progress.updateIfReady(src + 1);
 				}
 			}
-			// Print some progress info occasionally
-			progress.updateIfReady(src + 1);
+
 		}
 
 		// Finish progress display
@@ -305,7 +444,11 @@ public class ConstructModel extends PrismComponent
 
 		// Find/fix deadlocks (if required)
 		if (!justReach && findDeadlocks) {
-			modelSimple.findDeadlocks(fixDeadlocks);
+			if (builder != null) {
+				builder.findDeadlocks(fixDeadlocks);
+			} else {
+				modelSimple.findDeadlocks(fixDeadlocks);
+			}
 		}
 
 		boolean sort = true;
@@ -315,10 +458,10 @@ public class ConstructModel extends PrismComponent
 			// Sort states and convert set to list
 			mainLog.println("Sorting reachable states list...");
 			permut = states.buildSortingPermutation();
-			statesList = states.toPermutedArrayList(permut);
+			statesList = encoding.createStatesList(states, permut);
 			//mainLog.println(permut);
 		} else {
-			statesList = states.toArrayList();
+			statesList = encoding.createStatesList(states, null);
 		}
 		states.clear();
 		states = null;
@@ -328,7 +471,9 @@ public class ConstructModel extends PrismComponent
 		if (!justReach) {
 			switch (modelType) {
 			case DTMC:
-				if (buildSparse) {
+				if (builder != null) {
+					model = builder.buildDTMC(permut, varList);
+				} else if (buildSparse) {
 					model = sort ? new DTMCSparse(dtmc, permut) : new DTMCSparse(dtmc);
 				} else {
 					model = sort ? new DTMCSimple(dtmc, permut) : (DTMCSimple) dtmc;
@@ -338,7 +483,9 @@ public class ConstructModel extends PrismComponent
 				model = sort ? new CTMCSimple(ctmc, permut) : (CTMCSimple) ctmc;
 				break;
 			case MDP:
-				if (buildSparse) {
+				if (builder != null) {
+					model = builder.buildMDP(permut, varList);
+				} else if (buildSparse) {
 					model = sort ? new MDPSparse(mdp, true, permut) : new MDPSparse(mdp);
 				} else {
 					model = sort ? new MDPSimple(mdp, permut) : mdp;
@@ -367,6 +514,548 @@ public class ConstructModel extends PrismComponent
 		return model;
 	}
 
+	/**
+	 * How states are stored during model construction (as objects of type K).
+	 */
+	private interface StateEncoding<K extends Comparable<K>>
+	{
+		/** Convert a state to its stored form */
+		public K encode(State state) throws PrismException;
+
+		/** Convert the target of the {@code t}th transition in {@code buffer} to its stored form */
+		public K encode(SuccessorBuffer buffer, int t);
+
+		/** Convert a stored state back to a State object */
+		public State decode(K stored);
+
+		/** Create a buffer for exploring states (see {@link ModelGenerator#exploreStates}) */
+		public SuccessorBuffer createSuccessorBuffer();
+
+		/** Create storage for the set of reachable states (for sequential exploration) */
+		public StateStorage<K> createStateStorage();
+
+		/**
+		 * Add the target of the {@code t}th transition in {@code buffer} to {@code states}
+		 * and return its stored form if it is new, or null if not (either way, its index
+		 * is then available from {@link StateStorage#getIndexOfLastAdd()})
+		 */
+		public K addTarget(StateStorage<K> states, SuccessorBuffer buffer, int t);
+
+		/**
+		 * Create the list of reachable states from the stored ones,
+		 * ordered by permuted index (index in new list is permut[old_index]), or by index if permut is null
+		 */
+		public List<State> createStatesList(StateStorage<K> states, int permut[]);
+	}
+
+	/**
+	 * States are stored as State objects.
+	 */
+	private static class IdentityEncoding implements StateEncoding<State>
+	{
+		@Override
+		public State encode(State state)
+		{
+			return state;
+		}
+
+		@Override
+		public State encode(SuccessorBuffer buffer, int t)
+		{
+			return buffer.getTargetState(t);
+		}
+
+		@Override
+		public State decode(State stored)
+		{
+			return stored;
+		}
+
+		@Override
+		public SuccessorBuffer createSuccessorBuffer()
+		{
+			return new SuccessorBuffer(null);
+		}
+
+		@Override
+		public StateStorage<State> createStateStorage()
+		{
+			return new IndexedSet<State>(true);
+		}
+
+		@Override
+		public State addTarget(StateStorage<State> states, SuccessorBuffer buffer, int t)
+		{
+			State state = buffer.getTargetState(t);
+			return states.add(state) ? state : null;
+		}
+
+		@Override
+		public List<State> createStatesList(StateStorage<State> states, int permut[])
+		{
+			return permut == null ? states.toArrayList() : states.toPermutedArrayList(permut);
+		}
+	}
+
+	/**
+	 * States are stored packed, as PackedState objects.
+	 */
+	private static class PackedEncoding implements StateEncoding<PackedState>
+	{
+		private StatePacker packer;
+
+		PackedEncoding(StatePacker packer)
+		{
+			this.packer = packer;
+		}
+
+		@Override
+		public PackedState encode(State state) throws PrismException
+		{
+			return packer.pack(state);
+		}
+
+		@Override
+		public PackedState encode(SuccessorBuffer buffer, int t)
+		{
+			int n = buffer.getNumWords();
+			long[] words = new long[n];
+			System.arraycopy(buffer.getTargetWords(), t * n, words, 0, n);
+			return new PackedState(words);
+		}
+
+		@Override
+		public State decode(PackedState stored)
+		{
+			return packer.unpack(stored);
+		}
+
+		@Override
+		public SuccessorBuffer createSuccessorBuffer()
+		{
+			return new SuccessorBuffer(packer);
+		}
+
+		@Override
+		public StateStorage<PackedState> createStateStorage()
+		{
+			return new PackedIndexedSet(packer.getNumWords());
+		}
+
+		@Override
+		public PackedState addTarget(StateStorage<PackedState> states, SuccessorBuffer buffer, int t)
+		{
+			// Look up the packed words directly, only creating a PackedState for new states
+			if (states instanceof PackedIndexedSet) {
+				PackedIndexedSet set = (PackedIndexedSet) states;
+				if (set.add(buffer.getTargetWords(), t * buffer.getNumWords())) {
+					return set.getObject(set.getIndexOfLastAdd());
+				}
+				return null;
+			}
+			PackedState state = encode(buffer, t);
+			return states.add(state) ? state : null;
+		}
+
+		@Override
+		public List<State> createStatesList(StateStorage<PackedState> states, int permut[])
+		{
+			if (states instanceof PackedIndexedSet) {
+				return new PackedStateList(packer, ((PackedIndexedSet) states).toPermutedWords(permut));
+			}
+			return new PackedStateList(packer, permut == null ? states.toArrayList() : states.toPermutedArrayList(permut));
+		}
+	}
+
+	/**
+	 * Outgoing transitions of a single state, as found during multi-threaded exploration.
+	 */
+	private static class ExploredState
+	{
+		/** Index of the state */
+		int src;
+		/** Transitions of choice i are at positions choiceEnds[i-1] (or 0) to choiceEnds[i]-1 */
+		int[] choiceEnds;
+		/** Indices of the target states */
+		int[] targets;
+		/** Transition probabilities/rates */
+		double[] probs;
+		/** Choice actions (null if not needed) */
+		Object[] actions;
+	}
+
+	/**
+	 * Per-worker data for multi-threaded exploration:
+	 * a ModelGenerator (and buffer for its successors) that is not shared with other threads.
+	 */
+	private static class Explorer
+	{
+		ModelGenerator modelGen;
+		SuccessorBuffer buffer;
+
+		Explorer(ModelGenerator modelGen, SuccessorBuffer buffer)
+		{
+			this.modelGen = modelGen;
+			this.buffer = buffer;
+		}
+	}
+
+	/**
+	 * Adds the transitions found during multi-threaded exploration to a model, in state order:
+	 * a state is added as soon as all states with lower indices have been added,
+	 * states that were explored earlier than that are kept until then.
+	 * Synchronised, since the model (or builder) is not thread-safe.
+	 */
+	private class ModelSink
+	{
+		private final ModelType modelType;
+		/** The model to add the states and transitions to (if non-null) */
+		private final ModelSimple modelSimple;
+		/** The sparse model builder to add the states and transitions to (if non-null) */
+		private final DirectModelBuilder builder;
+		private final DistributionPrimitive distrPrim = new DistributionPrimitive();
+		/** States that have been explored, but not added yet */
+		private final HashMap<Integer, ExploredState> pending = new HashMap<Integer, ExploredState>();
+		/** Index of the next state to add */
+		private int next = 0;
+
+		ModelSink(ModelType modelType, ModelSimple modelSimple, DirectModelBuilder builder)
+		{
+			this.modelType = modelType;
+			this.modelSimple = modelSimple;
+			this.builder = builder;
+		}
+
+		/** Add (or keep) the explored states in {@code batch} */
+		synchronized void add(List<ExploredState> batch) throws PrismException
+		{
+			for (ExploredState exp : batch) {
+				if (exp.src == next) {
+					addNext(exp);
+				} else {
+					pending.put(exp.src, exp);
+				}
+			}
+			ExploredState exp;
+			while (!pending.isEmpty() && (exp = pending.remove(next)) != null) {
+				addNext(exp);
+			}
+		}
+
+		/** Add the explored state {@code exp}, whose index is {@code next} */
+		private void addNext(ExploredState exp) throws PrismException
+		{
+			if (builder != null) {
+				builder.addState();
+				addTransitions(modelType, builder, distrPrim, exp);
+			} else {
+				// ModelSimple needs the target states to exist
+				int max = exp.src;
+				for (int t : exp.targets) {
+					max = Math.max(max, t);
+				}
+				while (modelSimple.getNumStates() <= max) {
+					modelSimple.addState();
+				}
+				addTransitions(modelType, modelSimple, exp);
+			}
+			next++;
+		}
+
+		/** Get the number of states added so far */
+		synchronized int getNumAdded()
+		{
+			return next;
+		}
+	}
+
+	/**
+	 * Explore the reachable states of a model using several worker threads,
+	 * each of which uses its own copy of the ModelGenerator.
+	 * <br>
+	 * States are stored in a {@link ConcurrentIndexedSet} and unexplored states are distributed
+	 * via the work-stealing queues of the shared worker pool. The indices of the states (apart from
+	 * the initial ones) thus depend on the scheduling; they are made canonical afterwards by the
+	 * usual sorting step. Unless {@code justReach} is true, the transitions are added to {@code modelSimple}
+	 * or {@code builder} in index order during the exploration (see {@link ModelSink}).
+	 * @param modelGen The ModelGenerator interface providing the model
+	 * @param modelGenCopy A copy of {@code modelGen} (as created by {@link ModelGenerator#createCopy()})
+	 * @param justReach If true, just build the reachable state set, not the model
+	 * @param modelSimple The model to add the states and transitions to (if non-null)
+	 * @param builder The sparse model builder to add the states and transitions to (if non-null)
+	 * @param progress Progress display for the number of explored states
+	 */
+	private <K extends Comparable<K>> StateStorage<K> exploreConcurrently(ModelGenerator modelGen, ModelGenerator modelGenCopy, boolean justReach,
+			ModelSimple modelSimple, DirectModelBuilder builder, ProgressDisplay progress, final StateEncoding<K> encoding) throws PrismException
+	{
+		final ModelType modelType = modelGen.getModelType();
+		final boolean storeActions = modelType.nondeterministic() && distinguishActions;
+		final ConcurrentIndexedSet<K> states = new ConcurrentIndexedSet<K>(numThreads);
+		final ForkJoinPool pool = WorkerPool.getPool(numThreads);
+
+		// One explorer per worker thread (the ModelGenerator copies are created here, or
+		// in the workers while synchronised, since modelGen itself may not be thread-safe)
+		final ConcurrentLinkedQueue<Explorer> idleExplorers = new ConcurrentLinkedQueue<Explorer>();
+		final List<Explorer> allExplorers = new ArrayList<Explorer>();
+		for (int t = 0; t < numThreads; t++) {
+			allExplorers.add(new Explorer(t == 0 ? modelGenCopy : modelGen.createCopy(), encoding.createSuccessorBuffer()));
+		}
+		idleExplorers.addAll(allExplorers);
+
+		final AtomicInteger numExplored = new AtomicInteger(0);
+		final AtomicInteger inFlight = new AtomicInteger(0);
+		final AtomicBoolean aborted = new AtomicBoolean(false);
+		final CountDownLatch finished = new CountDownLatch(1);
+		final Throwable[] error = new Throwable[1];
+		final ModelSink sink = justReach ? null : new ModelSink(modelType, modelSimple, builder);
+
+		/** Task: explores a batch of states and (as long as there is work) the states found from them */
+		class ExploreTask extends RecursiveAction
+		{
+			private static final long serialVersionUID = 1L;
+			/** Unexplored states, and their indices */
+			private ArrayDeque<K> todo;
+			private ArrayDeque<Integer> todoIndices;
+
+			ExploreTask(ArrayDeque<K> todo, ArrayDeque<Integer> todoIndices)
+			{
+				this.todo = todo;
+				this.todoIndices = todoIndices;
+			}
+
+			@Override
+			protected void compute()
+			{
+				Explorer explorer = null;
+				try {
+					explorer = idleExplorers.poll();
+					if (explorer == null) {
+						// More tasks than threads can be active, e.g. if the pool adds compensating
+						// threads while another one is blocked, so create an extra explorer
+						synchronized (allExplorers) {
+							explorer = new Explorer(modelGen.createCopy(), encoding.createSuccessorBuffer());
+							allExplorers.add(explorer);
+						}
+					}
+					ModelGenerator gen = explorer.modelGen;
+					SuccessorBuffer buffer = explorer.buffer;
+					List<State> block = new ArrayList<State>(EXPLORE_BLOCK_SIZE);
+					int blockIndices[] = new int[EXPLORE_BLOCK_SIZE];
+					List<ExploredState> batch = new ArrayList<ExploredState>(EXPLORE_BLOCK_SIZE);
+					while (!todo.isEmpty() && !aborted.get()) {
+						// If other workers are running out of work, hand half of ours to them
+						if (todo.size() > 1 && getSurplusQueuedTaskCount() <= 0) {
+							ArrayDeque<K> split = new ArrayDeque<K>();
+							ArrayDeque<Integer> splitIndices = new ArrayDeque<Integer>();
+							for (int k = todo.size() / 2; k > 0; k--) {
+								split.add(todo.removeLast());
+								splitIndices.add(todoIndices.removeLast());
+							}
+							inFlight.incrementAndGet();
+							try {
+								new ExploreTask(split, splitIndices).fork();
+							} catch (Throwable e) {
+								// not started, so it does not count
+								inFlight.decrementAndGet();
+								throw e;
+							}
+						}
+						// Take the next block of states and explore them
+						block.clear();
+						int nb = 0;
+						while (!todo.isEmpty() && nb < EXPLORE_BLOCK_SIZE) {
+							block.add(encoding.decode(todo.removeFirst()));
+							blockIndices[nb++] = todoIndices.removeFirst();
+						}
+						gen.exploreStates(block, buffer);
+						batch.clear();
+						for (int b = 0; b < nb; b++) {
+							int choiceStart = buffer.getChoiceStart(b);
+							int nc = buffer.getChoiceStart(b + 1) - choiceStart;
+							ExploredState exp = justReach ? null : new ExploredState();
+							if (exp != null) {
+								exp.src = blockIndices[b];
+								exp.choiceEnds = new int[nc];
+								exp.targets = new int[buffer.getTransitionStart(choiceStart + nc) - buffer.getTransitionStart(choiceStart)];
+								exp.probs = new double[exp.targets.length];
+								exp.actions = storeActions ? new Object[nc] : null;
+							}
+							int count = 0;
+							for (int i = 0; i < nc; i++) {
+								int c = choiceStart + i;
+								int end = buffer.getTransitionStart(c + 1);
+								for (int t = buffer.getTransitionStart(c); t < end; t++) {
+									K stateNew = encoding.encode(buffer, t);
+									int dest = states.putIfAbsent(stateNew);
+									if (dest < 0) {
+										// New state: add to the list of states to explore
+										dest = -(dest + 1);
+										todo.add(stateNew);
+										todoIndices.add(dest);
+									}
+									if (exp != null) {
+										exp.targets[count] = dest;
+										exp.probs[count] = buffer.getProbability(t);
+									}
+									count++;
+								}
+								if (exp != null) {
+									exp.choiceEnds[i] = count;
+									if (storeActions) {
+										exp.actions[i] = buffer.getAction(buffer.getChoiceActionIndex(c));
+									}
+								}
+							}
+							if (exp != null) {
+								batch.add(exp);
+							}
+							numExplored.incrementAndGet();
+						}
+						if (sink != null) {
+							sink.add(batch);
+						}
+					}
+				} catch (Throwable e) {
+					synchronized (error) {
+						if (error[0] == null) {
+							error[0] = e;
+						}
+					}
+					aborted.set(true);
+				} finally {
+					if (explorer != null) {
+						idleExplorers.add(explorer);
+					}
+					if (inFlight.decrementAndGet() == 0) {
+						finished.countDown();
+					}
+				}
+			}
+		}
+
+		// Add initial state(s) to 'states' (with indices 0, 1, ...) and to the model
+		ArrayDeque<K> init = new ArrayDeque<K>();
+		ArrayDeque<Integer> initIndices = new ArrayDeque<Integer>();
+		for (State initState : modelGen.getInitialStates()) {
+			K initKey = encoding.encode(initState);
+			int index = states.putIfAbsent(initKey);
+			if (index < 0) {
+				init.add(initKey);
+				initIndices.add(-(index + 1));
+				if (builder != null) {
+					builder.addInitialState(-(index + 1));
+				} else if (!justReach) {
+					modelSimple.addState();
+					modelSimple.addInitialState(modelSimple.getNumStates() - 1);
+				}
+			}
+		}
+
+		// Explore...
+		if (!init.isEmpty()) {
+			inFlight.incrementAndGet();
+			pool.execute(new ExploreTask(init, initIndices));
+			try {
+				while (!finished.await(100, TimeUnit.MILLISECONDS)) {
+					progress.updateIfReady(numExplored.get());
+				}
+			} catch (InterruptedException e) {
+				aborted.set(true);
+				throw new PrismException("Interrupted during state space exploration");
+			}
+		}
+		// Rethrow the first failure of a worker (unchecked exceptions other than errors are wrapped)
+		Throwable failure = error[0];
+		if (failure instanceof PrismException) {
+			throw (PrismException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			PrismException e = new PrismException("Error in worker thread: " + failure);
+			e.initCause(failure);
+			throw e;
+		}
+
+		// All transitions have been added to the model (in state order) by now
+		if (!justReach) {
+			int numStates = states.size();
+			if (sink.getNumAdded() != numStates) {
+				throw new PrismException("Internal error: only " + sink.getNumAdded() + " of " + numStates + " states were added to the model");
+			}
+			if (modelSimple != null) {
+				for (int s = modelSimple.getNumStates(); s < numStates; s++) {
+					modelSimple.addState();
+				}
+			}
+		}
+
+		return states;
+	}
+
+	/**
+	 * Add the transitions of a state, as found during multi-threaded exploration, to a model.
+	 */
+	private void addTransitions(ModelType modelType, ModelSimple modelSimple, ExploredState exp) throws PrismException
+	{
+		int nc = exp.choiceEnds.length;
+		int k = 0;
+		for (int i = 0; i < nc; i++) {
+			Distribution distr = modelType.nondeterministic() ? new Distribution() : null;
+			for (; k < exp.choiceEnds[i]; k++) {
+				switch (modelType) {
+				case DTMC:
+				case CTMC:
+					((DTMCSimple) modelSimple).addToProbability(exp.src, exp.targets[k], exp.probs[k]);
+					break;
+				case MDP:
+				case CTMDP:
+					distr.add(exp.targets[k], exp.probs[k]);
+					break;
+				default:
+					throw new PrismNotSupportedException("Model construction not supported for " + modelType + "s");
+				}
+			}
+			if (modelType == ModelType.MDP) {
+				if (distinguishActions) {
+					((MDPSimple) modelSimple).addActionLabelledChoice(exp.src, distr, exp.actions[i]);
+				} else {
+					((MDPSimple) modelSimple).addChoice(exp.src, distr);
+				}
+			} else if (modelType == ModelType.CTMDP) {
+				if (distinguishActions) {
+					((CTMDPSimple) modelSimple).addActionLabelledChoice(exp.src, distr, exp.actions[i]);
+				} else {
+					((CTMDPSimple) modelSimple).addChoice(exp.src, distr);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add the transitions of a state, as found during multi-threaded exploration,
+	 * to a sparse model builder (whose last added state is {@code exp.src}).
+	 */
+	private void addTransitions(ModelType modelType, DirectModelBuilder builder, DistributionPrimitive distr, ExploredState exp) throws PrismException
+	{
+		int nc = exp.choiceEnds.length;
+		int k = 0;
+		distr.clear();
+		for (int i = 0; i < nc; i++) {
+			if (modelType.nondeterministic()) {
+				distr.clear();
+			}
+			for (; k < exp.choiceEnds[i]; k++) {
+				distr.add(exp.targets[k], exp.probs[k]);
+			}
+			if (modelType.nondeterministic()) {
+				builder.addChoice(distr, distinguishActions ? exp.actions[i] : null);
+			}
+		}
+		if (!modelType.nondeterministic()) {
+			builder.setDistribution(distr);
+		}
+	}
+
 	private void attachLabels(ModelGenerator modelGen, ModelExplicit model) throws PrismException
 	{
 		// Get state info
@@ -694,10 +694,18 @@ public class DTMCModelChecker extends ProbModelChecker
 
 		switch (linEqMethod) {
 		case POWER:
-			iterationMethod = new IterationMethodPower(termCritAbsolute, termCritParam);
+			if (numThreads > 1) {
+				iterationMethod = new IterationMethodParallel(termCritAbsolute, termCritParam, false, numThreads);
+			} else {
+				iterationMethod = new IterationMethodPower(termCritAbsolute, termCritParam);
+			}
 			break;
 		case JACOBI:
-			iterationMethod = new IterationMethodJacobi(termCritAbsolute, termCritParam);
+			if (numThreads > 1) {
+				iterationMethod = new IterationMethodParallel(termCritAbsolute, termCritParam, true, numThreads);
+			} else {
+				iterationMethod = new IterationMethodJacobi(termCritAbsolute, termCritParam);
+			}
 			break;
 		case GAUSS_SEIDEL:
 		case BACKWARDS_GAUSS_SEIDEL: {
@@ -1785,10 +1793,18 @@ public class DTMCModelChecker extends ProbModelChecker
 		// Compute rewards
 		switch (linEqMethod) {
 		case POWER:
-			iterationMethod = new IterationMethodPower(termCritAbsolute, termCritParam);
+			if (numThreads > 1) {
+				iterationMethod = new IterationMethodParallel(termCritAbsolute, termCritParam, false, numThreads);
+			} else {
+				iterationMethod = new IterationMethodPower(termCritAbsolute, termCritParam);
+			}
 			break;
 		case JACOBI:
-			iterationMethod = new IterationMethodJacobi(termCritAbsolute, termCritParam);
+			if (numThreads > 1) {
+				iterationMethod = new IterationMethodParallel(termCritAbsolute, termCritParam, true, numThreads);
+			} else {
+				iterationMethod = new IterationMethodJacobi(termCritAbsolute, termCritParam);
+			}
 			break;
 		case GAUSS_SEIDEL:
 		case BACKWARDS_GAUSS_SEIDEL: {
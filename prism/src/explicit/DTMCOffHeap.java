@@ -0,0 +1,391 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+
+package explicit;
+
+import java.io.File;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.PrimitiveIterator.OfInt;
+
+import explicit.rewards.MCRewards;
+import prism.PrismException;
+import prism.PrismNotSupportedException;
+
+/**
+ * Sparse matrix (non-mutable) explicit-state representation of a DTMC, like {@link DTMCSparse},
+ * but with the matrix stored outside the Java heap (see {@link OffHeapArray}) and indexed by
+ * {@code long}s, so that it can have more than 2^31 transitions and does not burden the garbage collector.
+ * Such models can be built directly (see {@link OffHeapModelBuilder}) or copied from another DTMC.
+ * <br>
+ * Since {@link #getNumTransitions()} returns an int, it is capped at {@code Integer.MAX_VALUE};
+ * use {@link #getNumTransitionsLong()} for the exact number.
+ */
+public class DTMCOffHeap extends DTMCExplicit
+{
+	// Sparse matrix storing transition function (Steps)
+	/** Indices into probabilities/columns giving the start of the transitions for each state (longs, size numStates+1) */
+	private OffHeapArray rows;
+	/** Column (destination) indices for each transition (ints, size numTransitions) */
+	private OffHeapArray columns;
+	/** Probabilities for each transition (doubles, size numTransitions) */
+	private OffHeapArray probabilities;
+
+	/**
+	 * Constructor: build from the arrays of a sparse matrix directly (they are stored, not copied).
+	 * Initial states, deadlocks, etc. have to be set separately.
+	 * @param numStates Number of states
+	 * @param rows Start of the transitions of each state (longs, size numStates+1)
+	 * @param columns Target state of each transition (ints)
+	 * @param probabilities Probability of each transition (doubles)
+	 */
+	public DTMCOffHeap(int numStates, OffHeapArray rows, OffHeapArray columns, OffHeapArray probabilities)
+	{
+		initialise(numStates);
+		this.rows = rows;
+		this.columns = columns;
+		this.probabilities = probabilities;
+	}
+
+	/**
+	 * Constructor: copy an arbitrary DTMC (including initial states, deadlocks, labels, etc.).
+	 * Transitions with probability zero are not stored.
+	 * @param dtmc The DTMC to copy
+	 * @param dir Directory for memory-mapped files storing the matrix (null: use direct buffers)
+	 */
+	public DTMCOffHeap(DTMC dtmc, File dir) throws PrismException
+	{
+		initialise(dtmc.getNumStates());
+		for (int state : dtmc.getDeadlockStates()) {
+			deadlocks.add(state);
+		}
+		for (int state : dtmc.getInitialStates()) {
+			initialStates.add(state);
+		}
+		constantValues = dtmc.getConstantValues();
+		varList = dtmc.getVarList();
+		statesList = dtmc.getStatesList();
+		for (String label : dtmc.getLabels()) {
+			labels.put(label, dtmc.getLabelStates(label));
+		}
+
+		// Count (non-zero) transitions
+		rows = OffHeapArray.allocateLongs(numStates + 1L, dir);
+		long numTransitions = 0;
+		for (int state = 0; state < numStates; state++) {
+			rows.setLong(state, numTransitions);
+			for (Iterator<Entry<Integer, Double>> transitions = dtmc.getTransitionsIterator(state); transitions.hasNext();) {
+				if (transitions.next().getValue() > 0)
+					numTransitions++;
+			}
+		}
+		rows.setLong(numStates, numTransitions);
+		// Copy transition function
+		columns = OffHeapArray.allocateInts(numTransitions, dir);
+		probabilities = OffHeapArray.allocateDoubles(numTransitions, dir);
+		long column = 0;
+		for (int state = 0; state < numStates; state++) {
+			for (Iterator<Entry<Integer, Double>> transitions = dtmc.getTransitionsIterator(state); transitions.hasNext();) {
+				final Entry<Integer, Double> transition = transitions.next();
+				final double probability = transition.getValue();
+				if (probability > 0) {
+					columns.setInt(column, transition.getKey());
+					probabilities.setDouble(column, probability);
+					column++;
+				}
+			}
+		}
+	}
+
+	//--- Model ---
+
+	/**
+	 * Get the total number of transitions (capped at {@code Integer.MAX_VALUE}, see {@link #getNumTransitionsLong()}).
+	 */
+	@Override
+	public int getNumTransitions()
+	{
+		return (int) Math.min(getNumTransitionsLong(), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Get the total number of transitions.
+	 */
+	public long getNumTransitionsLong()
+	{
+		return rows.getLong(numStates);
+	}
+
+	@Override
+	public OfInt getSuccessorsIterator(final int state)
+	{
+		return new OfInt()
+		{
+			long i = rows.getLong(state);
+			final long end = rows.getLong(state + 1);
+
+			@Override
+			public boolean hasNext()
+			{
+				return i < end;
+			}
+
+			@Override
+			public int nextInt()
+			{
+				return columns.getInt(i++);
+			}
+		};
+	}
+
+	@Override
+	public SuccessorsIterator getSuccessors(int state)
+	{
+		// We assume here that all the successor states for a given state are distinct
+		return SuccessorsIterator.from(getSuccessorsIterator(state), true);
+	}
+
+	@Override
+	public boolean isSuccessor(final int s1, final int s2)
+	{
+		for (long i = rows.getLong(s1), stop = rows.getLong(s1 + 1); i < stop; i++) {
+			if (columns.getInt(i) == s2) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean allSuccessorsInSet(final int state, final BitSet set)
+	{
+		for (long i = rows.getLong(state), stop = rows.getLong(state + 1); i < stop; i++) {
+			if (!set.get(columns.getInt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean someSuccessorsInSet(final int state, final BitSet set)
+	{
+		for (long i = rows.getLong(state), stop = rows.getLong(state + 1); i < stop; i++) {
+			if (set.get(columns.getInt(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void findDeadlocks(boolean fix) throws PrismException
+	{
+		for (int state = 0; state < numStates; state++) {
+			if (rows.getLong(state) == rows.getLong(state + 1)) {
+				if (fix) {
+					throw new PrismException("Can't fix deadlocks in a DTMCOffHeap since it cannot be modified after construction");
+				}
+				deadlocks.add(state);
+			}
+		}
+	}
+
+	@Override
+	public void checkForDeadlocks(BitSet except) throws PrismException
+	{
+		for (int state = 0; state < numStates; state++) {
+			if (rows.getLong(state) == rows.getLong(state + 1) && (except == null || !except.get(state)))
+				throw new PrismException("DTMC has a deadlock in state " + state);
+		}
+	}
+
+	@Override
+	public String infoString()
+	{
+		return numStates + " states (" + getNumInitialStates() + " initial), " + getNumTransitionsLong() + " transitions";
+	}
+
+	@Override
+	public String infoStringTable()
+	{
+		String s = "";
+		s += "States:      " + numStates + " (" + getNumInitialStates() + " initial)\n";
+		s += "Transitions: " + getNumTransitionsLong() + "\n";
+		return s;
+	}
+
+	//--- ModelExplicit ---
+
+	@Override
+	public void buildFromPrismExplicit(String filename) throws PrismException
+	{
+		throw new PrismNotSupportedException("Building an off-heap DTMC directly from PrismExplicit is not supported");
+	}
+
+	//--- DTMC ---
+
+	@Override
+	public int getNumTransitions(int state)
+	{
+		return (int) (rows.getLong(state + 1) - rows.getLong(state));
+	}
+
+	@Override
+	public Iterator<Entry<Integer, Double>> getTransitionsIterator(final int state)
+	{
+		return new Iterator<Entry<Integer, Double>>()
+		{
+			long col = rows.getLong(state);
+			final long end = rows.getLong(state + 1);
+
+			@Override
+			public boolean hasNext()
+			{
+				return col < end;
+			}
+
+			@Override
+			public Entry<Integer, Double> next()
+			{
+				assert (col < end);
+				final long index = col;
+				col++;
+				return new AbstractMap.SimpleImmutableEntry<>(columns.getInt(index), probabilities.getDouble(index));
+			}
+		};
+	}
+
+	@Override
+	public boolean prob0step(final int s, final BitSet u)
+	{
+		return someSuccessorsInSet(s, u);
+	}
+
+	@Override
+	public boolean prob1step(final int s, final BitSet u, final BitSet v)
+	{
+		boolean hasTransitionToV = false;
+		for (long i = rows.getLong(s), stop = rows.getLong(s + 1); i < stop; i++) {
+			final int successor = columns.getInt(i);
+			if (!u.get(successor)) {
+				// early abort, as overall result is false
+				return false;
+			}
+			hasTransitionToV = hasTransitionToV || v.get(successor);
+		}
+		return hasTransitionToV;
+	}
+
+	@Override
+	public double mvMultSingle(final int state, final double[] vect)
+	{
+		double d = 0.0;
+		for (long i = rows.getLong(state), stop = rows.getLong(state + 1); i < stop; i++) {
+			d += probabilities.getDouble(i) * vect[columns.getInt(i)];
+		}
+		return d;
+	}
+
+	@Override
+	public double mvMultJacSingle(final int state, final double[] vect)
+	{
+		double diag = 1.0;
+		double d = 0.0;
+		for (long i = rows.getLong(state), stop = rows.getLong(state + 1); i < stop; i++) {
+			final int target = columns.getInt(i);
+			final double probability = probabilities.getDouble(i);
+			if (target != state) {
+				d += probability * vect[target];
+			} else {
+				diag -= probability;
+			}
+		}
+		if (diag > 0) {
+			d /= diag;
+		}
+		return d;
+	}
+
+	@Override
+	public double mvMultRewSingle(final int state, final double[] vect, final MCRewards mcRewards)
+	{
+		double d = mcRewards.getStateReward(state);
+		for (long i = rows.getLong(state), stop = rows.getLong(state + 1); i < stop; i++) {
+			d += probabilities.getDouble(i) * vect[columns.getInt(i)];
+		}
+		return d;
+	}
+
+	@Override
+	public void vmMult(final double[] vect, final double[] result)
+	{
+		// Initialise result to 0
+		Arrays.fill(result, 0);
+		// Go through matrix elements (by row)
+		for (int state = 0; state < numStates; state++) {
+			for (long i = rows.getLong(state), stop = rows.getLong(state + 1); i < stop; i++) {
+				result[columns.getInt(i)] += probabilities.getDouble(i) * vect[state];
+			}
+		}
+	}
+
+	//--- Object ---
+
+	@Override
+	public String toString()
+	{
+		StringBuilder s = new StringBuilder("trans: [ ");
+		for (int state = 0; state < numStates; state++) {
+			if (state > 0)
+				s.append(", ");
+			s.append(state).append(": ").append(new Distribution(getTransitionsIterator(state)));
+		}
+		return s.append(" ]").toString();
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (o == null || !(o instanceof DTMCOffHeap))
+			return false;
+		final DTMCOffHeap dtmc = (DTMCOffHeap) o;
+		if (numStates != dtmc.numStates)
+			return false;
+		if (!initialStates.equals(dtmc.initialStates))
+			return false;
+		return rows.contentEquals(dtmc.rows) && columns.contentEquals(dtmc.columns) && probabilities.contentEquals(dtmc.probabilities);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		// Consistent with equals(): equal models have the same numbers of states and transitions
+		return 31 * numStates + Long.hashCode(getNumTransitionsLong());
+	}
+}
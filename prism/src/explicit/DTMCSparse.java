@@ -29,6 +29,7 @@
 
 package explicit;
 
+import java.io.File;
 import java.util.AbstractMap;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -40,8 +41,8 @@ import java.util.function.Function;
 import common.IterableStateSet;
 import common.iterable.MappingIterator;
 import explicit.rewards.MCRewards;
+import parser.ExplicitFilesParser;
 import prism.PrismException;
-import prism.PrismNotSupportedException;
 
 /**
  * Sparse matrix (non-mutable) explicit-state representation of a DTMC.
@@ -59,6 +60,22 @@ public class DTMCSparse extends DTMCExplicit
 	/** Probabilities for each transition (array of size numTransitions) */
 	private double probabilities[];
 
+	/**
+	 * Constructor: build from the arrays of a sparse matrix directly (they are stored, not copied).
+	 * Initial states, deadlocks, etc. have to be set separately.
+	 * @param numStates Number of states
+	 * @param rows Start of the transitions of each state (array of size numStates+1)
+	 * @param columns Target state of each transition
+	 * @param probabilities Probability of each transition
+	 */
+	public DTMCSparse(int numStates, int[] rows, int[] columns, double[] probabilities)
+	{
+		initialise(numStates);
+		this.rows = rows;
+		this.columns = columns;
+		this.probabilities = probabilities;
+	}
+
 	public DTMCSparse(final DTMC dtmc) {
 		initialise(dtmc.getNumStates());
 		for (Integer state : dtmc.getDeadlockStates()) {
@@ -219,7 +236,11 @@ public class DTMCSparse extends DTMCExplicit
 	@Override
 	public void buildFromPrismExplicit(String filename) throws PrismException
 	{
-		throw new PrismNotSupportedException("Building sparse DTMC currently not supported from PrismExplicit");
+		DTMCSparse dtmc = ExplicitFiles2Model.buildDTMCSparse(new ExplicitFilesParser(1).parseTransitions(new File(filename), false), false, 1);
+		initialise(dtmc.getNumStates());
+		rows = dtmc.rows;
+		columns = dtmc.columns;
+		probabilities = dtmc.probabilities;
 	}
 
 
@@ -0,0 +1,446 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+
+package explicit;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.PrimitiveIterator.OfInt;
+
+import explicit.rewards.MCRewards;
+import prism.PrismException;
+import prism.PrismNotSupportedException;
+
+/**
+ * Sparse matrix (non-mutable) explicit-state representation of a DTMC, like {@link DTMCSparse},
+ * but with compressed storage of the probabilities. Since many models have only a few distinct
+ * probabilities, these are stored in a table of distinct values, with a byte (up to 256 values)
+ * or short (up to 65536 values) index into the table for each transition. For models with more
+ * distinct values, single-precision floats are used instead (which is lossy).
+ * <br>
+ * Such a model is created by converting an existing DTMC (e.g. a {@link DTMCSparse}, after
+ * model construction), so this reduces the memory needed for the model from then on (e.g. during
+ * model checking), but not the peak memory usage of model construction itself.
+ */
+public class DTMCSparseCompressed extends DTMCExplicit
+{
+	/**
+	 * How to store probabilities.
+	 */
+	public enum ProbabilityStorage
+	{
+		/** Table of distinct values, with byte/short indices (floats if there are too many values) */
+		TABLE,
+		/** Single-precision floats (lossy) */
+		FLOAT;
+	}
+
+	// Sparse matrix storing transition function (Steps)
+	/** Indices into columns/probabilities giving the start of the transitions for each state (distribution);
+	 * array is of size numStates+1 and last entry is always equal to getNumTransitions() */
+	private int rows[];
+	/** Column (destination) indices for each transition (array of size numTransitions) */
+	private int columns[];
+
+	// Probabilities (exactly one of byteIndices, shortIndices and floats is non-null)
+	/** Table of distinct probabilities (if indices are used) */
+	private double values[];
+	/** Index into values of the probability of each transition (if at most 256 distinct values) */
+	private byte byteIndices[];
+	/** Index into values of the probability of each transition (if at most 65536 distinct values) */
+	private short shortIndices[];
+	/** Probability of each transition (single-precision) */
+	private float floats[];
+
+	/**
+	 * Constructor: copy an arbitrary DTMC (including initial states, deadlocks, labels, etc.),
+	 * compressing the storage of the probabilities. Transitions with probability zero are not stored.
+	 * @param dtmc The DTMC to copy
+	 * @param storage How to store the probabilities
+	 */
+	public DTMCSparseCompressed(final DTMC dtmc, ProbabilityStorage storage)
+	{
+		initialise(dtmc.getNumStates());
+		for (Integer state : dtmc.getDeadlockStates()) {
+			deadlocks.add(state);
+		}
+		for (Integer state : dtmc.getInitialStates()) {
+			initialStates.add(state);
+		}
+		constantValues = dtmc.getConstantValues();
+		varList = dtmc.getVarList();
+		statesList = dtmc.getStatesList();
+		for (String label : dtmc.getLabels()) {
+			labels.put(label, dtmc.getLabelStates(label));
+		}
+
+		// Copy transition function (probabilities temporarily as doubles)
+		int numTransitions = 0;
+		for (int state = 0; state < numStates; state++) {
+			numTransitions += dtmc.getNumTransitions(state);
+		}
+		rows = new int[numStates + 1];
+		columns = new int[numTransitions];
+		double probabilities[] = new double[numTransitions];
+		int column = 0;
+		for (int state = 0; state < numStates; state++) {
+			rows[state] = column;
+			for (Iterator<Entry<Integer, Double>> transitions = dtmc.getTransitionsIterator(state); transitions.hasNext();) {
+				final Entry<Integer, Double> transition = transitions.next();
+				final double probability = transition.getValue();
+				if (probability > 0) {
+					columns[column] = transition.getKey();
+					probabilities[column] = probability;
+					column++;
+				}
+			}
+		}
+		rows[numStates] = column;
+		if (column < numTransitions) {
+			columns = Arrays.copyOf(columns, column);
+			probabilities = Arrays.copyOf(probabilities, column);
+		}
+		storeProbabilities(probabilities, storage);
+	}
+
+	/**
+	 * Store the probabilities in compressed form.
+	 */
+	private void storeProbabilities(double probabilities[], ProbabilityStorage storage)
+	{
+		if (storage == ProbabilityStorage.TABLE) {
+			// Build table of distinct values (giving up if there are too many)
+			HashMap<Double, Integer> valueIndices = new HashMap<Double, Integer>();
+			int indices[] = new int[probabilities.length];
+			for (int i = 0; i < probabilities.length; i++) {
+				Integer index = valueIndices.get(probabilities[i]);
+				if (index == null) {
+					if (valueIndices.size() == 1 << 16) {
+						indices = null;
+						break;
+					}
+					index = valueIndices.size();
+					valueIndices.put(probabilities[i], index);
+				}
+				indices[i] = index;
+			}
+			if (indices != null) {
+				values = new double[valueIndices.size()];
+				for (Entry<Double, Integer> e : valueIndices.entrySet()) {
+					values[e.getValue()] = e.getKey();
+				}
+				if (values.length <= 1 << 8) {
+					byteIndices = new byte[indices.length];
+					for (int i = 0; i < indices.length; i++) {
+						byteIndices[i] = (byte) indices[i];
+					}
+				} else {
+					shortIndices = new short[indices.length];
+					for (int i = 0; i < indices.length; i++) {
+						shortIndices[i] = (short) indices[i];
+					}
+				}
+				return;
+			}
+		}
+		// Fall back to floats
+		values = null;
+		floats = new float[probabilities.length];
+		for (int i = 0; i < probabilities.length; i++) {
+			floats[i] = (float) probabilities[i];
+		}
+	}
+
+	/**
+	 * Get the probability of the {@code i}th transition.
+	 */
+	private double getProbability(int i)
+	{
+		if (byteIndices != null)
+			return values[byteIndices[i] & 0xff];
+		if (shortIndices != null)
+			return values[shortIndices[i] & 0xffff];
+		return floats[i];
+	}
+
+	/**
+	 * Get a description of how the probabilities are stored.
+	 */
+	public String getProbabilityStorageInfo()
+	{
+		if (byteIndices != null)
+			return "table of " + values.length + " distinct values, byte indices";
+		if (shortIndices != null)
+			return "table of " + values.length + " distinct values, short indices";
+		return "single-precision floats";
+	}
+
+	//--- Model ---
+
+	@Override
+	public int getNumTransitions()
+	{
+		return rows[numStates];
+	}
+
+	@Override
+	public OfInt getSuccessorsIterator(final int state)
+	{
+		return Arrays.stream(columns, rows[state], rows[state + 1]).iterator();
+	}
+
+	@Override
+	public SuccessorsIterator getSuccessors(int state)
+	{
+		// We assume here that all the successor states for a given state are distinct
+		return SuccessorsIterator.from(getSuccessorsIterator(state), true);
+	}
+
+	@Override
+	public boolean isSuccessor(final int s1, final int s2)
+	{
+		for (int i = rows[s1], stop = rows[s1 + 1]; i < stop; i++) {
+			if (columns[i] == s2) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean allSuccessorsInSet(final int state, final BitSet set)
+	{
+		for (int i = rows[state], stop = rows[state + 1]; i < stop; i++) {
+			if (!set.get(columns[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean someSuccessorsInSet(final int state, final BitSet set)
+	{
+		for (int i = rows[state], stop = rows[state + 1]; i < stop; i++) {
+			if (set.get(columns[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void findDeadlocks(boolean fix) throws PrismException
+	{
+		for (int state = 0; state < numStates; state++) {
+			if (rows[state] == rows[state + 1]) {
+				if (fix) {
+					throw new PrismException("Can't fix deadlocks in a DTMCSparseCompressed since it cannot be modified after construction");
+				}
+				deadlocks.add(state);
+			}
+		}
+	}
+
+	@Override
+	public void checkForDeadlocks(BitSet except) throws PrismException
+	{
+		for (int state = 0; state < numStates; state++) {
+			if (rows[state] == rows[state + 1] && (except == null || !except.get(state)))
+				throw new PrismException("DTMC has a deadlock in state " + state);
+		}
+	}
+
+	//--- ModelExplicit ---
+
+	@Override
+	public void buildFromPrismExplicit(String filename) throws PrismException
+	{
+		throw new PrismNotSupportedException("Building a compressed sparse DTMC directly from PrismExplicit is not supported");
+	}
+
+	//--- DTMC ---
+
+	@Override
+	public int getNumTransitions(int state)
+	{
+		return rows[state + 1] - rows[state];
+	}
+
+	@Override
+	public Iterator<Entry<Integer, Double>> getTransitionsIterator(final int state)
+	{
+		return new Iterator<Entry<Integer, Double>>()
+		{
+			int col = rows[state];
+			final int end = rows[state + 1];
+
+			@Override
+			public boolean hasNext()
+			{
+				return col < end;
+			}
+
+			@Override
+			public Entry<Integer, Double> next()
+			{
+				assert (col < end);
+				final int index = col;
+				col++;
+				return new AbstractMap.SimpleImmutableEntry<>(columns[index], getProbability(index));
+			}
+		};
+	}
+
+	@Override
+	public boolean prob0step(final int s, final BitSet u)
+	{
+		return someSuccessorsInSet(s, u);
+	}
+
+	@Override
+	public boolean prob1step(final int s, final BitSet u, final BitSet v)
+	{
+		boolean hasTransitionToV = false;
+		for (int i = rows[s], stop = rows[s + 1]; i < stop; i++) {
+			final int successor = columns[i];
+			if (!u.get(successor)) {
+				// early abort, as overall result is false
+				return false;
+			}
+			hasTransitionToV = hasTransitionToV || v.get(successor);
+		}
+		return hasTransitionToV;
+	}
+
+	@Override
+	public double mvMultSingle(final int state, final double[] vect)
+	{
+		// (separate loops for each storage type, to keep them tight)
+		double d = 0.0;
+		final int start = rows[state], stop = rows[state + 1];
+		if (byteIndices != null) {
+			for (int i = start; i < stop; i++) {
+				d += values[byteIndices[i] & 0xff] * vect[columns[i]];
+			}
+		} else if (shortIndices != null) {
+			for (int i = start; i < stop; i++) {
+				d += values[shortIndices[i] & 0xffff] * vect[columns[i]];
+			}
+		} else {
+			for (int i = start; i < stop; i++) {
+				d += floats[i] * vect[columns[i]];
+			}
+		}
+		return d;
+	}
+
+	@Override
+	public double mvMultJacSingle(final int state, final double[] vect)
+	{
+		double diag = 1.0;
+		double d = 0.0;
+		for (int i = rows[state], stop = rows[state + 1]; i < stop; i++) {
+			final int target = columns[i];
+			final double probability = getProbability(i);
+			if (target != state) {
+				d += probability * vect[target];
+			} else {
+				diag -= probability;
+			}
+		}
+		if (diag > 0) {
+			d /= diag;
+		}
+		return d;
+	}
+
+	@Override
+	public double mvMultRewSingle(final int state, final double[] vect, final MCRewards mcRewards)
+	{
+		double d = mcRewards.getStateReward(state);
+		for (int i = rows[state], stop = rows[state + 1]; i < stop; i++) {
+			d += getProbability(i) * vect[columns[i]];
+		}
+		return d;
+	}
+
+	@Override
+	public void vmMult(final double[] vect, final double[] result)
+	{
+		// Initialise result to 0
+		Arrays.fill(result, 0);
+		// Go through matrix elements (by row)
+		for (int state = 0; state < numStates; state++) {
+			for (int i = rows[state], stop = rows[state + 1]; i < stop; i++) {
+				result[columns[i]] += getProbability(i) * vect[state];
+			}
+		}
+	}
+
+	//--- Object ---
+
+	@Override
+	public String toString()
+	{
+		StringBuilder s = new StringBuilder("trans: [ ");
+		for (int state = 0; state < numStates; state++) {
+			if (state > 0)
+				s.append(", ");
+			s.append(state).append(": ").append(new Distribution(getTransitionsIterator(state)));
+		}
+		return s.append(" ]").toString();
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (o == null || !(o instanceof DTMCSparseCompressed))
+			return false;
+		final DTMCSparseCompressed dtmc = (DTMCSparseCompressed) o;
+		if (numStates != dtmc.numStates)
+			return false;
+		if (!initialStates.equals(dtmc.initialStates))
+			return false;
+		if (!Utils.intArraysAreEqual(rows, dtmc.rows) || !Utils.intArraysAreEqual(columns, dtmc.columns))
+			return false;
+		for (int i = 0; i < columns.length; i++) {
+			if (getProbability(i) != dtmc.getProbability(i))
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		// Consistent with equals(): equal models have the same numbers of states and transitions
+		return 31 * numStates + columns.length;
+	}
+}
@@ -0,0 +1,92 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package explicit;
+
+import parser.VarList;
+import prism.PrismException;
+
+/**
+ * Interface for append-only builders of (non-mutable) DTMCs and MDPs, used to
+ * construct a model directly, without an intermediate {@link DTMCSimple}/{@link MDPSimple} model.
+ * <br>
+ * States have to be added in order (their indices are 0, 1, 2, ...), each followed by its outgoing
+ * transitions: a single distribution for DTMCs ({@link #setDistribution(DistributionPrimitive)})
+ * or a list of choices for MDPs ({@link #addChoice(DistributionPrimitive, Object)}).
+ * The final model is created by {@link #buildDTMC(int[], VarList)} or {@link #buildMDP(int[], VarList)},
+ * optionally applying a permutation of the state indices.
+ */
+public interface DirectModelBuilder
+{
+	/**
+	 * Get the number of states added so far.
+	 */
+	public int getNumStates();
+
+	/**
+	 * Add a new state (whose index is the number of states added so far);
+	 * subsequently added transitions belong to this state.
+	 * Returns the index of the new state.
+	 */
+	public int addState() throws PrismException;
+
+	/**
+	 * Mark state {@code s} as an initial state.
+	 */
+	public void addInitialState(int s);
+
+	/**
+	 * Set the (outgoing) distribution of the last added state (DTMCs only).
+	 * Transitions with zero probability are ignored.
+	 */
+	public void setDistribution(DistributionPrimitive distr) throws PrismException;
+
+	/**
+	 * Add a choice, labelled with {@code action} (which may be null), to the last added state (MDPs only).
+	 * As for {@link MDPSimple}, the choice is only added if the state does not already have
+	 * an identical choice (same action and distribution).
+	 * Returns the index of the (existing or newly added) choice within the state.
+	 */
+	public int addChoice(DistributionPrimitive distr, Object action) throws PrismException;
+
+	/**
+	 * Find the deadlock states, i.e. those without any transitions (DTMCs) or choices (MDPs).
+	 * If {@code fix} is true, self-loops are added to these states in the built model.
+	 */
+	public void findDeadlocks(boolean fix) throws PrismException;
+
+	/**
+	 * Build a DTMC from the transitions added so far.
+	 * @param permut State index permutation (old index i becomes permut[i]), may be null
+	 * @param varList Variable info for the model (may be null)
+	 */
+	public ModelExplicit buildDTMC(int[] permut, VarList varList) throws PrismException;
+
+	/**
+	 * Build an MDP from the transitions added so far.
+	 * @param permut State index permutation (old index i becomes permut[i]), may be null
+	 * @param varList Variable info for the model (may be null)
+	 */
+	public ModelExplicit buildMDP(int[] permut, VarList varList) throws PrismException;
+}
@@ -0,0 +1,225 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+
+package explicit;
+
+import java.util.Arrays;
+
+/**
+ * Explicit representation of a probability distribution, stored in parallel primitive
+ * arrays of (target) indices and probabilities, in the order in which they were first added.
+ * Adding to an existing index accumulates its probability; existing indices are located via
+ * a small open-addressing hash table. Intended to be reused (see {@link #clear()}), e.g., for
+ * collecting the transitions of a choice during model construction, without boxing.
+ */
+public class DistributionPrimitive
+{
+	/** Target indices */
+	private int[] indices;
+	/** Probabilities */
+	private double[] probs;
+	/** Number of entries */
+	private int size;
+	/** Hash table: for each slot, (position in indices/probs) + 1, or 0 if empty */
+	private int[] table;
+
+	/**
+	 * Create an empty distribution.
+	 */
+	public DistributionPrimitive()
+	{
+		indices = new int[8];
+		probs = new double[8];
+		table = new int[16];
+		size = 0;
+	}
+
+	/**
+	 * Clear all entries of the distribution.
+	 */
+	public void clear()
+	{
+		// Shrink the hash table again if it is much larger than needed
+		if (table.length > 64 && table.length > 4 * size) {
+			table = new int[16];
+		} else {
+			Arrays.fill(table, 0);
+		}
+		size = 0;
+	}
+
+	/**
+	 * Add 'prob' to the probability for index 'j'.
+	 * Return boolean indicating whether or not there was already
+	 * an entry for this index (i.e. false denotes new transition).
+	 */
+	public boolean add(int j, double prob)
+	{
+		int mask = table.length - 1;
+		int slot = hash(j) & mask;
+		int pos;
+		while ((pos = table[slot]) != 0) {
+			if (indices[pos - 1] == j) {
+				probs[pos - 1] += prob;
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (size == indices.length) {
+			indices = Arrays.copyOf(indices, size * 2);
+			probs = Arrays.copyOf(probs, size * 2);
+		}
+		indices[size] = j;
+		probs[size] = prob;
+		size++;
+		table[slot] = size;
+		// Keep load factor at most 1/2
+		if (2 * size > table.length) {
+			rehash(table.length * 2);
+		}
+		return false;
+	}
+
+	/** Rebuild the hash table with a new capacity (a power of two) */
+	private void rehash(int capacity)
+	{
+		table = new int[capacity];
+		int mask = capacity - 1;
+		for (int k = 0; k < size; k++) {
+			int slot = hash(indices[k]) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = k + 1;
+		}
+	}
+
+	/** Hash function for indices */
+	private static int hash(int j)
+	{
+		int h = j * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Get the probability for index j.
+	 */
+	public double get(int j)
+	{
+		int mask = table.length - 1;
+		int slot = hash(j) & mask;
+		int pos;
+		while ((pos = table[slot]) != 0) {
+			if (indices[pos - 1] == j)
+				return probs[pos - 1];
+			slot = (slot + 1) & mask;
+		}
+		return 0.0;
+	}
+
+	/**
+	 * Returns true if index j is in the support of the distribution.
+	 */
+	public boolean contains(int j)
+	{
+		int mask = table.length - 1;
+		int slot = hash(j) & mask;
+		int pos;
+		while ((pos = table[slot]) != 0) {
+			if (indices[pos - 1] == j)
+				return true;
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Get the number of entries in the distribution.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns true if the distribution is empty.
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Get the index of the {@code k}th entry (in order of addition).
+	 */
+	public int getIndex(int k)
+	{
+		return indices[k];
+	}
+
+	/**
+	 * Get the probability of the {@code k}th entry (in order of addition).
+	 */
+	public double getProbability(int k)
+	{
+		return probs[k];
+	}
+
+	/**
+	 * Get the sum of the probabilities in the distribution.
+	 */
+	public double sum()
+	{
+		double d = 0.0;
+		for (int k = 0; k < size; k++) {
+			d += probs[k];
+		}
+		return d;
+	}
+
+	/**
+	 * Convert to a (map-based) {@link Distribution}.
+	 */
+	public Distribution toDistribution()
+	{
+		Distribution distr = new Distribution();
+		for (int k = 0; k < size; k++) {
+			distr.add(indices[k], probs[k]);
+		}
+		return distr;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder s = new StringBuilder("{");
+		for (int k = 0; k < size; k++) {
+			if (k > 0)
+				s.append(", ");
+			s.append(indices[k]).append("=").append(probs[k]);
+		}
+		return s.append("}").toString();
+	}
+}
@@ -24,20 +24,21 @@
 //	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 //	
 //==============================================================================
-
 package explicit;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import common.IterableStateSet;
+import common.WorkerPool;
+import parser.ExplicitFilesParser;
+import parser.ExplicitFilesParser.Transitions;
+import parser.ExplicitFilesParser.TransitionsChunk;
 import parser.State;
 import parser.ast.ModulesFile;
 import prism.PrismComponent;
@@ -47,11 +48,17 @@ import prism.PrismSettings;
 
 /**
  * Class to convert explicit-state file storage of a model to a model of the explicit engine.
+ * <br>
+ * Files are parsed with {@link ExplicitFilesParser} (in parallel, if more than one thread
+ * is to be used) and DTMCs/MDPs are assembled directly into sparse storage
+ * ({@link DTMCSparse} / {@link MDPSparse}).
  */
 public class ExplicitFiles2Model extends PrismComponent
 {
 	// Should deadlocks be fixed (by adding a self-loop) when detected?
 	private boolean fixdl;
+	// Number of threads to use for parsing/assembly
+	private int numThreads = 1;
 	
 	/** Constructor */
 	public ExplicitFiles2Model(PrismComponent parent)
@@ -59,6 +66,7 @@ public class ExplicitFiles2Model extends PrismComponent
 		super(parent);
 		if (settings != null) {
 			setFixDeadlocks(settings.getBoolean(PrismSettings.PRISM_FIX_DEADLOCKS));
+			setNumThreads(settings.getInteger(PrismSettings.PRISM_NUM_THREADS));
 		}
 	}
 
@@ -77,6 +85,15 @@ public class ExplicitFiles2Model extends PrismComponent
 	{
 		this.fixdl = fixdl;
 	}
+
+	/**
+	 * Set the number of threads used for parsing the files and assembling the model
+	 * (the resulting model is the same either way).
+	 */
+	public void setNumThreads(int numThreads)
+	{
+		this.numThreads = numThreads;
+	}
 	
 	/**
 	 * Build a Model corresponding to the passed in states/transitions/labels files.
@@ -92,22 +109,18 @@ public class ExplicitFiles2Model extends PrismComponent
 	 */
 	public Model build(File statesFile, File transFile, File labelsFile, ModulesFile modulesFile, int numStates) throws PrismException
 	{
+		ExplicitFilesParser parser = new ExplicitFilesParser(numThreads);
 		ModelExplicit model = null;
+		// deadlocks are detected (and fixed, if required) during assembly
 		switch (modulesFile.getModelType()) {
 		case DTMC:
-			DTMCSimple dtmc = new DTMCSimple();
-			dtmc.buildFromPrismExplicit(transFile.getAbsolutePath());
-			model = dtmc;
+			model = buildDTMCSparse(parser.parseTransitions(transFile, false), fixdl, numThreads);
 			break;
 		case CTMC:
-			CTMCSimple ctmc = new CTMCSimple();
-			ctmc.buildFromPrismExplicit(transFile.getAbsolutePath());
-			model = ctmc;
+			model = buildCTMCSimple(parser.parseTransitions(transFile, false), fixdl);
 			break;
 		case MDP:
-			MDPSimple mdp = new MDPSimple();
-			mdp.buildFromPrismExplicit(transFile.getAbsolutePath());
-			model = mdp;
+			model = buildMDPSparse(parser.parseTransitions(transFile, true), fixdl, numThreads);
 			break;
 		case CTMDP:
 		case LTS:
@@ -126,7 +139,7 @@ public class ExplicitFiles2Model extends PrismComponent
 
 		if (labelsFile != null) {
 			// load labels
-			loadLabels(model, labelsFile);
+			loadLabels(model, labelsFile, parser);
 		} else {
 			// no init label, we choose the first state
 			model.addInitialState(0);
@@ -136,10 +149,8 @@ public class ExplicitFiles2Model extends PrismComponent
 			throw new PrismException("Imported model has no initial states");
 		}
 
-		model.findDeadlocks(fixdl);
-		
 		if (statesFile != null) {
-			loadStates(model, statesFile, modulesFile);
+			model.setStatesList(parser.parseStates(statesFile, model.getNumStates(), modulesFile.createVarList()));
 		} else {
 			// in absence of a statesFile, there is a single variable x
 			// in the model, with value corresponding to the state index
@@ -160,9 +171,9 @@ public class ExplicitFiles2Model extends PrismComponent
 	 * The "init" label states become the initial states of the model.
 	 * The "deadlock" label is ignored - this info is recomputed.
 	 */
-	private void loadLabels(ModelExplicit model, File labelsFile) throws PrismException
+	private void loadLabels(ModelExplicit model, File labelsFile, ExplicitFilesParser parser) throws PrismException
 	{
-		Map<String, BitSet> labels = StateModelChecker.loadLabelsFile(labelsFile.getAbsolutePath());
+		Map<String, BitSet> labels = parser.parseLabels(labelsFile);
 
 		for (Entry<String, BitSet> e : labels.entrySet()) {
 			if (e.getKey().equals("init")) {
@@ -177,64 +188,282 @@ public class ExplicitFiles2Model extends PrismComponent
 		}
 	}
 
-	/** Load the state information, construct the statesList and attach to model */
-	private void loadStates(ModelExplicit model, File statesFile, ModulesFile mf) throws PrismException
+	// Assembly of models from parsed transitions
+
+	/**
+	 * Assemble a DTMCSparse from the transitions of a .tra file.
+	 * As for {@link DTMCSimple#buildFromPrismExplicit(String)}, a later line for the same
+	 * source/target pair overwrites an earlier one, and zero probabilities are dropped.
+	 * States without transitions are marked as deadlocks (and get a self-loop if {@code fix} is true).
+	 */
+	static DTMCSparse buildDTMCSparse(Transitions trans, boolean fix, int numThreads) throws PrismException
 	{
-		int numStates = model.getNumStates();
-		List<State> statesList = new ArrayList<State>(numStates);
-		for (int i = 0; i < numStates; i++) {
-			statesList.add(null);
-		}
-
-		String s, ss[];
-		int i, j, lineNum = 0;
-
-		int numVars = mf.getNumVars();
-
-		// open file for reading, automatic close when done
-		try (BufferedReader in = new BufferedReader(new FileReader(statesFile))) {
-			// skip first line
-			in.readLine();
-			lineNum = 1;
-			// read remaining lines
-			s = in.readLine();
-			lineNum++;
-			while (s != null) {
-				// skip blank lines
-				s = s.trim();
-				if (s.length() > 0) {
-					// split into two parts
-					ss = s.split(":");
-					// determine which state this line describes
-					i = Integer.parseInt(ss[0]);
-					// now split up middle bit and extract var info
-					ss = ss[1].substring(ss[1].indexOf('(') + 1, ss[1].indexOf(')')).split(",");
-
-					State state = new State(numVars);
-					if (ss.length != numVars)
-						throw new PrismException("(wrong number of variable values) ");
-					for (j = 0; j < numVars; j++) {
-						if (ss[j].equals("true")) {
-							state.setValue(j, true);
-						} else if (ss[j].equals("false")) {
-							state.setValue(j, false);
-						} else {
-							state.setValue(j, Integer.parseInt(ss[j]));
-						}
+		int n = trans.numStates;
+		int total = checkNumTransitions(trans);
+		// Distribute transitions into rows (counting sort by source, keeping file order)
+		int rows[] = new int[n + 1];
+		for (TransitionsChunk chunk : trans.chunks) {
+			for (int i = 0; i < chunk.size; i++) {
+				rows[chunk.sources[i] + 1]++;
+			}
+		}
+		for (int s = 0; s < n; s++) {
+			rows[s + 1] += rows[s];
+		}
+		int next[] = Arrays.copyOf(rows, n);
+		int columns[] = new int[total];
+		double probabilities[] = new double[total];
+		for (TransitionsChunk chunk : trans.chunks) {
+			for (int i = 0; i < chunk.size; i++) {
+				int k = next[chunk.sources[i]]++;
+				columns[k] = chunk.targets[i];
+				probabilities[k] = chunk.probs[i];
+			}
+		}
+		next = null;
+		// Sort each row by column, removing overwritten entries and zeros
+		int sizes[] = new int[n];
+		int bounds[] = WorkerPool.splitRange(n, 4 * numThreads);
+		WorkerPool.run(numThreads, bounds.length - 1, c -> {
+			for (int s = bounds[c]; s < bounds[c + 1]; s++) {
+				sortByColumn(columns, probabilities, rows[s], rows[s + 1]);
+				// entries for the same column are in file order, so keep the last one
+				int m = rows[s];
+				for (int k = rows[s]; k < rows[s + 1]; k++) {
+					if (k + 1 < rows[s + 1] && columns[k + 1] == columns[k])
+						continue;
+					if (probabilities[k] == 0.0)
+						continue;
+					columns[m] = columns[k];
+					probabilities[m++] = probabilities[k];
+				}
+				sizes[s] = m - rows[s];
+			}
+		});
+		// Compact (if needed), adding self-loops to deadlocks if required
+		BitSet deadlocks = new BitSet();
+		boolean compact = false;
+		for (int s = 0; s < n; s++) {
+			if (sizes[s] == 0)
+				deadlocks.set(s);
+			if (sizes[s] != rows[s + 1] - rows[s])
+				compact = true;
+		}
+		DTMCSparse dtmc;
+		if (!compact && (!fix || deadlocks.isEmpty())) {
+			dtmc = new DTMCSparse(n, rows, columns, probabilities);
+		} else {
+			int newRows[] = new int[n + 1];
+			for (int s = 0; s < n; s++) {
+				newRows[s + 1] = newRows[s] + ((fix && sizes[s] == 0) ? 1 : sizes[s]);
+			}
+			int newColumns[] = new int[newRows[n]];
+			double newProbabilities[] = new double[newRows[n]];
+			for (int s = 0; s < n; s++) {
+				if (sizes[s] == 0 && fix) {
+					newColumns[newRows[s]] = s;
+					newProbabilities[newRows[s]] = 1.0;
+				} else {
+					System.arraycopy(columns, rows[s], newColumns, newRows[s], sizes[s]);
+					System.arraycopy(probabilities, rows[s], newProbabilities, newRows[s], sizes[s]);
+				}
+			}
+			dtmc = new DTMCSparse(n, newRows, newColumns, newProbabilities);
+		}
+		for (int s = deadlocks.nextSetBit(0); s >= 0; s = deadlocks.nextSetBit(s + 1)) {
+			dtmc.addDeadlockState(s);
+		}
+		return dtmc;
+	}
+
+	/**
+	 * Assemble an MDPSparse from the transitions of a .tra file.
+	 * The same checks as in {@link MDPSimple#buildFromPrismExplicit(String)} are performed
+	 * (no duplicate transitions, consistent action labels, no gaps in the choice indices
+	 * and choice/transition counts matching the first line of the file).
+	 * States without choices are marked as deadlocks (and get a self-loop if {@code fix} is true).
+	 */
+	static MDPSparse buildMDPSparse(Transitions trans, boolean fix, int numThreads) throws PrismException
+	{
+		int n = trans.numStates;
+		int total = checkNumTransitions(trans);
+		// Number of choices of each state (choice indices are 0, ..., max)
+		int numChoices[] = new int[n];
+		for (TransitionsChunk chunk : trans.chunks) {
+			for (int i = 0; i < chunk.size; i++) {
+				int s = chunk.sources[i];
+				if (chunk.choices[i] >= numChoices[s]) {
+					if (chunk.choices[i] == Integer.MAX_VALUE)
+						throw new PrismException("Problem in .tra file: illegal choice index " + chunk.choices[i]);
+					numChoices[s] = chunk.choices[i] + 1;
+				}
+			}
+		}
+		long numDistrsInFile = 0;
+		int numDeadlocks = 0;
+		for (int s = 0; s < n; s++) {
+			numDistrsInFile += numChoices[s];
+			if (numChoices[s] == 0)
+				numDeadlocks++;
+		}
+		long numDistrsLong = numDistrsInFile + (fix ? numDeadlocks : 0);
+		if (numDistrsLong + 1 > Integer.MAX_VALUE)
+			throw new PrismNotSupportedException("Too many choices in .tra file (" + numDistrsLong + ")");
+		int numDistrs = (int) numDistrsLong;
+		int rowStarts[] = new int[n + 1];
+		for (int s = 0; s < n; s++) {
+			rowStarts[s + 1] = rowStarts[s] + ((fix && numChoices[s] == 0) ? 1 : numChoices[s]);
+		}
+		// Distribute transitions into choices (counting sort, keeping file order), plus actions
+		boolean hasActions = false;
+		for (TransitionsChunk chunk : trans.chunks) {
+			hasActions |= chunk.actions != null;
+		}
+		Object actions[] = hasActions ? new Object[numDistrs] : null;
+		int choiceStarts[] = new int[numDistrs + 1];
+		for (TransitionsChunk chunk : trans.chunks) {
+			for (int i = 0; i < chunk.size; i++) {
+				choiceStarts[rowStarts[chunk.sources[i]] + chunk.choices[i] + 1]++;
+			}
+		}
+		if (fix) {
+			for (int s = 0; s < n; s++) {
+				if (numChoices[s] == 0)
+					choiceStarts[rowStarts[s] + 1] = 1;
+			}
+		}
+		for (int c = 0; c < numDistrs; c++) {
+			choiceStarts[c + 1] += choiceStarts[c];
+		}
+		int next[] = Arrays.copyOf(choiceStarts, numDistrs);
+		int cols[] = new int[choiceStarts[numDistrs]];
+		double nonZeros[] = new double[choiceStarts[numDistrs]];
+		for (TransitionsChunk chunk : trans.chunks) {
+			for (int i = 0; i < chunk.size; i++) {
+				int c = rowStarts[chunk.sources[i]] + chunk.choices[i];
+				int k = next[c]++;
+				cols[k] = chunk.targets[i];
+				nonZeros[k] = chunk.probs[i];
+				if (chunk.actions != null && chunk.actions[i] != null) {
+					Object oldAction = actions[c];
+					if (oldAction != null && !chunk.actions[i].equals(oldAction)) {
+						throw new PrismException("Problem in .tra file: inconsistent action label for " + chunk.sources[i] + ", " + chunk.choices[i] + ": "
+								+ oldAction + " and " + chunk.actions[i]);
+					}
+					actions[c] = chunk.actions[i];
+				}
+			}
+		}
+		next = null;
+		for (int s = 0; s < n; s++) {
+			if (fix && numChoices[s] == 0) {
+				cols[choiceStarts[rowStarts[s]]] = s;
+				nonZeros[choiceStarts[rowStarts[s]]] = 1.0;
+			}
+		}
+		// Sort each choice by column, checking for duplicates
+		int bounds[] = WorkerPool.splitRange(n, 4 * numThreads);
+		WorkerPool.run(numThreads, bounds.length - 1, b -> {
+			for (int s = bounds[b]; s < bounds[b + 1]; s++) {
+				for (int c = rowStarts[s]; c < rowStarts[s + 1]; c++) {
+					sortByColumn(cols, nonZeros, choiceStarts[c], choiceStarts[c + 1]);
+					for (int k = choiceStarts[c] + 1; k < choiceStarts[c + 1]; k++) {
+						if (cols[k] == cols[k - 1])
+							throw new PrismException("Problem in .tra file: redefinition of probability for " + s + " " + (c - rowStarts[s]) + " " + cols[k]);
 					}
-					if (statesList.get(i) != null)
-						throw new PrismException("(duplicated state) ");
-					statesList.set(i, state);
 				}
-				// read next line
-				s = in.readLine();
-				lineNum++;
-			}
-			model.setStatesList(statesList);
-		} catch (IOException e) {
-			throw new PrismException("File I/O error reading from \"" + statesFile + "\"");
-		} catch (PrismException e) {
-			throw new PrismException("Error detected " + e.getMessage() + "at line " + lineNum + " of states file \"" + statesFile + "\"");
+			}
+		});
+		// Check integrity
+		if (trans.numChoices >= 0 && numDistrsInFile != trans.numChoices) {
+			throw new PrismException("Problem in .tra file: unexpected number of choices: " + numDistrsInFile);
+		}
+		if (trans.numTransitions >= 0 && total != trans.numTransitions) {
+			throw new PrismException("Problem in .tra file: unexpected number of transitions: " + total);
+		}
+		int emptyDistributions = 0;
+		for (int c = 0; c < numDistrs; c++) {
+			if (choiceStarts[c] == choiceStarts[c + 1])
+				emptyDistributions++;
+		}
+		if (emptyDistributions > 0) {
+			throw new PrismException("Problem in .tra file: there are " + emptyDistributions + " empty distribution, are there gaps in the choice indices?");
+		}
+		MDPSparse mdp = new MDPSparse(n, rowStarts, choiceStarts, cols, nonZeros, actions);
+		for (int s = 0; s < n; s++) {
+			if (numChoices[s] == 0)
+				mdp.addDeadlockState(s);
+		}
+		return mdp;
+	}
+
+	/**
+	 * Assemble a CTMCSimple from the transitions of a .tra file
+	 * (with the same semantics as {@link CTMCSimple#buildFromPrismExplicit(String)}).
+	 * States without transitions are marked as deadlocks (and get a self-loop if {@code fix} is true).
+	 */
+	static CTMCSimple buildCTMCSimple(Transitions trans, boolean fix) throws PrismException
+	{
+		CTMCSimple ctmc = new CTMCSimple(trans.numStates);
+		for (TransitionsChunk chunk : trans.chunks) {
+			for (int i = 0; i < chunk.size; i++) {
+				ctmc.setProbability(chunk.sources[i], chunk.targets[i], chunk.probs[i]);
+			}
+		}
+		ctmc.findDeadlocks(fix);
+		return ctmc;
+	}
+
+	/**
+	 * Get the number of transitions read, checking that they can be stored in a sparse matrix.
+	 */
+	private static int checkNumTransitions(Transitions trans) throws PrismException
+	{
+		long total = trans.size();
+		if (total + trans.numStates >= Integer.MAX_VALUE)
+			throw new PrismNotSupportedException("Too many transitions in .tra file (" + total + ")");
+		return (int) total;
+	}
+
+	/**
+	 * Sort the entries {@code from, ..., to-1} of {@code cols} (and, correspondingly, {@code vals})
+	 * by column. The sort is stable, i.e., entries with the same column stay in the same order.
+	 */
+	private static void sortByColumn(int cols[], double vals[], int from, int to)
+	{
+		// Usually already sorted (e.g. for files exported by PRISM)
+		boolean sorted = true;
+		for (int k = from + 1; k < to && sorted; k++) {
+			sorted = cols[k - 1] <= cols[k];
+		}
+		if (sorted)
+			return;
+		if (to - from <= 16) {
+			// insertion sort
+			for (int k = from + 1; k < to; k++) {
+				int col = cols[k];
+				double val = vals[k];
+				int l = k - 1;
+				while (l >= from && cols[l] > col) {
+					cols[l + 1] = cols[l];
+					vals[l + 1] = vals[l];
+					l--;
+				}
+				cols[l + 1] = col;
+				vals[l + 1] = val;
+			}
+		} else {
+			// sort (column, position) pairs, then permute
+			long keys[] = new long[to - from];
+			for (int k = from; k < to; k++) {
+				keys[k - from] = ((long) cols[k] << 32) | (k - from);
+			}
+			Arrays.sort(keys);
+			double oldVals[] = Arrays.copyOfRange(vals, from, to);
+			for (int k = from; k < to; k++) {
+				cols[k] = (int) (keys[k - from] >>> 32);
+				vals[k] = oldVals[(int) keys[k - from]];
+			}
 		}
 	}
 }
@@ -467,7 +467,9 @@ public final class FastAdaptiveUniformisation extends PrismComponent
 	{
 		super(parent);
 		
-		this.modelGen = modelGen;
+		int cacheSize = settings.getInteger(PrismSettings.PRISM_FAU_CACHE_SIZE);
+		// States are explored repeatedly, so optionally cache their transitions
+		this.modelGen = cacheSize > 0 ? new CachingModelGenerator(modelGen, cacheSize) : modelGen;
 		maxNumStates = 0;
 
 		epsilon = settings.getDouble(PrismSettings.PRISM_FAU_EPSILON);
@@ -532,6 +534,16 @@ public final class FastAdaptiveUniformisation extends PrismComponent
 		return maxNumStates;
 	}
 
+	/**
+	 * Print statistics about the successor cache (if one is in use) to the log.
+	 */
+	public void printCacheStats()
+	{
+		if (modelGen instanceof CachingModelGenerator) {
+			mainLog.println(((CachingModelGenerator) modelGen).getStatsString());
+		}
+	}
+
 	/**
 	 * Returns the value of the analysis.
 	 * For reachability analyses, this is the probability to reach state in
@@ -722,6 +734,7 @@ public final class FastAdaptiveUniformisation extends PrismComponent
 
 		mainLog.println("\nTotal probability lost is : " + getTotalDiscreteLoss());
 		mainLog.println("Maximal number of states stored during analysis : " + getMaxNumStates());
+		printCacheStats();
 		
 		return probs;
 	}
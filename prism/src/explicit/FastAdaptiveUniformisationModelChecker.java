@@ -214,6 +214,7 @@ public class FastAdaptiveUniformisationModelChecker extends PrismComponent
 		fau.computeTransientProbsAdaptive(timeUpper - timeLower);
 		mainLog.println("\nTotal probability lost is : " + fau.getTotalDiscreteLoss());
 		mainLog.println("Maximal number of states stored during analysis : " + fau.getMaxNumStates());
+		fau.printCacheStats();
 
 		return new Result(new Double(fau.getValue()));
 	}
@@ -244,6 +245,7 @@ public class FastAdaptiveUniformisationModelChecker extends PrismComponent
 		fau.computeTransientProbsAdaptive(time);
 		mainLog.println("\nTotal probability lost is : " + fau.getTotalDiscreteLoss());
 		mainLog.println("Maximal number of states stored during analysis : " + fau.getMaxNumStates());
+		fau.printCacheStats();
 		return new Result(new Double(fau.getValue()));
 	}
 }
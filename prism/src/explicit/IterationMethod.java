@@ -28,6 +28,7 @@
 package explicit;
 
 import java.util.PrimitiveIterator;
+import java.util.concurrent.atomic.AtomicLong;
 
 import common.IntSet;
 import common.PeriodicTimer;
@@ -64,6 +65,8 @@ public abstract class IterationMethod {
 		 * This allows the two-vector iteration methods to store the current values for these
 		 * states into the second vector, so that switching the vector does not return to
 		 * previous values.
+		 * If {@link #supportsConcurrentSCCs()} returns true, this can be called concurrently
+		 * for independent sets of states (and only touches the given states).
 		 */
 		public void doneWith(IntSet states);
 
@@ -75,6 +78,28 @@ public abstract class IterationMethod {
 
 		/** Return the underlying model */
 		public Model getModel();
+
+		/**
+		 * Returns true if this iteration supports {@link #iterateAndCheckConvergenceIsolated(IntSet)},
+		 * i.e., iterations over independent sets of states can be done concurrently.
+		 * <p>
+		 * <i>Default implementation</i>: Returns false.
+		 */
+		public default boolean supportsConcurrentSCCs()
+		{
+			return false;
+		}
+
+		/**
+		 * Perform one iteration (over the set of states) and return true if convergence has been detected.
+		 * In contrast to {@link #iterateAndCheckConvergence(IntSet)}, this only reads and writes
+		 * the solution vector(s) for the given states and for states whose values are
+		 * already final (e.g., successor SCCs in a topological iteration).
+		 * It can thus be called concurrently for several sets of states that
+		 * do not depend on each other.
+		 * Should only be called if {@link #supportsConcurrentSCCs()} returns true.
+		 */
+		public boolean iterateAndCheckConvergenceIsolated(IntSet states) throws PrismException;
 	}
 
 	/**
@@ -156,6 +181,19 @@ public abstract class IterationMethod {
 		{
 			super(model);
 		}
+
+		@Override
+		public boolean supportsConcurrentSCCs()
+		{
+			// the iteration is in-place, i.e., only touches the given states
+			return model instanceof ModelExplicit;
+		}
+
+		@Override
+		public boolean iterateAndCheckConvergenceIsolated(IntSet states) throws PrismException
+		{
+			return iterateAndCheckConvergence(states);
+		}
 	}
 
 	/** Abstract base class for an IterationIntervalIter with a single solution vector */
@@ -249,6 +287,32 @@ public abstract class IterationMethod {
 			return done;
 		}
 
+		@Override
+		public boolean supportsConcurrentSCCs()
+		{
+			// post processing works on the whole vectors
+			return postProcessor == null && model instanceof ModelExplicit;
+		}
+
+		@Override
+		public boolean iterateAndCheckConvergenceIsolated(IntSet states) throws PrismException
+		{
+			// do the iteration
+			doIterate(states);
+			// check convergence (on the set of states)
+			boolean done = PrismUtils.doublesAreClose(soln, soln2, states.iterator(), termCritParam, absolute);
+
+			// instead of switching the vectors (which would affect all states),
+			// copy the new values for the given states
+			PrimitiveIterator.OfInt it = states.iterator();
+			while (it.hasNext()) {
+				int state = it.nextInt();
+				soln[state] = soln2[state];
+			}
+
+			return done;
+		}
+
 		@Override
 		public void doneWith(IntSet states)
 		{
@@ -463,6 +527,11 @@ public abstract class IterationMethod {
 	 */
 	public ModelCheckerResult doTopologicalValueIteration(ProbModelChecker mc, String description, SCCInfo sccs, IterationMethod.IterationValIter iterator, SingletonSCCSolver singletonSCCSolver, long startTime, ExportIterations iterationsExport) throws PrismException
 	{
+		// With several threads, solve independent SCCs concurrently (if possible)
+		if (mc.getNumThreads() > 1 && iterationsExport == null && iterator.supportsConcurrentSCCs()) {
+			return doTopologicalValueIterationConcurrent(mc, description, sccs, iterator, singletonSCCSolver, startTime);
+		}
+
 		// Start iterations
 		int iters = 0;
 		long mvCount = 0;
@@ -556,6 +625,84 @@ public abstract class IterationMethod {
 		return res;
 	}
 
+	/**
+	 * Perform the actual work of a topological value iteration, i.e., iterate until convergence or abort,
+	 * where SCCs that do not depend on each other are solved concurrently (using {@code mc.getNumThreads()} threads).
+	 * <br>
+	 * Requires that {@code iterator.supportsConcurrentSCCs()} is true.
+	 *
+	 * @param mc ProbModelChecker (for log and settings)
+	 * @param description (for logging)
+	 * @param sccs The information about the SCCs and topological order
+	 * @param iteration The iteration object
+	 * @param singletonSCCSolver The solver for singleton SCCs
+	 * @param startTime The start time (for logging purposes, obtained from a call to System.currentTimeMillis())
+	 * @return a ModelChecker result with the solution vector and statistics
+	 * @throws PrismException on non-convergence (if mc.errorOnNonConverge is set)
+	 */
+	protected ModelCheckerResult doTopologicalValueIterationConcurrent(ProbModelChecker mc, String description, SCCInfo sccs, IterationMethod.IterationValIter iterator, SingletonSCCSolver singletonSCCSolver, long startTime) throws PrismException
+	{
+		final int maxIters = mc.maxIters;
+		final int numSCCs = sccs.getNumSCCs();
+		final int numNonSingletonSCCs = sccs.countNonSingletonSCCs();
+		final AtomicLong iters = new AtomicLong(0);
+		final AtomicLong mvCount = new AtomicLong(0);
+
+		SCCScheduler scheduler = new SCCScheduler(iterator.getModel(), sccs);
+		SCCScheduler.SCCTask solveSCC = (int scc) -> {
+			if (sccs.isSingletonSCC(scc)) {
+				// get the single state in this SCC
+				int state = sccs.getStatesForSCC(scc).iterator().nextInt();
+				iterator.solveSingletonSCC(state, singletonSCCSolver);
+				iters.incrementAndGet();
+				mvCount.addAndGet(countTransitions(iterator.getModel(), IntSet.asIntSet(state)));
+				return true;
+			}
+
+			// complex SCC: do VI
+			boolean doneSCC = false;
+			IntSet statesForSCC = sccs.getStatesForSCC(scc);
+			int itersInSCC = 0;
+			// abort on convergence or if iterations *in this SCC* are above maxIters
+			while (!doneSCC && itersInSCC < maxIters) {
+				itersInSCC++;
+				doneSCC = iterator.iterateAndCheckConvergenceIsolated(statesForSCC);
+			}
+			// only touches the states of this SCC (and lets the iteration release any information about them)
+			iterator.doneWith(statesForSCC);
+			iters.addAndGet(itersInSCC);
+			mvCount.addAndGet(itersInSCC * countTransitions(iterator.getModel(), statesForSCC));
+			return doneSCC;
+		};
+
+		boolean done = scheduler.run(mc.getNumThreads(), solveSCC, ProbModelChecker.UPDATE_DELAY, (int sccsDone) -> {
+			mc.getLog().print("Iteration " + iters.get() + ": ");
+			mc.getLog().print(sccsDone + " of " + numSCCs + " SCCs done");
+			mc.getLog().println(", " + PrismUtils.formatDouble2dp((System.currentTimeMillis() - startTime) / 1000.0) + " sec so far");
+		});
+
+		// Finished value iteration
+		long timer = System.currentTimeMillis() - startTime;
+		mc.getLog().print("Value iteration (" + description + ", with " + numNonSingletonSCCs + " non-singleton SCCs, solved concurrently)");
+		mc.getLog().print(" took " + iters.get() + " iterations, ");
+		mc.getLog().print(mvCount.get() + " MV-multiplications");
+		mc.getLog().println(" and " + timer / 1000.0 + " seconds.");
+
+		// Non-convergence is an error (usually)
+		if (!done && mc.errorOnNonConverge) {
+			String msg = "Iterative method did not converge within " + maxIters + " iterations in an SCC.";
+			msg += "\nConsider using a different numerical method or increasing the maximum number of iterations";
+			throw new PrismException(msg);
+		}
+
+		// Return results
+		ModelCheckerResult res = new ModelCheckerResult();
+		res.soln = iterator.getSolnVector();
+		res.numIters = (int) iters.get();
+		res.timeTaken = timer / 1000.0;
+		return res;
+	}
+
 	/**
 	 * Perform the actual work of an interval iteration, i.e., iterate until convergence or abort.
 	 *
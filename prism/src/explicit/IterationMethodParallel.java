@@ -0,0 +1,319 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package explicit;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+
+import common.IntSet;
+import common.WorkerPool;
+import explicit.rewards.MCRewards;
+import explicit.rewards.MDPRewards;
+import prism.PrismException;
+import prism.PrismNotSupportedException;
+import prism.PrismUtils;
+
+/**
+ * IterationMethod that encapsulates the functionality of the Power and Jacobi methods,
+ * with the matrix-vector multiplications split across several worker threads.
+ * <br>
+ * The states of an iteration step are split into contiguous chunks (in iteration order),
+ * each processed by a single task. For the convergence check, each task checks its own chunk
+ * and the per-chunk results are combined afterwards, so the outcome is independent of
+ * the thread scheduling and identical to the sequential methods.
+ * <br>
+ * Models that are not instances of {@link ModelExplicit} (e.g., model views, which may
+ * cache information internally) are always processed sequentially.
+ */
+public class IterationMethodParallel extends IterationMethod {
+	/** Minimal number of states per chunk, smaller sets are processed sequentially */
+	private static final int MIN_CHUNK_SIZE = 2048;
+	/** Number of chunks per thread (for load balancing) */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/** Number of worker threads */
+	private final int numThreads;
+	/** Use Jacobi instead of the Power method? */
+	private final boolean jacobi;
+
+	/**
+	 * Functional interface for the computation of the new value
+	 * of a single state {@code s} (row of the matrix), from the vector {@code vect}.
+	 */
+	@FunctionalInterface
+	interface RowOperator {
+		double apply(int s, double[] vect);
+	}
+
+	/**
+	 * Constructor.
+	 * @param absolute For convergence check, perform absolute comparison?
+	 * @param termCritParam For convergence check, the epsilon value to use
+	 * @param jacobi Use the Jacobi method (otherwise, the Power method)?
+	 * @param numThreads The number of worker threads
+	 */
+	public IterationMethodParallel(boolean absolute, double epsilon, boolean jacobi, int numThreads)
+	{
+		super(absolute, epsilon);
+		this.jacobi = jacobi;
+		this.numThreads = numThreads;
+	}
+
+	/** The states of an iteration step, in iteration order, split into chunks */
+	private static class Chunks {
+		/** The states, in iteration order (null if they are processed sequentially, as a single chunk) */
+		final int[] statesArray;
+		/** The chunk boundaries (indices into statesArray) */
+		final int[] bounds;
+
+		Chunks(IntSet states, int threads)
+		{
+			int n = states.cardinality();
+			int numChunks = (threads > 1) ? Math.min(threads * CHUNKS_PER_THREAD, n / MIN_CHUNK_SIZE) : 1;
+			if (numChunks <= 1) {
+				statesArray = null;
+				bounds = null;
+				return;
+			}
+			statesArray = new int[n];
+			PrimitiveIterator.OfInt it = states.iterator();
+			for (int i = 0; i < n; i++) {
+				statesArray[i] = it.nextInt();
+			}
+			bounds = WorkerPool.splitRange(n, numChunks);
+		}
+	}
+
+	/**
+	 * Two-vector iteration, where the rows of each iteration step
+	 * are computed in parallel using a {@code RowOperator}.
+	 */
+	protected class ParallelTwoVectorIteration extends TwoVectorIteration {
+		/** The computation for a single row */
+		private final RowOperator op;
+		/** The number of threads used for this iteration */
+		private final int threads;
+		/**
+		 * The chunks for each set of states currently iterated over, by identity
+		 * (several SCCs may be iterated over concurrently; guarded by itself).
+		 * Entries are removed once {@link #doneWith(IntSet)} is called for the set.
+		 */
+		private final Map<IntSet, Chunks> chunksCache = new IdentityHashMap<>();
+
+		protected ParallelTwoVectorIteration(Model model, IterationPostProcessor postProcessor, RowOperator op)
+		{
+			super(model, postProcessor);
+			this.op = op;
+			this.threads = (model instanceof ModelExplicit) ? numThreads : 1;
+		}
+
+		/** Get the chunks for {@code states}, computing them if they are not cached already */
+		private Chunks prepare(IntSet states)
+		{
+			synchronized (chunksCache) {
+				Chunks chunks = chunksCache.get(states);
+				if (chunks == null) {
+					chunks = new Chunks(states, threads);
+					chunksCache.put(states, chunks);
+				}
+				return chunks;
+			}
+		}
+
+		@Override
+		public void doIterate(IntSet states) throws PrismException
+		{
+			final Chunks chunks = prepare(states);
+			final double[] vect = soln;
+			final double[] result = soln2;
+			if (chunks.statesArray == null) {
+				PrimitiveIterator.OfInt it = states.iterator();
+				while (it.hasNext()) {
+					final int s = it.nextInt();
+					result[s] = op.apply(s, vect);
+				}
+				return;
+			}
+			final int[] statesArray = chunks.statesArray;
+			final int[] bounds = chunks.bounds;
+			WorkerPool.run(threads, bounds.length - 1, chunk -> {
+				for (int i = bounds[chunk], stop = bounds[chunk + 1]; i < stop; i++) {
+					final int s = statesArray[i];
+					result[s] = op.apply(s, vect);
+				}
+			});
+		}
+
+		@Override
+		public boolean iterateAndCheckConvergence(IntSet states) throws PrismException
+		{
+			final Chunks chunks = prepare(states);
+			if (postProcessor != null || chunks.statesArray == null) {
+				// post processing needs the full vector, do the convergence check afterwards
+				// (and a single chunk is processed sequentially anyway)
+				return super.iterateAndCheckConvergence(states);
+			}
+
+			final int[] statesArray = chunks.statesArray;
+			final int[] bounds = chunks.bounds;
+			final double[] vect = soln;
+			final double[] result = soln2;
+			final boolean[] chunkDone = new boolean[bounds.length - 1];
+			WorkerPool.run(threads, chunkDone.length, chunk -> {
+				boolean done = true;
+				for (int i = bounds[chunk], stop = bounds[chunk + 1]; i < stop; i++) {
+					final int s = statesArray[i];
+					result[s] = op.apply(s, vect);
+					if (done && !PrismUtils.doublesAreClose(vect[s], result[s], termCritParam, absolute)) {
+						done = false;
+					}
+				}
+				chunkDone[chunk] = done;
+			});
+			// combine the results of the chunks
+			boolean done = true;
+			for (boolean d : chunkDone) {
+				done &= d;
+			}
+
+			// switch vectors
+			double[] tmp = soln;
+			soln = soln2;
+			soln2 = tmp;
+
+			return done;
+		}
+
+		@Override
+		public void doneWith(IntSet states)
+		{
+			super.doneWith(states);
+			synchronized (chunksCache) {
+				chunksCache.remove(states);
+			}
+		}
+	}
+
+	/** Post processor for interval iteration */
+	private IterationPostProcessor intervalPostProcessor(boolean fromBelow, boolean enforceMonotonicity, boolean checkMonotonicity)
+	{
+		return (soln, soln2, states) -> {
+			twoVectorPostProcessing(soln, soln2, states, fromBelow, enforceMonotonicity, checkMonotonicity);
+		};
+	}
+
+	// ------------ DTMC methods ----------------------------
+
+	/** RowOperator for mvMult / mvMultJac */
+	private RowOperator mvMultOp(DTMC dtmc)
+	{
+		if (jacobi) {
+			return dtmc::mvMultJacSingle;
+		} else {
+			return dtmc::mvMultSingle;
+		}
+	}
+
+	/** RowOperator for mvMultRew / mvMultRewJac */
+	private RowOperator mvMultRewOp(DTMC dtmc, MCRewards rew)
+	{
+		if (jacobi) {
+			return (s, vect) -> dtmc.mvMultRewJacSingle(s, vect, rew);
+		} else {
+			return (s, vect) -> dtmc.mvMultRewSingle(s, vect, rew);
+		}
+	}
+
+	@Override
+	public IterationValIter forMvMult(DTMC dtmc)
+	{
+		return new ParallelTwoVectorIteration(dtmc, null, mvMultOp(dtmc));
+	}
+
+	@Override
+	public IterationIntervalIter forMvMultInterval(DTMC dtmc, boolean fromBelow, boolean enforceMonotonicity, boolean checkMonotonicity)
+	{
+		IterationPostProcessor post = intervalPostProcessor(fromBelow, enforceMonotonicity, checkMonotonicity);
+		return new ParallelTwoVectorIteration(dtmc, post, mvMultOp(dtmc));
+	}
+
+	@Override
+	public IterationValIter forMvMultRew(DTMC dtmc, MCRewards rew)
+	{
+		return new ParallelTwoVectorIteration(dtmc, null, mvMultRewOp(dtmc, rew));
+	}
+
+	@Override
+	public IterationIntervalIter forMvMultRewInterval(DTMC dtmc, MCRewards rew, boolean fromBelow, boolean enforceMonotonicity, boolean checkMonotonicity)
+	{
+		IterationPostProcessor post = intervalPostProcessor(fromBelow, enforceMonotonicity, checkMonotonicity);
+		return new ParallelTwoVectorIteration(dtmc, post, mvMultRewOp(dtmc, rew));
+	}
+
+	// ------------ MDP methods ----------------------------
+
+	@Override
+	public IterationValIter forMvMultMinMax(MDP mdp, boolean min, int[] strat) throws PrismException
+	{
+		if (jacobi)
+			throw new PrismNotSupportedException("Jacobi not supported for MDPs");
+		return new ParallelTwoVectorIteration(mdp, null, (s, vect) -> mdp.mvMultMinMaxSingle(s, vect, min, strat));
+	}
+
+	@Override
+	public IterationIntervalIter forMvMultMinMaxInterval(MDP mdp, boolean min, int[] strat, boolean fromBelow, boolean enforceMonotonicity,
+			boolean checkMonotonicity) throws PrismException
+	{
+		if (jacobi)
+			throw new PrismNotSupportedException("Jacobi not supported for MDPs");
+		IterationPostProcessor post = intervalPostProcessor(fromBelow, enforceMonotonicity, checkMonotonicity);
+		return new ParallelTwoVectorIteration(mdp, post, (s, vect) -> mdp.mvMultMinMaxSingle(s, vect, min, strat));
+	}
+
+	@Override
+	public IterationValIter forMvMultRewMinMax(MDP mdp, MDPRewards rewards, boolean min, int[] strat) throws PrismException
+	{
+		if (jacobi)
+			throw new PrismNotSupportedException("Jacobi not supported for MDPs");
+		return new ParallelTwoVectorIteration(mdp, null, (s, vect) -> mdp.mvMultRewMinMaxSingle(s, vect, rewards, min, strat));
+	}
+
+	@Override
+	public IterationIntervalIter forMvMultRewMinMaxInterval(MDP mdp, MDPRewards rewards, boolean min, int[] strat, boolean fromBelow,
+			boolean enforceMonotonicity, boolean checkMonotonicity) throws PrismException
+	{
+		if (jacobi)
+			throw new PrismNotSupportedException("Jacobi not supported for MDPs");
+		IterationPostProcessor post = intervalPostProcessor(fromBelow, enforceMonotonicity, checkMonotonicity);
+		return new ParallelTwoVectorIteration(mdp, post, (s, vect) -> mdp.mvMultRewMinMaxSingle(s, vect, rewards, min, strat));
+	}
+
+	@Override
+	public String getDescriptionShort()
+	{
+		return (jacobi ? "Jacobi" : "Power method") + ", " + numThreads + " threads";
+	}
+}
@@ -549,7 +549,11 @@ public class MDPModelChecker extends ProbModelChecker
 		IterationMethod iterationMethod = null;
 		switch (method) {
 		case VALUE_ITERATION:
-			iterationMethod = new IterationMethodPower(termCrit == TermCrit.ABSOLUTE, termCritParam);
+			if (numThreads > 1) {
+				iterationMethod = new IterationMethodParallel(termCrit == TermCrit.ABSOLUTE, termCritParam, false, numThreads);
+			} else {
+				iterationMethod = new IterationMethodPower(termCrit == TermCrit.ABSOLUTE, termCritParam);
+			}
 			break;
 		case GAUSS_SEIDEL:
 			iterationMethod = new IterationMethodGS(termCrit == TermCrit.ABSOLUTE, termCritParam, false);
@@ -2210,7 +2214,11 @@ public class MDPModelChecker extends ProbModelChecker
 		IterationMethod iterationMethod = null;
 		switch (method) {
 		case VALUE_ITERATION:
-			iterationMethod = new IterationMethodPower(termCrit == TermCrit.ABSOLUTE, termCritParam);
+			if (numThreads > 1) {
+				iterationMethod = new IterationMethodParallel(termCrit == TermCrit.ABSOLUTE, termCritParam, false, numThreads);
+			} else {
+				iterationMethod = new IterationMethodPower(termCrit == TermCrit.ABSOLUTE, termCritParam);
+			}
 			break;
 		case GAUSS_SEIDEL:
 			iterationMethod = new IterationMethodGS(termCrit == TermCrit.ABSOLUTE, termCritParam, false);
@@ -0,0 +1,910 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+
+package explicit;
+
+import java.io.File;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import common.IterableStateSet;
+import explicit.rewards.MCRewards;
+import explicit.rewards.MDPRewards;
+import prism.PrismException;
+import prism.PrismNotSupportedException;
+import prism.PrismUtils;
+
+/**
+ * Sparse matrix (non-mutable) explicit-state representation of an MDP, like {@link MDPSparse},
+ * but with the matrix stored outside the Java heap (see {@link OffHeapArray}) and transitions
+ * indexed by {@code long}s, so that it can have more than 2^31 transitions and does not burden
+ * the garbage collector. (Action labels, if any, are still stored on the heap.)
+ * Such models can be built directly (see {@link OffHeapModelBuilder}) or copied from another MDP.
+ * <br>
+ * Since {@link #getNumTransitions()} returns an int, it is capped at {@code Integer.MAX_VALUE};
+ * use {@link #getNumTransitionsLong()} for the exact number.
+ */
+public class MDPOffHeap extends MDPExplicit
+{
+	// Sparse matrix storing transition function (Steps)
+	/** Probabilities for each transition (doubles, size numTransitions) */
+	protected OffHeapArray nonZeros;
+	/** Column (destination) indices for each transition (ints, size numTransitions) */
+	protected OffHeapArray cols;
+	/** Indices into nonZeros/cols giving the start of the transitions for each choice (distribution);
+	 * longs, size numDistrs+1, last entry is always equal to numTransitions */
+	protected OffHeapArray choiceStarts;
+	/** Indices into choiceStarts giving the start of the choices for each state;
+	 * ints, size numStates+1, last entry is always equal to numDistrs */
+	protected OffHeapArray rowStarts;
+
+	// Action labels
+	/** Array of action labels for choices;
+	 * if null, there are no actions; otherwise, is an array of size numDistrs */
+	protected Object actions[];
+
+	// Other statistics
+	protected int numDistrs;
+	protected long numTransitions;
+	protected int maxNumDistrs;
+
+	// Constructors
+
+	/**
+	 * Constructor: build from the arrays of a sparse matrix directly (they are stored, not copied).
+	 * Initial states, deadlocks, etc. have to be set separately.
+	 * @param numStates Number of states
+	 * @param rowStarts Start of the choices of each state (ints, size numStates+1)
+	 * @param choiceStarts Start of the transitions of each choice (longs, size numDistrs+1)
+	 * @param cols Target state of each transition (ints)
+	 * @param nonZeros Probability of each transition (doubles)
+	 * @param actions Action label of each choice (null if there are no actions)
+	 */
+	public MDPOffHeap(int numStates, OffHeapArray rowStarts, OffHeapArray choiceStarts, OffHeapArray cols, OffHeapArray nonZeros, Object[] actions)
+	{
+		initialise(numStates);
+		this.rowStarts = rowStarts;
+		this.choiceStarts = choiceStarts;
+		this.cols = cols;
+		this.nonZeros = nonZeros;
+		this.actions = actions;
+		numDistrs = rowStarts.getInt(numStates);
+		numTransitions = choiceStarts.getLong(numDistrs);
+		for (int s = 0; s < numStates; s++) {
+			maxNumDistrs = Math.max(maxNumDistrs, getNumChoices(s));
+		}
+	}
+
+	/**
+	 * Constructor: copy an arbitrary MDP (including initial states, deadlocks, labels, etc.).
+	 * Transitions with probability zero are not stored.
+	 * @param mdp The MDP to copy
+	 * @param dir Directory for memory-mapped files storing the matrix (null: use direct buffers)
+	 */
+	public MDPOffHeap(MDP mdp, File dir) throws PrismException
+	{
+		initialise(mdp.getNumStates());
+		for (int s : mdp.getDeadlockStates()) {
+			deadlocks.add(s);
+		}
+		for (int s : mdp.getInitialStates()) {
+			initialStates.add(s);
+		}
+		setStatesList(mdp.getStatesList());
+		setConstantValues(mdp.getConstantValues());
+		setVarList(mdp.getVarList());
+		for (String label : mdp.getLabels()) {
+			addLabel(label, mdp.getLabelStates(label));
+		}
+
+		// Count choices and (non-zero) transitions
+		numDistrs = mdp.getNumChoices();
+		maxNumDistrs = mdp.getMaxNumChoices();
+		rowStarts = OffHeapArray.allocateInts(numStates + 1L, dir);
+		choiceStarts = OffHeapArray.allocateLongs(numDistrs + 1L, dir);
+		boolean hasActions = false;
+		int j = 0;
+		long k = 0;
+		for (int s = 0; s < numStates; s++) {
+			rowStarts.setInt(s, j);
+			int n = mdp.getNumChoices(s);
+			for (int i = 0; i < n; i++, j++) {
+				choiceStarts.setLong(j, k);
+				hasActions |= mdp.getAction(s, i) != null;
+				for (Iterator<Entry<Integer, Double>> it = mdp.getTransitionsIterator(s, i); it.hasNext();) {
+					if (it.next().getValue() > 0)
+						k++;
+				}
+			}
+		}
+		rowStarts.setInt(numStates, j);
+		choiceStarts.setLong(j, k);
+		numTransitions = k;
+		// Copy transition function
+		cols = OffHeapArray.allocateInts(numTransitions, dir);
+		nonZeros = OffHeapArray.allocateDoubles(numTransitions, dir);
+		actions = hasActions ? new Object[numDistrs] : null;
+		j = 0;
+		k = 0;
+		for (int s = 0; s < numStates; s++) {
+			int n = mdp.getNumChoices(s);
+			for (int i = 0; i < n; i++, j++) {
+				if (actions != null)
+					actions[j] = mdp.getAction(s, i);
+				for (Iterator<Entry<Integer, Double>> it = mdp.getTransitionsIterator(s, i); it.hasNext();) {
+					Entry<Integer, Double> e = it.next();
+					if (e.getValue() > 0) {
+						cols.setInt(k, e.getKey());
+						nonZeros.setDouble(k, e.getValue());
+						k++;
+					}
+				}
+			}
+		}
+	}
+
+	// Mutators (other)
+
+	@Override
+	public void initialise(int numStates)
+	{
+		super.initialise(numStates);
+		numDistrs = maxNumDistrs = 0;
+		numTransitions = 0;
+		actions = null;
+	}
+
+	@Override
+	public void buildFromPrismExplicit(String filename) throws PrismException
+	{
+		throw new PrismNotSupportedException("Building an off-heap MDP directly from PrismExplicit is not supported");
+	}
+
+	@Override
+	public String infoString()
+	{
+		String s = "";
+		s += numStates + " states (" + getNumInitialStates() + " initial)";
+		s += ", " + numTransitions + " transitions";
+		s += ", " + getNumChoices() + " choices";
+		s += ", dist max/avg = " + getMaxNumChoices() + "/" + PrismUtils.formatDouble2dp(((double) getNumChoices()) / numStates);
+		return s;
+	}
+
+	@Override
+	public String infoStringTable()
+	{
+		String s = "";
+		s += "States:      " + numStates + " (" + getNumInitialStates() + " initial)\n";
+		s += "Transitions: " + numTransitions + "\n";
+		s += "Choices:     " + getNumChoices() + "\n";
+		s += "Max/avg:     " + getMaxNumChoices() + "/" + PrismUtils.formatDouble2dp(((double) getNumChoices()) / numStates) + "\n";
+		return s;
+	}
+
+	// Accessors (for Model)
+
+	/**
+	 * Get the total number of transitions (capped at {@code Integer.MAX_VALUE}, see {@link #getNumTransitionsLong()}).
+	 */
+	@Override
+	public int getNumTransitions()
+	{
+		return (int) Math.min(numTransitions, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Get the total number of transitions.
+	 */
+	public long getNumTransitionsLong()
+	{
+		return numTransitions;
+	}
+
+	private SuccessorsIterator colsIterator(long start, long end, boolean distinct)
+	{
+		return new SuccessorsIterator() {
+			long cur = start;
+
+			@Override
+			public boolean successorsAreDistinct()
+			{
+				return distinct;
+			}
+
+			@Override
+			public boolean hasNext()
+			{
+				return cur < end;
+			}
+
+			@Override
+			public int nextInt()
+			{
+				return cols.getInt(cur++);
+			}
+		};
+	}
+
+	@Override
+	public SuccessorsIterator getSuccessors(final int s)
+	{
+		// Assumes that only non-zero entries are stored
+		long start = choiceStarts.getLong(rowStarts.getInt(s));
+		long end = choiceStarts.getLong(rowStarts.getInt(s + 1));
+		// we can guarantee that the successors are distinct if there is at most one successor...
+		boolean distinct = (start == end || start + 1 == end);
+		return colsIterator(start, end, distinct);
+	}
+
+	@Override
+	public void findDeadlocks(boolean fix) throws PrismException
+	{
+		for (int i = 0; i < numStates; i++) {
+			// Note that no distributions is a deadlock, not an empty distribution
+			if (getNumChoices(i) == 0) {
+				addDeadlockState(i);
+				if (fix) {
+					throw new PrismException("Can't fix deadlocks in an MDPOffHeap since it cannot be modified after construction");
+				}
+			}
+		}
+	}
+
+	@Override
+	public void checkForDeadlocks(BitSet except) throws PrismException
+	{
+		for (int i = 0; i < numStates; i++) {
+			if (getNumChoices(i) == 0 && (except == null || !except.get(i)))
+				throw new PrismException("MDP has a deadlock in state " + i);
+		}
+	}
+
+	// Accessors (for NondetModel)
+
+	@Override
+	public int getNumChoices(int s)
+	{
+		return rowStarts.getInt(s + 1) - rowStarts.getInt(s);
+	}
+
+	@Override
+	public int getMaxNumChoices()
+	{
+		return maxNumDistrs;
+	}
+
+	@Override
+	public int getNumChoices()
+	{
+		return numDistrs;
+	}
+
+	@Override
+	public Object getAction(int s, int i)
+	{
+		return i < 0 || actions == null ? null : actions[rowStarts.getInt(s) + i];
+	}
+
+	@Override
+	public SuccessorsIterator getSuccessors(final int s, final int i)
+	{
+		long start = choiceStarts.getLong(rowStarts.getInt(s) + i);
+		long end = choiceStarts.getLong(rowStarts.getInt(s) + i + 1);
+		// we assume here that the successors for a single choice are distinct
+		return colsIterator(start, end, true);
+	}
+
+	// Accessors (for MDP)
+
+	@Override
+	public int getNumTransitions(int s, int i)
+	{
+		return (int) (choiceStarts.getLong(rowStarts.getInt(s) + i + 1) - choiceStarts.getLong(rowStarts.getInt(s) + i));
+	}
+
+	@Override
+	public Iterator<Entry<Integer, Double>> getTransitionsIterator(final int s, final int i)
+	{
+		return new Iterator<Entry<Integer, Double>>()
+		{
+			final long start = choiceStarts.getLong(rowStarts.getInt(s) + i);
+			long col = start;
+			final long end = choiceStarts.getLong(rowStarts.getInt(s) + i + 1);
+
+			@Override
+			public boolean hasNext()
+			{
+				return col < end;
+			}
+
+			@Override
+			public Entry<Integer, Double> next()
+			{
+				assert (col < end);
+				final long i = col;
+				col++;
+				return new AbstractMap.SimpleImmutableEntry<>(cols.getInt(i), nonZeros.getDouble(i));
+			}
+		};
+	}
+
+	@Override
+	public void prob0step(BitSet subset, BitSet u, boolean forall, BitSet result)
+	{
+		int j, l1, h1;
+		long k, l2, h2;
+		boolean b1, some;
+		for (int i : new IterableStateSet(subset, numStates)) {
+			b1 = forall; // there exists or for all
+			l1 = rowStarts.getInt(i);
+			h1 = rowStarts.getInt(i + 1);
+			for (j = l1; j < h1; j++) {
+				some = false;
+				l2 = choiceStarts.getLong(j);
+				h2 = choiceStarts.getLong(j + 1);
+				for (k = l2; k < h2; k++) {
+					// Assume that only non-zero entries are stored
+					if (u.get(cols.getInt(k))) {
+						some = true;
+						break;
+					}
+				}
+				if (forall) {
+					if (!some) {
+						b1 = false;
+						break;
+					}
+				} else {
+					if (some) {
+						b1 = true;
+						break;
+					}
+				}
+			}
+			result.set(i, b1);
+		}
+	}
+
+	@Override
+	public void prob1Astep(BitSet subset, BitSet u, BitSet v, BitSet result)
+	{
+		int j, l1, h1;
+		long k, l2, h2;
+		boolean b1, some, all;
+		for (int i : new IterableStateSet(subset, numStates)) {
+			b1 = true;
+			l1 = rowStarts.getInt(i);
+			h1 = rowStarts.getInt(i + 1);
+			for (j = l1; j < h1; j++) {
+				some = false;
+				all = true;
+				l2 = choiceStarts.getLong(j);
+				h2 = choiceStarts.getLong(j + 1);
+				for (k = l2; k < h2; k++) {
+					// Assume that only non-zero entries are stored
+					if (!u.get(cols.getInt(k))) {
+						all = false;
+						break; // Stop early (already know b1 will be set to false)
+					}
+					if (v.get(cols.getInt(k))) {
+						some = true;
+					}
+				}
+				if (!(some && all)) {
+					b1 = false;
+					break;
+				}
+			}
+			result.set(i, b1);
+		}
+	}
+
+	@Override
+	public void prob1Estep(BitSet subset, BitSet u, BitSet v, BitSet result, int strat[])
+	{
+		int j, l1, h1, stratCh = -1;
+		long k, l2, h2;
+		boolean b1, some, all;
+		for (int i : new IterableStateSet(subset, numStates)) {
+			b1 = false;
+			l1 = rowStarts.getInt(i);
+			h1 = rowStarts.getInt(i + 1);
+			for (j = l1; j < h1; j++) {
+				some = false;
+				all = true;
+				l2 = choiceStarts.getLong(j);
+				h2 = choiceStarts.getLong(j + 1);
+				for (k = l2; k < h2; k++) {
+					// Assume that only non-zero entries are stored
+					if (!u.get(cols.getInt(k))) {
+						all = false;
+						break; // Stop early (already know b1 will not be set to true)
+					}
+					if (v.get(cols.getInt(k))) {
+						some = true;
+					}
+				}
+				if (some && all) {
+					b1 = true;
+					// If strategy generation is enabled, remember optimal choice
+					if (strat != null)
+						stratCh = j - l1;
+					break;
+				}
+			}
+			// If strategy generation is enabled, store optimal choice
+			// (only if this the first time we add the state to S^yes)
+			if (strat != null & b1 & !result.get(i)) {
+				strat[i] = stratCh;
+			}
+			// Store result
+			result.set(i, b1);
+		}
+	}
+
+	@Override
+	public void prob1step(BitSet subset, BitSet u, BitSet v, boolean forall, BitSet result)
+	{
+		int j, l1, h1;
+		long k, l2, h2;
+		boolean b1, some, all;
+		for (int i : new IterableStateSet(subset, numStates)) {
+			b1 = forall; // there exists or for all
+			l1 = rowStarts.getInt(i);
+			h1 = rowStarts.getInt(i + 1);
+			for (j = l1; j < h1; j++) {
+				some = false;
+				all = true;
+				l2 = choiceStarts.getLong(j);
+				h2 = choiceStarts.getLong(j + 1);
+				for (k = l2; k < h2; k++) {
+					// Assume that only non-zero entries are stored
+					if (v.get(cols.getInt(k))) {
+						some = true;
+					}
+					if (!u.get(cols.getInt(k))) {
+						all = false;
+					}
+				}
+				if (forall) {
+					if (!(some && all)) {
+						b1 = false;
+						break;
+					}
+				} else {
+					if (some && all) {
+						b1 = true;
+						break;
+					}
+				}
+			}
+			result.set(i, b1);
+		}
+	}
+
+	@Override
+	public boolean prob1stepSingle(int s, int i, BitSet u, BitSet v)
+	{
+		int j;
+		long k, l2, h2;
+		boolean some, all;
+
+		j = rowStarts.getInt(s) + i;
+		some = false;
+		all = true;
+		l2 = choiceStarts.getLong(j);
+		h2 = choiceStarts.getLong(j + 1);
+		for (k = l2; k < h2; k++) {
+			// Assume that only non-zero entries are stored
+			if (v.get(cols.getInt(k))) {
+				some = true;
+			}
+			if (!u.get(cols.getInt(k))) {
+				all = false;
+			}
+		}
+		return some && all;
+	}
+
+	@Override
+	public double mvMultMinMaxSingle(int s, double vect[], boolean min, int strat[])
+	{
+		int j, l1, h1, stratCh = -1;
+		long k, l2, h2;
+		double d, minmax;
+		boolean first;
+
+		minmax = 0;
+		first = true;
+		l1 = rowStarts.getInt(s);
+		h1 = rowStarts.getInt(s + 1);
+		for (j = l1; j < h1; j++) {
+			// Compute sum for this distribution
+			d = 0.0;
+			l2 = choiceStarts.getLong(j);
+			h2 = choiceStarts.getLong(j + 1);
+			for (k = l2; k < h2; k++) {
+				d += nonZeros.getDouble(k) * vect[cols.getInt(k)];
+			}
+			// Check whether we have exceeded min/max so far
+			if (first || (min && d < minmax) || (!min && d > minmax)) {
+				minmax = d;
+				// If strategy generation is enabled, remember optimal choice
+				if (strat != null)
+					stratCh = j - l1;
+			}
+			first = false;
+		}
+		// If strategy generation is enabled, store optimal choice
+		if (strat != null & !first) {
+			// For max, only remember strictly better choices
+			if (min) {
+				strat[s] = stratCh;
+			} else if (strat[s] == -1 || minmax > vect[s]) {
+				strat[s] = stratCh;
+			}
+		}
+
+		return minmax;
+	}
+
+	@Override
+	public List<Integer> mvMultMinMaxSingleChoices(int s, double vect[], boolean min, double val)
+	{
+		int j, l1, h1;
+		long k, l2, h2;
+		double d;
+		List<Integer> res;
+
+		// Create data structures to store strategy
+		res = new ArrayList<Integer>();
+		// One row of matrix-vector operation
+		l1 = rowStarts.getInt(s);
+		h1 = rowStarts.getInt(s + 1);
+		for (j = l1; j < h1; j++) {
+			// Compute sum for this distribution
+			d = 0.0;
+			l2 = choiceStarts.getLong(j);
+			h2 = choiceStarts.getLong(j + 1);
+			for (k = l2; k < h2; k++) {
+				d += nonZeros.getDouble(k) * vect[cols.getInt(k)];
+			}
+			// Store strategy info if value matches
+			if (PrismUtils.doublesAreClose(val, d, 1e-12, false)) {
+				res.add(j - l1);
+			}
+		}
+
+		return res;
+	}
+
+	@Override
+	public double mvMultSingle(int s, int i, double vect[])
+	{
+		int j;
+		long k, l2, h2;
+		double d;
+
+		j = rowStarts.getInt(s) + i;
+		// Compute sum for this distribution
+		d = 0.0;
+		l2 = choiceStarts.getLong(j);
+		h2 = choiceStarts.getLong(j + 1);
+		for (k = l2; k < h2; k++) {
+			d += nonZeros.getDouble(k) * vect[cols.getInt(k)];
+		}
+
+		return d;
+	}
+
+	@Override
+	public double mvMultJacMinMaxSingle(int s, double vect[], boolean min, int strat[])
+	{
+		int j, l1, h1, stratCh = -1;
+		long k, l2, h2;
+		double diag, d, minmax;
+		boolean first;
+
+		minmax = 0;
+		first = true;
+		l1 = rowStarts.getInt(s);
+		h1 = rowStarts.getInt(s + 1);
+		for (j = l1; j < h1; j++) {
+			diag = 1.0;
+			// Compute sum for this distribution
+			d = 0.0;
+			l2 = choiceStarts.getLong(j);
+			h2 = choiceStarts.getLong(j + 1);
+			for (k = l2; k < h2; k++) {
+				if (cols.getInt(k) != s) {
+					d += nonZeros.getDouble(k) * vect[cols.getInt(k)];
+				} else {
+					diag -= nonZeros.getDouble(k);
+				}
+			}
+			if (diag > 0)
+				d /= diag;
+			// Check whether we have exceeded min/max so far
+			if (first || (min && d < minmax) || (!min && d > minmax)) {
+				minmax = d;
+				// If strategy generation is enabled, remember optimal choice
+				if (strat != null)
+					stratCh = j - l1;
+			}
+			first = false;
+		}
+		// If strategy generation is enabled, store optimal choice
+		if (strat != null & !first) {
+			// For max, only remember strictly better choices
+			if (min) {
+				strat[s] = stratCh;
+			} else if (strat[s] == -1 || minmax > vect[s]) {
+				strat[s] = stratCh;
+			}
+		}
+
+		return minmax;
+	}
+
+	@Override
+	public double mvMultJacSingle(int s, int i, double vect[])
+	{
+		int j;
+		long k, l2, h2;
+		double diag, d;
+
+		j = rowStarts.getInt(s) + i;
+		diag = 1.0;
+		// Compute sum for this distribution
+		d = 0.0;
+		l2 = choiceStarts.getLong(j);
+		h2 = choiceStarts.getLong(j + 1);
+		for (k = l2; k < h2; k++) {
+			if (cols.getInt(k) != s) {
+				d += nonZeros.getDouble(k) * vect[cols.getInt(k)];
+			} else {
+				diag -= nonZeros.getDouble(k);
+			}
+		}
+		if (diag > 0)
+			d /= diag;
+
+		return d;
+	}
+
+	@Override
+	public double mvMultRewMinMaxSingle(int s, double vect[], MDPRewards mdpRewards, boolean min, int strat[])
+	{
+		int j, l1, h1, stratCh = -1;
+		long k, l2, h2;
+		double d, minmax;
+		boolean first;
+
+		minmax = 0;
+		first = true;
+		l1 = rowStarts.getInt(s);
+		h1 = rowStarts.getInt(s + 1);
+		for (j = l1; j < h1; j++) {
+			// Compute sum for this distribution
+			d = mdpRewards.getTransitionReward(s, j - l1);
+			l2 = choiceStarts.getLong(j);
+			h2 = choiceStarts.getLong(j + 1);
+			for (k = l2; k < h2; k++) {
+				d += nonZeros.getDouble(k) * vect[cols.getInt(k)];
+			}
+			// Check whether we have exceeded min/max so far
+			if (first || (min && d < minmax) || (!min && d > minmax)) {
+				minmax = d;
+				// If strategy generation is enabled, remember optimal choice
+				if (strat != null)
+					stratCh = j - l1;
+			}
+			first = false;
+		}
+		// Add state reward (doesn't affect min/max)
+		minmax += mdpRewards.getStateReward(s);
+		// If strategy generation is enabled, store optimal choice
+		if (strat != null & !first) {
+			// For max, only remember strictly better choices
+			if (min) {
+				strat[s] = stratCh;
+			} else if (strat[s] == -1 || minmax > vect[s]) {
+				strat[s] = stratCh;
+			}
+		}
+
+		return minmax;
+	}
+
+	@Override
+	public double mvMultRewSingle(int s, int i, double[] vect, MCRewards mcRewards)
+	{
+		int j;
+		long k, l2, h2;
+		double d;
+
+		j = rowStarts.getInt(s) + i;
+		// Compute sum for this distribution
+		d = 0;
+		l2 = choiceStarts.getLong(j);
+		h2 = choiceStarts.getLong(j + 1);
+		for (k = l2; k < h2; k++) {
+			d += nonZeros.getDouble(k) * vect[cols.getInt(k)];
+		}
+		d += mcRewards.getStateReward(s);
+		return d;
+	}
+	
+	@Override
+	public double mvMultRewJacMinMaxSingle(int s, double vect[], MDPRewards mdpRewards, boolean min, int strat[])
+	{
+		int j, l1, h1, stratCh = -1;
+		long k, l2, h2;
+		double diag, d, minmax;
+		boolean first;
+
+		minmax = 0;
+		first = true;
+		l1 = rowStarts.getInt(s);
+		h1 = rowStarts.getInt(s + 1);
+		for (j = l1; j < h1; j++) {
+			diag = 1.0;
+			// Compute sum for this distribution
+			// (note: have to add state rewards in the loop for Jacobi)
+			d = mdpRewards.getStateReward(s);
+			d += mdpRewards.getTransitionReward(s, j - l1);
+			l2 = choiceStarts.getLong(j);
+			h2 = choiceStarts.getLong(j + 1);
+			for (k = l2; k < h2; k++) {
+				if (cols.getInt(k) != s) {
+					d += nonZeros.getDouble(k) * vect[cols.getInt(k)];
+				} else {
+					diag -= nonZeros.getDouble(k);
+				}
+			}
+			if (diag > 0)
+				d /= diag;
+			// Catch special case of probability 1 self-loop (Jacobi does it wrong)
+			if (h2 - l2 == 1 && cols.getInt(l2) == s) {
+				d = Double.POSITIVE_INFINITY;
+			}
+			// Check whether we have exceeded min/max so far
+			if (first || (min && d < minmax) || (!min && d > minmax)) {
+				minmax = d;
+				// If strategy generation is enabled, remember optimal choice
+				if (strat != null)
+					stratCh = j - l1;
+			}
+			first = false;
+		}
+		// If strategy generation is enabled, store optimal choice
+		if (strat != null & !first) {
+			// For max, only remember strictly better choices
+			if (min) {
+				strat[s] = stratCh;
+			} else if (strat[s] == -1 || minmax > vect[s]) {
+				strat[s] = stratCh;
+			}
+		}
+
+		return minmax;
+	}
+
+	@Override
+	public List<Integer> mvMultRewMinMaxSingleChoices(int s, double vect[], MDPRewards mdpRewards, boolean min, double val)
+	{
+		int j, l1, h1;
+		long k, l2, h2;
+		double d;
+		List<Integer> res;
+
+		// Create data structures to store strategy
+		res = new ArrayList<Integer>();
+		// One row of matrix-vector operation
+		l1 = rowStarts.getInt(s);
+		h1 = rowStarts.getInt(s + 1);
+		for (j = l1; j < h1; j++) {
+			// Compute sum for this distribution
+			d = mdpRewards.getTransitionReward(s, j - l1);
+			l2 = choiceStarts.getLong(j);
+			h2 = choiceStarts.getLong(j + 1);
+			for (k = l2; k < h2; k++) {
+				d += nonZeros.getDouble(k) * vect[cols.getInt(k)];
+			}
+			d += mdpRewards.getStateReward(s);
+			// Store strategy info if value matches
+			if (PrismUtils.doublesAreClose(val, d, 1e-12, false)) {
+				res.add(j - l1);
+			}
+		}
+
+		return res;
+	}
+
+	@Override
+	public void mvMultRight(int[] states, int[] strat, double[] source, double[] dest)
+	{
+		for (int s : states) {
+			int j;
+			long k, l2, h2;
+			j = rowStarts.getInt(s) + strat[s];
+			l2 = choiceStarts.getLong(j);
+			h2 = choiceStarts.getLong(j + 1);
+			for (k = l2; k < h2; k++) {
+				dest[cols.getInt(k)] += nonZeros.getDouble(k) * source[s];
+			}
+		}
+	}
+
+	// Standard methods
+
+	@Override
+	public String toString()
+	{
+		StringBuilder s = new StringBuilder("[ ");
+		for (int i = 0; i < numStates; i++) {
+			if (i > 0)
+				s.append(", ");
+			s.append(i).append(": [");
+			int n = getNumChoices(i);
+			for (int j = 0; j < n; j++) {
+				if (j > 0)
+					s.append(",");
+				Object o = getAction(i, j);
+				if (o != null)
+					s.append(o).append(":");
+				s.append(new Distribution(getTransitionsIterator(i, j)));
+			}
+			s.append("]");
+		}
+		return s.append(" ]").toString();
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (o == null || !(o instanceof MDPOffHeap))
+			return false;
+		MDPOffHeap mdp = (MDPOffHeap) o;
+		if (numStates != mdp.numStates)
+			return false;
+		if (!initialStates.equals(mdp.initialStates))
+			return false;
+		return nonZeros.contentEquals(mdp.nonZeros) && cols.contentEquals(mdp.cols) && choiceStarts.contentEquals(mdp.choiceStarts)
+				&& rowStarts.contentEquals(mdp.rowStarts);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		// Consistent with equals(): equal models have the same numbers of states and transitions
+		return 31 * numStates + Long.hashCode(numTransitions);
+	}
+}
@@ -27,10 +27,7 @@
 
 package explicit;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.BitSet;
@@ -43,6 +40,7 @@ import java.util.TreeMap;
 import common.IterableStateSet;
 import explicit.rewards.MCRewards;
 import explicit.rewards.MDPRewards;
+import parser.ExplicitFilesParser;
 import parser.State;
 import prism.PrismException;
 import prism.PrismUtils;
@@ -78,6 +76,31 @@ public class MDPSparse extends MDPExplicit
 
 	// Constructors
 
+	/**
+	 * Constructor: build from the arrays of a sparse matrix directly (they are stored, not copied).
+	 * Initial states, deadlocks, etc. have to be set separately.
+	 * @param numStates Number of states
+	 * @param rowStarts Start of the choices of each state (array of size numStates+1)
+	 * @param choiceStarts Start of the transitions of each choice (array of size numDistrs+1)
+	 * @param cols Target state of each transition
+	 * @param nonZeros Probability of each transition
+	 * @param actions Action label of each choice (null if there are no actions)
+	 */
+	public MDPSparse(int numStates, int[] rowStarts, int[] choiceStarts, int[] cols, double[] nonZeros, Object[] actions)
+	{
+		initialise(numStates);
+		this.rowStarts = rowStarts;
+		this.choiceStarts = choiceStarts;
+		this.cols = cols;
+		this.nonZeros = nonZeros;
+		this.actions = actions;
+		numDistrs = rowStarts[numStates];
+		numTransitions = choiceStarts[numDistrs];
+		for (int s = 0; s < numStates; s++) {
+			maxNumDistrs = Math.max(maxNumDistrs, rowStarts[s + 1] - rowStarts[s]);
+		}
+	}
+
 	/**
 	 * Constructor: Build new MDPSparse from arbitrary MDP type.
 	 *
@@ -389,85 +412,20 @@ public class MDPSparse extends MDPExplicit
 	@Override
 	public void buildFromPrismExplicit(String filename) throws PrismException
 	{
-		BufferedReader in;
-		String s, ss[];
-		int i, j, k, iLast, kLast, jCount, kCount, n, lineNum = 0;
-		double prob;
-
-		try {
-			// Open file
-			in = new BufferedReader(new FileReader(new File(filename)));
-			// Parse first line to get num states
-			s = in.readLine();
-			lineNum = 1;
-			if (s == null) {
-				in.close();
-				throw new PrismException("Missing first line of .tra file");
-			}
-			ss = s.split(" ");
-			n = Integer.parseInt(ss[0]);
-			// Initialise
-			initialise(n);
-			// Set initial state (assume 0)
-			initialStates.add(0);
-			// Store stats
-			numDistrs = Integer.parseInt(ss[1]);
-			numTransitions = Integer.parseInt(ss[2]);
-			// Go though list of transitions in file
-			iLast = -1;
-			kLast = -1;
-			jCount = kCount = 0;
-			s = in.readLine();
-			lineNum++;
-			while (s != null) {
-				s = s.trim();
-				if (s.length() > 0) {
-					ss = s.split(" ");
-					i = Integer.parseInt(ss[0]);
-					k = Integer.parseInt(ss[1]);
-					j = Integer.parseInt(ss[2]);
-					prob = Double.parseDouble(ss[3]);
-					// For a new state
-					if (i != iLast) {
-						rowStarts[i] = kCount;
-					}
-					// For a new state or distribution
-					if (i != iLast || k != kLast) {
-						choiceStarts[kCount] = jCount;
-						kCount++;
-					}
-					// Store transition
-					cols[jCount] = j;
-					nonZeros[jCount] = prob;
-					// Prepare for next iter
-					iLast = i;
-					kLast = k;
-					jCount++;
-				}
-				s = in.readLine();
-				lineNum++;
-			}
-			choiceStarts[numDistrs] = numTransitions;
-			rowStarts[numStates] = numDistrs;
-			// Compute maxNumDistrs
-			maxNumDistrs = 0;
-			for (i = 0; i < numStates; i++) {
-				maxNumDistrs = Math.max(maxNumDistrs, getNumChoices(i));
-			}
-			// Close file
-			in.close();
-			// Sanity checks
-			if (kCount != numDistrs) {
-				throw new PrismException("Choice count is wrong in tra file (" + kCount + "!=" + numTransitions + ")");
-			}
-			if (jCount != numTransitions) {
-				throw new PrismException("Transition count is wrong in tra file (" + kCount + "!=" + numTransitions + ")");
-			}
-		} catch (IOException e) {
-			System.exit(1);
-		} catch (NumberFormatException e) {
-			throw new PrismException("Problem in .tra file (line " + lineNum + ") for " + getModelType());
-		}
+		MDPSparse mdp = ExplicitFiles2Model.buildMDPSparse(new ExplicitFilesParser(1).parseTransitions(new File(filename), true), false, 1);
+		// Initialise
+		initialise(mdp.getNumStates());
+		// Set initial state (assume 0)
+		initialStates.add(0);
+		// Copy matrix and stats
+		rowStarts = mdp.rowStarts;
+		choiceStarts = mdp.choiceStarts;
+		cols = mdp.cols;
+		nonZeros = mdp.nonZeros;
+		actions = mdp.actions;
+		numDistrs = mdp.numDistrs;
+		numTransitions = mdp.numTransitions;
+		maxNumDistrs = mdp.maxNumDistrs;
 	}
 
 	// Accessors (for Model)
@@ -0,0 +1,287 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+
+package explicit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import prism.PrismException;
+
+/**
+ * Array of ints, longs or doubles, indexed by a {@code long} and stored outside
+ * the Java heap, either in direct buffers or in memory-mapped files. Used for the sparse
+ * matrices of models that are too large for Java arrays (more than 2^31 entries)
+ * or for the heap (see {@link DTMCOffHeap} and {@link MDPOffHeap}).
+ * <br>
+ * The storage is split into segments of (at most) 2^30 bytes, each a separate buffer,
+ * so elements never straddle two segments. An array stores elements of a single size
+ * (4 or 8 bytes); the accessors must match this, e.g. {@link #getInt(long)} for an array
+ * created by {@link #allocateInts(long, File)}. Allocated (rather than file-mapped) arrays
+ * can be grown with {@link #ensureLength(long)}, e.g. while building a model.
+ */
+public final class OffHeapArray
+{
+	/** Size of a segment (in bytes, as a power of two) */
+	private static final int SEGMENT_BITS = 30;
+	private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+	/** The segments (all but the last one are of the maximum size) */
+	private ByteBuffer segments[];
+	/** Number of elements */
+	private long length;
+	/** log2 of element size */
+	private final int shift;
+	/** Can the array be grown? */
+	private final boolean growable;
+	/** Directory for the memory-mapped files of new segments (null: direct buffers) */
+	private final File dir;
+
+	private OffHeapArray(ByteBuffer segments[], long length, int shift, boolean growable, File dir)
+	{
+		this.segments = segments;
+		this.length = length;
+		this.shift = shift;
+		this.growable = growable;
+		this.dir = dir;
+	}
+
+	/**
+	 * Allocate an (zero-initialised) array of {@code length} ints.
+	 * @param dir Directory for (temporary) memory-mapped files to hold the array;
+	 * if null, direct buffers are used (these count towards -XX:MaxDirectMemorySize)
+	 */
+	public static OffHeapArray allocateInts(long length, File dir) throws PrismException
+	{
+		return allocate(length, 2, dir);
+	}
+
+	/**
+	 * Allocate an (zero-initialised) array of {@code length} longs.
+	 * @param dir Directory for (temporary) memory-mapped files to hold the array (null: direct buffers)
+	 */
+	public static OffHeapArray allocateLongs(long length, File dir) throws PrismException
+	{
+		return allocate(length, 3, dir);
+	}
+
+	/**
+	 * Allocate an (zero-initialised) array of {@code length} doubles.
+	 * @param dir Directory for (temporary) memory-mapped files to hold the array (null: direct buffers)
+	 */
+	public static OffHeapArray allocateDoubles(long length, File dir) throws PrismException
+	{
+		return allocate(length, 3, dir);
+	}
+
+	private static OffHeapArray allocate(long length, int shift, File dir) throws PrismException
+	{
+		long bytes = length << shift;
+		ByteBuffer segments[] = new ByteBuffer[numSegments(bytes)];
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = allocateSegment(segmentSize(bytes, i), dir);
+		}
+		return new OffHeapArray(segments, length, shift, true, dir);
+	}
+
+	/**
+	 * Allocate a (zero-initialised) segment of {@code size} bytes,
+	 * as a direct buffer (if {@code dir} is null) or as a temporary memory-mapped file in {@code dir}.
+	 */
+	private static ByteBuffer allocateSegment(int size, File dir) throws PrismException
+	{
+		if (dir == null) {
+			try {
+				return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+			} catch (OutOfMemoryError e) {
+				throw new PrismException("Out of direct memory allocating " + size + " bytes (try -offheapdir or increase -XX:MaxDirectMemorySize)");
+			}
+		}
+		File file = null;
+		try {
+			file = File.createTempFile("prism-offheap", ".bin", dir);
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(size);
+				return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size).order(ByteOrder.nativeOrder());
+			}
+		} catch (IOException e) {
+			throw new PrismException("Could not create memory-mapped file in \"" + dir + "\": " + e.getMessage());
+		} finally {
+			// the mapping stays valid after the file is closed; remove it once no longer needed
+			if (file != null && !file.delete())
+				file.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Create a (read-only) array of ints that is a region of a file, stored little-endian
+	 * at byte offset {@code offset}. The file is memory-mapped, i.e., not read into memory.
+	 */
+	public static OffHeapArray mapInts(File file, long offset, long length) throws PrismException
+	{
+		return map(file, offset, length, 2);
+	}
+
+	/**
+	 * Create a (read-only) array of doubles that is a region of a file, stored little-endian
+	 * at byte offset {@code offset}. The file is memory-mapped, i.e., not read into memory.
+	 */
+	public static OffHeapArray mapDoubles(File file, long offset, long length) throws PrismException
+	{
+		return map(file, offset, length, 3);
+	}
+
+	private static OffHeapArray map(File file, long offset, long length, int shift) throws PrismException
+	{
+		long bytes = length << shift;
+		ByteBuffer segments[] = new ByteBuffer[numSegments(bytes)];
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			for (int i = 0; i < segments.length; i++) {
+				long start = offset + ((long) i << SEGMENT_BITS);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, segmentSize(bytes, i)).order(ByteOrder.LITTLE_ENDIAN);
+			}
+		} catch (IOException e) {
+			throw new PrismException("Could not memory-map file \"" + file + "\": " + e.getMessage());
+		}
+		return new OffHeapArray(segments, length, shift, false, null);
+	}
+
+	/** Number of segments needed for {@code bytes} bytes */
+	private static int numSegments(long bytes)
+	{
+		return (int) Math.max(1, (bytes + SEGMENT_MASK) >>> SEGMENT_BITS);
+	}
+
+	/** Size of segment {@code i} for a total of {@code bytes} bytes */
+	private static int segmentSize(long bytes, int i)
+	{
+		return (int) Math.min(1L << SEGMENT_BITS, bytes - ((long) i << SEGMENT_BITS));
+	}
+
+	/**
+	 * Get the number of elements.
+	 */
+	public long length()
+	{
+		return length;
+	}
+
+	/**
+	 * Grow the array (if needed) so that it has at least {@code minLength} elements, keeping
+	 * its contents; new elements are zero. To allow repeated growing, the length is increased
+	 * by a constant factor, so it is typically larger than {@code minLength} afterwards.
+	 * Only possible for arrays created by one of the {@code allocate} methods. Growing is not
+	 * thread-safe: the array must not be accessed concurrently while this method is running.
+	 */
+	public void ensureLength(long minLength) throws PrismException
+	{
+		if (minLength <= length)
+			return;
+		if (!growable)
+			throw new UnsupportedOperationException("Memory-mapped file regions cannot be grown");
+		long newLength = Math.max(minLength, length + (length >> 1) + 1024);
+		long bytes = newLength << shift;
+		int last = segments.length - 1;
+		ByteBuffer newSegments[] = Arrays.copyOf(segments, numSegments(bytes));
+		// Only the last segment can be smaller than the maximum size: replace it with a larger one
+		int lastSize = segmentSize(bytes, last);
+		if (segments[last].capacity() < lastSize) {
+			ByteBuffer old = segments[last].duplicate();
+			old.clear();
+			newSegments[last] = allocateSegment(lastSize, dir);
+			newSegments[last].put(old);
+			newSegments[last].clear();
+		}
+		for (int i = last + 1; i < newSegments.length; i++) {
+			newSegments[i] = allocateSegment(segmentSize(bytes, i), dir);
+		}
+		segments = newSegments;
+		length = newLength;
+	}
+
+	/**
+	 * Get the number of bytes used.
+	 */
+	public long getNumBytes()
+	{
+		return length << shift;
+	}
+
+	public int getInt(long i)
+	{
+		long pos = i << 2;
+		return segments[(int) (pos >>> SEGMENT_BITS)].getInt((int) (pos & SEGMENT_MASK));
+	}
+
+	public void setInt(long i, int value)
+	{
+		long pos = i << 2;
+		segments[(int) (pos >>> SEGMENT_BITS)].putInt((int) (pos & SEGMENT_MASK), value);
+	}
+
+	public long getLong(long i)
+	{
+		long pos = i << 3;
+		return segments[(int) (pos >>> SEGMENT_BITS)].getLong((int) (pos & SEGMENT_MASK));
+	}
+
+	public void setLong(long i, long value)
+	{
+		long pos = i << 3;
+		segments[(int) (pos >>> SEGMENT_BITS)].putLong((int) (pos & SEGMENT_MASK), value);
+	}
+
+	public double getDouble(long i)
+	{
+		long pos = i << 3;
+		return segments[(int) (pos >>> SEGMENT_BITS)].getDouble((int) (pos & SEGMENT_MASK));
+	}
+
+	public void setDouble(long i, double value)
+	{
+		long pos = i << 3;
+		segments[(int) (pos >>> SEGMENT_BITS)].putDouble((int) (pos & SEGMENT_MASK), value);
+	}
+
+	/**
+	 * Check whether two arrays store the same elements (of the same size).
+	 */
+	public boolean contentEquals(OffHeapArray other)
+	{
+		if (length != other.length || shift != other.shift)
+			return false;
+		for (long i = 0; i < length; i++) {
+			if ((shift == 2 ? getInt(i) != other.getInt(i) : getLong(i) != other.getLong(i)))
+				return false;
+		}
+		return true;
+	}
+}
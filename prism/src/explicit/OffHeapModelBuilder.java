@@ -0,0 +1,348 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package explicit;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+
+import parser.VarList;
+import prism.PrismException;
+
+/**
+ * Append-only builder for DTMCs and MDPs whose transition matrix is stored outside the Java heap,
+ * i.e. {@link DTMCOffHeap} and {@link MDPOffHeap}, like {@link SparseModelBuilder} for the on-heap
+ * sparse models. The transitions are stored in (growable) {@link OffHeapArray}s, indexed by longs,
+ * while they are added, so neither the number of transitions nor the size of the matrix
+ * is limited by Java arrays or the heap. (The number of choices of an MDP is limited to 2^31,
+ * as for {@link MDPOffHeap}.)
+ * <br>
+ * When building, the final (exactly sized) arrays are created, applying the permutation
+ * of the state indices, if any; within each choice, transitions are sorted by (new) target index.
+ */
+public class OffHeapModelBuilder implements DirectModelBuilder
+{
+	/** Build an MDP (rather than a DTMC)? */
+	private final boolean nondet;
+	/** Directory for memory-mapped files storing the matrix (null: use direct buffers) */
+	private final File dir;
+
+	/** Number of states added */
+	private int numStates = 0;
+	/** Number of choices added (equal to numStates for DTMCs) */
+	private int numChoices = 0;
+	/** Number of transitions added */
+	private long numTransitions = 0;
+	/** Indices into choiceStarts giving the start of the choices of each state (ints) */
+	private OffHeapArray rowStarts;
+	/** Indices into cols/probs giving the start of each choice (longs) */
+	private OffHeapArray choiceStarts;
+	/** Target indices for each transition (ints) */
+	private OffHeapArray cols;
+	/** Probabilities for each transition (doubles) */
+	private OffHeapArray probs;
+	/** Actions for each choice (null if there are none) */
+	private Object[] actions = null;
+
+	/** Initial states */
+	private BitSet initialStates = new BitSet();
+	/** Deadlock states (see {@link #findDeadlocks(boolean)}) */
+	private BitSet deadlocks = new BitSet();
+	/** Add self-loops to deadlock states when building? */
+	private boolean fixDeadlocks = false;
+
+	/** Transitions of a single choice, for sorting */
+	private int[] choiceCols = new int[16];
+	private double[] choiceProbs = new double[16];
+
+	/**
+	 * Create a builder.
+	 * @param nondet Build an MDP (true) or a DTMC (false)?
+	 * @param dir Directory for memory-mapped files storing the matrix (null: use direct buffers)
+	 */
+	public OffHeapModelBuilder(boolean nondet, File dir) throws PrismException
+	{
+		this.nondet = nondet;
+		this.dir = dir;
+		rowStarts = OffHeapArray.allocateInts(1024, dir);
+		choiceStarts = OffHeapArray.allocateLongs(1024, dir);
+		cols = OffHeapArray.allocateInts(4096, dir);
+		probs = OffHeapArray.allocateDoubles(4096, dir);
+	}
+
+	@Override
+	public int getNumStates()
+	{
+		return numStates;
+	}
+
+	@Override
+	public int addState() throws PrismException
+	{
+		finishState();
+		rowStarts.ensureLength(numStates + 2L);
+		numStates++;
+		return numStates - 1;
+	}
+
+	@Override
+	public void addInitialState(int s)
+	{
+		initialStates.set(s);
+	}
+
+	@Override
+	public void setDistribution(DistributionPrimitive distr) throws PrismException
+	{
+		if (nondet)
+			throw new UnsupportedOperationException("setDistribution() is only available for DTMCs");
+		if (numChoices == numStates)
+			throw new IllegalStateException("Distribution already set for state " + (numStates - 1));
+		startChoice();
+		for (int k = 0, n = distr.size(); k < n; k++) {
+			if (distr.getProbability(k) != 0.0) {
+				addTransition(distr.getIndex(k), distr.getProbability(k));
+			}
+		}
+	}
+
+	@Override
+	public int addChoice(DistributionPrimitive distr, Object action) throws PrismException
+	{
+		if (!nondet)
+			throw new UnsupportedOperationException("addChoice() is only available for MDPs");
+		// Sort the transitions (on the heap), then check for an identical existing choice
+		int n = distr.size();
+		ensureChoiceCapacity(n);
+		for (int k = 0; k < n; k++) {
+			choiceCols[k] = distr.getIndex(k);
+			choiceProbs[k] = distr.getProbability(k);
+		}
+		SparseModelBuilder.sortTransitions(choiceCols, choiceProbs, 0, n);
+		int first = rowStarts.getInt(numStates - 1);
+		for (int c = first; c < numChoices; c++) {
+			if (Objects.equals(getAction(c), action) && equalTransitions(choiceStarts.getLong(c), choiceStarts.getLong(c + 1), n)) {
+				return c - first;
+			}
+		}
+		startChoice();
+		for (int k = 0; k < n; k++) {
+			addTransition(choiceCols[k], choiceProbs[k]);
+		}
+		if (action != null) {
+			if (actions == null) {
+				actions = new Object[Math.max(numChoices, 1024)];
+			} else if (numChoices > actions.length) {
+				actions = Arrays.copyOf(actions, (int) Math.min(Integer.MAX_VALUE - 8, 2L * numChoices));
+			}
+			actions[numChoices - 1] = action;
+		}
+		return numChoices - 1 - first;
+	}
+
+	@Override
+	public void findDeadlocks(boolean fix)
+	{
+		finishState();
+		deadlocks.clear();
+		for (int s = 0; s < numStates; s++) {
+			int c1 = rowStarts.getInt(s);
+			int c2 = rowStarts.getInt(s + 1);
+			if (nondet ? c1 == c2 : choiceStarts.getLong(c1) == choiceStarts.getLong(c2)) {
+				deadlocks.set(s);
+			}
+		}
+		fixDeadlocks = fix;
+	}
+
+	@Override
+	public DTMCOffHeap buildDTMC(int[] permut, VarList varList) throws PrismException
+	{
+		if (nondet)
+			throw new UnsupportedOperationException("Builder is for MDPs");
+		Permuted p = permute(permut);
+		// DTMCs have a single "choice" per state, so row and choice starts coincide
+		OffHeapArray rows = OffHeapArray.allocateLongs(numStates + 1L, dir);
+		for (int s = 0; s <= numStates; s++) {
+			rows.setLong(s, p.choiceStarts.getLong(p.rowStarts.getInt(s)));
+		}
+		DTMCOffHeap dtmc = new DTMCOffHeap(numStates, rows, p.cols, p.probs);
+		finish(dtmc, permut, varList);
+		return dtmc;
+	}
+
+	@Override
+	public MDPOffHeap buildMDP(int[] permut, VarList varList) throws PrismException
+	{
+		if (!nondet)
+			throw new UnsupportedOperationException("Builder is for DTMCs");
+		Permuted p = permute(permut);
+		MDPOffHeap mdp = new MDPOffHeap(numStates, p.rowStarts, p.choiceStarts, p.cols, p.probs, p.actions);
+		finish(mdp, permut, varList);
+		return mdp;
+	}
+
+	// Local utility methods
+
+	/** Start a new choice for the last added state */
+	private void startChoice() throws PrismException
+	{
+		if (numStates == 0)
+			throw new IllegalStateException("No state added yet");
+		if (numChoices == Integer.MAX_VALUE - 1)
+			throw new PrismException("Too many choices for an off-heap model");
+		choiceStarts.ensureLength(numChoices + 2L);
+		choiceStarts.setLong(numChoices, numTransitions);
+		numChoices++;
+		choiceStarts.setLong(numChoices, numTransitions);
+	}
+
+	/** Add a transition to the last choice */
+	private void addTransition(int dest, double prob) throws PrismException
+	{
+		cols.ensureLength(numTransitions + 1);
+		probs.ensureLength(numTransitions + 1);
+		cols.setInt(numTransitions, dest);
+		probs.setDouble(numTransitions, prob);
+		numTransitions++;
+		choiceStarts.setLong(numChoices, numTransitions);
+	}
+
+	/** Finish the last added state (if any), i.e. record where its choices end */
+	private void finishState()
+	{
+		rowStarts.setInt(numStates, numChoices);
+		choiceStarts.setLong(numChoices, numTransitions);
+	}
+
+	/** Get the action of choice {@code c} */
+	private Object getAction(int c)
+	{
+		return (actions == null || c >= actions.length) ? null : actions[c];
+	}
+
+	/** Make sure that choiceCols/choiceProbs can hold {@code n} transitions */
+	private void ensureChoiceCapacity(int n)
+	{
+		if (n > choiceCols.length) {
+			int m = Math.max(n, 2 * choiceCols.length);
+			choiceCols = new int[m];
+			choiceProbs = new double[m];
+		}
+	}
+
+	/** Are the transitions in range [start,end) (sorted) identical to the first n of choiceCols/choiceProbs? */
+	private boolean equalTransitions(long start, long end, int n)
+	{
+		if (end - start != n)
+			return false;
+		for (int k = 0; k < n; k++) {
+			if (cols.getInt(start + k) != choiceCols[k] || probs.getDouble(start + k) != choiceProbs[k])
+				return false;
+		}
+		return true;
+	}
+
+	/** The transition arrays, after permutation */
+	private static class Permuted
+	{
+		OffHeapArray rowStarts;
+		OffHeapArray choiceStarts;
+		OffHeapArray cols;
+		OffHeapArray probs;
+		Object[] actions;
+	}
+
+	/**
+	 * Create the final (exactly sized) transition arrays, applying the permutation {@code permut}
+	 * (if non-null) and adding self-loops to deadlock states (if required).
+	 */
+	private Permuted permute(int[] permut) throws PrismException
+	{
+		finishState();
+		int numFixed = fixDeadlocks ? deadlocks.cardinality() : 0;
+		int[] permutInv = null;
+		if (permut != null) {
+			permutInv = new int[numStates];
+			for (int s = 0; s < numStates; s++) {
+				permutInv[permut[s]] = s;
+			}
+		}
+		Permuted p = new Permuted();
+		p.rowStarts = OffHeapArray.allocateInts(numStates + 1L, dir);
+		p.choiceStarts = OffHeapArray.allocateLongs((long) numChoices + numFixed + 1, dir);
+		p.cols = OffHeapArray.allocateInts(numTransitions + numFixed, dir);
+		p.probs = OffHeapArray.allocateDoubles(numTransitions + numFixed, dir);
+		p.actions = (actions == null) ? null : new Object[numChoices + numFixed];
+		int c = 0;
+		long t = 0;
+		for (int s = 0; s < numStates; s++) {
+			int sOld = permutInv == null ? s : permutInv[s];
+			p.rowStarts.setInt(s, c);
+			if (fixDeadlocks && deadlocks.get(sOld)) {
+				p.choiceStarts.setLong(c++, t);
+				p.cols.setInt(t, s);
+				p.probs.setDouble(t++, 1.0);
+				continue;
+			}
+			for (int cOld = rowStarts.getInt(sOld), cEnd = rowStarts.getInt(sOld + 1); cOld < cEnd; cOld++) {
+				p.choiceStarts.setLong(c, t);
+				if (p.actions != null) {
+					p.actions[c] = getAction(cOld);
+				}
+				long tOld = choiceStarts.getLong(cOld);
+				int n = (int) (choiceStarts.getLong(cOld + 1) - tOld);
+				ensureChoiceCapacity(n);
+				for (int k = 0; k < n; k++) {
+					int col = cols.getInt(tOld + k);
+					choiceCols[k] = permut == null ? col : permut[col];
+					choiceProbs[k] = probs.getDouble(tOld + k);
+				}
+				SparseModelBuilder.sortTransitions(choiceCols, choiceProbs, 0, n);
+				for (int k = 0; k < n; k++, t++) {
+					p.cols.setInt(t, choiceCols[k]);
+					p.probs.setDouble(t, choiceProbs[k]);
+				}
+				c++;
+			}
+		}
+		p.rowStarts.setInt(numStates, c);
+		p.choiceStarts.setLong(c, t);
+		return p;
+	}
+
+	/** Set the initial/deadlock states and variable info of a built model */
+	private void finish(ModelExplicit model, int[] permut, VarList varList)
+	{
+		for (int s = initialStates.nextSetBit(0); s >= 0; s = initialStates.nextSetBit(s + 1)) {
+			model.addInitialState(permut == null ? s : permut[s]);
+		}
+		for (int s = deadlocks.nextSetBit(0); s >= 0; s = deadlocks.nextSetBit(s + 1)) {
+			model.addDeadlockState(permut == null ? s : permut[s]);
+		}
+		model.setVarList(varList);
+	}
+}
@@ -0,0 +1,399 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package explicit;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import parser.PackedState;
+
+/**
+ * Class storing an indexed set of packed states (see {@link parser.StatePacker}),
+ * typically used for storing the state space during reachability.
+ * <br>
+ * The packed words of all states are stored contiguously, in blocks of long arrays,
+ * and are indexed by an open-addressing (linear probing) hash table of state indices.
+ * So, unlike a sorted {@link IndexedSet}, lookups take (expected) constant time and
+ * no objects are created per state. States are not kept sorted during exploration:
+ * {@link #buildSortingPermutation()} sorts them afterwards, using a radix sort on the
+ * packed words, which gives the same order as {@link PackedState#compareTo(PackedState)}.
+ * <br>
+ * The methods taking packed words ({@link #add(long[], int)} etc.) avoid the need
+ * to create a PackedState object for each lookup.
+ */
+public class PackedIndexedSet implements StateStorage<PackedState>
+{
+	/** Number of states per block of the word storage (as a power of two) */
+	private static final int BLOCK_BITS = 16;
+	private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+	private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+	/** Maximum number of bits used to select a slot (the table must fit in a Java array) */
+	private static final int MAX_TABLE_BITS = 30;
+	/** Maximum number of states (once the table has its maximum size, a load factor of up to 3/4 is allowed) */
+	public static final int MAX_SIZE = 3 << (MAX_TABLE_BITS - 2);
+
+	/** Number of words per state */
+	private final int numWords;
+	/** Packed words of the states, by index, {@code numWords} per state (blocks are allocated on demand) */
+	private long[][] blocks = new long[16][];
+	/** Number of states stored */
+	private int size;
+	/** Hash table: index + 1 of the state in each slot (0 means empty) */
+	private int[] table;
+	/** Number of bits of the hash used to select a slot (table size is 2^tableBits) */
+	private int tableBits;
+	/** Index of the state found/added by the last call to add */
+	private int indexOfLastAdd = -1;
+
+	/**
+	 * Constructor.
+	 * @param numWords Number of words per packed state
+	 */
+	public PackedIndexedSet(int numWords)
+	{
+		this.numWords = numWords;
+		tableBits = 10;
+		table = new int[1 << tableBits];
+	}
+
+	/**
+	 * Add a state, given as packed words (starting at {@code offset} in {@code words}),
+	 * if it is not already present. Returns true if it was added.
+	 * Either way, its index is then available from {@link #getIndexOfLastAdd()}.
+	 * Throws an {@link IllegalStateException} if the set is full (see {@link #MAX_SIZE}).
+	 */
+	public boolean add(long[] words, int offset)
+	{
+		int slot = findSlot(words, offset);
+		if (table[slot] != 0) {
+			indexOfLastAdd = table[slot] - 1;
+			return false;
+		}
+		if (size == MAX_SIZE)
+			throw new IllegalStateException("Too many states for packed state storage (at most " + MAX_SIZE + " are supported)");
+		// Store the words of the new state
+		int index = size;
+		int block = index >>> BLOCK_BITS;
+		if (block == blocks.length) {
+			blocks = Arrays.copyOf(blocks, 2 * blocks.length);
+		}
+		if (blocks[block] == null) {
+			blocks[block] = new long[BLOCK_SIZE * numWords];
+		}
+		System.arraycopy(words, offset, blocks[block], (index & BLOCK_MASK) * numWords, numWords);
+		size++;
+		table[slot] = size;
+		indexOfLastAdd = index;
+		// Keep the load factor at most 1/2 (until the table has its maximum size)
+		if (2 * size > table.length && tableBits < MAX_TABLE_BITS) {
+			rehash();
+		}
+		return true;
+	}
+
+	/**
+	 * Get the index of a state, given as packed words (starting at {@code offset} in {@code words}),
+	 * or -1 if it is not present.
+	 */
+	public int get(long[] words, int offset)
+	{
+		return table[findSlot(words, offset)] - 1;
+	}
+
+	/**
+	 * Copy the packed words of the state with index {@code index} into {@code dest}, starting at {@code offset}.
+	 */
+	public void copyWords(int index, long[] dest, int offset)
+	{
+		System.arraycopy(blocks[index >>> BLOCK_BITS], (index & BLOCK_MASK) * numWords, dest, offset, numWords);
+	}
+
+	/**
+	 * Get the state with index {@code index} (as a new PackedState object).
+	 */
+	public PackedState getObject(int index)
+	{
+		long[] words = new long[numWords];
+		copyWords(index, words, 0);
+		return new PackedState(words);
+	}
+
+	/**
+	 * Get the packed words of all states, in a single array, ordered by permuted index
+	 * (index in the new array is {@code permut[old_index]}), or by index if {@code permut} is null.
+	 */
+	public long[] toPermutedWords(int permut[])
+	{
+		long[] words = new long[Math.multiplyExact(size, numWords)];
+		for (int i = 0; i < size; i++) {
+			copyWords(i, words, (permut == null ? i : permut[i]) * numWords);
+		}
+		return words;
+	}
+
+	/**
+	 * Find the slot of the hash table containing a state (given as packed words),
+	 * or the empty slot where it would be added.
+	 */
+	private int findSlot(long[] words, int offset)
+	{
+		int mask = table.length - 1;
+		int slot = hash(words, offset);
+		while (true) {
+			int entry = table[slot];
+			if (entry == 0 || equalsStored(entry - 1, words, offset)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Compute the hash table slot for a state (given as packed words).
+	 */
+	private int hash(long[] words, int offset)
+	{
+		long h = 0;
+		for (int i = 0; i < numWords; i++) {
+			h = (h + words[offset + i]) * 0x9E3779B97F4A7C15L;
+		}
+		// use the high bits, which are the best mixed
+		return (int) (h >>> (64 - tableBits));
+	}
+
+	/**
+	 * Check whether the state with index {@code index} equals a state given as packed words.
+	 */
+	private boolean equalsStored(int index, long[] words, int offset)
+	{
+		long[] block = blocks[index >>> BLOCK_BITS];
+		int start = (index & BLOCK_MASK) * numWords;
+		for (int i = 0; i < numWords; i++) {
+			if (block[start + i] != words[offset + i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Double the size of the hash table.
+	 */
+	private void rehash()
+	{
+		tableBits++;
+		table = new int[1 << tableBits];
+		int mask = table.length - 1;
+		for (int index = 0; index < size; index++) {
+			long[] block = blocks[index >>> BLOCK_BITS];
+			int slot = hash(block, (index & BLOCK_MASK) * numWords);
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = index + 1;
+		}
+	}
+
+	/**
+	 * Get the {@code w}th word of the state with index {@code index}.
+	 */
+	private long getWord(int index, int w)
+	{
+		return blocks[index >>> BLOCK_BITS][(index & BLOCK_MASK) * numWords + w];
+	}
+
+	// Methods for StateStorage interface
+
+	@Override
+	public int get(PackedState state)
+	{
+		return get(wordsOf(state), 0);
+	}
+
+	@Override
+	public boolean add(PackedState state)
+	{
+		return add(wordsOf(state), 0);
+	}
+
+	@Override
+	public boolean contains(PackedState state)
+	{
+		return get(state) != -1;
+	}
+
+	/**
+	 * Get the packed words of a PackedState, as an array.
+	 */
+	private long[] wordsOf(PackedState state)
+	{
+		if (state.getNumWords() != numWords)
+			throw new ClassCastException("States are different sizes");
+		long[] words = new long[numWords];
+		state.copyWords(words, 0);
+		return words;
+	}
+
+	@Override
+	public void clear()
+	{
+		blocks = new long[16][];
+		size = 0;
+		tableBits = 10;
+		table = new int[1 << tableBits];
+		indexOfLastAdd = -1;
+	}
+
+	@Override
+	public int getIndexOfLastAdd()
+	{
+		return indexOfLastAdd;
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Get a set of the map entries (a copy, in index order).
+	 */
+	@Override
+	public Set<Map.Entry<PackedState, Integer>> getEntrySet()
+	{
+		Set<Map.Entry<PackedState, Integer>> entries = new LinkedHashSet<Map.Entry<PackedState, Integer>>();
+		for (int i = 0; i < size; i++) {
+			entries.add(new AbstractMap.SimpleImmutableEntry<PackedState, Integer>(getObject(i), i));
+		}
+		return entries;
+	}
+
+	@Override
+	public ArrayList<PackedState> toArrayList()
+	{
+		ArrayList<PackedState> list = new ArrayList<PackedState>(size);
+		toArrayList(list);
+		return list;
+	}
+
+	@Override
+	public void toArrayList(ArrayList<PackedState> list)
+	{
+		for (int i = 0; i < size; i++) {
+			list.add(getObject(i));
+		}
+	}
+
+	@Override
+	public ArrayList<PackedState> toPermutedArrayList(int permut[])
+	{
+		ArrayList<PackedState> list = new ArrayList<PackedState>(size);
+		toPermutedArrayList(permut, list);
+		return list;
+	}
+
+	@Override
+	public void toPermutedArrayList(int permut[], ArrayList<PackedState> list)
+	{
+		for (int i = 0; i < size; i++)
+			list.add(null);
+		for (int i = 0; i < size; i++) {
+			list.set(permut[i], getObject(i));
+		}
+	}
+
+	/**
+	 * Build sort permutation, i.e., a permutation (integer array) mapping current indices
+	 * to new indices under the natural ordering of the states (see {@link PackedState#compareTo(PackedState)}).
+	 * The states are sorted here with an LSD radix sort (16 bits at a time) on the packed words,
+	 * skipping digits that are the same for all states.
+	 */
+	@Override
+	public int[] buildSortingPermutation()
+	{
+		int n = size;
+		int sorted[] = new int[n];
+		int tmp[] = new int[n];
+		for (int i = 0; i < n; i++) {
+			sorted[i] = i;
+		}
+		int counts[] = new int[1 << 16];
+		// Least significant digit first: last word, lowest bits
+		for (int w = numWords - 1; w >= 0; w--) {
+			for (int shift = 0; shift < 64; shift += 16) {
+				Arrays.fill(counts, 0);
+				for (int i = 0; i < n; i++) {
+					counts[(int) (getWord(i, w) >>> shift) & 0xFFFF]++;
+				}
+				// Skip this digit if it is the same for all states
+				if (n == 0 || counts[(int) (getWord(0, w) >>> shift) & 0xFFFF] == n) {
+					continue;
+				}
+				// (words compare as unsigned, so digits are ordered as unsigned too)
+				int total = 0;
+				for (int d = 0; d < counts.length; d++) {
+					int c = counts[d];
+					counts[d] = total;
+					total += c;
+				}
+				for (int i = 0; i < n; i++) {
+					int index = sorted[i];
+					tmp[counts[(int) (getWord(index, w) >>> shift) & 0xFFFF]++] = index;
+				}
+				int swap[] = sorted;
+				sorted = tmp;
+				tmp = swap;
+			}
+		}
+		// Convert the sorted list of indices to a permutation
+		int perm[] = tmp;
+		for (int i = 0; i < n; i++) {
+			perm[sorted[i]] = i;
+		}
+		return perm;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder s = new StringBuilder("{");
+		for (int i = 0; i < size; i++) {
+			if (i > 0)
+				s.append(", ");
+			s.append(getObject(i)).append("=").append(i);
+		}
+		return s.append("}").toString();
+	}
+}
@@ -75,6 +75,8 @@ public class ProbModelChecker extends NonProbModelChecker
 	protected double termCritParam = 1e-8;
 	// Max iterations for numerical solution
 	protected int maxIters = 100000;
+	// Number of worker threads for numerical solution (1 = single-threaded)
+	protected int numThreads = 1;
 	// Use precomputation algorithms in model checking?
 	protected boolean precomp = true;
 	protected boolean prob0 = true;
@@ -217,6 +219,8 @@ public class ProbModelChecker extends NonProbModelChecker
 			setTermCritParam(settings.getDouble(PrismSettings.PRISM_TERM_CRIT_PARAM));
 			// PRISM_MAX_ITERS
 			setMaxIters(settings.getInteger(PrismSettings.PRISM_MAX_ITERS));
+			// PRISM_NUM_THREADS
+			setNumThreads(settings.getInteger(PrismSettings.PRISM_NUM_THREADS));
 			// PRISM_PRECOMPUTATION
 			setPrecomp(settings.getBoolean(PrismSettings.PRISM_PRECOMPUTATION));
 			// PRISM_PROB0
@@ -254,6 +258,7 @@ public class ProbModelChecker extends NonProbModelChecker
 		setTermCrit(other.getTermCrit());
 		setTermCritParam(other.getTermCritParam());
 		setMaxIters(other.getMaxIters());
+		setNumThreads(other.getNumThreads());
 		setPrecomp(other.getPrecomp());
 		setProb0(other.getProb0());
 		setProb1(other.getProb1());
@@ -273,6 +278,7 @@ public class ProbModelChecker extends NonProbModelChecker
 		mainLog.print("termCrit = " + termCrit + " ");
 		mainLog.print("termCritParam = " + termCritParam + " ");
 		mainLog.print("maxIters = " + maxIters + " ");
+		mainLog.print("numThreads = " + numThreads + " ");
 		mainLog.print("precomp = " + precomp + " ");
 		mainLog.print("prob0 = " + prob0 + " ");
 		mainLog.print("prob1 = " + prob1 + " ");
@@ -331,6 +337,15 @@ public class ProbModelChecker extends NonProbModelChecker
 		this.maxIters = maxIters;
 	}
 
+	/**
+	 * Set number of worker threads for numerical iterative methods (1 = single-threaded).
+	 * Only the Power and Jacobi methods are multi-threaded.
+	 */
+	public void setNumThreads(int numThreads)
+	{
+		this.numThreads = numThreads;
+	}
+
 	/**
 	 * Set whether or not to use precomputation (Prob0, Prob1, etc.).
 	 */
@@ -429,6 +444,11 @@ public class ProbModelChecker extends NonProbModelChecker
 		return maxIters;
 	}
 
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
 	public boolean getPrecomp()
 	{
 		return precomp;
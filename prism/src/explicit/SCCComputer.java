@@ -34,6 +34,7 @@ import java.util.function.IntPredicate;
 
 import prism.PrismComponent;
 import prism.PrismException;
+import prism.PrismSettings;
 
 /**
  * Abstract class for (explicit) classes that compute (B)SCCs,
@@ -46,12 +47,16 @@ public abstract class SCCComputer extends PrismComponent
 
 	// Method used for finding (B)SCCs
 	public enum SCCMethod {
-		TARJAN;
+		TARJAN, TARJAN_ITERATIVE, FORWARD_BACKWARD;
 		public String fullName()
 		{
 			switch (this) {
 			case TARJAN:
 				return "Tarjan";
+			case TARJAN_ITERATIVE:
+				return "Tarjan (iterative)";
+			case FORWARD_BACKWARD:
+				return "Forward-backward (multi-threaded)";
 			default:
 				return this.toString();
 			}
@@ -60,11 +65,47 @@ public abstract class SCCComputer extends PrismComponent
 
 	/**
 	 * Static method to create a new SCCComputer object, depending on current settings.
+	 * <br>
+	 * This is (iterative) Tarjan's algorithm, unless multiple threads are enabled
+	 * and the model is large enough, in which case a multi-threaded decomposition is used.
 	 */
 	public static SCCComputer createSCCComputer(PrismComponent parent, Model model, SCCConsumer consumer) throws PrismException
 	{
-		// Only one algorithm implemented currently
-		return new SCCComputerTarjan(parent, model, consumer);
+		return createSCCComputer(parent, model, consumer, chooseSCCMethod(parent, model));
+	}
+
+	/**
+	 * Static method to create a new SCCComputer object, using the given method.
+	 */
+	public static SCCComputer createSCCComputer(PrismComponent parent, Model model, SCCConsumer consumer, SCCMethod method) throws PrismException
+	{
+		switch (method) {
+		case TARJAN:
+			return new SCCComputerTarjan(parent, model, consumer);
+		case FORWARD_BACKWARD:
+			int numThreads = 1;
+			if (parent != null && parent.getSettings() != null)
+				numThreads = parent.getSettings().getInteger(PrismSettings.PRISM_NUM_THREADS);
+			return new SCCComputerParallel(parent, model, consumer, numThreads);
+		case TARJAN_ITERATIVE:
+		default:
+			return new SCCComputerTarjanIterative(parent, model, consumer);
+		}
+	}
+
+	/**
+	 * Choose the SCC method to use for a model, depending on current settings:
+	 * forward-backward if more than one thread is enabled and the model has
+	 * at least {@code prism.sccParallelMin} states, iterative Tarjan otherwise.
+	 */
+	public static SCCMethod chooseSCCMethod(PrismComponent parent, Model model)
+	{
+		PrismSettings settings = parent == null ? null : parent.getSettings();
+		if (settings != null && settings.getInteger(PrismSettings.PRISM_NUM_THREADS) > 1
+				&& model.getNumStates() >= settings.getInteger(PrismSettings.PRISM_SCC_PARALLEL_MIN)) {
+			return SCCMethod.FORWARD_BACKWARD;
+		}
+		return SCCMethod.TARJAN_ITERATIVE;
 	}
 
 	/**
@@ -0,0 +1,374 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+
+package explicit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+import common.WorkerPool;
+import prism.PrismComponent;
+import prism.PrismException;
+
+/**
+ * Multi-threaded SCC decomposition operating on a Model object.
+ * <br>
+ * Uses the forward-backward algorithm: for a pivot state, the states that are both
+ * forward- and backward-reachable (within the current subgraph) form its SCC; the remaining
+ * forward-only, backward-only and unreached states form three independent subproblems,
+ * which are processed in parallel. Subproblems below a fixed size are finished off using
+ * (iterative) Tarjan's algorithm.
+ * <br>
+ * Once all SCCs are known, they are reported to the consumer sequentially, in a
+ * deterministic order that, like Tarjan's algorithm, lists SCCs before any SCC that can
+ * reach them (so, e.g., {@link SCCInfo} obtains a valid topological ordering).
+ * The states of each SCC are reported in ascending order.
+ */
+public class SCCComputerParallel extends SCCComputer
+{
+	/** Subproblems with at most this many states are solved sequentially using Tarjan's algorithm */
+	private static final int SEQUENTIAL_SIZE = 8192;
+
+	/* The model to compute (B)SCCs for */
+	private Model model;
+	/* Number of nodes (model states) */
+	private int numNodes;
+	/* Number of threads to use */
+	private int numThreads;
+
+	/* Predecessors (CSR format, only edges between relevant states) */
+	private int predStarts[];
+	private int preds[];
+	/* Subproblem each state belongs to (-1: state is done or not relevant) */
+	private int part[];
+	/* SCC index of each state (-1: not known yet or not relevant) */
+	private int sccOf[];
+	/* Arrays for the Tarjan searches (shared, since the subproblems are disjoint) */
+	private int index[];
+	private int lowlink[];
+	private boolean onStack[];
+	/* Counters for subproblem and SCC indices */
+	private AtomicInteger partCounter;
+	private AtomicInteger sccCounter;
+
+	/**
+	 * Build (B)SCC computer for a given model.
+	 * @param numThreads the number of threads to use
+	 */
+	public SCCComputerParallel(PrismComponent parent, Model model, SCCConsumer consumer, int numThreads) throws PrismException
+	{
+		super(parent, consumer);
+		this.model = model;
+		this.numNodes = model.getNumStates();
+		this.numThreads = numThreads;
+	}
+
+	// Methods for SCCComputer interface
+
+	@Override
+	public void computeSCCs(boolean filterTrivialSCCs, IntPredicate restrict) throws PrismException
+	{
+		consumer.notifyStart(model);
+
+		// Initialise: all relevant states form a single subproblem
+		part = new int[numNodes];
+		sccOf = new int[numNodes];
+		Arrays.fill(sccOf, -1);
+		int numRelevant = 0;
+		for (int s = 0; s < numNodes; s++) {
+			boolean relevant = restrict == null || restrict.test(s);
+			part[s] = relevant ? 0 : -1;
+			if (relevant)
+				numRelevant++;
+		}
+		int states[] = new int[numRelevant];
+		for (int s = 0, k = 0; s < numNodes; s++) {
+			if (part[s] == 0)
+				states[k++] = s;
+		}
+		buildPredecessors();
+		index = new int[numNodes];
+		Arrays.fill(index, -1);
+		lowlink = new int[numNodes];
+		onStack = new boolean[numNodes];
+		partCounter = new AtomicInteger(1);
+		sccCounter = new AtomicInteger(0);
+
+		// Decompose
+		try {
+			WorkerPool.getPool(numThreads).invoke(new DecomposeTask(states, 0));
+		} catch (RuntimeException e) {
+			PrismException ex = new PrismException("Error in SCC computation: " + e);
+			ex.initCause(e);
+			throw ex;
+		}
+		// Free memory
+		predStarts = preds = index = lowlink = part = null;
+		onStack = null;
+
+		reportSCCs(filterTrivialSCCs);
+		sccOf = null;
+		consumer.notifyDone();
+	}
+
+	/**
+	 * Build the predecessor relation (restricted to edges between relevant states, ignoring self-loops).
+	 */
+	private void buildPredecessors()
+	{
+		predStarts = new int[numNodes + 1];
+		for (int s = 0; s < numNodes; s++) {
+			if (part[s] == -1)
+				continue;
+			SuccessorsIterator it = model.getSuccessors(s);
+			while (it.hasNext()) {
+				int t = it.nextInt();
+				if (t != s && part[t] != -1)
+					predStarts[t + 1]++;
+			}
+		}
+		for (int s = 0; s < numNodes; s++) {
+			predStarts[s + 1] += predStarts[s];
+		}
+		preds = new int[predStarts[numNodes]];
+		int next[] = Arrays.copyOf(predStarts, numNodes);
+		for (int s = 0; s < numNodes; s++) {
+			if (part[s] == -1)
+				continue;
+			SuccessorsIterator it = model.getSuccessors(s);
+			while (it.hasNext()) {
+				int t = it.nextInt();
+				if (t != s && part[t] != -1)
+					preds[next[t]++] = s;
+			}
+		}
+	}
+
+	/**
+	 * Task decomposing the subgraph consisting of the states in {@code states},
+	 * all of which belong to subproblem {@code p}.
+	 */
+	private class DecomposeTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private int states[];
+		private int p;
+
+		DecomposeTask(int states[], int p)
+		{
+			this.states = states;
+			this.p = p;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (states.length <= SEQUENTIAL_SIZE) {
+				tarjan();
+				return;
+			}
+			int pivot = states[ThreadLocalRandom.current().nextInt(states.length)];
+			int pF = partCounter.getAndIncrement();
+			int pB = partCounter.getAndIncrement();
+			int queue[] = new int[states.length];
+			int head, tail;
+
+			// Forward search from pivot: reached states move to subproblem pF
+			head = tail = 0;
+			part[pivot] = pF;
+			queue[tail++] = pivot;
+			while (head < tail) {
+				SuccessorsIterator it = model.getSuccessors(queue[head++]);
+				while (it.hasNext()) {
+					int t = it.nextInt();
+					if (part[t] == p) {
+						part[t] = pF;
+						queue[tail++] = t;
+					}
+				}
+			}
+
+			// Backward search from pivot: reached states in pF form the pivot's SCC,
+			// other reached states move to subproblem pB
+			int scc = sccCounter.getAndIncrement();
+			head = tail = 0;
+			part[pivot] = -1;
+			sccOf[pivot] = scc;
+			queue[tail++] = pivot;
+			while (head < tail) {
+				int s = queue[head++];
+				for (int j = predStarts[s], end = predStarts[s + 1]; j < end; j++) {
+					int t = preds[j];
+					if (part[t] == pF) {
+						part[t] = -1;
+						sccOf[t] = scc;
+						queue[tail++] = t;
+					} else if (part[t] == p) {
+						part[t] = pB;
+						queue[tail++] = t;
+					}
+				}
+			}
+
+			// Split into (up to) three subproblems and process them in parallel
+			int numF = 0, numB = 0, numRest = 0;
+			for (int s : states) {
+				int q = part[s];
+				if (q == pF)
+					numF++;
+				else if (q == pB)
+					numB++;
+				else if (q == p)
+					numRest++;
+			}
+			int statesF[] = new int[numF], statesB[] = new int[numB], statesRest[] = new int[numRest];
+			numF = numB = numRest = 0;
+			for (int s : states) {
+				int q = part[s];
+				if (q == pF)
+					statesF[numF++] = s;
+				else if (q == pB)
+					statesB[numB++] = s;
+				else if (q == p)
+					statesRest[numRest++] = s;
+			}
+			states = null;
+			List<DecomposeTask> tasks = new ArrayList<DecomposeTask>(3);
+			if (numF > 0)
+				tasks.add(new DecomposeTask(statesF, pF));
+			if (numB > 0)
+				tasks.add(new DecomposeTask(statesB, pB));
+			if (numRest > 0)
+				tasks.add(new DecomposeTask(statesRest, p));
+			ForkJoinTask.invokeAll(tasks);
+		}
+
+		/**
+		 * Solve this subproblem sequentially, using Tarjan's algorithm.
+		 */
+		private void tarjan()
+		{
+			final int p = this.p;
+			SCCComputerTarjanIterative.Search search = new SCCComputerTarjanIterative.Search(model, t -> part[t] == p, index, lowlink, onStack);
+			try {
+				for (int s : states) {
+					search.run(s, (sccStates, from, to, hadSelfloop) -> {
+						int scc = sccCounter.getAndIncrement();
+						for (int j = from; j < to; j++) {
+							sccOf[sccStates[j]] = scc;
+						}
+					});
+				}
+			} catch (PrismException e) {
+				// not thrown by the callback above
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * Report the SCCs (as stored in {@code sccOf}) to the consumer, such that
+	 * each SCC is reported after all SCCs reachable from it.
+	 * This is done by a (non-recursive) depth-first search over the SCC graph,
+	 * starting from the SCCs in order of their lowest state, and reporting SCCs in post-order.
+	 */
+	private void reportSCCs(boolean filterTrivialSCCs) throws PrismException
+	{
+		// Group states by SCC (in ascending order)
+		int numSCCs = sccCounter.get();
+		int sccStarts[] = new int[numSCCs + 1];
+		for (int s = 0; s < numNodes; s++) {
+			if (sccOf[s] != -1)
+				sccStarts[sccOf[s] + 1]++;
+		}
+		for (int c = 0; c < numSCCs; c++) {
+			sccStarts[c + 1] += sccStarts[c];
+		}
+		int members[] = new int[sccStarts[numSCCs]];
+		int next[] = Arrays.copyOf(sccStarts, numSCCs);
+		for (int s = 0; s < numNodes; s++) {
+			if (sccOf[s] != -1)
+				members[next[sccOf[s]]++] = s;
+		}
+
+		// Depth-first search over SCCs; next[c] is reused as the position of the next member to explore
+		System.arraycopy(sccStarts, 0, next, 0, numSCCs);
+		boolean visited[] = new boolean[numSCCs];
+		int stack[] = new int[64];
+		SuccessorsIterator iterators[] = new SuccessorsIterator[64];
+		for (int s = 0; s < numNodes; s++) {
+			if (sccOf[s] == -1 || visited[sccOf[s]])
+				continue;
+			int depth = 0;
+			stack[depth++] = sccOf[s];
+			visited[sccOf[s]] = true;
+			while (depth > 0) {
+				int c = stack[depth - 1];
+				SuccessorsIterator it = iterators[depth - 1];
+				boolean descended = false;
+				while (!descended) {
+					if (it != null && it.hasNext()) {
+						int d = sccOf[it.nextInt()];
+						if (d != -1 && !visited[d]) {
+							if (depth == stack.length) {
+								stack = Arrays.copyOf(stack, 2 * depth);
+								iterators = Arrays.copyOf(iterators, 2 * depth);
+							}
+							stack[depth] = d;
+							iterators[depth] = null;
+							depth++;
+							visited[d] = true;
+							descended = true;
+						}
+					} else if (next[c] < sccStarts[c + 1]) {
+						it = iterators[depth - 1] = model.getSuccessors(members[next[c]++]);
+					} else {
+						break;
+					}
+				}
+				if (descended)
+					continue;
+				// all successor SCCs done: report c
+				depth--;
+				iterators[depth] = null;
+				int from = sccStarts[c], to = sccStarts[c + 1];
+				if (filterTrivialSCCs && to - from == 1 && isTrivialSCC(model, members[from]))
+					continue;
+				consumer.notifyStartSCC();
+				for (int j = from; j < to; j++) {
+					consumer.notifyStateInSCC(members[j]);
+				}
+				consumer.notifyEndSCC();
+			}
+		}
+	}
+}
@@ -0,0 +1,213 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package explicit;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+import prism.PrismComponent;
+import prism.PrismException;
+
+/**
+ * Tarjan's SCC algorithm operating on a Model object, implemented without recursion.
+ * <br>
+ * The depth-first search uses an explicit call stack and all per-state information is
+ * held in primitive arrays, so deep models do not overflow the Java stack and no objects
+ * are allocated per state (other than successor iterators). SCCs are reported in exactly
+ * the same order as by the recursive implementation {@link SCCComputerTarjan}.
+ */
+public class SCCComputerTarjanIterative extends SCCComputer
+{
+	/* The model to compute (B)SCCs for */
+	private Model model;
+	/* Number of nodes (model states) */
+	private int numNodes;
+
+	/**
+	 * Build (B)SCC computer for a given model.
+	 */
+	public SCCComputerTarjanIterative(PrismComponent parent, Model model, SCCConsumer consumer) throws PrismException
+	{
+		super(parent, consumer);
+		this.model = model;
+		this.numNodes = model.getNumStates();
+	}
+
+	// Methods for SCCComputer interface
+
+	@Override
+	public void computeSCCs(boolean filterTrivialSCCs, IntPredicate restrict) throws PrismException
+	{
+		consumer.notifyStart(model);
+		int index[] = new int[numNodes];
+		int lowlink[] = new int[numNodes];
+		Arrays.fill(index, -1);
+		Search search = new Search(model, restrict, index, lowlink, new boolean[numNodes]);
+		for (int i = 0; i < numNodes; i++) {
+			if (restrict != null && !restrict.test(i))
+				continue; // skip state if not one of the relevant states
+			search.run(i, (states, from, to, hadSelfloop) -> {
+				if (filterTrivialSCCs && to - from == 1 && !hadSelfloop)
+					return; // singleton SCC & no selfloop -> trivial
+				consumer.notifyStartSCC();
+				// report in the order the states are popped from the stack
+				for (int j = to - 1; j >= from; j--) {
+					consumer.notifyStateInSCC(states[j]);
+				}
+				consumer.notifyEndSCC();
+			});
+		}
+		consumer.notifyDone();
+	}
+
+	/**
+	 * Callback for the SCCs found by a {@link Search}.
+	 */
+	@FunctionalInterface
+	interface SCCCallback
+	{
+		/**
+		 * Called for each SCC found: the SCC consists of the states {@code states[from], ..., states[to-1]},
+		 * in the order they were visited. {@code hadSelfloop} is true if the first of them has a self-loop.
+		 * The array must not be modified or stored.
+		 */
+		public void foundSCC(int[] states, int from, int to, boolean hadSelfloop) throws PrismException;
+	}
+
+	/**
+	 * Depth-first search state for (iterative) Tarjan's algorithm.
+	 * <br>
+	 * The per-state arrays ({@code index}, {@code lowlink}, {@code onStack}) are passed in,
+	 * so that several searches over disjoint sets of states can share them, also concurrently
+	 * (see {@link SCCComputerParallel}). The stacks are local to each search.
+	 */
+	static class Search
+	{
+		/* The model */
+		private final Model model;
+		/* The relevant states ({@code null}: all states) */
+		private final IntPredicate restrict;
+		/* DFS index of each state (-1 if not yet visited) */
+		private final int index[];
+		/* Lowlink of each state */
+		private final int lowlink[];
+		/* Is state currently on the Tarjan stack? */
+		private final boolean onStack[];
+
+		/* Next index to give to a node */
+		private int nextIndex = 0;
+		/* Tarjan stack */
+		private int stack[] = new int[64];
+		private int stackSize = 0;
+		/* Call stack: states, successor iterators and self-loop flags */
+		private int callStates[] = new int[64];
+		private SuccessorsIterator callIterators[] = new SuccessorsIterator[64];
+		private boolean callSelfloops[] = new boolean[64];
+		private int depth = 0;
+
+		Search(Model model, IntPredicate restrict, int index[], int lowlink[], boolean onStack[])
+		{
+			this.model = model;
+			this.restrict = restrict;
+			this.index = index;
+			this.lowlink = lowlink;
+			this.onStack = onStack;
+		}
+
+		/**
+		 * Run the search from state {@code root}, if it has not been visited yet,
+		 * calling {@code callback} for each SCC found, successors first.
+		 */
+		void run(int root, SCCCallback callback) throws PrismException
+		{
+			if (index[root] != -1)
+				return;
+			visit(root);
+			while (depth > 0) {
+				int i = callStates[depth - 1];
+				SuccessorsIterator it = callIterators[depth - 1];
+				boolean descended = false;
+				while (it.hasNext()) {
+					int e = it.nextInt();
+					if (e == i) {
+						callSelfloops[depth - 1] = true;
+						continue;
+					}
+					if (restrict != null && !restrict.test(e)) {
+						continue; // ignore edge to state that is not relevant
+					}
+					if (index[e] == -1) {
+						visit(e);
+						descended = true;
+						break;
+					} else if (onStack[e]) {
+						lowlink[i] = Math.min(lowlink[i], index[e]);
+					}
+				}
+				if (descended)
+					continue;
+
+				// all successors of i done: return from i
+				depth--;
+				boolean hadSelfloop = callSelfloops[depth];
+				callIterators[depth] = null;
+				if (lowlink[i] == index[i]) {
+					int from = stackSize;
+					do {
+						from--;
+						onStack[stack[from]] = false;
+					} while (stack[from] != i);
+					callback.foundSCC(stack, from, stackSize, hadSelfloop);
+					stackSize = from;
+				}
+				if (depth > 0) {
+					int parent = callStates[depth - 1];
+					lowlink[parent] = Math.min(lowlink[parent], lowlink[i]);
+				}
+			}
+		}
+
+		/** Start visiting state {@code i}, i.e., push it onto both stacks */
+		private void visit(int i)
+		{
+			index[i] = nextIndex;
+			lowlink[i] = nextIndex;
+			nextIndex++;
+			if (stackSize == stack.length)
+				stack = Arrays.copyOf(stack, 2 * stack.length);
+			stack[stackSize++] = i;
+			onStack[i] = true;
+			if (depth == callStates.length) {
+				callStates = Arrays.copyOf(callStates, 2 * depth);
+				callIterators = Arrays.copyOf(callIterators, 2 * depth);
+				callSelfloops = Arrays.copyOf(callSelfloops, 2 * depth);
+			}
+			callStates[depth] = i;
+			callIterators[depth] = model.getSuccessors(i);
+			callSelfloops[depth] = false;
+			depth++;
+		}
+	}
+}
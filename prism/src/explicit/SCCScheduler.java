@@ -0,0 +1,268 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package explicit;
+
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import common.WorkerPool;
+import prism.PrismException;
+
+/**
+ * Scheduler for processing the SCCs of a model (as stored in an {@link SCCInfo})
+ * concurrently, respecting the dependencies between them.
+ * <br>
+ * The SCC DAG is built from the transitions of the model: an SCC depends on all other
+ * SCCs that can be reached via a single transition. An SCC is only processed once all
+ * the SCCs that it depends on have been processed, but independent SCCs are processed
+ * concurrently on the shared worker pool.
+ */
+public class SCCScheduler
+{
+	/**
+	 * Functional interface for processing a single SCC.
+	 */
+	@FunctionalInterface
+	public interface SCCTask
+	{
+		/**
+		 * Process the SCC with index {@code scc}.
+		 * Return false to abort the processing of the remaining SCCs.
+		 */
+		public boolean process(int scc) throws PrismException;
+	}
+
+	/** The number of SCCs */
+	private final int numSCCs;
+	/** For each SCC, the number of (distinct) SCCs it depends on */
+	private final int[] numSuccSCCs;
+	/** Index into predSCCs: the SCCs that depend on SCC i are predSCCs[predStart[i]..predStart[i+1]-1] */
+	private final int[] predStart;
+	/** The SCCs that depend on a given SCC (see predStart) */
+	private final int[] predSCCs;
+
+	/** Number of SCCs processed so far (during run) */
+	private final AtomicInteger numProcessed = new AtomicInteger();
+
+	/**
+	 * Constructor, builds the SCC DAG.
+	 * Transitions to states that do not belong to an SCC in {@code sccs} are ignored.
+	 * @param model the model
+	 * @param sccs the SCC information
+	 */
+	public SCCScheduler(Model model, SCCInfo sccs)
+	{
+		numSCCs = sccs.getNumSCCs();
+		numSuccSCCs = new int[numSCCs];
+
+		// collect the (distinct) edges between SCCs, as pairs (from, to)
+		int[] edges = new int[16];
+		int numEdges = 0;
+		int[] lastSeen = new int[numSCCs];
+		Arrays.fill(lastSeen, -1);
+		for (int scc = 0; scc < numSCCs; scc++) {
+			PrimitiveIterator.OfInt states = sccs.getStatesForSCC(scc).iterator();
+			while (states.hasNext()) {
+				SuccessorsIterator succs = model.getSuccessors(states.nextInt());
+				while (succs.hasNext()) {
+					int t = succs.nextInt();
+					int sccT = sccs.getSCCIndex(t);
+					if (sccT == -1 || sccT == scc || lastSeen[sccT] == scc)
+						continue;
+					lastSeen[sccT] = scc;
+					if (numEdges * 2 == edges.length) {
+						edges = Arrays.copyOf(edges, edges.length * 2);
+					}
+					edges[2 * numEdges] = scc;
+					edges[2 * numEdges + 1] = sccT;
+					numEdges++;
+					numSuccSCCs[scc]++;
+				}
+			}
+		}
+
+		// build the predecessor lists
+		predStart = new int[numSCCs + 1];
+		for (int e = 0; e < numEdges; e++) {
+			predStart[edges[2 * e + 1] + 1]++;
+		}
+		for (int scc = 0; scc < numSCCs; scc++) {
+			predStart[scc + 1] += predStart[scc];
+		}
+		predSCCs = new int[numEdges];
+		int[] fill = Arrays.copyOf(predStart, numSCCs);
+		for (int e = 0; e < numEdges; e++) {
+			predSCCs[fill[edges[2 * e + 1]]++] = edges[2 * e];
+		}
+	}
+
+	/** Get the number of SCCs that have been processed so far */
+	public int getNumProcessed()
+	{
+		return numProcessed.get();
+	}
+
+	/**
+	 * Process all SCCs using {@code task}, using up to {@code numThreads} threads.
+	 * Blocks until all SCCs are processed or the processing was aborted
+	 * (because {@code task} returned false or threw an exception).
+	 * While waiting, {@code progress} (if non-null) is called every {@code updateDelay}
+	 * milliseconds with the number of SCCs processed so far.
+	 * If {@code task} (or the pool) threw an exception or error, the first one is rethrown
+	 * (unchecked exceptions wrapped in a PrismException).
+	 * @return true if all SCCs were processed, false if the processing was aborted by {@code task}
+	 */
+	public boolean run(int numThreads, SCCTask task, long updateDelay, IntConsumer progress) throws PrismException
+	{
+		numProcessed.set(0);
+		if (numSCCs == 0)
+			return true;
+
+		final AtomicIntegerArray pending = new AtomicIntegerArray(numSuccSCCs);
+		final AtomicBoolean aborted = new AtomicBoolean(false);
+		final AtomicInteger inFlight = new AtomicInteger(0);
+		final CountDownLatch finished = new CountDownLatch(1);
+		final Throwable[] error = new Throwable[1];
+		final ForkJoinPool pool = WorkerPool.getPool(numThreads);
+
+		/** Record the first failure and abort the processing */
+		final Consumer<Throwable> fail = e -> {
+			synchronized (error) {
+				if (error[0] == null)
+					error[0] = e;
+			}
+			aborted.set(true);
+		};
+
+		/** Worker: processes an SCC and, subsequently, those that have become ready */
+		class Worker implements Runnable
+		{
+			int scc;
+
+			Worker(int scc)
+			{
+				this.scc = scc;
+			}
+
+			/** Hand SCC {@code pred} to the pool (which must already be counted in {@code inFlight}) */
+			void submit(int pred)
+			{
+				try {
+					pool.execute(new Worker(pred));
+				} catch (Throwable e) {
+					// not started: undo its count (this worker is still counted, so it cannot reach zero)
+					inFlight.decrementAndGet();
+					fail.accept(e);
+				}
+			}
+
+			@Override
+			public void run()
+			{
+				try {
+					while (scc != -1 && !aborted.get()) {
+						if (!task.process(scc)) {
+							aborted.set(true);
+							break;
+						}
+						numProcessed.incrementAndGet();
+
+						// notify the SCCs depending on this one, continue with the
+						// first one that becomes ready, hand the others to the pool
+						int next = -1;
+						for (int i = predStart[scc], stop = predStart[scc + 1]; i < stop; i++) {
+							int pred = predSCCs[i];
+							if (pending.decrementAndGet(pred) == 0) {
+								if (next == -1) {
+									next = pred;
+								} else {
+									inFlight.incrementAndGet();
+									submit(pred);
+								}
+							}
+						}
+						scc = next;
+					}
+				} catch (Throwable e) {
+					fail.accept(e);
+				} finally {
+					if (inFlight.decrementAndGet() == 0) {
+						finished.countDown();
+					}
+				}
+			}
+		}
+
+		// start with the SCCs that do not depend on any others
+		// (count first, so that workers cannot finish before all of them are started)
+		for (int scc = 0; scc < numSCCs; scc++) {
+			if (numSuccSCCs[scc] == 0)
+				inFlight.incrementAndGet();
+		}
+		for (int scc = 0; scc < numSCCs; scc++) {
+			if (numSuccSCCs[scc] == 0) {
+				try {
+					pool.execute(new Worker(scc));
+				} catch (Throwable e) {
+					fail.accept(e);
+					if (inFlight.decrementAndGet() == 0) {
+						finished.countDown();
+					}
+				}
+			}
+		}
+
+		try {
+			while (!finished.await(updateDelay, TimeUnit.MILLISECONDS)) {
+				if (progress != null)
+					progress.accept(numProcessed.get());
+			}
+		} catch (InterruptedException e) {
+			aborted.set(true);
+			throw new PrismException("Interrupted while waiting for SCC computations");
+		}
+
+		// rethrow the first failure (unchecked exceptions other than errors are wrapped)
+		Throwable failure = error[0];
+		if (failure instanceof PrismException)
+			throw (PrismException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
+		if (failure != null) {
+			PrismException e = new PrismException("Error in worker thread: " + failure);
+			e.initCause(failure);
+			throw e;
+		}
+		return !aborted.get() && numProcessed.get() == numSCCs;
+	}
+}
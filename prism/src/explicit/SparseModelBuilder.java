@@ -0,0 +1,406 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+
+package explicit;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+
+import parser.VarList;
+
+/**
+ * Append-only builder for sparse (CSR) representations of DTMCs and MDPs,
+ * i.e. {@link DTMCSparse} and {@link MDPSparse}, without an intermediate
+ * {@link DTMCSimple}/{@link MDPSimple} model (see also {@link OffHeapModelBuilder}).
+ * <br>
+ * States have to be added in order (their indices are 0, 1, 2, ...), each followed by its outgoing
+ * transitions: a single distribution for DTMCs ({@link #setDistribution(DistributionPrimitive)})
+ * or a list of choices for MDPs ({@link #addChoice(DistributionPrimitive, Object)}).
+ * The final model is created by {@link #buildDTMC(int[], VarList)} or {@link #buildMDP(int[], VarList)},
+ * optionally applying a permutation of the state indices; within each choice,
+ * transitions are then sorted by (new) target index.
+ */
+public class SparseModelBuilder implements DirectModelBuilder
+{
+	/** Build an MDP (rather than a DTMC)? */
+	private final boolean nondet;
+
+	/** Number of states added */
+	private int numStates = 0;
+	/** Number of choices added (equal to numStates for DTMCs) */
+	private int numChoices = 0;
+	/** Number of transitions added */
+	private int numTransitions = 0;
+	/** Indices into choiceStarts giving the start of the choices of each state (size numStates+1 when built) */
+	private int[] rowStarts = new int[1024];
+	/** Indices into cols/probs giving the start of each choice (size numChoices+1 when built) */
+	private int[] choiceStarts = new int[1024];
+	/** Target indices for each transition */
+	private int[] cols = new int[4096];
+	/** Probabilities for each transition */
+	private double[] probs = new double[4096];
+	/** Actions for each choice (null if there are none) */
+	private Object[] actions = null;
+
+	/** Initial states */
+	private BitSet initialStates = new BitSet();
+	/** Deadlock states (see {@link #findDeadlocks(boolean)}) */
+	private BitSet deadlocks = new BitSet();
+	/** Add self-loops to deadlock states when building? */
+	private boolean fixDeadlocks = false;
+
+	/**
+	 * Create a builder.
+	 * @param nondet Build an MDP (true) or a DTMC (false)?
+	 */
+	public SparseModelBuilder(boolean nondet)
+	{
+		this.nondet = nondet;
+	}
+
+	/**
+	 * Get the number of states added so far.
+	 */
+	@Override
+	public int getNumStates()
+	{
+		return numStates;
+	}
+
+	/**
+	 * Add a new state (whose index is the number of states added so far);
+	 * subsequently added transitions belong to this state.
+	 * Returns the index of the new state.
+	 */
+	@Override
+	public int addState()
+	{
+		finishState();
+		if (numStates + 1 == rowStarts.length) {
+			rowStarts = Arrays.copyOf(rowStarts, grow(rowStarts.length));
+		}
+		numStates++;
+		return numStates - 1;
+	}
+
+	/**
+	 * Mark state {@code s} as an initial state.
+	 */
+	@Override
+	public void addInitialState(int s)
+	{
+		initialStates.set(s);
+	}
+
+	/**
+	 * Set the (outgoing) distribution of the last added state (DTMCs only).
+	 * Transitions with zero probability are ignored.
+	 */
+	@Override
+	public void setDistribution(DistributionPrimitive distr)
+	{
+		if (nondet)
+			throw new UnsupportedOperationException("setDistribution() is only available for DTMCs");
+		if (numChoices == numStates)
+			throw new IllegalStateException("Distribution already set for state " + (numStates - 1));
+		startChoice();
+		for (int k = 0, n = distr.size(); k < n; k++) {
+			if (distr.getProbability(k) != 0.0) {
+				addTransition(distr.getIndex(k), distr.getProbability(k));
+			}
+		}
+	}
+
+	/**
+	 * Add a choice, labelled with {@code action} (which may be null), to the last added state (MDPs only).
+	 * As for {@link MDPSimple}, the choice is only added if the state does not already have
+	 * an identical choice (same action and distribution).
+	 * Returns the index of the (existing or newly added) choice within the state.
+	 */
+	@Override
+	public int addChoice(DistributionPrimitive distr, Object action)
+	{
+		if (!nondet)
+			throw new UnsupportedOperationException("addChoice() is only available for MDPs");
+		int first = rowStarts[numStates - 1];
+		int start = numTransitions;
+		startChoice();
+		for (int k = 0, n = distr.size(); k < n; k++) {
+			addTransition(distr.getIndex(k), distr.getProbability(k));
+		}
+		sortTransitions(start, numTransitions);
+		// Check for an identical existing choice
+		for (int c = first; c < numChoices - 1; c++) {
+			if (Objects.equals(getAction(c), action) && equalTransitions(choiceStarts[c], choiceStarts[c + 1], start, numTransitions)) {
+				numChoices--;
+				numTransitions = start;
+				return c - first;
+			}
+		}
+		if (action != null) {
+			if (actions == null) {
+				actions = new Object[choiceStarts.length];
+			}
+			actions[numChoices - 1] = action;
+		}
+		return numChoices - 1 - first;
+	}
+
+	/**
+	 * Find the deadlock states, i.e. those without any transitions (DTMCs) or choices (MDPs).
+	 * If {@code fix} is true, self-loops are added to these states in the built model.
+	 */
+	@Override
+	public void findDeadlocks(boolean fix)
+	{
+		finishState();
+		deadlocks.clear();
+		for (int s = 0; s < numStates; s++) {
+			if (nondet ? rowStarts[s] == rowStarts[s + 1] : choiceStarts[rowStarts[s]] == choiceStarts[rowStarts[s + 1]]) {
+				deadlocks.set(s);
+			}
+		}
+		fixDeadlocks = fix;
+	}
+
+	/**
+	 * Build a DTMC from the transitions added so far.
+	 * @param permut State index permutation (old index i becomes permut[i]), may be null
+	 * @param varList Variable info for the model (may be null)
+	 */
+	@Override
+	public DTMCSparse buildDTMC(int[] permut, VarList varList)
+	{
+		if (nondet)
+			throw new UnsupportedOperationException("Builder is for MDPs");
+		Permuted p = permute(permut);
+		// DTMCs have a single "choice" per state, so row and choice starts coincide
+		int[] rows = new int[numStates + 1];
+		for (int s = 0; s <= numStates; s++) {
+			rows[s] = p.choiceStarts[p.rowStarts[s]];
+		}
+		DTMCSparse dtmc = new DTMCSparse(numStates, rows, p.cols, p.probs);
+		finish(dtmc, permut, varList);
+		return dtmc;
+	}
+
+	/**
+	 * Build an MDP from the transitions added so far.
+	 * @param permut State index permutation (old index i becomes permut[i]), may be null
+	 * @param varList Variable info for the model (may be null)
+	 */
+	@Override
+	public MDPSparse buildMDP(int[] permut, VarList varList)
+	{
+		if (!nondet)
+			throw new UnsupportedOperationException("Builder is for DTMCs");
+		Permuted p = permute(permut);
+		MDPSparse mdp = new MDPSparse(numStates, p.rowStarts, p.choiceStarts, p.cols, p.probs, p.actions);
+		finish(mdp, permut, varList);
+		return mdp;
+	}
+
+	// Local utility methods
+
+	/** New array size when growing an array of size {@code n} */
+	private static int grow(int n)
+	{
+		long m = n + (n >> 1) + 16;
+		if (m > Integer.MAX_VALUE - 8)
+			m = Integer.MAX_VALUE - 8;
+		if (m <= n)
+			throw new OutOfMemoryError("Sparse model is too large");
+		return (int) m;
+	}
+
+	/** Start a new choice for the last added state */
+	private void startChoice()
+	{
+		if (numStates == 0)
+			throw new IllegalStateException("No state added yet");
+		if (numChoices + 1 >= choiceStarts.length) {
+			choiceStarts = Arrays.copyOf(choiceStarts, grow(choiceStarts.length));
+			if (actions != null) {
+				actions = Arrays.copyOf(actions, choiceStarts.length);
+			}
+		}
+		choiceStarts[numChoices] = numTransitions;
+		numChoices++;
+		choiceStarts[numChoices] = numTransitions;
+	}
+
+	/** Add a transition to the last choice */
+	private void addTransition(int dest, double prob)
+	{
+		if (numTransitions == cols.length) {
+			int n = grow(cols.length);
+			cols = Arrays.copyOf(cols, n);
+			probs = Arrays.copyOf(probs, n);
+		}
+		cols[numTransitions] = dest;
+		probs[numTransitions] = prob;
+		numTransitions++;
+		choiceStarts[numChoices] = numTransitions;
+	}
+
+	/** Finish the last added state (if any), i.e. record where its choices end */
+	private void finishState()
+	{
+		rowStarts[numStates] = numChoices;
+		choiceStarts[numChoices] = numTransitions;
+	}
+
+	/** Get the action of choice {@code c} */
+	private Object getAction(int c)
+	{
+		return actions == null ? null : actions[c];
+	}
+
+	/** Are the transitions in ranges [start1,end1) and [start2,end2) (both sorted) identical? */
+	private boolean equalTransitions(int start1, int end1, int start2, int end2)
+	{
+		if (end1 - start1 != end2 - start2)
+			return false;
+		for (int i = start1, j = start2; i < end1; i++, j++) {
+			if (cols[i] != cols[j] || probs[i] != probs[j])
+				return false;
+		}
+		return true;
+	}
+
+	/** Rows up to this length are sorted by insertion sort, longer ones via {@link Arrays#sort(long[])} */
+	private static final int INSERTION_SORT_MAX = 16;
+
+	/** Sort the transitions in range [start,end) of arrays cols/probs by target index (stably) */
+	static void sortTransitions(int[] cols, double[] probs, int start, int end)
+	{
+		int n = end - start;
+		if (n <= INSERTION_SORT_MAX) {
+			for (int i = start + 1; i < end; i++) {
+				int c = cols[i];
+				double p = probs[i];
+				int j = i - 1;
+				while (j >= start && cols[j] > c) {
+					cols[j + 1] = cols[j];
+					probs[j + 1] = probs[j];
+					j--;
+				}
+				cols[j + 1] = c;
+				probs[j + 1] = p;
+			}
+			return;
+		}
+		// Pack (target, original offset) into a long, sort, then reorder the probabilities
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = ((long) cols[start + i] << 32) | i;
+		}
+		Arrays.sort(keys);
+		double[] probsOld = Arrays.copyOfRange(probs, start, end);
+		for (int i = 0; i < n; i++) {
+			cols[start + i] = (int) (keys[i] >>> 32);
+			probs[start + i] = probsOld[(int) keys[i]];
+		}
+	}
+
+	/** Sort the transitions in range [start,end) by target index */
+	private void sortTransitions(int start, int end)
+	{
+		sortTransitions(cols, probs, start, end);
+	}
+
+	/** The transition arrays, after permutation */
+	private static class Permuted
+	{
+		int[] rowStarts;
+		int[] choiceStarts;
+		int[] cols;
+		double[] probs;
+		Object[] actions;
+	}
+
+	/**
+	 * Create the final (exactly sized) transition arrays, applying the permutation {@code permut}
+	 * (if non-null) and adding self-loops to deadlock states (if required).
+	 */
+	private Permuted permute(int[] permut)
+	{
+		finishState();
+		int numFixed = fixDeadlocks ? deadlocks.cardinality() : 0;
+		int[] permutInv = null;
+		if (permut != null) {
+			permutInv = new int[numStates];
+			for (int s = 0; s < numStates; s++) {
+				permutInv[permut[s]] = s;
+			}
+		}
+		Permuted p = new Permuted();
+		p.rowStarts = new int[numStates + 1];
+		p.choiceStarts = new int[numChoices + numFixed + 1];
+		p.cols = new int[numTransitions + numFixed];
+		p.probs = new double[numTransitions + numFixed];
+		p.actions = (actions == null) ? null : new Object[numChoices + numFixed];
+		int c = 0, t = 0;
+		for (int s = 0; s < numStates; s++) {
+			int sOld = permutInv == null ? s : permutInv[s];
+			p.rowStarts[s] = c;
+			if (fixDeadlocks && deadlocks.get(sOld)) {
+				p.choiceStarts[c++] = t;
+				p.cols[t] = s;
+				p.probs[t++] = 1.0;
+				continue;
+			}
+			for (int cOld = rowStarts[sOld]; cOld < rowStarts[sOld + 1]; cOld++) {
+				p.choiceStarts[c] = t;
+				if (p.actions != null) {
+					p.actions[c] = actions[cOld];
+				}
+				int start = t;
+				for (int tOld = choiceStarts[cOld]; tOld < choiceStarts[cOld + 1]; tOld++) {
+					p.cols[t] = permut == null ? cols[tOld] : permut[cols[tOld]];
+					p.probs[t++] = probs[tOld];
+				}
+				sortTransitions(p.cols, p.probs, start, t);
+				c++;
+			}
+		}
+		p.rowStarts[numStates] = c;
+		p.choiceStarts[c] = t;
+		return p;
+	}
+
+	/** Set the initial/deadlock states and variable info of a built model */
+	private void finish(ModelExplicit model, int[] permut, VarList varList)
+	{
+		for (int s = initialStates.nextSetBit(0); s >= 0; s = initialStates.nextSetBit(s + 1)) {
+			model.addInitialState(permut == null ? s : permut[s]);
+		}
+		for (int s = deadlocks.nextSetBit(0); s >= 0; s = deadlocks.nextSetBit(s + 1)) {
+			model.addDeadlockState(permut == null ? s : permut[s]);
+		}
+		model.setVarList(varList);
+	}
+}
@@ -26,6 +26,8 @@
 
 package parser;
 
+import parser.compiler.CompiledExpression;
+
 /**
  * Information required to evaluate an expression: a State object.
  * This is basically an array of Objects, indexed according to a model file. 
@@ -35,6 +37,9 @@ public class EvaluateContextState implements EvaluateContext
 {
 	private Values constantValues;
 	private Object[] varValues;
+	// Variable values as ints (for compiled expressions), computed on demand
+	private int[] intValues;
+	private boolean intValuesKnown;
 
 	public EvaluateContextState(State state)
 	{
@@ -48,6 +53,39 @@ public class EvaluateContextState implements EvaluateContext
 		this.varValues = state.varValues;
 	}
 
+	/**
+	 * Switch this context to a different State object, e.g. so that the context
+	 * can be reused for many states rather than creating a new one for each.
+	 * Returns this object, for convenience.
+	 */
+	public EvaluateContextState setState(State state)
+	{
+		this.varValues = state.varValues;
+		intValuesKnown = false;
+		return this;
+	}
+
+	/**
+	 * Get the variable values as an array of ints, as used by compiled expressions
+	 * (see {@link parser.compiler.CompiledExpression#toIntValues(State, int[])}),
+	 * or null if some values are neither integers nor Booleans.
+	 * The array is computed once after each call to {@link #setState(State)} and then reused,
+	 * so it does not reflect later changes to the state.
+	 */
+	public int[] getIntValues()
+	{
+		if (!intValuesKnown) {
+			if (intValues == null || intValues.length != varValues.length) {
+				intValues = new int[varValues.length];
+			}
+			if (!CompiledExpression.toIntValues(varValues, intValues)) {
+				return null;
+			}
+			intValuesKnown = true;
+		}
+		return intValues;
+	}
+
 	public Object getConstantValue(String name)
 	{
 		if (constantValues == null)
@@ -50,6 +50,7 @@ import parser.type.TypeInt;
 import prism.ModelType;
 import prism.PrismComponent;
 import prism.PrismException;
+import prism.PrismSettings;
 
 /**
  * Class to build a (partial) ModulesFile corresponding to imported explicit-state file storage of a model.
@@ -118,95 +119,30 @@ public class ExplicitFiles2ModulesFile extends PrismComponent
 	 */
 	private ModulesFile createVarInfoFromStatesFile(File statesFile) throws PrismException
 	{
-		String s, ss[];
-		int i, j, lineNum = 0;
+		int i;
 		Module m;
 		Declaration d;
 		DeclarationType dt;
-		// Var info
-		int numVars;
-		String varNames[];
-		int varMins[];
-		int varMaxs[];
-		int varRanges[];
-		Type varTypes[];
 		ModulesFile modulesFile;
 
-		// open file for reading, automatic close when done
-		try (BufferedReader in = new BufferedReader(new FileReader(statesFile))) {
-			// read first line and extract var names
-			s = in.readLine();
-			lineNum = 1;
-			if (s == null)
-				throw new PrismException("empty states file");
-			s = s.trim();
-			if (s.charAt(0) != '(' || s.charAt(s.length() - 1) != ')')
-				throw new PrismException("badly formatted state");
-			s = s.substring(1, s.length() - 1);
-			varNames = s.split(",");
-			numVars = varNames.length;
-			// create arrays to store info about vars
-			varMins = new int[numVars];
-			varMaxs = new int[numVars];
-			varRanges = new int[numVars];
-			varTypes = new Type[numVars];
-			// read remaining lines
-			s = in.readLine();
-			lineNum++;
-			numStates = 0;
-			while (s != null) {
-				// skip blank lines
-				s = s.trim();
-				if (s.length() > 0) {
-					// increment state count
-					numStates++;
-					// split string
-					s = s.substring(s.indexOf('(') + 1, s.indexOf(')'));
-					ss = s.split(",");
-					if (ss.length != numVars)
-						throw new PrismException("wrong number of variables");
-					// for each variable...
-					for (i = 0; i < numVars; i++) {
-						// if this is the first state, establish variable type
-						if (numStates == 1) {
-							if (ss[i].equals("true") || ss[i].equals("false"))
-								varTypes[i] = TypeBool.getInstance();
-							else
-								varTypes[i] = TypeInt.getInstance();
-						}
-						// check for new min/max values (ints only)
-						if (varTypes[i] instanceof TypeInt) {
-							j = Integer.parseInt(ss[i]);
-							if (numStates == 1) {
-								varMins[i] = varMaxs[i] = j;
-							} else {
-								if (j < varMins[i])
-									varMins[i] = j;
-								if (j > varMaxs[i])
-									varMaxs[i] = j;
-							}
-						}
-					}
-				}
-				// read next line
-				s = in.readLine();
-				lineNum++;
-			}
-			// compute variable ranges
-			for (i = 0; i < numVars; i++) {
-				if (varTypes[i] instanceof TypeInt) {
-					varRanges[i] = varMaxs[i] - varMins[i];
-					// if range = 0, increment maximum - we don't allow zero-range variables
-					if (varRanges[i] == 0)
-						varMaxs[i]++;
-				}
+		// scan the file (in parallel, if possible) to get the var names, types and ranges
+		int numThreads = (settings != null) ? settings.getInteger(PrismSettings.PRISM_NUM_THREADS) : 1;
+		ExplicitFilesParser.StatesInfo info = new ExplicitFilesParser(numThreads).scanStates(statesFile);
+		numStates = info.numStates;
+		int numVars = info.varNames.length;
+		String varNames[] = info.varNames;
+		int varMins[] = info.varMins;
+		int varMaxs[] = info.varMaxs;
+		Type varTypes[] = new Type[numVars];
+		for (i = 0; i < numVars; i++) {
+			if (info.varIsBool[i]) {
+				varTypes[i] = TypeBool.getInstance();
+			} else {
+				varTypes[i] = TypeInt.getInstance();
+				// if range = 0, increment maximum - we don't allow zero-range variables
+				if (varMaxs[i] == varMins[i])
+					varMaxs[i]++;
 			}
-		} catch (IOException e) {
-			throw new PrismException("File I/O error reading from \"" + statesFile + "\"");
-		} catch (NumberFormatException e) {
-			throw new PrismException("Error detected at line " + lineNum + " of states file \"" + statesFile + "\"");
-		} catch (PrismException e) {
-			throw new PrismException("Error detected (" + e.getMessage() + ") at line " + lineNum + " of states file \"" + statesFile + "\"");
 		}
 		// create modules file
 		modulesFile = new ModulesFile();
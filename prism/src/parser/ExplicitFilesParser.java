@@ -0,0 +1,886 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+
+package parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import common.WorkerPool;
+import prism.PrismException;
+
+/**
+ * Parser for the explicit-state file formats of PRISM (.tra, .lab and .sta files).
+ * <br>
+ * Files are split (on line boundaries) into chunks, which are parsed independently,
+ * on several threads if requested, directly into primitive arrays. Numbers are parsed
+ * directly from the bytes of the file, without creating intermediate strings.
+ * Errors are reported with the (global) line number at which they occur.
+ */
+public class ExplicitFilesParser
+{
+	/** Size of the chunks (in bytes) that a file is split into */
+	private static final int CHUNK_SIZE = 8 << 20;
+
+	/** Number of threads to use */
+	private int numThreads;
+
+	/**
+	 * Create a parser.
+	 * @param numThreads Number of threads to use for parsing
+	 */
+	public ExplicitFilesParser(int numThreads)
+	{
+		this.numThreads = numThreads;
+	}
+
+	// Transitions (.tra files)
+
+	/**
+	 * Transitions read from a .tra file, in file order, stored as a list of chunks.
+	 */
+	public static class Transitions
+	{
+		/** Number of states (from the first line) */
+		public int numStates;
+		/** Number of choices (from the first line, MDPs only; -1 if not given) */
+		public int numChoices = -1;
+		/** Number of transitions (from the first line; -1 if not given) */
+		public int numTransitions = -1;
+		/** The transitions */
+		public List<TransitionsChunk> chunks;
+
+		/** Total number of transitions read */
+		public long size()
+		{
+			long n = 0;
+			for (TransitionsChunk chunk : chunks) {
+				n += chunk.size;
+			}
+			return n;
+		}
+	}
+
+	/**
+	 * Transitions from one chunk of a .tra file (the arrays may be larger than needed).
+	 */
+	public static class TransitionsChunk extends ChunkParser
+	{
+		/** Number of transitions */
+		public int size = 0;
+		/** Source states */
+		public int sources[] = new int[0];
+		/** Choice indices (null for DTMCs/CTMCs) */
+		public int choices[];
+		/** Target states */
+		public int targets[] = new int[0];
+		/** Probabilities (or rates) */
+		public double probs[] = new double[0];
+		/** Actions (null if there are none in this chunk) */
+		public String actions[];
+
+		private final int numStates;
+
+		TransitionsChunk(int numStates, boolean nondet)
+		{
+			this.numStates = numStates;
+			if (nondet)
+				choices = new int[0];
+		}
+
+		@Override
+		void parseLine(Cursor in) throws PrismException
+		{
+			int source = in.nextInt();
+			int choice = (choices != null) ? in.nextInt() : 0;
+			int target = in.nextInt();
+			double prob = in.nextDouble();
+			if (source < 0 || source >= numStates)
+				throw new PrismException("illegal source state index " + source);
+			if (target < 0 || target >= numStates)
+				throw new PrismException("illegal target state index " + target);
+			if (choice < 0)
+				throw new PrismException("illegal choice index " + choice);
+			if (size == sources.length) {
+				int n = Math.max(1024, size + (size >> 1));
+				sources = Arrays.copyOf(sources, n);
+				targets = Arrays.copyOf(targets, n);
+				probs = Arrays.copyOf(probs, n);
+				if (choices != null)
+					choices = Arrays.copyOf(choices, n);
+				if (actions != null)
+					actions = Arrays.copyOf(actions, n);
+			}
+			sources[size] = source;
+			targets[size] = target;
+			probs[size] = prob;
+			if (choices != null) {
+				choices[size] = choice;
+				if (in.hasMore()) {
+					if (actions == null)
+						actions = new String[sources.length];
+					// consecutive transitions usually share an action, so reuse its string
+					actions[size] = in.nextToken(size > 0 ? actions[size - 1] : null);
+				}
+			}
+			size++;
+		}
+	}
+
+	/**
+	 * Parse a .tra file.
+	 * @param file The file
+	 * @param nondet Is this a nondeterministic model (MDP), i.e., does each line include a choice index?
+	 */
+	public Transitions parseTransitions(File file, boolean nondet) throws PrismException
+	{
+		Transitions trans = new Transitions();
+		Header header = readHeader(file);
+		if (header.line == null)
+			throw new PrismException("Missing first line of .tra file");
+		try {
+			String ss[] = header.line.trim().split(" ");
+			trans.numStates = Integer.parseInt(ss[0]);
+			if (nondet) {
+				if (ss.length < 3)
+					throw new PrismException("First line of .tra file must read #states, #choices, #transitions");
+				trans.numChoices = Integer.parseInt(ss[1]);
+				trans.numTransitions = Integer.parseInt(ss[2]);
+			} else if (ss.length > 1) {
+				trans.numTransitions = Integer.parseInt(ss[1]);
+			}
+		} catch (NumberFormatException e) {
+			throw new PrismException("Problem in .tra file (line 1)");
+		}
+		final int numStates = trans.numStates;
+		trans.chunks = parseChunks(file, header.end, ".tra file", () -> new TransitionsChunk(numStates, nondet));
+		return trans;
+	}
+
+	// Labels (.lab files)
+
+	/**
+	 * Labels from one chunk of a .lab file, as pairs of (state, label index).
+	 */
+	private static class LabelsChunk extends ChunkParser
+	{
+		int size = 0;
+		int states[] = new int[0];
+		int labels[] = new int[0];
+		final int numLabels;
+
+		LabelsChunk(int numLabels)
+		{
+			this.numLabels = numLabels;
+		}
+
+		@Override
+		void parseLine(Cursor in) throws PrismException
+		{
+			int s = in.nextInt();
+			if (s < 0)
+				throw new PrismException("illegal state index " + s);
+			in.expect(':');
+			while (in.hasMore()) {
+				int k = in.nextInt();
+				if (k < 0 || k >= numLabels)
+					throw new PrismException("illegal label index " + k);
+				if (size == states.length) {
+					int n = Math.max(1024, size + (size >> 1));
+					states = Arrays.copyOf(states, n);
+					labels = Arrays.copyOf(labels, n);
+				}
+				states[size] = s;
+				labels[size] = k;
+				size++;
+			}
+		}
+	}
+
+	/**
+	 * Parse a .lab file, returning a map from label names to the sets of states satisfying them
+	 * (in the order of the label indices given in the file).
+	 */
+	public Map<String, BitSet> parseLabels(File file) throws PrismException
+	{
+		Header header = readHeader(file);
+		if (header.line == null)
+			throw new PrismException("Empty labels file");
+		// Parse first line to get label list
+		List<String> names = new ArrayList<String>();
+		for (String s : header.line.trim().split(" ")) {
+			int j = s.indexOf('=');
+			if (j < 0)
+				throw new PrismException("Corrupt labels file (line 1)");
+			int k;
+			try {
+				k = Integer.parseInt(s.substring(0, j));
+			} catch (NumberFormatException e) {
+				throw new PrismException("Corrupt labels file (line 1)");
+			}
+			while (names.size() <= k)
+				names.add("?");
+			names.set(k, s.substring(j + 2, s.length() - 1));
+		}
+		// Parse remaining lines
+		final int numLabels = names.size();
+		List<LabelsChunk> chunks = parseChunks(file, header.end, "labels file", () -> new LabelsChunk(numLabels));
+		BitSet bitsets[] = new BitSet[numLabels];
+		for (int i = 0; i < numLabels; i++)
+			bitsets[i] = new BitSet();
+		for (LabelsChunk chunk : chunks) {
+			for (int i = 0; i < chunk.size; i++) {
+				bitsets[chunk.labels[i]].set(chunk.states[i]);
+			}
+		}
+		Map<String, BitSet> res = new LinkedHashMap<String, BitSet>();
+		for (int i = 0; i < numLabels; i++) {
+			if (!names.get(i).equals("?")) {
+				res.put(names.get(i), bitsets[i]);
+			}
+		}
+		return res;
+	}
+
+	// States (.sta files)
+
+	/**
+	 * Summary info about the states in a .sta file.
+	 */
+	public static class StatesInfo
+	{
+		/** Number of states */
+		public int numStates;
+		/** Variable names */
+		public String varNames[];
+		/** Variable types (true = Boolean, false = integer), determined from the first state */
+		public boolean varIsBool[];
+		/** Minimum value of each (integer) variable */
+		public int varMins[];
+		/** Maximum value of each (integer) variable */
+		public int varMaxs[];
+	}
+
+	/**
+	 * Info about the states from one chunk of a .sta file.
+	 */
+	private static class StatesInfoChunk extends ChunkParser
+	{
+		int numStates = 0;
+		final int numVars;
+		boolean firstIsBool[];
+		boolean sawBool[];
+		boolean sawInt[];
+		int mins[];
+		int maxs[];
+
+		StatesInfoChunk(int numVars)
+		{
+			this.numVars = numVars;
+			firstIsBool = new boolean[numVars];
+			sawBool = new boolean[numVars];
+			sawInt = new boolean[numVars];
+			mins = new int[numVars];
+			maxs = new int[numVars];
+		}
+
+		@Override
+		void parseLine(Cursor in) throws PrismException
+		{
+			in.nextInt();
+			in.expect(':');
+			in.expect('(');
+			for (int j = 0; j < numVars; j++) {
+				if (j > 0)
+					in.expect(',');
+				Boolean b = in.nextBoolean();
+				if (numStates == 0)
+					firstIsBool[j] = b != null;
+				if (b != null) {
+					sawBool[j] = true;
+				} else {
+					int v = in.nextInt();
+					if (!sawInt[j]) {
+						sawInt[j] = true;
+						mins[j] = maxs[j] = v;
+					} else {
+						mins[j] = Math.min(mins[j], v);
+						maxs[j] = Math.max(maxs[j], v);
+					}
+				}
+			}
+			if (!in.tryExpect(')'))
+				throw new PrismException("wrong number of variables");
+			numStates++;
+		}
+	}
+
+	/**
+	 * Scan a .sta file to determine the number of states and the variables (names, types and ranges).
+	 */
+	public StatesInfo scanStates(File file) throws PrismException
+	{
+		Header header = readHeader(file);
+		if (header.line == null)
+			throw new PrismException("empty states file");
+		StatesInfo info = new StatesInfo();
+		info.varNames = parseStatesHeader(header.line);
+		final int numVars = info.varNames.length;
+		info.varIsBool = new boolean[numVars];
+		info.varMins = new int[numVars];
+		info.varMaxs = new int[numVars];
+		List<StatesInfoChunk> chunks = parseChunks(file, header.end, "states file", () -> new StatesInfoChunk(numVars));
+		boolean first = true;
+		boolean seenInt[] = new boolean[numVars];
+		for (StatesInfoChunk chunk : chunks) {
+			if (chunk.numStates == 0)
+				continue;
+			info.numStates += chunk.numStates;
+			// variable types are taken from the first state
+			if (first) {
+				info.varIsBool = chunk.firstIsBool.clone();
+				first = false;
+			}
+			for (int j = 0; j < numVars; j++) {
+				if (info.varIsBool[j])
+					continue;
+				if (chunk.sawBool[j])
+					throw new PrismException("Error detected (non-integer value for variable " + info.varNames[j] + ") in states file \"" + file + "\"");
+				if (!seenInt[j]) {
+					seenInt[j] = true;
+					info.varMins[j] = chunk.mins[j];
+					info.varMaxs[j] = chunk.maxs[j];
+				} else {
+					info.varMins[j] = Math.min(info.varMins[j], chunk.mins[j]);
+					info.varMaxs[j] = Math.max(info.varMaxs[j], chunk.maxs[j]);
+				}
+			}
+		}
+		return info;
+	}
+
+	/**
+	 * States from one chunk of a .sta file, stored directly into a shared array
+	 * (of packed words or State objects), at the index given on each line.
+	 */
+	private static class StatesChunk extends ChunkParser
+	{
+		int numStates = 0;
+		final int numStatesTotal;
+		final StatePacker packer;
+		final long words[];
+		final State states[];
+		final boolean seen[];
+		final State state;
+
+		StatesChunk(int numStatesTotal, StatePacker packer, long words[], State states[], boolean seen[], int numVars)
+		{
+			this.numStatesTotal = numStatesTotal;
+			this.packer = packer;
+			this.words = words;
+			this.states = states;
+			this.seen = seen;
+			this.state = new State(numVars);
+		}
+
+		@Override
+		void parseLine(Cursor in) throws PrismException
+		{
+			int i = in.nextInt();
+			if (i < 0 || i >= numStatesTotal)
+				throw new PrismException("illegal state index " + i);
+			in.expect(':');
+			in.expect('(');
+			int numVars = state.varValues.length;
+			for (int j = 0; j < numVars; j++) {
+				if (j > 0 && !in.tryExpect(','))
+					throw new PrismException("wrong number of variable values");
+				Boolean b = in.nextBoolean();
+				state.varValues[j] = (b != null) ? b : (Object) in.nextInt();
+			}
+			if (!in.tryExpect(')'))
+				throw new PrismException("wrong number of variable values");
+			if (seen[i])
+				throw new PrismException("duplicated state");
+			seen[i] = true;
+			if (packer != null) {
+				packer.pack(state, words, i * packer.getNumWords());
+			} else {
+				states[i] = new State(state);
+			}
+			numStates++;
+		}
+	}
+
+	/**
+	 * Parse a .sta file, returning the list of states (indexed as in the file).
+	 * If possible, i.e., if all variables in {@code varList} are bounded integers or Booleans,
+	 * the states are stored in packed form (see {@link PackedStateList}).
+	 * @param file The file
+	 * @param numStates The number of states
+	 * @param varList Info about the variables
+	 */
+	public List<State> parseStates(File file, int numStates, VarList varList) throws PrismException
+	{
+		Header header = readHeader(file);
+		if (header.line == null)
+			throw new PrismException("empty states file");
+		int numVars = varList.getNumVars();
+		StatePacker packer = StatePacker.canPack(varList) ? new StatePacker(varList) : null;
+		long words[] = (packer != null) ? new long[Math.multiplyExact(numStates, packer.getNumWords())] : null;
+		State states[] = (packer != null) ? null : new State[numStates];
+		boolean seen[] = new boolean[numStates];
+		List<StatesChunk> chunks = parseChunks(file, header.end, "states file", () -> new StatesChunk(numStates, packer, words, states, seen, numVars));
+		// Check that every state was defined exactly once
+		// (duplicates in different chunks are not detected during parsing)
+		long count = 0;
+		for (StatesChunk chunk : chunks) {
+			count += chunk.numStates;
+		}
+		for (int i = 0; i < numStates; i++) {
+			if (!seen[i]) {
+				throw new PrismException("Problem in states file \"" + file + "\": " + (count >= numStates ? "duplicated states" : "no definition for state " + i));
+			}
+		}
+		if (count > numStates)
+			throw new PrismException("Problem in states file \"" + file + "\": duplicated states");
+		return (packer != null) ? new PackedStateList(packer, words) : new ArrayList<State>(Arrays.asList(states));
+	}
+
+	/**
+	 * Parse the first line of a .sta file, i.e., the list of variable names.
+	 */
+	private static String[] parseStatesHeader(String s) throws PrismException
+	{
+		s = s.trim();
+		if (s.length() < 2 || s.charAt(0) != '(' || s.charAt(s.length() - 1) != ')')
+			throw new PrismException("Error detected (badly formatted state) at line 1 of states file");
+		return s.substring(1, s.length() - 1).split(",");
+	}
+
+	// Chunked parsing
+
+	/**
+	 * Base class for the parsing of (the lines of) one chunk of a file.
+	 */
+	abstract static class ChunkParser
+	{
+		/** Number of lines read so far (including blank ones) */
+		int numLines = 0;
+		/** Error message (null if none) */
+		String error = null;
+		/** Line (within the chunk, starting at 1) of the error */
+		int errorLine = -1;
+
+		/** Parse a (non-blank) line */
+		abstract void parseLine(Cursor in) throws PrismException;
+	}
+
+	/** The first line of a file, and the offset at which the rest starts */
+	private static class Header
+	{
+		String line;
+		long end;
+	}
+
+	/**
+	 * Read the first line of a file (line is null if the file is empty).
+	 */
+	private static Header readHeader(File file) throws PrismException
+	{
+		Header header = new Header();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			long end = nextLineStart(channel, 0);
+			if (size == 0)
+				return header;
+			int len = (int) Math.min(end, Integer.MAX_VALUE - 8);
+			ByteBuffer buf = ByteBuffer.allocate(len);
+			readFully(channel, buf, 0);
+			header.line = new String(buf.array(), 0, len, StandardCharsets.UTF_8).trim();
+			header.end = end;
+			return header;
+		} catch (IOException e) {
+			throw new PrismException("File I/O error reading from \"" + file + "\": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Parse the lines of a file, starting from byte offset {@code start}, in chunks.
+	 * Returns the chunk parsers (in file order), or throws an exception for the first
+	 * error encountered in the file.
+	 */
+	private <T extends ChunkParser> List<T> parseChunks(File file, long start, String fileDesc, Supplier<T> factory) throws PrismException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			// Split into chunks, on line boundaries
+			long size = channel.size();
+			int numChunks = (int) Math.max(1, (size - start + CHUNK_SIZE - 1) / CHUNK_SIZE);
+			long bounds[] = new long[numChunks + 1];
+			bounds[0] = start;
+			for (int i = 1; i < numChunks; i++) {
+				bounds[i] = Math.max(bounds[i - 1], nextLineStart(channel, start + (long) i * CHUNK_SIZE));
+			}
+			bounds[numChunks] = Math.max(bounds[numChunks - 1], size);
+			List<T> parsers = new ArrayList<T>(numChunks);
+			for (int i = 0; i < numChunks; i++) {
+				parsers.add(factory.get());
+			}
+			// Parse chunks (in parallel)
+			WorkerPool.run(numThreads, numChunks, i -> {
+				T parser = parsers.get(i);
+				ByteBuffer buf = ByteBuffer.allocate((int) (bounds[i + 1] - bounds[i]));
+				try {
+					readFully(channel, buf, bounds[i]);
+				} catch (IOException e) {
+					throw new PrismException("File I/O error reading from \"" + file + "\": " + e.getMessage());
+				}
+				Cursor in = new Cursor(buf.array());
+				while (in.nextLine()) {
+					parser.numLines++;
+					if (in.isBlank())
+						continue;
+					try {
+						parser.parseLine(in);
+					} catch (PrismException | RuntimeException e) {
+						parser.error = (e instanceof PrismException) ? e.getMessage() : e.toString();
+						parser.errorLine = parser.numLines;
+						return;
+					}
+				}
+			});
+			// Report the first error, if any (lines are numbered from 1, the first one is the header)
+			int line = 1;
+			for (T parser : parsers) {
+				if (parser.error != null)
+					throw new PrismException("Problem in " + fileDesc + " \"" + file + "\" (line " + (line + parser.errorLine) + "): " + parser.error);
+				line += parser.numLines;
+			}
+			return parsers;
+		} catch (IOException e) {
+			throw new PrismException("File I/O error reading from \"" + file + "\": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Find the start of the first line starting at or after offset {@code pos},
+	 * i.e., {@code pos} if it is at the start of a line, otherwise the offset after the next newline
+	 * (or the file size, if there is none).
+	 */
+	private static long nextLineStart(FileChannel channel, long pos) throws IOException
+	{
+		long size = channel.size();
+		if (pos > 0) {
+			pos--;
+		}
+		ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+		while (pos < size) {
+			buf.clear();
+			int n = channel.read(buf, pos);
+			if (n <= 0)
+				break;
+			byte b[] = buf.array();
+			for (int i = 0; i < n; i++) {
+				if (b[i] == '\n')
+					return pos + i + 1;
+			}
+			pos += n;
+		}
+		return size;
+	}
+
+	/** Fill a buffer from a channel, reading from offset {@code pos} */
+	private static void readFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException
+	{
+		while (buf.hasRemaining()) {
+			int n = channel.read(buf, pos + buf.position());
+			if (n < 0)
+				throw new IOException("unexpected end of file");
+		}
+	}
+
+	/**
+	 * Cursor over the lines of a chunk of bytes, with methods to parse tokens.
+	 */
+	static final class Cursor
+	{
+		/** Powers of 10 that are exactly representable as doubles */
+		private static final double POW10[] = new double[23];
+		static {
+			POW10[0] = 1.0;
+			for (int i = 1; i < POW10.length; i++)
+				POW10[i] = POW10[i - 1] * 10.0;
+		}
+
+		private final byte b[];
+		/** Current position */
+		private int pos = 0;
+		/** End of current line */
+		private int lineEnd = 0;
+		/** Start of next line */
+		private int next = 0;
+
+		Cursor(byte b[])
+		{
+			this.b = b;
+		}
+
+		/** Move to the next line; returns false if there is none */
+		boolean nextLine()
+		{
+			if (next >= b.length)
+				return false;
+			pos = next;
+			int e = pos;
+			while (e < b.length && b[e] != '\n')
+				e++;
+			lineEnd = e;
+			next = e + 1;
+			return true;
+		}
+
+		private static boolean isSpace(byte c)
+		{
+			return c == ' ' || c == '\t' || c == '\r';
+		}
+
+		private void skipSpaces()
+		{
+			while (pos < lineEnd && isSpace(b[pos]))
+				pos++;
+		}
+
+		/** Is the rest of the line blank? */
+		boolean isBlank()
+		{
+			skipSpaces();
+			return pos >= lineEnd;
+		}
+
+		/** Is there another token on the line? */
+		boolean hasMore()
+		{
+			return !isBlank();
+		}
+
+		/** Get the rest of the current token (for error messages) */
+		private String token(int start)
+		{
+			int end = start;
+			while (end < lineEnd && !isSpace(b[end]))
+				end++;
+			return new String(b, start, end - start, StandardCharsets.UTF_8);
+		}
+
+		/** Read an integer */
+		int nextInt() throws PrismException
+		{
+			skipSpaces();
+			int start = pos;
+			boolean neg = false;
+			if (pos < lineEnd && b[pos] == '-') {
+				neg = true;
+				pos++;
+			}
+			int digitsStart = pos;
+			long v = 0;
+			while (pos < lineEnd && b[pos] >= '0' && b[pos] <= '9') {
+				v = v * 10 + (b[pos++] - '0');
+				if (v > 1L << 31)
+					throw new PrismException("integer \"" + token(start) + "\" is out of range");
+			}
+			if (pos == digitsStart)
+				throw new PrismException("expected an integer, not \"" + token(start) + "\"");
+			v = neg ? -v : v;
+			if (v > Integer.MAX_VALUE)
+				throw new PrismException("integer \"" + token(start) + "\" is out of range");
+			return (int) v;
+		}
+
+		/**
+		 * Read a double. Numbers with at most 18 significant digits whose value and
+		 * power of ten are both exactly representable are computed directly (and exactly);
+		 * all others are passed to {@link Double#parseDouble(String)}.
+		 */
+		double nextDouble() throws PrismException
+		{
+			skipSpaces();
+			int start = pos;
+			int p = pos;
+			boolean neg = false;
+			if (p < lineEnd && (b[p] == '-' || b[p] == '+')) {
+				neg = b[p] == '-';
+				p++;
+			}
+			long m = 0;
+			int digits = 0;
+			int exp = 0;
+			boolean any = false;
+			boolean exact = true;
+			while (p < lineEnd && b[p] >= '0' && b[p] <= '9') {
+				any = true;
+				if (digits < 18) {
+					m = m * 10 + (b[p] - '0');
+					if (m != 0)
+						digits++;
+				} else {
+					exact = false;
+				}
+				p++;
+			}
+			if (p < lineEnd && b[p] == '.') {
+				p++;
+				while (p < lineEnd && b[p] >= '0' && b[p] <= '9') {
+					any = true;
+					if (digits < 18) {
+						m = m * 10 + (b[p] - '0');
+						if (m != 0)
+							digits++;
+						exp--;
+					} else {
+						exact = false;
+					}
+					p++;
+				}
+			}
+			if (any && p < lineEnd && (b[p] == 'e' || b[p] == 'E')) {
+				p++;
+				boolean expNeg = false;
+				if (p < lineEnd && (b[p] == '-' || b[p] == '+')) {
+					expNeg = b[p] == '-';
+					p++;
+				}
+				int e = 0;
+				int expStart = p;
+				while (p < lineEnd && b[p] >= '0' && b[p] <= '9') {
+					if (e < 100000)
+						e = e * 10 + (b[p] - '0');
+					p++;
+				}
+				if (p == expStart)
+					any = false;
+				exp += expNeg ? -e : e;
+			}
+			if (any && (p == lineEnd || isSpace(b[p]))) {
+				pos = p;
+				if (exact && m == 0)
+					return neg ? -0.0 : 0.0;
+				if (exact && m < 1L << 53 && exp >= -22 && exp <= 22) {
+					double d = (exp >= 0) ? m * POW10[exp] : m / POW10[-exp];
+					return neg ? -d : d;
+				}
+			}
+			// fall back to the standard parser (e.g. for Infinity, NaN, very long numbers)
+			String s = token(start);
+			pos = start + s.length();
+			try {
+				return Double.parseDouble(s);
+			} catch (NumberFormatException e) {
+				throw new PrismException("expected a number, not \"" + s + "\"");
+			}
+		}
+
+		/**
+		 * Read a Boolean ("true" or "false"), if there is one next;
+		 * otherwise return null (without moving the position).
+		 */
+		Boolean nextBoolean()
+		{
+			skipSpaces();
+			if (matches("true")) {
+				pos += 4;
+				return Boolean.TRUE;
+			}
+			if (matches("false")) {
+				pos += 5;
+				return Boolean.FALSE;
+			}
+			return null;
+		}
+
+		/** Does the line continue with the (ASCII) string {@code s} at the current position? */
+		private boolean matches(String s)
+		{
+			int n = s.length();
+			if (pos + n > lineEnd)
+				return false;
+			for (int i = 0; i < n; i++) {
+				if (b[pos + i] != s.charAt(i))
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Read a (whitespace-delimited) token. If it equals {@code previous},
+		 * that string is returned, rather than creating a new one.
+		 */
+		String nextToken(String previous)
+		{
+			skipSpaces();
+			int start = pos;
+			while (pos < lineEnd && !isSpace(b[pos]))
+				pos++;
+			if (previous != null && previous.length() == pos - start) {
+				boolean same = true;
+				for (int i = start; i < pos && same; i++) {
+					same = b[i] == previous.charAt(i - start);
+				}
+				if (same)
+					return previous;
+			}
+			return new String(b, start, pos - start, StandardCharsets.UTF_8);
+		}
+
+		/** Read the character {@code c} (after any whitespace), if it is next; returns whether it was */
+		boolean tryExpect(char c)
+		{
+			skipSpaces();
+			if (pos < lineEnd && b[pos] == c) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		/** Read the character {@code c} (after any whitespace), throwing an exception if it is not next */
+		void expect(char c) throws PrismException
+		{
+			if (!tryExpect(c))
+				throw new PrismException("expected '" + c + "'");
+		}
+	}
+}
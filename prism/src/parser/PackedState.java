@@ -0,0 +1,120 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+
+package parser;
+
+import java.util.Arrays;
+
+/**
+ * Class to store a model state in compact form: the values of all variables,
+ * encoded as integers and packed into an array of longs by a {@link StatePacker}.
+ * <br>
+ * Comparison works directly on the packed words and gives the same ordering as
+ * {@link State#compareTo(State)} for the corresponding (unpacked) states.
+ * Objects of this class are immutable.
+ */
+public final class PackedState implements Comparable<PackedState>
+{
+	/** The packed words */
+	private final long[] words;
+
+	/**
+	 * Construct from an array of packed words (which is stored, not copied).
+	 */
+	public PackedState(long[] words)
+	{
+		this.words = words;
+	}
+
+	/**
+	 * Get the number of packed words.
+	 */
+	public int getNumWords()
+	{
+		return words.length;
+	}
+
+	/**
+	 * Get the {@code i}th packed word.
+	 */
+	public long getWord(int i)
+	{
+		return words[i];
+	}
+
+	/**
+	 * Copy the packed words into {@code dest}, starting at {@code offset}.
+	 */
+	public void copyWords(long[] dest, int offset)
+	{
+		System.arraycopy(words, 0, dest, offset, words.length);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		long h = 0;
+		for (long w : words) {
+			h = (h + w) * 0x9E3779B97F4A7C15L;
+		}
+		return (int) (h ^ (h >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (o == this)
+			return true;
+		if (!(o instanceof PackedState))
+			return false;
+		return Arrays.equals(words, ((PackedState) o).words);
+	}
+
+	@Override
+	public int compareTo(PackedState s)
+	{
+		long[] swords = s.words;
+		int n = words.length;
+		if (n != swords.length)
+			throw new ClassCastException("States are different sizes");
+		for (int i = 0; i < n; i++) {
+			if (words[i] != swords[i])
+				return Long.compareUnsigned(words[i], swords[i]);
+		}
+		return 0;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder s = new StringBuilder("[");
+		for (int i = 0; i < words.length; i++) {
+			if (i > 0)
+				s.append(",");
+			s.append(Long.toHexString(words[i]));
+		}
+		return s.append("]").toString();
+	}
+}
@@ -0,0 +1,88 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+
+package parser;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list of states, stored compactly as packed words in a single long array
+ * (see {@link StatePacker}). A new State object is created on each call to {@link #get(int)}.
+ */
+public class PackedStateList extends AbstractList<State> implements RandomAccess
+{
+	/** The packer */
+	private final StatePacker packer;
+	/** Number of words per state */
+	private final int numWords;
+	/** Number of states */
+	private final int size;
+	/** The packed words of all states */
+	private final long[] words;
+
+	/**
+	 * Construct from a list of packed states.
+	 */
+	public PackedStateList(StatePacker packer, List<PackedState> states)
+	{
+		this.packer = packer;
+		numWords = packer.getNumWords();
+		size = states.size();
+		words = new long[Math.multiplyExact(size, numWords)];
+		int offset = 0;
+		for (PackedState s : states) {
+			s.copyWords(words, offset);
+			offset += numWords;
+		}
+	}
+
+	/**
+	 * Construct from an array of packed words, {@code packer.getNumWords()} per state
+	 * (the array is stored, not copied).
+	 */
+	public PackedStateList(StatePacker packer, long[] words)
+	{
+		this.packer = packer;
+		numWords = packer.getNumWords();
+		size = words.length / numWords;
+		this.words = words;
+	}
+
+	@Override
+	public State get(int index)
+	{
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		return packer.unpack(words, index * numWords);
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+}
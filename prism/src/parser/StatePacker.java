@@ -0,0 +1,222 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+
+package parser;
+
+import parser.ast.DeclarationBool;
+import parser.ast.DeclarationInt;
+import parser.ast.DeclarationType;
+import prism.PrismLangException;
+
+/**
+ * Class to convert between {@link State} objects and their compact
+ * representation as {@link PackedState} objects (or as words within a long array).
+ * <br>
+ * Each variable is encoded as an integer (its value minus its lower bound, or 0/1 for Booleans)
+ * using the number of bits needed for its range, as given in the {@link VarList}. The encodings
+ * are stored from the most significant bit of the first word onwards, in variable order, and
+ * a variable never spans two words. Comparing the words as unsigned numbers thus gives the
+ * same ordering as {@link State#compareTo(State)}.
+ * <br>
+ * Only models whose variables are all bounded integers or Booleans can be packed,
+ * see {@link #canPack(VarList)}.
+ */
+public class StatePacker
+{
+	/** Number of variables */
+	private final int numVars;
+	/** Number of words per state */
+	private final int numWords;
+	/** For each variable: index of the word it is stored in */
+	private final int[] wordIndex;
+	/** For each variable: position of its lowest bit within the word */
+	private final int[] shift;
+	/** For each variable: bit mask (after shifting) */
+	private final long[] mask;
+	/** For each variable: lower bound (integers only) */
+	private final int[] low;
+	/** For each variable: upper bound (integers only) */
+	private final int[] high;
+	/** For each variable: is it a Boolean? */
+	private final boolean[] isBool;
+	/** Variable names, for error messages */
+	private final String[] names;
+
+	/**
+	 * Can states of a model with variables {@code varList} be packed?
+	 * (i.e. are all variables bounded integers or Booleans?)
+	 */
+	public static boolean canPack(VarList varList)
+	{
+		if (varList == null)
+			return false;
+		int n = varList.getNumVars();
+		for (int i = 0; i < n; i++) {
+			DeclarationType declType = varList.getDeclaration(i).getDeclType();
+			if (!(declType instanceof DeclarationInt || declType instanceof DeclarationBool))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Create a StatePacker for a model with variables {@code varList}.
+	 * Throws an exception if the states cannot be packed (see {@link #canPack(VarList)}).
+	 */
+	public StatePacker(VarList varList) throws PrismLangException
+	{
+		if (!canPack(varList))
+			throw new PrismLangException("States can only be packed if all variables are bounded integers or Booleans");
+		numVars = varList.getNumVars();
+		wordIndex = new int[numVars];
+		shift = new int[numVars];
+		mask = new long[numVars];
+		low = new int[numVars];
+		high = new int[numVars];
+		isBool = new boolean[numVars];
+		names = new String[numVars];
+		int word = 0;
+		int free = 64;
+		for (int i = 0; i < numVars; i++) {
+			isBool[i] = varList.getDeclaration(i).getDeclType() instanceof DeclarationBool;
+			low[i] = isBool[i] ? 0 : varList.getLow(i);
+			high[i] = isBool[i] ? 1 : varList.getHigh(i);
+			names[i] = varList.getName(i);
+			int bits = varList.getRangeLogTwo(i);
+			if (bits > free) {
+				word++;
+				free = 64;
+			}
+			free -= bits;
+			wordIndex[i] = word;
+			shift[i] = free;
+			mask[i] = (1L << bits) - 1;
+		}
+		numWords = word + 1;
+	}
+
+	/**
+	 * Get the number of (long) words needed to store a state.
+	 */
+	public int getNumWords()
+	{
+		return numWords;
+	}
+
+	/**
+	 * Get the number of variables.
+	 */
+	public int getNumVars()
+	{
+		return numVars;
+	}
+
+	/**
+	 * Pack a state.
+	 * Throws an exception if a variable has the wrong type or is out of range.
+	 */
+	public PackedState pack(State state) throws PrismLangException
+	{
+		long[] words = new long[numWords];
+		pack(state, words, 0);
+		return new PackedState(words);
+	}
+
+	/**
+	 * Pack a state, storing the words in {@code words}, starting at {@code offset}.
+	 * Throws an exception if a variable has the wrong type or is out of range.
+	 */
+	public void pack(State state, long[] words, int offset) throws PrismLangException
+	{
+		Object[] varValues = state.varValues;
+		if (varValues.length != numVars)
+			throw new PrismLangException("Wrong number of variables in state");
+		for (int i = offset; i < offset + numWords; i++) {
+			words[i] = 0;
+		}
+		for (int i = 0; i < numVars; i++) {
+			long v;
+			Object val = varValues[i];
+			if (isBool[i]) {
+				if (!(val instanceof Boolean))
+					throw new PrismLangException("Value " + val + " is wrong type for variable " + names[i]);
+				v = ((Boolean) val).booleanValue() ? 1 : 0;
+			} else {
+				if (!(val instanceof Integer))
+					throw new PrismLangException("Value " + val + " is wrong type for variable " + names[i]);
+				int iv = ((Integer) val).intValue();
+				if (iv < low[i] || iv > high[i])
+					throw new PrismLangException("Value " + iv + " of variable " + names[i] + " is out of range (" + low[i] + "-" + high[i] + ")");
+				v = (long) iv - low[i];
+			}
+			words[offset + wordIndex[i]] |= v << shift[i];
+		}
+	}
+
+	/**
+	 * Unpack a state (as a new State object).
+	 */
+	public State unpack(PackedState packed)
+	{
+		State state = new State(numVars);
+		for (int i = 0; i < numVars; i++) {
+			state.varValues[i] = decode(i, packed.getWord(wordIndex[i]));
+		}
+		return state;
+	}
+
+	/**
+	 * Unpack a state (as a new State object) stored in {@code words}, starting at {@code offset}.
+	 */
+	public State unpack(long[] words, int offset)
+	{
+		State state = new State(numVars);
+		for (int i = 0; i < numVars; i++) {
+			state.varValues[i] = decode(i, words[offset + wordIndex[i]]);
+		}
+		return state;
+	}
+
+	/**
+	 * Get the value of variable {@code var} of a packed state.
+	 */
+	public Object getValue(PackedState packed, int var)
+	{
+		return decode(var, packed.getWord(wordIndex[var]));
+	}
+
+	/**
+	 * Decode the value of variable {@code i} from the word storing it.
+	 */
+	private Object decode(int i, long word)
+	{
+		int v = (int) ((word >>> shift[i]) & mask[i]);
+		if (isBool[i]) {
+			return v != 0;
+		} else {
+			return low[i] + v;
+		}
+	}
+}
@@ -226,7 +226,7 @@ public class ExpressionFunc extends Expression
 				j = getOperand(i).evaluateInt(ec);
 				iMin = (j < iMin) ? j : iMin;
 			}
-			return new Integer(iMin);
+			return Integer.valueOf(iMin);
 		} else {
 			dMin = getOperand(0).evaluateDouble(ec);
 			n = getNumOperands();
@@ -261,7 +261,7 @@ public class ExpressionFunc extends Expression
 				j = getOperand(i).evaluateInt(ec);
 				iMax = (j > iMax) ? j : iMax;
 			}
-			return new Integer(iMax);
+			return Integer.valueOf(iMax);
 		} else {
 			dMax = getOperand(0).evaluateDouble(ec);
 			n = getNumOperands();
@@ -287,7 +287,7 @@ public class ExpressionFunc extends Expression
 	public Object evaluateFloor(EvaluateContext ec) throws PrismLangException
 	{
 		try {
-			return new Integer(evaluateFloor(getOperand(0).evaluateDouble(ec)));
+			return Integer.valueOf(evaluateFloor(getOperand(0).evaluateDouble(ec)));
 		} catch (PrismLangException e) {
 			e.setASTElement(this);
 			throw e;
@@ -306,7 +306,7 @@ public class ExpressionFunc extends Expression
 	public Object evaluateCeil(EvaluateContext ec) throws PrismLangException
 	{
 		try {
-			return new Integer(evaluateCeil(getOperand(0).evaluateDouble(ec)));
+			return Integer.valueOf(evaluateCeil(getOperand(0).evaluateDouble(ec)));
 		} catch (PrismLangException e) {
 			e.setASTElement(this);
 			throw e;
@@ -336,7 +336,7 @@ public class ExpressionFunc extends Expression
 	{
 		try {
 			if (type instanceof TypeInt) {
-				return new Integer(evaluatePowInt(getOperand(0).evaluateInt(ec), getOperand(1).evaluateInt(ec)));
+				return Integer.valueOf(evaluatePowInt(getOperand(0).evaluateInt(ec), getOperand(1).evaluateInt(ec)));
 			} else {
 				return new Double(evaluatePowDouble(getOperand(0).evaluateDouble(ec), getOperand(1).evaluateDouble(ec)));
 			}
@@ -379,7 +379,7 @@ public class ExpressionFunc extends Expression
 	public Object evaluateMod(EvaluateContext ec) throws PrismLangException
 	{
 		try {
-			return new Integer(evaluateMod(getOperand(0).evaluateInt(ec), getOperand(1).evaluateInt(ec)));
+			return Integer.valueOf(evaluateMod(getOperand(0).evaluateInt(ec), getOperand(1).evaluateInt(ec)));
 		} catch (PrismLangException e) {
 			e.setASTElement(this);
 			throw e;
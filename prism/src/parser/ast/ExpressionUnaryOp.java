@@ -120,10 +120,10 @@ public class ExpressionUnaryOp extends Expression
 	{
 		switch (op) {
 		case NOT:
-			return new Boolean(!operand.evaluateBoolean(ec));
+			return Boolean.valueOf(!operand.evaluateBoolean(ec));
 		case MINUS:
 			if (type instanceof TypeInt) {
-				return new Integer(-operand.evaluateInt(ec));
+				return Integer.valueOf(-operand.evaluateInt(ec));
 			} else {
 				return new Double(-operand.evaluateDouble(ec));
 			}
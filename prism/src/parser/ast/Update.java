@@ -257,6 +257,23 @@ public class Update extends ASTElement
 		}
 	}
 
+	/**
+	 * Execute this update, based on variable values specified by an evaluation context
+	 * (e.g. an EvaluateContextState wrapping the current state, which can then be reused).
+	 * Apply changes in variables to a provided copy of the current State object.
+	 * It is assumed that any constants have already been defined.
+	 * @param ec Context for evaluation, i.e. variable values in current state
+	 * @param newState Object to store new state in
+	 */
+	public void update(EvaluateContext ec, State newState) throws PrismLangException
+	{
+		int i, n;
+		n = exprs.size();
+		for (i = 0; i < n; i++) {
+			newState.setValue(getVarIndex(i), getExpression(i).evaluate(ec));
+		}
+	}
+
 	/**
 	 * Execute this update, based on variable values specified as a State object.
 	 * Apply changes in variables to a provided copy of the State object.
@@ -134,6 +134,15 @@ public class Updates extends ASTElement
 		Expression p = probs.get(i);
 		return (p == null) ? 1.0 : p.evaluateDouble(state);
 	}
+
+	/**
+	 * Evaluate the probability (or rate) of the ith update, in the context of some evaluation context
+	 */
+	public double getProbabilityInState(int i, EvaluateContext ec) throws PrismLangException
+	{
+		Expression p = probs.get(i);
+		return (p == null) ? 1.0 : p.evaluateDouble(ec);
+	}
 			
 	/**
 	 * Get the Command to which this Updates object belongs.
@@ -0,0 +1,440 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package parser.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Minimal writer for JVM class files, providing just what is needed by {@link ExpressionCompiler}:
+ * a public final class with a no-argument constructor and some methods with straight-line/branching code
+ * on int/double values. Classes are written in the (version 49) format that does not need stack map frames.
+ */
+class ClassFileBuilder
+{
+	// Opcodes
+	static final int ICONST_0 = 0x03;
+	static final int ICONST_1 = 0x04;
+	static final int DCONST_0 = 0x0e;
+	static final int DCONST_1 = 0x0f;
+	static final int BIPUSH = 0x10;
+	static final int SIPUSH = 0x11;
+	static final int LDC_W = 0x13;
+	static final int LDC2_W = 0x14;
+	static final int ALOAD_0 = 0x2a;
+	static final int ALOAD_1 = 0x2b;
+	static final int IALOAD = 0x2e;
+	static final int IADD = 0x60;
+	static final int DADD = 0x63;
+	static final int ISUB = 0x64;
+	static final int DSUB = 0x67;
+	static final int IMUL = 0x68;
+	static final int DMUL = 0x6b;
+	static final int DDIV = 0x6f;
+	static final int INEG = 0x74;
+	static final int DNEG = 0x77;
+	static final int IXOR = 0x82;
+	static final int I2D = 0x87;
+	static final int DCMPL = 0x97;
+	static final int DCMPG = 0x98;
+	static final int IFEQ = 0x99;
+	static final int IFNE = 0x9a;
+	static final int IFLT = 0x9b;
+	static final int IFGE = 0x9c;
+	static final int IFGT = 0x9d;
+	static final int IFLE = 0x9e;
+	static final int IF_ICMPEQ = 0x9f;
+	static final int IF_ICMPNE = 0xa0;
+	static final int IF_ICMPLT = 0xa1;
+	static final int IF_ICMPGE = 0xa2;
+	static final int IF_ICMPGT = 0xa3;
+	static final int IF_ICMPLE = 0xa4;
+	static final int GOTO = 0xa7;
+	static final int IRETURN = 0xac;
+	static final int DRETURN = 0xaf;
+	static final int RETURN = 0xb1;
+	static final int INVOKESPECIAL = 0xb7;
+	static final int INVOKESTATIC = 0xb8;
+
+	// Access flags
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	// Class info (internal names, i.e. with '/' separators)
+	private String className;
+	private String superName;
+
+	// Constant pool: contents, number of entries (+1) and index for each (keyed) entry
+	private ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+	private DataOutputStream pool = new DataOutputStream(poolBytes);
+	private int poolCount = 1;
+	private HashMap<String, Integer> poolIndex = new HashMap<String, Integer>();
+
+	// Methods
+	private List<MethodBuilder> methods = new ArrayList<MethodBuilder>();
+
+	/**
+	 * Start a new class.
+	 * @param className Class name (internal form, e.g. "parser/compiler/Foo")
+	 * @param superName Superclass name (internal form), which must have a public no-argument constructor
+	 */
+	public ClassFileBuilder(String className, String superName)
+	{
+		this.className = className;
+		this.superName = superName;
+		// Add the constructor, which just calls the superclass one
+		MethodBuilder init = addMethod("<init>", "()V", 1);
+		init.op(ALOAD_0, 1);
+		init.op(INVOKESPECIAL, -1);
+		init.u2(methodRef(superName, "<init>", "()V"));
+		init.op(RETURN, 0);
+	}
+
+	/**
+	 * Add a new public method, whose code is then given via the returned object.
+	 * @param name Method name
+	 * @param descriptor Method descriptor, e.g. "([I)I"
+	 * @param numLocals Number of local variable slots (including "this" and arguments)
+	 */
+	public MethodBuilder addMethod(String name, String descriptor, int numLocals)
+	{
+		MethodBuilder method = new MethodBuilder(utf8(name), utf8(descriptor), numLocals);
+		methods.add(method);
+		return method;
+	}
+
+	/**
+	 * Get the class file, once all methods are complete.
+	 */
+	public byte[] toByteArray() throws IOException
+	{
+		int thisIndex = classRef(className);
+		int superIndex = classRef(superName);
+		int codeIndex = utf8("Code");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0);
+		out.writeShort(49);
+		out.writeShort(poolCount);
+		pool.flush();
+		poolBytes.writeTo(out);
+		out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+		out.writeShort(thisIndex);
+		out.writeShort(superIndex);
+		// No interfaces or fields
+		out.writeShort(0);
+		out.writeShort(0);
+		out.writeShort(methods.size());
+		for (MethodBuilder method : methods) {
+			method.resolveLabels();
+			out.writeShort(ACC_PUBLIC);
+			out.writeShort(method.nameIndex);
+			out.writeShort(method.descriptorIndex);
+			// Just one attribute: the code
+			out.writeShort(1);
+			out.writeShort(codeIndex);
+			out.writeInt(12 + method.length);
+			out.writeShort(method.maxStack);
+			out.writeShort(method.numLocals);
+			out.writeInt(method.length);
+			out.write(method.code, 0, method.length);
+			// No exception table or attributes
+			out.writeShort(0);
+			out.writeShort(0);
+		}
+		// No class attributes
+		out.writeShort(0);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	// Constant pool
+
+	int utf8(String s)
+	{
+		Integer i = poolIndex.get("U" + s);
+		if (i != null)
+			return i;
+		try {
+			pool.writeByte(1);
+			pool.writeUTF(s);
+		} catch (IOException e) {
+			// Can't happen (writing to a byte array)
+		}
+		return addPoolEntry("U" + s, 1);
+	}
+
+	int classRef(String internalName)
+	{
+		Integer i = poolIndex.get("C" + internalName);
+		if (i != null)
+			return i;
+		int nameIndex = utf8(internalName);
+		writePoolEntry(7, nameIndex, -1);
+		return addPoolEntry("C" + internalName, 1);
+	}
+
+	int methodRef(String owner, String name, String descriptor)
+	{
+		String key = "M" + owner + "." + name + descriptor;
+		Integer i = poolIndex.get(key);
+		if (i != null)
+			return i;
+		int classIndex = classRef(owner);
+		int nameIndex = utf8(name);
+		int descriptorIndex = utf8(descriptor);
+		String ntKey = "N" + name + descriptor;
+		Integer ntIndex = poolIndex.get(ntKey);
+		if (ntIndex == null) {
+			writePoolEntry(12, nameIndex, descriptorIndex);
+			ntIndex = addPoolEntry(ntKey, 1);
+		}
+		writePoolEntry(10, classIndex, ntIndex);
+		return addPoolEntry(key, 1);
+	}
+
+	int integer(int value)
+	{
+		Integer i = poolIndex.get("I" + value);
+		if (i != null)
+			return i;
+		try {
+			pool.writeByte(3);
+			pool.writeInt(value);
+		} catch (IOException e) {
+			// Can't happen (writing to a byte array)
+		}
+		return addPoolEntry("I" + value, 1);
+	}
+
+	int doubleConst(double value)
+	{
+		long bits = Double.doubleToRawLongBits(value);
+		Integer i = poolIndex.get("D" + bits);
+		if (i != null)
+			return i;
+		try {
+			pool.writeByte(6);
+			pool.writeLong(bits);
+		} catch (IOException e) {
+			// Can't happen (writing to a byte array)
+		}
+		// Doubles take up two constant pool entries
+		return addPoolEntry("D" + bits, 2);
+	}
+
+	private void writePoolEntry(int tag, int index1, int index2)
+	{
+		try {
+			pool.writeByte(tag);
+			pool.writeShort(index1);
+			if (index2 != -1)
+				pool.writeShort(index2);
+		} catch (IOException e) {
+			// Can't happen (writing to a byte array)
+		}
+	}
+
+	private int addPoolEntry(String key, int size)
+	{
+		int i = poolCount;
+		poolIndex.put(key, i);
+		poolCount += size;
+		return i;
+	}
+
+	/**
+	 * A branch target within a method.
+	 */
+	static class Label
+	{
+		// Offset of the label in the code (-1 if not yet placed)
+		int position = -1;
+		// Offsets of the branch instructions/operands that jump to this label
+		List<int[]> fixups = new ArrayList<int[]>();
+	}
+
+	/**
+	 * The code for one method, built one instruction at a time,
+	 * keeping track of the (maximum) operand stack size.
+	 */
+	class MethodBuilder
+	{
+		private int nameIndex;
+		private int descriptorIndex;
+		private int numLocals;
+		private byte code[] = new byte[64];
+		private int length = 0;
+		private int stack = 0;
+		private int maxStack = 0;
+		private List<Label> labels = new ArrayList<Label>();
+
+		private MethodBuilder(int nameIndex, int descriptorIndex, int numLocals)
+		{
+			this.nameIndex = nameIndex;
+			this.descriptorIndex = descriptorIndex;
+			this.numLocals = numLocals;
+		}
+
+		/**
+		 * Add an instruction (without operands) and adjust the stack size by {@code stackDelta} slots.
+		 */
+		public void op(int opcode, int stackDelta)
+		{
+			u1(opcode);
+			adjustStack(stackDelta);
+		}
+
+		/**
+		 * Push an int constant.
+		 */
+		public void pushInt(int value)
+		{
+			if (value >= -1 && value <= 5) {
+				u1(ICONST_0 + value);
+			} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				u1(BIPUSH);
+				u1(value);
+			} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+				u1(SIPUSH);
+				u2(value);
+			} else {
+				u1(LDC_W);
+				u2(integer(value));
+			}
+			adjustStack(1);
+		}
+
+		/**
+		 * Push a double constant.
+		 */
+		public void pushDouble(double value)
+		{
+			if (Double.doubleToRawLongBits(value) == 0L) {
+				u1(DCONST_0);
+			} else if (value == 1.0) {
+				u1(DCONST_1);
+			} else {
+				u1(LDC2_W);
+				u2(doubleConst(value));
+			}
+			adjustStack(2);
+		}
+
+		/**
+		 * Call a static method, adjusting the stack size by {@code stackDelta} slots.
+		 */
+		public void invokeStatic(String owner, String name, String descriptor, int stackDelta)
+		{
+			u1(INVOKESTATIC);
+			u2(methodRef(owner, name, descriptor));
+			adjustStack(stackDelta);
+		}
+
+		/**
+		 * Add a branch instruction to a label, adjusting the stack size by {@code stackDelta} slots.
+		 */
+		public void branch(int opcode, Label label, int stackDelta)
+		{
+			label.fixups.add(new int[] { length, length + 1 });
+			u1(opcode);
+			u2(0);
+			adjustStack(stackDelta);
+		}
+
+		public Label newLabel()
+		{
+			Label label = new Label();
+			labels.add(label);
+			return label;
+		}
+
+		public void placeLabel(Label label)
+		{
+			label.position = length;
+		}
+
+		/**
+		 * Get the current operand stack size (in slots).
+		 */
+		public int getStack()
+		{
+			return stack;
+		}
+
+		/**
+		 * Set the current operand stack size (in slots), e.g. at the start of an alternative branch.
+		 */
+		public void setStack(int stack)
+		{
+			this.stack = stack;
+		}
+
+		/**
+		 * Get the current code size (in bytes).
+		 */
+		public int getLength()
+		{
+			return length;
+		}
+
+		private void adjustStack(int stackDelta)
+		{
+			stack += stackDelta;
+			maxStack = Math.max(maxStack, stack);
+		}
+
+		private void u1(int b)
+		{
+			if (length == code.length)
+				code = Arrays.copyOf(code, 2 * length);
+			code[length++] = (byte) b;
+		}
+
+		private void u2(int s)
+		{
+			u1(s >> 8);
+			u1(s);
+		}
+
+		private void resolveLabels()
+		{
+			for (Label label : labels) {
+				for (int fixup[] : label.fixups) {
+					int offset = label.position - fixup[0];
+					code[fixup[1]] = (byte) (offset >> 8);
+					code[fixup[1] + 1] = (byte) offset;
+				}
+			}
+		}
+	}
+}
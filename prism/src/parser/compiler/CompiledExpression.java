@@ -0,0 +1,224 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package parser.compiler;
+
+import java.util.BitSet;
+
+import parser.EvaluateContext;
+import parser.State;
+import parser.Values;
+import parser.ast.Expression;
+import parser.type.Type;
+import parser.type.TypeBool;
+import parser.type.TypeDouble;
+import prism.PrismLangException;
+
+/**
+ * Base class for expressions compiled to JVM bytecode by {@link ExpressionCompiler}.
+ * <br><br>
+ * A compiled expression is evaluated over an array of variable values,
+ * with integers stored directly and Booleans stored as 0/1 (see {@link #toIntValues(State, int[])}).
+ * Generated subclasses override {@link #doEvaluateInt(int[])} (for integer/Boolean-valued expressions)
+ * or {@link #doEvaluateDouble(int[])} (for double-valued ones).
+ */
+public abstract class CompiledExpression
+{
+	// The original expression
+	private Expression expr;
+	// Its type
+	private Type type;
+	// Constant values and indices of Boolean variables used by the expression
+	// (just needed to re-evaluate it when reporting errors)
+	private Values constantValues;
+	private BitSet boolVars;
+
+	/**
+	 * Set the original expression and info about it (called by the compiler).
+	 */
+	void setExpression(Expression expr, Values constantValues, BitSet boolVars)
+	{
+		this.expr = expr;
+		this.type = expr.getType();
+		this.constantValues = constantValues;
+		this.boolVars = boolVars;
+	}
+
+	/**
+	 * Get the (original) expression that was compiled.
+	 */
+	public Expression getExpression()
+	{
+		return expr;
+	}
+
+	/**
+	 * Evaluate this expression as an integer (Booleans are converted to 0/1).
+	 * @param vars Variable values (see {@link #toIntValues(State, int[])})
+	 */
+	public final int evaluateInt(int vars[]) throws PrismLangException
+	{
+		try {
+			return doEvaluateInt(vars);
+		} catch (PrismLangException e) {
+			throw explainError(e, vars);
+		}
+	}
+
+	/**
+	 * Evaluate this expression as a double (integers/Booleans are converted).
+	 * @param vars Variable values (see {@link #toIntValues(State, int[])})
+	 */
+	public final double evaluateDouble(int vars[]) throws PrismLangException
+	{
+		try {
+			return doEvaluateDouble(vars);
+		} catch (PrismLangException e) {
+			throw explainError(e, vars);
+		}
+	}
+
+	/**
+	 * Evaluate this (Boolean-valued) expression.
+	 * @param vars Variable values (see {@link #toIntValues(State, int[])})
+	 */
+	public final boolean evaluateBoolean(int vars[]) throws PrismLangException
+	{
+		return evaluateInt(vars) != 0;
+	}
+
+	/**
+	 * Evaluate this expression, returning an Integer, Double or Boolean, according to its type
+	 * (as for {@link Expression#evaluate(parser.EvaluateContext)}).
+	 * @param vars Variable values (see {@link #toIntValues(State, int[])})
+	 */
+	public final Object evaluate(int vars[]) throws PrismLangException
+	{
+		if (type instanceof TypeBool)
+			return Boolean.valueOf(evaluateInt(vars) != 0);
+		if (type instanceof TypeDouble)
+			return new Double(evaluateDouble(vars));
+		return Integer.valueOf(evaluateInt(vars));
+	}
+
+	/**
+	 * Evaluate as an integer (implemented by generated code for integer/Boolean-valued expressions).
+	 */
+	protected int doEvaluateInt(int vars[]) throws PrismLangException
+	{
+		throw new PrismLangException("Cannot evaluate to an integer", expr);
+	}
+
+	/**
+	 * Evaluate as a double (implemented by generated code for double-valued expressions).
+	 */
+	protected double doEvaluateDouble(int vars[]) throws PrismLangException
+	{
+		return doEvaluateInt(vars);
+	}
+
+	/**
+	 * Errors from generated code (e.g. a negative exponent in an integer pow())
+	 * do not know where in the expression they came from, so re-evaluate the original
+	 * expression to get the error reported for the right sub-expression
+	 * (falling back on attributing it to the whole expression).
+	 */
+	private PrismLangException explainError(PrismLangException e, int vars[])
+	{
+		try {
+			expr.evaluate(new EvaluateContext()
+			{
+				@Override
+				public Object getConstantValue(String name)
+				{
+					int i = constantValues == null ? -1 : constantValues.getIndexOf(name);
+					return i == -1 ? null : constantValues.getValue(i);
+				}
+
+				@Override
+				public Object getVarValue(String name, int index)
+				{
+					if (index < 0 || index >= vars.length)
+						return null;
+					return boolVars.get(index) ? (Object) Boolean.valueOf(vars[index] != 0) : (Object) Integer.valueOf(vars[index]);
+				}
+			});
+		} catch (PrismLangException e2) {
+			return e2;
+		}
+		if (!e.hasASTElement())
+			e.setASTElement(expr);
+		return e;
+	}
+
+	/**
+	 * Convert the variable values of a state to the array format used by compiled expressions.
+	 * Returns false (and leaves the array in an undefined state) if the state has values
+	 * that are neither integers nor Booleans.
+	 * @param state The state
+	 * @param vars Array (of size at least the number of variables) to store the values in
+	 */
+	public static boolean toIntValues(State state, int vars[])
+	{
+		return toIntValues(state.varValues, vars);
+	}
+
+	/**
+	 * Convert an array of variable values (as stored in a {@link State})
+	 * to the array format used by compiled expressions.
+	 * Returns false if some values are neither integers nor Booleans.
+	 */
+	public static boolean toIntValues(Object varValues[], int vars[])
+	{
+		int n = varValues.length;
+		for (int i = 0; i < n; i++) {
+			Object o = varValues[i];
+			if (o instanceof Integer)
+				vars[i] = (Integer) o;
+			else if (o instanceof Boolean)
+				vars[i] = ((Boolean) o) ? 1 : 0;
+			else
+				return false;
+		}
+		return true;
+	}
+
+	// Helper methods for generated code
+
+	/**
+	 * Minimum of two doubles, as computed by {@code ExpressionFunc} (a {@code min} over {@code dMin} and then {@code d}).
+	 */
+	public static double min(double dMin, double d)
+	{
+		return (d < dMin) ? d : dMin;
+	}
+
+	/**
+	 * Maximum of two doubles, as computed by {@code ExpressionFunc} (a {@code max} over {@code dMax} and then {@code d}).
+	 */
+	public static double max(double dMax, double d)
+	{
+		return (d > dMax) ? d : dMax;
+	}
+}
@@ -0,0 +1,457 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package parser.compiler;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import parser.EvaluateContextValues;
+import parser.Values;
+import parser.ast.Expression;
+import parser.ast.ExpressionBinaryOp;
+import parser.ast.ExpressionConstant;
+import parser.ast.ExpressionFormula;
+import parser.ast.ExpressionFunc;
+import parser.ast.ExpressionITE;
+import parser.ast.ExpressionLiteral;
+import parser.ast.ExpressionUnaryOp;
+import parser.ast.ExpressionVar;
+import parser.compiler.ClassFileBuilder.Label;
+import parser.compiler.ClassFileBuilder.MethodBuilder;
+import parser.type.Type;
+import parser.type.TypeBool;
+import parser.type.TypeDouble;
+import parser.type.TypeInt;
+import prism.PrismLangException;
+
+import static parser.compiler.ClassFileBuilder.*;
+
+/**
+ * Compiles (type-checked) expressions into JVM classes, for fast evaluation
+ * over arrays of (primitive) variable values, avoiding the boxing of values
+ * and the tree traversal done by {@link Expression#evaluate(parser.EvaluateContext)}.
+ * <br><br>
+ * Supported are expressions built from literals, constants, variables (with their indices set),
+ * formulas (with definitions), unary/binary operators, if-then-else and the standard functions
+ * (min, max, floor, ceil, pow, mod, log), of type int, double or bool.
+ * The results (and errors) are the same as for {@link Expression#evaluate(parser.EvaluateContext)}.
+ * <br><br>
+ * Each compiler has its own class loader, so the generated classes can be garbage collected
+ * once the compiler and all its compiled expressions are no longer in use.
+ */
+public class ExpressionCompiler
+{
+	// Internal class names used in generated code
+	private static final String BASE_CLASS = "parser/compiler/CompiledExpression";
+	private static final String FUNC_CLASS = "parser/ast/ExpressionFunc";
+
+	// Maximum size of code for a single expression (to keep branch offsets in range)
+	private static final int MAX_CODE_LENGTH = 32000;
+
+	// Values of constants (may be null)
+	private Values constantValues;
+	// Loader for the generated classes
+	private Loader loader;
+	// Number of classes generated so far (for unique names)
+	private int numClasses = 0;
+
+	// Code of the method currently being generated
+	private MethodBuilder m;
+	// Indices of Boolean variables in the expression currently being compiled
+	private BitSet boolVars;
+
+	/**
+	 * Create a compiler.
+	 * @param constantValues Values for any constants appearing in expressions (may be null)
+	 */
+	public ExpressionCompiler(Values constantValues)
+	{
+		this.constantValues = constantValues;
+		loader = new Loader(CompiledExpression.class.getClassLoader());
+	}
+
+	/**
+	 * Compile an expression. It should have been type checked, and variable indices should be set.
+	 * Throws an exception if the expression cannot be compiled (e.g. because of unsupported operators).
+	 * @param expr The expression
+	 */
+	public CompiledExpression compile(Expression expr) throws PrismLangException
+	{
+		String className = "parser/compiler/GeneratedExpression" + (numClasses++);
+		ClassFileBuilder cfb = new ClassFileBuilder(className, BASE_CLASS);
+		boolVars = new BitSet();
+		if (isDouble(expr)) {
+			m = cfb.addMethod("doEvaluateDouble", "([I)D", 2);
+			compileDouble(expr);
+			m.op(DRETURN, -2);
+		} else {
+			m = cfb.addMethod("doEvaluateInt", "([I)I", 2);
+			compileInt(expr);
+			m.op(IRETURN, -1);
+		}
+		if (m.getLength() > MAX_CODE_LENGTH) {
+			throw new PrismLangException("Expression is too large to compile", expr);
+		}
+		// Load the class and create an instance
+		CompiledExpression compiled;
+		try {
+			byte bytes[] = cfb.toByteArray();
+			Class<?> cls = loader.define(className.replace('/', '.'), bytes);
+			compiled = (CompiledExpression) cls.getConstructor().newInstance();
+		} catch (IOException | ReflectiveOperationException | LinkageError e) {
+			throw new PrismLangException("Could not compile expression (" + e + ")", expr);
+		}
+		compiled.setExpression(expr, constantValues, boolVars);
+		return compiled;
+	}
+
+	/**
+	 * Does an expression evaluate to a double (rather than an int/bool, which are represented as an int)?
+	 */
+	private static boolean isDouble(Expression expr) throws PrismLangException
+	{
+		Type type = expr.getType();
+		if (type instanceof TypeInt || type instanceof TypeBool)
+			return false;
+		if (type instanceof TypeDouble)
+			return true;
+		throw new PrismLangException("Cannot compile expression of type " + type, expr);
+	}
+
+	/**
+	 * Generate code that pushes the value of an int/bool expression (as an int).
+	 */
+	private void compileInt(Expression expr) throws PrismLangException
+	{
+		if (isDouble(expr))
+			throw new PrismLangException("Cannot evaluate to an integer", expr);
+		compileNative(expr);
+	}
+
+	/**
+	 * Generate code that pushes the value of an expression as a double.
+	 */
+	private void compileDouble(Expression expr) throws PrismLangException
+	{
+		compileNative(expr);
+		if (!isDouble(expr))
+			m.op(I2D, 1);
+	}
+
+	/**
+	 * Generate code that pushes the value of an expression,
+	 * as a double for a double-valued expression and as an int otherwise.
+	 */
+	private void compileNative(Expression expr) throws PrismLangException
+	{
+		if (expr instanceof ExpressionLiteral) {
+			pushValue(((ExpressionLiteral) expr).getValue(), expr);
+		} else if (expr instanceof ExpressionConstant) {
+			if (constantValues == null)
+				throw new PrismLangException("Could not evaluate constant", expr);
+			pushValue(expr.evaluate(new EvaluateContextValues(constantValues, null)), expr);
+		} else if (expr instanceof ExpressionVar) {
+			int index = ((ExpressionVar) expr).getIndex();
+			if (index < 0 || isDouble(expr))
+				throw new PrismLangException("Cannot compile variable", expr);
+			if (expr.getType() instanceof TypeBool)
+				boolVars.set(index);
+			m.op(ALOAD_1, 1);
+			m.pushInt(index);
+			m.op(IALOAD, -1);
+		} else if (expr instanceof ExpressionFormula) {
+			Expression def = ((ExpressionFormula) expr).getDefinition();
+			if (def == null)
+				throw new PrismLangException("Cannot compile undefined formula", expr);
+			if (isDouble(expr))
+				compileDouble(def);
+			else
+				compileInt(def);
+		} else if (expr instanceof ExpressionUnaryOp) {
+			compileUnaryOp((ExpressionUnaryOp) expr);
+		} else if (expr instanceof ExpressionBinaryOp) {
+			compileBinaryOp((ExpressionBinaryOp) expr);
+		} else if (expr instanceof ExpressionITE) {
+			compileITE((ExpressionITE) expr);
+		} else if (expr instanceof ExpressionFunc) {
+			compileFunc((ExpressionFunc) expr);
+		} else {
+			throw new PrismLangException("Cannot compile expression", expr);
+		}
+	}
+
+	private void pushValue(Object value, Expression expr) throws PrismLangException
+	{
+		if (value instanceof Boolean) {
+			m.pushInt(((Boolean) value) ? 1 : 0);
+		} else if (isDouble(expr) && value instanceof Number) {
+			m.pushDouble(((Number) value).doubleValue());
+		} else if (value instanceof Integer) {
+			m.pushInt((Integer) value);
+		} else {
+			throw new PrismLangException("Cannot compile value " + value, expr);
+		}
+	}
+
+	private void compileUnaryOp(ExpressionUnaryOp expr) throws PrismLangException
+	{
+		switch (expr.getOperator()) {
+		case ExpressionUnaryOp.NOT:
+			compileInt(expr.getOperand());
+			m.op(ICONST_1, 1);
+			m.op(IXOR, -1);
+			break;
+		case ExpressionUnaryOp.MINUS:
+			if (isDouble(expr)) {
+				compileDouble(expr.getOperand());
+				m.op(DNEG, 0);
+			} else {
+				compileInt(expr.getOperand());
+				m.op(INEG, 0);
+			}
+			break;
+		case ExpressionUnaryOp.PARENTH:
+			if (isDouble(expr))
+				compileDouble(expr.getOperand());
+			else
+				compileInt(expr.getOperand());
+			break;
+		default:
+			throw new PrismLangException("Unknown unary operator", expr);
+		}
+	}
+
+	private void compileBinaryOp(ExpressionBinaryOp expr) throws PrismLangException
+	{
+		Expression op1 = expr.getOperand1();
+		Expression op2 = expr.getOperand2();
+		// Are operands both int (or bool)?
+		boolean ints = !isDouble(op1) && !isDouble(op2);
+		switch (expr.getOperator()) {
+		case ExpressionBinaryOp.IMPLIES:
+			// !a || b
+			compileShortCircuit(op1, op2, IFEQ, 1);
+			break;
+		case ExpressionBinaryOp.OR:
+			compileShortCircuit(op1, op2, IFNE, 1);
+			break;
+		case ExpressionBinaryOp.AND:
+			compileShortCircuit(op1, op2, IFEQ, 0);
+			break;
+		case ExpressionBinaryOp.IFF:
+			compileInt(op1);
+			compileInt(op2);
+			m.op(IXOR, -1);
+			m.op(ICONST_1, 1);
+			m.op(IXOR, -1);
+			break;
+		case ExpressionBinaryOp.EQ:
+			compileComparison(op1, op2, ints, IF_ICMPEQ, DCMPL, IFEQ);
+			break;
+		case ExpressionBinaryOp.NE:
+			compileComparison(op1, op2, ints, IF_ICMPNE, DCMPL, IFNE);
+			break;
+		case ExpressionBinaryOp.GT:
+			compileComparison(op1, op2, ints, IF_ICMPGT, DCMPL, IFGT);
+			break;
+		case ExpressionBinaryOp.GE:
+			compileComparison(op1, op2, ints, IF_ICMPGE, DCMPL, IFGE);
+			break;
+		case ExpressionBinaryOp.LT:
+			compileComparison(op1, op2, ints, IF_ICMPLT, DCMPG, IFLT);
+			break;
+		case ExpressionBinaryOp.LE:
+			compileComparison(op1, op2, ints, IF_ICMPLE, DCMPG, IFLE);
+			break;
+		case ExpressionBinaryOp.PLUS:
+			compileArithmetic(op1, op2, ints, IADD, DADD);
+			break;
+		case ExpressionBinaryOp.MINUS:
+			compileArithmetic(op1, op2, ints, ISUB, DSUB);
+			break;
+		case ExpressionBinaryOp.TIMES:
+			compileArithmetic(op1, op2, ints, IMUL, DMUL);
+			break;
+		case ExpressionBinaryOp.DIVIDE:
+			// Division is always over doubles
+			compileArithmetic(op1, op2, false, -1, DDIV);
+			break;
+		default:
+			throw new PrismLangException("Unknown binary operator", expr);
+		}
+	}
+
+	/**
+	 * Generate code for a short-circuiting Boolean operator: evaluate {@code op1},
+	 * and if branch {@code ifOp} is taken, the result is {@code shortValue}; otherwise it is {@code op2}.
+	 */
+	private void compileShortCircuit(Expression op1, Expression op2, int ifOp, int shortValue) throws PrismLangException
+	{
+		Label lShort = m.newLabel();
+		Label lEnd = m.newLabel();
+		compileInt(op1);
+		m.branch(ifOp, lShort, -1);
+		int stack = m.getStack();
+		compileInt(op2);
+		m.branch(GOTO, lEnd, 0);
+		m.setStack(stack);
+		m.placeLabel(lShort);
+		m.pushInt(shortValue);
+		m.placeLabel(lEnd);
+	}
+
+	/**
+	 * Generate code for a relational operator, comparing ints (with {@code intBranch})
+	 * or doubles (with {@code doubleCompare} then {@code doubleBranch}).
+	 */
+	private void compileComparison(Expression op1, Expression op2, boolean ints, int intBranch, int doubleCompare, int doubleBranch) throws PrismLangException
+	{
+		Label lTrue = m.newLabel();
+		Label lEnd = m.newLabel();
+		if (ints) {
+			compileInt(op1);
+			compileInt(op2);
+			m.branch(intBranch, lTrue, -2);
+		} else {
+			compileDouble(op1);
+			compileDouble(op2);
+			m.op(doubleCompare, -3);
+			m.branch(doubleBranch, lTrue, -1);
+		}
+		int stack = m.getStack();
+		m.pushInt(0);
+		m.branch(GOTO, lEnd, 0);
+		m.setStack(stack);
+		m.placeLabel(lTrue);
+		m.pushInt(1);
+		m.placeLabel(lEnd);
+	}
+
+	private void compileArithmetic(Expression op1, Expression op2, boolean ints, int intOp, int doubleOp) throws PrismLangException
+	{
+		if (ints) {
+			compileInt(op1);
+			compileInt(op2);
+			m.op(intOp, -1);
+		} else {
+			compileDouble(op1);
+			compileDouble(op2);
+			m.op(doubleOp, -2);
+		}
+	}
+
+	private void compileITE(ExpressionITE expr) throws PrismLangException
+	{
+		Label lElse = m.newLabel();
+		Label lEnd = m.newLabel();
+		boolean dbl = isDouble(expr);
+		compileInt(expr.getOperand1());
+		m.branch(IFEQ, lElse, -1);
+		int stack = m.getStack();
+		if (dbl)
+			compileDouble(expr.getOperand2());
+		else
+			compileInt(expr.getOperand2());
+		m.branch(GOTO, lEnd, 0);
+		m.setStack(stack);
+		m.placeLabel(lElse);
+		if (dbl)
+			compileDouble(expr.getOperand3());
+		else
+			compileInt(expr.getOperand3());
+		m.placeLabel(lEnd);
+	}
+
+	private void compileFunc(ExpressionFunc expr) throws PrismLangException
+	{
+		int n = expr.getNumOperands();
+		switch (expr.getNameCode()) {
+		case ExpressionFunc.MIN:
+		case ExpressionFunc.MAX:
+			String name = expr.getNameCode() == ExpressionFunc.MIN ? "min" : "max";
+			if (isDouble(expr)) {
+				compileDouble(expr.getOperand(0));
+				for (int i = 1; i < n; i++) {
+					compileDouble(expr.getOperand(i));
+					m.invokeStatic(BASE_CLASS, name, "(DD)D", -2);
+				}
+			} else {
+				compileInt(expr.getOperand(0));
+				for (int i = 1; i < n; i++) {
+					compileInt(expr.getOperand(i));
+					m.invokeStatic("java/lang/Math", name, "(II)I", -1);
+				}
+			}
+			break;
+		case ExpressionFunc.FLOOR:
+			compileDouble(expr.getOperand(0));
+			m.invokeStatic(FUNC_CLASS, "evaluateFloor", "(D)I", -1);
+			break;
+		case ExpressionFunc.CEIL:
+			compileDouble(expr.getOperand(0));
+			m.invokeStatic(FUNC_CLASS, "evaluateCeil", "(D)I", -1);
+			break;
+		case ExpressionFunc.POW:
+			if (isDouble(expr)) {
+				compileDouble(expr.getOperand(0));
+				compileDouble(expr.getOperand(1));
+				m.invokeStatic(FUNC_CLASS, "evaluatePowDouble", "(DD)D", -2);
+			} else {
+				compileInt(expr.getOperand(0));
+				compileInt(expr.getOperand(1));
+				m.invokeStatic(FUNC_CLASS, "evaluatePowInt", "(II)I", -1);
+			}
+			break;
+		case ExpressionFunc.MOD:
+			compileInt(expr.getOperand(0));
+			compileInt(expr.getOperand(1));
+			m.invokeStatic(FUNC_CLASS, "evaluateMod", "(II)I", -1);
+			break;
+		case ExpressionFunc.LOG:
+			compileDouble(expr.getOperand(0));
+			compileDouble(expr.getOperand(1));
+			m.invokeStatic(FUNC_CLASS, "evaluateLog", "(DD)D", -2);
+			break;
+		default:
+			throw new PrismLangException("Cannot compile function \"" + expr.getName() + "\"", expr);
+		}
+	}
+
+	/**
+	 * Class loader for generated classes.
+	 */
+	private static class Loader extends ClassLoader
+	{
+		Loader(ClassLoader parent)
+		{
+			super(parent);
+		}
+
+		Class<?> define(String name, byte bytes[])
+		{
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
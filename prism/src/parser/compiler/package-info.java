@@ -0,0 +1,4 @@
+/**
+ * Compilation of expressions to JVM bytecode, for fast evaluation during model exploration.
+ */
+package parser.compiler;
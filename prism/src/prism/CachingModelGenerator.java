@@ -0,0 +1,461 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package prism;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import parser.State;
+import parser.Values;
+import parser.VarList;
+import parser.ast.RewardStruct;
+import parser.type.Type;
+
+/**
+ * A {@link ModelGenerator} that wraps another one and keeps a bounded cache
+ * of the fully computed outgoing transitions of recently explored states,
+ * so that re-exploring a state does not recompute its successors.
+ * When the cache is full, the least recently used entry is evicted.
+ * <br><br>
+ * States passed to {@link #exploreState(State)}, and those returned by
+ * {@link #computeTransitionTarget(int, int)}, are stored in the cache
+ * and so should not be modified afterwards.
+ */
+public class CachingModelGenerator implements ModelGenerator
+{
+	/**
+	 * Outgoing transitions (and label values) for a single state.
+	 */
+	private static class CacheEntry
+	{
+		// Index of first transition for each choice (plus one extra element for the end)
+		int choiceStarts[];
+		// Action for each choice
+		Object choiceActions[];
+		// Action, probability/rate and target for each transition
+		Object actions[];
+		double probs[];
+		State targets[];
+		// Label values (0 = not yet known, 1 = false, 2 = true)
+		byte labels[];
+	}
+
+	// Underlying model generator
+	private ModelGenerator modelGen;
+	// Maximum number of states cached
+	private int maxSize;
+	// Cache (in access order, for LRU eviction)
+	private LinkedHashMap<State, CacheEntry> cache;
+	// State currently being explored, and its cache entry
+	private State exploreState;
+	private CacheEntry exploreEntry;
+	// Statistics
+	private long numHits;
+	private long numMisses;
+
+	/**
+	 * Create a caching wrapper around {@code modelGen}, storing the transitions of at most {@code maxSize} states.
+	 */
+	public CachingModelGenerator(ModelGenerator modelGen, int maxSize)
+	{
+		if (maxSize < 1)
+			throw new IllegalArgumentException("Cache size must be positive");
+		this.modelGen = modelGen;
+		this.maxSize = maxSize;
+		cache = new LinkedHashMap<State, CacheEntry>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<State, CacheEntry> eldest)
+			{
+				return size() > CachingModelGenerator.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Get the underlying model generator.
+	 */
+	public ModelGenerator getModelGenerator()
+	{
+		return modelGen;
+	}
+
+	/**
+	 * Get the maximum number of states whose transitions are cached.
+	 */
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	/**
+	 * Get the number of states whose transitions are currently cached.
+	 */
+	public int getSize()
+	{
+		return cache.size();
+	}
+
+	/**
+	 * Get the number of calls to {@link #exploreState(State)} answered from the cache.
+	 */
+	public long getNumHits()
+	{
+		return numHits;
+	}
+
+	/**
+	 * Get the number of calls to {@link #exploreState(State)} that required the underlying generator.
+	 */
+	public long getNumMisses()
+	{
+		return numMisses;
+	}
+
+	/**
+	 * Empty the cache and reset the hit/miss counters.
+	 */
+	public void clear()
+	{
+		cache.clear();
+		exploreState = null;
+		exploreEntry = null;
+		numHits = numMisses = 0;
+	}
+
+	/**
+	 * Get a one-line summary of the cache statistics.
+	 */
+	public String getStatsString()
+	{
+		long total = numHits + numMisses;
+		String s = "Successor cache: " + numHits + " hits, " + numMisses + " misses";
+		if (total > 0)
+			s += " (hit rate " + PrismUtils.formatPercent1dp((double) numHits / total) + ")";
+		return s + ", " + cache.size() + " of " + maxSize + " states stored";
+	}
+
+	/**
+	 * Compute and store all outgoing transitions of the state currently explored in the underlying generator.
+	 */
+	private CacheEntry buildEntry() throws PrismException
+	{
+		CacheEntry entry = new CacheEntry();
+		int nc = modelGen.getNumChoices();
+		entry.choiceStarts = new int[nc + 1];
+		entry.choiceActions = new Object[nc];
+		int nt = 0;
+		for (int i = 0; i < nc; i++) {
+			entry.choiceStarts[i] = nt;
+			nt += modelGen.getNumTransitions(i);
+		}
+		entry.choiceStarts[nc] = nt;
+		entry.actions = new Object[nt];
+		entry.probs = new double[nt];
+		entry.targets = new State[nt];
+		for (int i = 0; i < nc; i++) {
+			entry.choiceActions[i] = modelGen.getTransitionAction(i);
+			int start = entry.choiceStarts[i];
+			int n = entry.choiceStarts[i + 1] - start;
+			for (int j = 0; j < n; j++) {
+				entry.actions[start + j] = modelGen.getTransitionAction(i, j);
+				entry.probs[start + j] = modelGen.getTransitionProbability(i, j);
+				entry.targets[start + j] = modelGen.computeTransitionTarget(i, j);
+			}
+		}
+		entry.labels = new byte[modelGen.getNumLabels()];
+		return entry;
+	}
+
+	private int checkChoice(int i) throws PrismException
+	{
+		if (i < 0 || i >= exploreEntry.choiceActions.length)
+			throw new PrismException("Choice index " + i + " is out of range");
+		return exploreEntry.choiceStarts[i];
+	}
+
+	private int checkTransition(int i, int offset) throws PrismException
+	{
+		int start = checkChoice(i);
+		if (offset < 0 || start + offset >= exploreEntry.choiceStarts[i + 1])
+			throw new PrismException("Transition offset " + offset + " is out of range for choice " + i);
+		return start + offset;
+	}
+
+	// Methods for ModelInfo interface (delegated)
+
+	@Override
+	public ModelType getModelType()
+	{
+		return modelGen.getModelType();
+	}
+
+	@Override
+	public void setSomeUndefinedConstants(Values someValues) throws PrismException
+	{
+		modelGen.setSomeUndefinedConstants(someValues);
+		// Transitions may have changed
+		clear();
+	}
+
+	@Override
+	public Values getConstantValues()
+	{
+		return modelGen.getConstantValues();
+	}
+
+	@Override
+	public boolean containsUnboundedVariables()
+	{
+		return modelGen.containsUnboundedVariables();
+	}
+
+	@Override
+	public int getNumVars()
+	{
+		return modelGen.getNumVars();
+	}
+
+	@Override
+	public List<String> getVarNames()
+	{
+		return modelGen.getVarNames();
+	}
+
+	@Override
+	public List<Type> getVarTypes()
+	{
+		return modelGen.getVarTypes();
+	}
+
+	@Override
+	public int getVarIndex(String name)
+	{
+		return modelGen.getVarIndex(name);
+	}
+
+	@Override
+	public String getVarName(int i)
+	{
+		return modelGen.getVarName(i);
+	}
+
+	@Override
+	public int getNumLabels()
+	{
+		return modelGen.getNumLabels();
+	}
+
+	@Override
+	public List<String> getLabelNames()
+	{
+		return modelGen.getLabelNames();
+	}
+
+	@Override
+	public String getLabelName(int i) throws PrismException
+	{
+		return modelGen.getLabelName(i);
+	}
+
+	@Override
+	public int getLabelIndex(String label)
+	{
+		return modelGen.getLabelIndex(label);
+	}
+
+	@Override
+	public int getNumRewardStructs()
+	{
+		return modelGen.getNumRewardStructs();
+	}
+
+	@Override
+	public List<String> getRewardStructNames()
+	{
+		return modelGen.getRewardStructNames();
+	}
+
+	@Override
+	public int getRewardStructIndex(String name)
+	{
+		return modelGen.getRewardStructIndex(name);
+	}
+
+	@Override
+	public RewardStruct getRewardStruct(int i)
+	{
+		return modelGen.getRewardStruct(i);
+	}
+
+	@Override
+	public boolean rewardStructHasTransitionRewards(int i)
+	{
+		return modelGen.rewardStructHasTransitionRewards(i);
+	}
+
+	@Override
+	public VarList createVarList() throws PrismException
+	{
+		return modelGen.createVarList();
+	}
+
+	// Methods for ModelGenerator interface
+
+	@Override
+	public boolean hasSingleInitialState() throws PrismException
+	{
+		return modelGen.hasSingleInitialState();
+	}
+
+	@Override
+	public List<State> getInitialStates() throws PrismException
+	{
+		return modelGen.getInitialStates();
+	}
+
+	@Override
+	public State getInitialState() throws PrismException
+	{
+		return modelGen.getInitialState();
+	}
+
+	@Override
+	public ModelGenerator createCopy() throws PrismException
+	{
+		ModelGenerator copy = modelGen.createCopy();
+		return copy == null ? null : new CachingModelGenerator(copy, maxSize);
+	}
+
+	@Override
+	public void exploreState(State exploreState) throws PrismException
+	{
+		CacheEntry entry = cache.get(exploreState);
+		if (entry != null) {
+			numHits++;
+		} else {
+			numMisses++;
+			modelGen.exploreState(exploreState);
+			entry = buildEntry();
+			cache.put(exploreState, entry);
+		}
+		this.exploreState = exploreState;
+		exploreEntry = entry;
+	}
+
+	@Override
+	public State getExploreState()
+	{
+		return exploreState;
+	}
+
+	@Override
+	public int getNumChoices() throws PrismException
+	{
+		return exploreEntry.choiceActions.length;
+	}
+
+	@Override
+	public int getNumTransitions() throws PrismException
+	{
+		return exploreEntry.probs.length;
+	}
+
+	@Override
+	public int getNumTransitions(int i) throws PrismException
+	{
+		return exploreEntry.choiceStarts[i + 1] - checkChoice(i);
+	}
+
+	@Override
+	public Object getTransitionAction(int i) throws PrismException
+	{
+		checkChoice(i);
+		return exploreEntry.choiceActions[i];
+	}
+
+	@Override
+	public Object getTransitionAction(int i, int offset) throws PrismException
+	{
+		return exploreEntry.actions[checkTransition(i, offset)];
+	}
+
+	@Override
+	public Object getChoiceAction(int i) throws PrismException
+	{
+		return getTransitionAction(i, 0);
+	}
+
+	@Override
+	public double getTransitionProbability(int i, int offset) throws PrismException
+	{
+		return exploreEntry.probs[checkTransition(i, offset)];
+	}
+
+	@Override
+	public State computeTransitionTarget(int i, int offset) throws PrismException
+	{
+		return exploreEntry.targets[checkTransition(i, offset)];
+	}
+
+	@Override
+	public boolean isLabelTrue(String label) throws PrismException
+	{
+		int i = getLabelIndex(label);
+		if (i == -1) {
+			throw new PrismException("Label \"" + label + "\" not defined");
+		}
+		return isLabelTrue(i);
+	}
+
+	@Override
+	public boolean isLabelTrue(int i) throws PrismException
+	{
+		// Label values are computed lazily (in the underlying generator) and then cached
+		if (i < 0 || i >= exploreEntry.labels.length) {
+			return modelGen.isLabelTrue(i);
+		}
+		if (exploreEntry.labels[i] == 0) {
+			if (modelGen.getExploreState() != exploreState) {
+				modelGen.exploreState(exploreState);
+			}
+			exploreEntry.labels[i] = (byte) (modelGen.isLabelTrue(i) ? 2 : 1);
+		}
+		return exploreEntry.labels[i] == 2;
+	}
+
+	@Override
+	public double getStateReward(int r, State state) throws PrismException
+	{
+		return modelGen.getStateReward(r, state);
+	}
+
+	@Override
+	public double getStateActionReward(int r, State state, Object action) throws PrismException
+	{
+		return modelGen.getStateActionReward(r, state, action);
+	}
+}
@@ -165,6 +165,13 @@ public abstract class DefaultModelGenerator implements ModelGenerator
 	@Override
 	public abstract State getInitialState() throws PrismException;
 
+	@Override
+	public ModelGenerator createCopy() throws PrismException
+	{
+		// Not supported by default
+		return null;
+	}
+
 	@Override
 	public abstract void exploreState(State exploreState) throws PrismException;
 
@@ -56,6 +56,13 @@ public interface ModelGenerator extends ModelInfo
 	 */
 	public State getInitialState() throws PrismException;
 	
+	/**
+	 * Create a copy of this ModelGenerator, for the same model, that can be used
+	 * independently of (and concurrently with) this one, e.g., by another thread.
+	 * Returns null if this is not supported.
+	 */
+	public ModelGenerator createCopy() throws PrismException;
+	
 	/**
 	 * Explore a given state of the model. After a call to this method,
 	 * the class should be able to respond to the various methods that are
@@ -128,7 +135,34 @@ public interface ModelGenerator extends ModelInfo
 	 * @param offset Index of the transition within the choice
 	 */
 	public State computeTransitionTarget(int i, int offset) throws PrismException;
-	
+
+	/**
+	 * Explore a block of states in one go, writing all of their outgoing choices/transitions
+	 * into {@code buffer} (which is cleared first), in the order given by {@code states}
+	 * and, for each state, in the same order as for {@link #exploreState(State)}.
+	 * Afterwards, the state currently being explored (see {@link #getExploreState()}) is undefined.
+	 * The default implementation just uses {@link #exploreState(State)} and the methods above,
+	 * but implementations can do this more efficiently, e.g., without creating a State object per successor.
+	 * @param states States to explore
+	 * @param buffer Storage for the choices/transitions
+	 */
+	public default void exploreStates(List<State> states, SuccessorBuffer buffer) throws PrismException
+	{
+		buffer.clear();
+		for (State state : states) {
+			exploreState(state);
+			buffer.startState();
+			int nc = getNumChoices();
+			for (int i = 0; i < nc; i++) {
+				buffer.startChoice(getChoiceAction(i));
+				int nt = getNumTransitions(i);
+				for (int j = 0; j < nt; j++) {
+					buffer.addTransition(getTransitionProbability(i, j), computeTransitionTarget(i, j));
+				}
+			}
+		}
+	}
+
 	/**
 	 * Is label {@code label} true in the state currently being explored?
 	 * @param label The name of the label to check 
@@ -34,14 +34,20 @@ import java.util.ArrayList;
 import java.util.List;
 
 import dv.DoubleVector;
+import explicit.BinaryModelFile;
 import explicit.CTMC;
 import explicit.CTMCModelChecker;
 import explicit.ConstructModel;
 import explicit.DTMC;
 import explicit.DTMCModelChecker;
+import explicit.DTMCOffHeap;
+import explicit.DTMCSparseCompressed;
+import explicit.DTMCSparseCompressed.ProbabilityStorage;
 import explicit.ExplicitFiles2Model;
 import explicit.FastAdaptiveUniformisation;
 import explicit.FastAdaptiveUniformisationModelChecker;
+import explicit.MDP;
+import explicit.MDPOffHeap;
 import hybrid.PrismHybrid;
 import jdd.JDD;
 import jdd.JDDNode;
@@ -246,7 +252,7 @@ public class Prism extends PrismComponent implements PrismSettingsListener
 	//------------------------------------------------------------------------------
 
 	private enum ModelSource {
-		PRISM_MODEL, MODEL_GENERATOR, EXPLICIT_FILES, BUILT_MODEL
+		PRISM_MODEL, MODEL_GENERATOR, EXPLICIT_FILES, BINARY_FILE, BUILT_MODEL
 	}
 
 	// Info about currently loaded model, if any
@@ -275,6 +281,9 @@ public class Prism extends PrismComponent implements PrismSettingsListener
 	private File explicitFilesStateRewardsFile = null;
 	private int explicitFilesNumStates = -1;
 
+	// Info for binary model file load
+	private BinaryModelFile binaryModelFile = null;
+
 	// Has the CUDD library been initialised yet?
 	private boolean cuddStarted = false;
 
@@ -722,6 +731,24 @@ public class Prism extends PrismComponent implements PrismSettingsListener
 		return getEngine() == Prism.EXPLICIT;
 	}
 
+	/**
+	 * Should explicit DTMCs/MDPs be stored off the Java heap (see {@link explicit.OffHeapArray})?
+	 */
+	public boolean getExplicitOffHeap()
+	{
+		return settings.getBoolean(PrismSettings.PRISM_EXPLICIT_OFF_HEAP);
+	}
+
+	/**
+	 * Get the directory for memory-mapped files holding off-heap explicit models
+	 * (null if direct memory should be used).
+	 */
+	public File getOffHeapDir()
+	{
+		String dir = settings.getString(PrismSettings.PRISM_OFF_HEAP_DIR);
+		return "".equals(dir) ? null : new File(dir);
+	}
+
 	public boolean getFixDeadlocks()
 	{
 		return settings.getBoolean(PrismSettings.PRISM_FIX_DEADLOCKS);
@@ -1878,6 +1905,28 @@ public class Prism extends PrismComponent implements PrismSettingsListener
 		return currentModulesFile;
 	}
 
+	/**
+	 * Load a binary model file (see {@link #exportToBinaryFile(File)}) for subsequent model building.
+	 * A corresponding ModulesFile object is created and returned.
+	 * Binary model files can only be used with the explicit engine.
+	 * @param file The binary model file
+	 */
+	public ModulesFile loadModelFromBinaryFile(File file) throws PrismException
+	{
+		currentModelSource = ModelSource.BINARY_FILE;
+		// Clear any existing built model(s)
+		clearBuiltModel();
+		// Read model info and construct ModulesFile
+		binaryModelFile = new BinaryModelFile(file);
+		currentModulesFile = binaryModelFile.createModulesFile();
+		// Reset dependent info
+		currentModelType = currentModulesFile.getModelType();
+		currentModelInfo = currentModulesFile;
+		currentDefinedMFConstants = null;
+
+		return currentModulesFile;
+	}
+
 	/**
 	 * Get the type of the currently stored model.
 	 * @return
@@ -2021,9 +2070,31 @@ public class Prism extends PrismComponent implements PrismSettingsListener
 					currentModelExpl = new ExplicitFiles2Model(this).build(explicitFilesStatesFile, explicitFilesTransFile, explicitFilesLabelsFile, currentModulesFile, explicitFilesNumStates);
 				}
 				break;
+			case BINARY_FILE:
+				if (!getExplicit()) {
+					throw new PrismNotSupportedException("Binary model files can currently only be used with the explicit engine");
+				}
+				if (getExplicitOffHeap()) {
+					currentModelExpl = binaryModelFile.buildModelOffHeap(currentModulesFile, getOffHeapDir());
+				} else {
+					currentModelExpl = binaryModelFile.buildModel(currentModulesFile);
+				}
+				break;
 			default:
 				throw new PrismException("Don't know how to build model from source " + currentModelSource);
 			}
+			// Move the transition matrix of explicit DTMCs/MDPs off the heap, if required
+			// (models built by ConstructModel are already built off-heap, so this just applies to other sources)
+			if (getExplicit() && getExplicitOffHeap()) {
+				currentModelExpl = convertToOffHeap(currentModelExpl);
+			}
+			// Or compress the probabilities of explicit DTMCs, if required
+			else if (getExplicit() && currentModelExpl.getModelType() == ModelType.DTMC && !"Double".equals(settings.getString(PrismSettings.PRISM_EXPLICIT_PROB_STORAGE))) {
+				ProbabilityStorage storage = "Float".equals(settings.getString(PrismSettings.PRISM_EXPLICIT_PROB_STORAGE)) ? ProbabilityStorage.FLOAT : ProbabilityStorage.TABLE;
+				DTMCSparseCompressed dtmc = new DTMCSparseCompressed((DTMC) currentModelExpl, storage);
+				mainLog.println("\nProbabilities stored as: " + dtmc.getProbabilityStorageInfo());
+				currentModelExpl = dtmc;
+			}
 			l = System.currentTimeMillis() - l;
 			mainLog.println("\nTime for model construction: " + l / 1000.0 + " seconds.");
 
@@ -2101,6 +2172,24 @@ public class Prism extends PrismComponent implements PrismSettingsListener
 		}
 	}
 
+	/**
+	 * Convert an explicit DTMC/MDP to one whose transition matrix is stored off the Java heap
+	 * ({@link DTMCOffHeap} / {@link MDPOffHeap}); other models are returned unchanged.
+	 */
+	private explicit.Model convertToOffHeap(explicit.Model model) throws PrismException
+	{
+		if (model instanceof DTMCOffHeap || model instanceof MDPOffHeap) {
+			return model;
+		}
+		if (model.getModelType() == ModelType.DTMC) {
+			return new DTMCOffHeap((DTMC) model, getOffHeapDir());
+		}
+		if (model.getModelType() == ModelType.MDP) {
+			return new MDPOffHeap((MDP) model, getOffHeapDir());
+		}
+		return model;
+	}
+
 	private void doBuildModelDigitalClocksChecks() throws PrismException
 	{
 		// For digital clocks, by construction, deadlocks can only occur from timelocks (and are not allowed)
@@ -2838,6 +2927,29 @@ public class Prism extends PrismComponent implements PrismSettingsListener
 			tmpLog.close();
 	}
 
+	/**
+	 * Export the currently loaded model to a binary model file, which can be loaded
+	 * again (quickly) with {@link #loadModelFromBinaryFile(File)}.
+	 * This is only supported for DTMCs and MDPs, built with the explicit engine.
+	 * @param file File to export to
+	 */
+	public void exportToBinaryFile(File file) throws PrismException
+	{
+		if (!getExplicit()) {
+			throw new PrismNotSupportedException("Binary model export is currently only supported by the explicit engine");
+		}
+
+		// Build model, if necessary
+		buildModelIfRequired();
+
+		// Export
+		mainLog.println("\nExporting model to binary file \"" + file + "\"...");
+		long l = System.currentTimeMillis();
+		BinaryModelFile.write(currentModelExpl, currentModelInfo.getLabelNames(), file);
+		l = System.currentTimeMillis() - l;
+		mainLog.println("Time for export: " + l / 1000.0 + " seconds.");
+	}
+
 	/**
 	 * Perform model checking of a property on the currently loaded model and return result.
 	 * Here, the property is passed as a string and parsed first. Usually, you would use the other
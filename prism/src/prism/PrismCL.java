@@ -31,16 +31,19 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
 
 import parser.Values;
 import parser.ast.Expression;
+import parser.ast.ExpressionProb;
 import parser.ast.ExpressionReward;
 import parser.ast.ModulesFile;
 import parser.ast.PropertiesFile;
 import parser.ast.Property;
+import parser.type.TypeDouble;
 import prism.Prism.StrategyExportType;
 import simulator.GenerateSimulationPath;
 import simulator.method.ACIconfidence;
@@ -49,11 +52,15 @@ import simulator.method.ACIwidth;
 import simulator.method.APMCapproximation;
 import simulator.method.APMCconfidence;
 import simulator.method.APMCiterations;
+import simulator.method.BatchSequentialMethod;
+import simulator.method.BayesianMethod;
 import simulator.method.CIconfidence;
 import simulator.method.CIiterations;
 import simulator.method.CIwidth;
+import simulator.method.ImportanceSplitting;
 import simulator.method.SPRTMethod;
 import simulator.method.SimulationMethod;
+import simulator.networking.SamplingWorkerServer;
 
 // prism - command line version
 
@@ -63,6 +70,7 @@ public class PrismCL implements PrismModelListener
 	private boolean importpepa = false;
 	private boolean importprismpp = false;
 	private boolean importtrans = false;
+	private boolean importbinary = false;
 	private boolean importstates = false;
 	private boolean importlabels = false;
 	private boolean importstaterewards = false;
@@ -75,6 +83,7 @@ public class PrismCL implements PrismModelListener
 	private boolean exportstates = false;
 	private boolean exportlabels = false;
 	private boolean exportspy = false;
+	private boolean exportbinary = false;
 	private boolean exportdot = false;
 	private boolean exporttransdot = false;
 	private boolean exporttransdotstates = false;
@@ -132,6 +141,7 @@ public class PrismCL implements PrismModelListener
 	private String exportStatesFilename = null;
 	private String exportLabelsFilename = null;
 	private String exportSpyFilename = null;
+	private String exportBinaryFilename = null;
 	private String exportDotFilename = null;
 	private String exportTransDotFilename = null;
 	private String exportTransDotStatesFilename = null;
@@ -191,6 +201,13 @@ public class PrismCL implements PrismModelListener
 	private boolean simMaxRewardGiven = false;
 	private boolean simMaxPathGiven = false;
 	private boolean simManual = false;
+	private String simImportance = null;
+	private double simLevels[] = null;
+	private double simPrior[] = null;
+	private String simControl = null;
+	private double simControlMean;
+	private boolean simControlMeanGiven = false;
+	private int simBatch = 0;
 	private SimulationMethod simMethod = null;
 
 	// strategy export info
@@ -580,6 +597,9 @@ public class PrismCL implements PrismModelListener
 				}
 				mainLog.println("...");
 				modulesFile = prism.loadModelFromExplicitFiles(sf, new File(modelFilename), lf, srf, typeOverride);
+			} else if (importbinary) {
+				mainLog.print("\nImporting binary model file \"" + modelFilename + "\"...\n");
+				modulesFile = prism.loadModelFromBinaryFile(new File(modelFilename));
 			} else {
 				mainLog.print("\nParsing model file \"" + modelFilename + "\"...\n");
 				modulesFile = prism.parseModelFile(new File(modelFilename), typeOverride);
@@ -622,7 +642,7 @@ public class PrismCL implements PrismModelListener
 
 		// Load model into PRISM (if not done already)
 		try {
-			if (!importtrans) {
+			if (!importtrans && !importbinary) {
 				prism.loadPRISMModel(modulesFile);
 			}
 		} catch (PrismException e) {
@@ -746,6 +766,17 @@ public class PrismCL implements PrismModelListener
 			}
 		}
 
+		// export model to binary file
+		if (exportbinary) {
+			try {
+				prism.exportToBinaryFile(new File(exportBinaryFilename));
+			}
+			// in case of error, report it and proceed
+			catch (PrismException e) {
+				error(e.getMessage());
+			}
+		}
+
 		// export mtbdd to dot file
 		if (exportdot) {
 			try {
@@ -1235,6 +1266,10 @@ public class PrismCL implements PrismModelListener
 				else if (sw.equals("importtrans")) {
 					importtrans = true;
 				}
+				// import model from binary model file
+				else if (sw.equals("importbinary")) {
+					importbinary = true;
+				}
 				// import states for explicit model import
 				else if (sw.equals("importstates")) {
 					if (i < args.length - 1) {
@@ -1326,6 +1361,15 @@ public class PrismCL implements PrismModelListener
 						errorAndExit("No file/options specified for -" + sw + " switch");
 					}
 				}
+				// export model to binary file
+				else if (sw.equals("exportbinary")) {
+					if (i < args.length - 1) {
+						exportbinary = true;
+						exportBinaryFilename = args[++i];
+					} else {
+						errorAndExit("No file specified for -" + sw + " switch");
+					}
+				}
 				// export transition matrix to file
 				else if (sw.equals("exporttrans")) {
 					if (i < args.length - 1) {
@@ -1583,10 +1627,10 @@ public class PrismCL implements PrismModelListener
 				else if (sw.equals("simmethod")) {
 					if (i < args.length - 1) {
 						s = args[++i];
-						if (s.equals("ci") || s.equals("aci") || s.equals("apmc") || s.equals("sprt"))
+						if (s.equals("ci") || s.equals("aci") || s.equals("apmc") || s.equals("sprt") || s.equals("split") || s.equals("bayes"))
 							simMethodName = s;
 						else
-							errorAndExit("Unrecognised option for -" + sw + " switch (options are: ci, aci, apmc, sprt)");
+							errorAndExit("Unrecognised option for -" + sw + " switch (options are: ci, aci, apmc, sprt, split, bayes)");
 					} else {
 						errorAndExit("No parameter specified for -" + sw + " switch");
 					}
@@ -1685,6 +1729,85 @@ public class PrismCL implements PrismModelListener
 						errorAndExit("No value specified for -" + sw + " switch");
 					}
 				}
+				// importance function for importance splitting
+				else if (sw.equals("simimportance")) {
+					if (i < args.length - 1) {
+						simImportance = args[++i];
+					} else {
+						errorAndExit("No expression specified for -" + sw + " switch");
+					}
+				}
+				// levels for importance splitting
+				else if (sw.equals("simlevels")) {
+					if (i < args.length - 1) {
+						try {
+							String ss[] = args[++i].split(",");
+							simLevels = new double[ss.length];
+							for (int k = 0; k < ss.length; k++) {
+								simLevels[k] = Double.parseDouble(ss[k].trim());
+							}
+						} catch (NumberFormatException e) {
+							errorAndExit("Invalid value for -" + sw + " switch");
+						}
+					} else {
+						errorAndExit("No value specified for -" + sw + " switch");
+					}
+				}
+				// control variate for reward properties
+				else if (sw.equals("simcontrol")) {
+					if (i < args.length - 1) {
+						simControl = args[++i];
+					} else {
+						errorAndExit("No property specified for -" + sw + " switch");
+					}
+				}
+				// known expected value of control variate
+				else if (sw.equals("simcontrolmean")) {
+					if (i < args.length - 1) {
+						try {
+							simControlMean = Double.parseDouble(args[++i]);
+							simControlMeanGiven = true;
+						} catch (NumberFormatException e) {
+							errorAndExit("Invalid value for -" + sw + " switch");
+						}
+					} else {
+						errorAndExit("No value specified for -" + sw + " switch");
+					}
+				}
+				// prior for Bayesian method
+				else if (sw.equals("simprior")) {
+					if (i < args.length - 1) {
+						try {
+							String ss[] = args[++i].split(",");
+							if (ss.length != 2)
+								throw new NumberFormatException("");
+							simPrior = new double[2];
+							for (int k = 0; k < 2; k++) {
+								simPrior[k] = Double.parseDouble(ss[k].trim());
+								if (simPrior[k] <= 0.0)
+									throw new NumberFormatException("");
+							}
+						} catch (NumberFormatException e) {
+							errorAndExit("Invalid value for -" + sw + " switch");
+						}
+					} else {
+						errorAndExit("No value specified for -" + sw + " switch");
+					}
+				}
+				// batch size for batch-sequential sampling
+				else if (sw.equals("simbatch")) {
+					if (i < args.length - 1) {
+						try {
+							simBatch = Integer.parseInt(args[++i]);
+							if (simBatch <= 0)
+								throw new NumberFormatException("");
+						} catch (NumberFormatException e) {
+							errorAndExit("Invalid value for -" + sw + " switch");
+						}
+					} else {
+						errorAndExit("No value specified for -" + sw + " switch");
+					}
+				}
 				// simulation max path length
 				else if (sw.equals("simpathlen")) {
 					if (i < args.length - 1) {
@@ -1701,6 +1824,27 @@ public class PrismCL implements PrismModelListener
 					}
 				}
 
+				// run as a worker process for distributed sampling
+				else if (sw.equals("simworker")) {
+					if (i < args.length - 1) {
+						try {
+							// [<address>:]<port>, listening on the loopback interface if no address is given
+							String address = args[++i];
+							int colon = address.lastIndexOf(':');
+							int port = Integer.parseInt(address.substring(colon + 1));
+							InetAddress bindAddress = colon < 0 ? InetAddress.getLoopbackAddress() : InetAddress.getByName(address.substring(0, colon));
+							SamplingWorkerServer.serve(bindAddress, port, false, prism, mainLog);
+						} catch (NumberFormatException | UnknownHostException e) {
+							errorAndExit("Invalid value for -" + sw + " switch");
+						} catch (IOException e) {
+							errorAndExit("Sampling worker failed: " + e.getMessage());
+						}
+						exit();
+					} else {
+						errorAndExit("No value specified for -" + sw + " switch");
+					}
+				}
+
 				// FURTHER OPTIONS - NEED TIDYING/FIXING
 
 				// zero-reward loops check on
@@ -1841,14 +1985,19 @@ public class PrismCL implements PrismModelListener
 			} else if (ext.equals("srew")) {
 				importstaterewards = true;
 				importStateRewardsFilename = basename + ".srew";
+			} else if (ext.equals("bin")) {
+				if (exts.length > 1)
+					throw new PrismException("A binary model file cannot be combined with other files for -importmodel");
+				importbinary = true;
+				modelFilename = basename + ".bin";
 			}
 			// Unknown extension
 			else {
 				throw new PrismException("Unknown extension \"" + ext + "\" for -importmodel switch");
 			}
 			// Check at least the transition matrix was imported
-			if (!importtrans) {
-				throw new PrismException("You must import the transition matrix when using -importmodel (use option \"tra\" or \"all\")");
+			if (!importtrans && !importbinary) {
+				throw new PrismException("You must import the transition matrix when using -importmodel (use option \"tra\", \"all\" or \"bin\")");
 			}
 		}
 		// No options supported currently
@@ -2276,9 +2425,77 @@ public class PrismCL implements PrismModelListener
 			if (simNumSamplesGiven) {
 				mainLog.printWarning("Option -simsamples is not used for the SPRT method and is being ignored");
 			}
+		}
+		// Importance splitting
+		else if (simMethodName.equals("split")) {
+			if (isReward) {
+				throw new PrismException("Cannot use importance splitting on reward properties");
+			}
+			if (simImportance == null || simLevels == null) {
+				throw new PrismException("Importance splitting needs an importance function and levels (switches -simimportance and -simlevels)");
+			}
+			PropertiesFile pfImportance = prism.parsePropertiesString(modulesFile, simImportance);
+			if (pfImportance.getNumProperties() != 1) {
+				throw new PrismException("Invalid importance function \"" + simImportance + "\"");
+			}
+			Expression importance = pfImportance.getProperty(0);
+			if (!TypeDouble.getInstance().canAssign(importance.getType())) {
+				throw new PrismException("Importance function \"" + simImportance + "\" must be numerical");
+			}
+			aSimMethod = new ImportanceSplitting(importance, simLevels, simNumSamples);
+			if (simApproxGiven || simWidthGiven || simConfidenceGiven) {
+				mainLog.printWarning("Options -simapprox/-simwidth/-simconf are not used for importance splitting and are being ignored");
+			}
+		}
+		// Bayesian
+		else if (simMethodName.equals("bayes")) {
+			if (isReward) {
+				throw new PrismException("Cannot use the Bayesian method on reward properties; try CI (switch -simci) instead");
+			}
+			if (simPrior != null)
+				aSimMethod = new BayesianMethod(simConfidence, simWidth, simPrior[0], simPrior[1]);
+			else
+				aSimMethod = new BayesianMethod(simConfidence, simWidth);
+			if (simApproxGiven) {
+				mainLog.printWarning("Option -simapprox is not used for the Bayesian method and is being ignored");
+			}
+			if (simNumSamplesGiven) {
+				mainLog.printWarning("Option -simsamples is not used for the Bayesian method and is being ignored");
+			}
 		} else
 			throw new PrismException("Unknown simulation method \"" + simMethodName + "\"");
 
+		if (simPrior != null && !simMethodName.equals("bayes")) {
+			mainLog.printWarning("Option -simprior is only used for the Bayesian method and is being ignored");
+		}
+		// Control variate (for reward properties)
+		if (simControl != null) {
+			if (!simControlMeanGiven) {
+				throw new PrismException("The known value of the control variate must be specified (switch -simcontrolmean)");
+			}
+			PropertiesFile pfControl = prism.parsePropertiesString(modulesFile, simControl);
+			if (pfControl.getNumProperties() != 1) {
+				throw new PrismException("Invalid control variate \"" + simControl + "\"");
+			}
+			Expression control = pfControl.getProperty(0);
+			if (!(control instanceof ExpressionProb || control instanceof ExpressionReward) || !Expression.isQuantitative(control)) {
+				throw new PrismException("Control variate \"" + simControl + "\" must be a P=? or R=? property");
+			}
+			prism.getSimulator().setControlVariate(control, pfControl, simControlMean);
+			if (!isReward) {
+				mainLog.printWarning("Option -simcontrol is only used for reward properties and is being ignored");
+			}
+		} else if (simControlMeanGiven) {
+			mainLog.printWarning("Option -simcontrolmean is not used without -simcontrol and is being ignored");
+		}
+		// Batch-sequential sampling (only makes sense if the number of samples is not fixed)
+		if (simBatch > 0) {
+			if (aSimMethod.getMaxRemainingIterations(0) == -1 && !(aSimMethod instanceof ImportanceSplitting))
+				aSimMethod = new BatchSequentialMethod(aSimMethod, simBatch);
+			else
+				mainLog.printWarning("Option -simbatch is not used when the number of samples is fixed or for importance splitting and is being ignored");
+		}
+
 		return aSimMethod;
 	}
 
@@ -2316,6 +2533,7 @@ public class PrismCL implements PrismModelListener
 		mainLog.println("-importstates <file>............ Import the list of states directly from a text file");
 		mainLog.println("-importlabels <file>............ Import the list of labels directly from a text file");
 		mainLog.println("-importstaterewards <file>...... Import the state rewards directly from a text file");
+		mainLog.println("-importbinary .................. Model file is a binary model file (see -exportbinary)");
 		mainLog.println("-importinitdist <file>.......... Specify the initial probability distribution for transient analysis");
 		mainLog.println("-dtmc .......................... Force imported/built model to be a DTMC");
 		mainLog.println("-ctmc .......................... Force imported/built model to be a CTMC");
@@ -2330,6 +2548,7 @@ public class PrismCL implements PrismModelListener
 		mainLog.println("-exportrewards <file1> <file2>.. Export state/transition rewards to files 1/2");
 		mainLog.println("-exportstates <file> ........... Export the list of reachable states to a file");
 		mainLog.println("-exportlabels <file> ........... Export the list of labels and satisfying states to a file");
+		mainLog.println("-exportbinary <file> ........... Export the built model to a binary model file (explicit engine)");
 		mainLog.println("-exportmatlab .................. When exporting matrices/vectors/labels/etc., use Matlab format");
 		mainLog.println("-exportmrmc .................... When exporting matrices/vectors/labels, use MRMC format");
 		mainLog.println("-exportrows .................... When exporting matrices, put a whole row on one line");
@@ -2351,15 +2570,28 @@ public class PrismCL implements PrismModelListener
 		mainLog.println();
 		mainLog.println("SIMULATION OPTIONS:");
 		mainLog.println("-sim ........................... Use the PRISM simulator to approximate results of model checking");
-		mainLog.println("-simmethod <name> .............. Specify the method for approximate model checking (ci, aci, apmc, sprt)");
-		mainLog.println("-simsamples <n> ................ Set the number of samples for the simulator (CI/ACI/APMC methods)");
-		mainLog.println("-simconf <x> ................... Set the confidence parameter for the simulator (CI/ACI/APMC methods)");
-		mainLog.println("-simwidth <x> .................. Set the interval width for the simulator (CI/ACI methods)");
+		mainLog.println("-simmethod <name> .............. Specify the method for approximate model checking (ci, aci, apmc, sprt, split, bayes)");
+		mainLog.println("-simsamples <n> ................ Set the number of samples for the simulator (CI/ACI/APMC methods; per level for split)");
+		mainLog.println("-simconf <x> ................... Set the confidence parameter for the simulator (CI/ACI/APMC/Bayes methods)");
+		mainLog.println("-simwidth <x> .................. Set the interval width for the simulator (CI/ACI/Bayes methods)");
 		mainLog.println("-simapprox <x> ................. Set the approximation parameter for the simulator (APMC method)");
 		mainLog.println("-simmanual ..................... Do not use the automated way of deciding whether the variance is null or not");
 		mainLog.println("-simvar <n> .................... Set the minimum number of samples to know the variance is null or not");
 		mainLog.println("-simmaxrwd <x> ................. Set the maximum reward -- useful to display the CI/ACI methods progress");
+		mainLog.println("-simimportance <expr> .......... Set the importance function for importance splitting (split method)");
+		mainLog.println("-simlevels <x1,x2,...> ......... Set the levels of the importance function for importance splitting");
+		mainLog.println("-simprior <a>,<b> .............. Set the Beta(a,b) prior for the Bayesian method [default: 1,1]");
+		mainLog.println("-simbatch <n> .................. Only check stopping criteria every <n> samples (batch-sequential sampling)");
+		mainLog.println("-simantithetic ................. Use pairs of antithetic paths as samples (variance reduction)");
+		mainLog.println("-simcontrol <prop> ............. Use a P/R property as a control variate for reward properties (variance reduction)");
+		mainLog.println("-simcontrolmean <x> ............ Set the known value of the control variate property");
 		mainLog.println("-simpathlen <n> ................ Set the maximum path length for the simulator");
+		mainLog.println("-simseed <n> ................... Set the random seed for the simulator (for reproducible results)");
+		mainLog.println("-simpathmem <n> ................ Keep at most <n> steps of simulation paths in memory, the rest on disk [default: 1000000]");
+		mainLog.println("-simctmc <name> ................ CTMC simulation method (standard, nextreaction, tauleap) [default: standard]");
+		mainLog.println("-simtaueps <x> ................. Set the error control parameter for tau-leaping [default: 0.03]");
+		mainLog.println("-simworkers <list> ............. Distribute sampling over worker processes (host:port,... or local:<n>)");
+		mainLog.println("-simworker [<addr>:]<port> ..... Run as a distributed sampling worker on <port> of <addr> [default: loopback only]");
 
 		mainLog.println();
 		mainLog.println("You can also use \"prism -help xxx\" for help on some switches -xxx with non-obvious syntax.");
@@ -2403,6 +2635,8 @@ public class PrismCL implements PrismModelListener
 			mainLog.println("Possible extensions are: .tra, .sta, .lab, .srew");
 			mainLog.println("Use extension .all to import all, e.g.:");
 			mainLog.println("\n -importmodel in.all\n");
+			mainLog.println("Use extension .bin (on its own) to import a binary model file (see -exportbinary), e.g.:");
+			mainLog.println("\n -importmodel in.bin\n");
 		}
 		// -exportresults
 		else if (sw.equals("exportresults")) {
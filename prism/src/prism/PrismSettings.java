@@ -81,6 +81,7 @@ public class PrismSettings implements Observer
 	public static final	String PRISM_FIX_DEADLOCKS					= "prism.fixDeadlocks";
 	public static final	String PRISM_DO_PROB_CHECKS					= "prism.doProbChecks";
 	public static final	String PRISM_SUM_ROUND_OFF					= "prism.sumRoundOff";
+	public static final	String PRISM_COMPILE_EXPRESSIONS			= "prism.compileExpressions";
 	public static final	String PRISM_COMPACT						= "prism.compact";
 	public static final	String PRISM_LIN_EQ_METHOD					= "prism.linEqMethod";//"prism.iterativeMethod";
 	public static final	String PRISM_LIN_EQ_METHOD_PARAM			= "prism.linEqMethodParam";//"prism.overRelaxation";
@@ -94,6 +95,11 @@ public class PrismSettings implements Observer
 	public static final	String PRISM_TERM_CRIT_PARAM				= "prism.termCritParam";//"prism.terminationEpsilon";
 	public static final	String PRISM_MAX_ITERS						= "prism.maxIters";//"prism.maxIterations";
 	public static final String PRISM_EXPORT_ITERATIONS				= "prism.exportIterations";
+	public static final String PRISM_NUM_THREADS					= "prism.numThreads";
+	public static final String PRISM_EXPLICIT_PACK_STATES			= "prism.explicitPackStates";
+	public static final String PRISM_EXPLICIT_OFF_HEAP				= "prism.explicitOffHeap";
+	public static final String PRISM_OFF_HEAP_DIR					= "prism.offHeapDir";
+	public static final String PRISM_EXPLICIT_PROB_STORAGE			= "prism.explicitProbStorage";
 	
 	public static final	String PRISM_CUDD_MAX_MEM					= "prism.cuddMaxMem";
 	public static final	String PRISM_CUDD_EPSILON					= "prism.cuddEpsilon";
@@ -107,6 +113,7 @@ public class PrismSettings implements Observer
 	public static final	String PRISM_EXTRA_DD_INFO					= "prism.extraDDInfo";
 	public static final	String PRISM_EXTRA_REACH_INFO				= "prism.extraReachInfo";
 	public static final String PRISM_SCC_METHOD						= "prism.sccMethod";
+	public static final String PRISM_SCC_PARALLEL_MIN				= "prism.sccParallelMin";
 	public static final String PRISM_SYMM_RED_PARAMS					= "prism.symmRedParams";
 	public static final	String PRISM_EXACT_ENABLED					= "prism.exact.enabled";
 	public static final String PRISM_PTA_METHOD					= "prism.ptaMethod";
@@ -141,6 +148,7 @@ public class PrismSettings implements Observer
 	public static final String PRISM_FAU_INTERVALS					= "prism.fau.intervals";
 	public static final String PRISM_FAU_INITIVAL					= "prism.fau.initival";
 	public static final String PRISM_FAU_ARRAYTHRESHOLD				= "prism.fau.arraythreshold";
+	public static final String PRISM_FAU_CACHE_SIZE					= "prism.fau.cacheSize";
 
 	//Simulator
 	public static final String SIMULATOR_DEFAULT_NUM_SAMPLES		= "simulator.defaultNumSamples";
@@ -156,6 +164,12 @@ public class PrismSettings implements Observer
 	public static final	String SIMULATOR_NEW_PATH_ASK_VIEW			= "simulator.newPathAskView";
 	public static final	String SIMULATOR_RENDER_ALL_VALUES			= "simulator.renderAllValues";
 	public static final String SIMULATOR_NETWORK_FILE				= "simulator.networkFile";
+	public static final String SIMULATOR_SEED						= "simulator.seed";
+	public static final String SIMULATOR_WORKERS					= "simulator.workers";
+	public static final String SIMULATOR_CTMC_METHOD				= "simulator.ctmcMethod";
+	public static final String SIMULATOR_TAU_LEAP_EPSILON			= "simulator.tauLeapEpsilon";
+	public static final String SIMULATOR_ANTITHETIC					= "simulator.antithetic";
+	public static final String SIMULATOR_PATH_MEMORY				= "simulator.pathMemory";
 	
 	//GUI Model
 	public static final	String MODEL_AUTO_PARSE						= "model.autoParse";
@@ -265,6 +279,16 @@ public class PrismSettings implements Observer
 																			"Maximum number of iterations to perform if iterative methods do not converge." },
 			{ BOOLEAN_TYPE,		PRISM_EXPORT_ITERATIONS,				"Export iterations (debug/visualisation)",			"4.3.1",			false,														"",
 																			"Export solution vectors for iteration algorithms to iterations.html"},
+			{ INTEGER_TYPE,		PRISM_NUM_THREADS,						"Number of worker threads",			"4.4",			new Integer(1),															"1,",
+																			"Number of worker threads for multi-threaded computations in the explicit engine and for sampling in the simulator (1 means single-threaded)." },
+			{ BOOLEAN_TYPE,		PRISM_EXPLICIT_PACK_STATES,				"Pack explicit states",					"4.4",			new Boolean(true),															"",
+																			"Store states in packed form (a few bits per variable) during explicit-state model construction, where all variables are bounded integers or Booleans." },
+			{ BOOLEAN_TYPE,		PRISM_EXPLICIT_OFF_HEAP,				"Store explicit models off-heap",			"4.4",			new Boolean(false),															"",
+																			"Store the transition matrices of DTMCs/MDPs built by the explicit engine outside the Java heap (allows more than 2^31 transitions)." },
+			{ STRING_TYPE,		PRISM_OFF_HEAP_DIR,						"Off-heap storage directory",			"4.4",			"",																		"",
+																			"Directory for memory-mapped files holding off-heap explicit models (empty means direct memory is used instead)." },
+			{ CHOICE_TYPE,		PRISM_EXPLICIT_PROB_STORAGE,			"Explicit DTMC probability storage",		"4.4",			"Double",																	"Double,Table,Float",
+																			"How to store the probabilities of DTMCs built by the explicit engine: doubles, a table of distinct values with byte/short indices (floats if there are too many values), or single-precision floats (lossy)." },
 			// MODEL CHECKING OPTIONS:
 			{ BOOLEAN_TYPE,		PRISM_PRECOMPUTATION,					"Use precomputation",					"2.1",			new Boolean(true),															"",																							
 																			"Whether to use model checking precomputation algorithms (Prob0, Prob1, etc.), where optional." },
@@ -282,10 +306,14 @@ public class PrismSettings implements Observer
 																			"Perform sanity checks on model probabilities/rates when constructing probabilistic models." },
 			{ DOUBLE_TYPE,		PRISM_SUM_ROUND_OFF,					"Probability sum threshold",					"2.1",			new Double(1.0E-5),													"0.0,",
 																			"Round-off threshold for places where doubles are summed and compared to integers (e.g. checking that probabilities sum to 1 in an update)." },							
+			{ BOOLEAN_TYPE,		PRISM_COMPILE_EXPRESSIONS,				"Compile model expressions",			"4.4",			new Boolean(true),															"",
+																			"Compile the guards, probabilities/rates, updates and rewards of a model to JVM bytecode, for faster explicit-state model construction and simulation." },
 			{ BOOLEAN_TYPE,		PRISM_DO_SS_DETECTION,					"Use steady-state detection",			"2.1",			new Boolean(true),															"0,",																						
 																			"Use steady-state detection during CTMC transient probability computation." },
 			{ CHOICE_TYPE,		PRISM_SCC_METHOD,						"SCC decomposition method",				"3.2",			"Lockstep",																	"Xie-Beerel,Lockstep,SCC-Find",																
 																			"Which algorithm to use for (symbolic) decomposition of a graph into strongly connected components (SCCs)." },
+			{ INTEGER_TYPE,		PRISM_SCC_PARALLEL_MIN,					"Min. states for parallel SCC decomposition",	"4.4",	new Integer(100000),													"0,",
+																			"Minimum number of states for which (explicit) SCC decomposition is multi-threaded (if more than one worker thread is enabled)." },
 			{ STRING_TYPE,		PRISM_SYMM_RED_PARAMS,					"Symmetry reduction parameters",		"3.2",			"",																	"",																
 																			"Parameters for symmetry reduction (format: \"i j\" where i and j are the number of modules before and after the symmetric ones; empty string means symmetry reduction disabled)." },
 			{ STRING_TYPE,		PRISM_AR_OPTIONS,						"Abstraction refinement options",		"3.3",			"",																	"",																
@@ -378,6 +406,8 @@ public class PrismSettings implements Observer
 																			"For fast adaptive uniformisation (FAU), the time period is split into this number of of intervals." },
 			{ DOUBLE_TYPE,      PRISM_FAU_INITIVAL,						"FAU initial time interval",			"4.1",   	 	new Double(1.0),     														"",	
 																			"For fast adaptive uniformisation (FAU), the length of initial time interval to analyse." },
+			{ INTEGER_TYPE,     PRISM_FAU_CACHE_SIZE,					"FAU successor cache size",				"4.4",   	 	new Integer(0),     														"0,",
+																			"For fast adaptive uniformisation (FAU), the maximum number of states whose outgoing transitions are cached, so that they are not recomputed when a state is revisited (0 means no caching)." },
 		},
 		{
 			{ INTEGER_TYPE,		SIMULATOR_DEFAULT_NUM_SAMPLES,			"Default number of samples",			"4.0",		new Integer(1000),			"1,",
@@ -405,7 +435,19 @@ public class PrismSettings implements Observer
 			{ CHOICE_TYPE,		SIMULATOR_RENDER_ALL_VALUES,			"Path render style",					"3.2",		"Render all values",		"Render changes,Render all values",
 																			"Display style for paths in the simulator user interface: only show variable values when they change, or show all values regardless." },
 			{ FILE_TYPE,		SIMULATOR_NETWORK_FILE,					"Network profile",						"2.1",		new File(""),				"",
-																			"File specifying the network profile used by the distributed PRISM simulator." }
+																			"File specifying the network profile used by the distributed PRISM simulator." },
+			{ INTEGER_TYPE,		SIMULATOR_SEED,							"Random seed",							"4.4",		new Integer(0),				"",
+																			"Seed for the random number generator used for approximate (simulation-based) model checking (0 means a seed is picked from the current time). For a fixed seed, results are reproducible and do not depend on the number of threads or worker processes used." },
+			{ STRING_TYPE,		SIMULATOR_WORKERS,						"Sampling workers",						"4.4",		"",				"",
+																			"Worker processes for distributed approximate model checking: a comma-separated list of host:port addresses of running workers, or local:<n> to start n workers on this machine (empty means sampling is done in this process)." },
+			{ CHOICE_TYPE,		SIMULATOR_CTMC_METHOD,					"CTMC simulation method",				"4.4",		"Standard",		"Standard,Next reaction,Tau-leaping",
+																			"How paths of CTMCs are generated for approximate model checking: the standard method (all transitions computed in each state), the (exact) next reaction method, only recomputing the rates affected by each transition, or (approximate) tau-leaping, which fires many transitions at once (for reaction network models)." },
+			{ DOUBLE_TYPE,		SIMULATOR_TAU_LEAP_EPSILON,				"Tau-leaping epsilon",					"4.4",		new Double(0.03),	"0.0,1.0",
+																			"Error control parameter for tau-leaping: the maximum (approximate) relative change in rates within one leap." },
+			{ BOOLEAN_TYPE,		SIMULATOR_ANTITHETIC,					"Antithetic path pairs",				"4.4",		new Boolean(false),	"",
+																			"Reduce the variance of approximate model checking by using pairs of antithetic paths (the second using the complement of the random numbers of the first) as samples, averaging their values for reward properties (no effect for probabilistic properties)." },
+			{ INTEGER_TYPE,		SIMULATOR_PATH_MEMORY,					"Path steps in memory",					"4.4",		new Integer(1000000),	"0,",
+																			"Maximum number of steps of a (full) simulation path kept in memory; older steps are written to a temporary file (0 means no limit)." }
 		},
 		{
 			{ BOOLEAN_TYPE,		MODEL_AUTO_PARSE,						"Auto parse",							"2.1",			new Boolean(true),															"",																							"Parse PRISM models automatically as they are loaded/edited in the text editor." },
@@ -1087,6 +1129,57 @@ public class PrismSettings implements Observer
 		else if (sw.equals("exportiterations")) {
 			set(PRISM_EXPORT_ITERATIONS, true);
 		}
+		// Number of worker threads
+		else if (sw.equals("threads")) {
+			if (i < args.length - 1) {
+				try {
+					j = Integer.parseInt(args[++i]);
+					if (j < 1)
+						throw new NumberFormatException("");
+					set(PRISM_NUM_THREADS, j);
+				} catch (NumberFormatException e) {
+					throw new PrismException("Invalid value for -" + sw + " switch");
+				}
+			} else {
+				throw new PrismException("No value specified for -" + sw + " switch");
+			}
+		}
+		// Packed storage of states for explicit model construction
+		else if (sw.equals("packstates")) {
+			set(PRISM_EXPLICIT_PACK_STATES, true);
+		}
+		else if (sw.equals("nopackstates")) {
+			set(PRISM_EXPLICIT_PACK_STATES, false);
+		}
+		// Store explicit models off-heap
+		else if (sw.equals("offheap")) {
+			set(PRISM_EXPLICIT_OFF_HEAP, true);
+		}
+		// Store explicit models off-heap, in memory-mapped files in a directory
+		else if (sw.equals("offheapdir")) {
+			if (i < args.length - 1) {
+				set(PRISM_EXPLICIT_OFF_HEAP, true);
+				set(PRISM_OFF_HEAP_DIR, args[++i]);
+			} else {
+				throw new PrismException("No directory specified for -" + sw + " switch");
+			}
+		}
+		// Storage of probabilities for explicit DTMCs
+		else if (sw.equals("probstorage")) {
+			if (i < args.length - 1) {
+				s = args[++i];
+				if (s.equals("double"))
+					set(PRISM_EXPLICIT_PROB_STORAGE, "Double");
+				else if (s.equals("table"))
+					set(PRISM_EXPLICIT_PROB_STORAGE, "Table");
+				else if (s.equals("float"))
+					set(PRISM_EXPLICIT_PROB_STORAGE, "Float");
+				else
+					throw new PrismException("Unrecognised option for -" + sw + " switch (options are: double, table, float)");
+			} else {
+				throw new PrismException("No parameter specified for -" + sw + " switch");
+			}
+		}
 		
 		// MODEL CHECKING OPTIONS:
 		
@@ -1122,6 +1215,13 @@ public class PrismSettings implements Observer
 		else if (sw.equals("noprobchecks")) {
 			set(PRISM_DO_PROB_CHECKS, false);
 		}
+		// Compilation of model expressions
+		else if (sw.equals("compileexprs")) {
+			set(PRISM_COMPILE_EXPRESSIONS, true);
+		}
+		else if (sw.equals("nocompileexprs")) {
+			set(PRISM_COMPILE_EXPRESSIONS, false);
+		}
 		// Sum round-off threshold
 		else if (sw.equals("sumroundoff")) {
 			if (i < args.length - 1) {
@@ -1157,6 +1257,21 @@ public class PrismSettings implements Observer
 				throw new PrismException("No parameter specified for -" + sw + " switch");
 			}
 		}
+		// Min. states for multi-threaded SCC computation
+		else if (sw.equals("sccparallelmin")) {
+			if (i < args.length - 1) {
+				try {
+					j = Integer.parseInt(args[++i]);
+					if (j < 0)
+						throw new NumberFormatException("");
+					set(PRISM_SCC_PARALLEL_MIN, j);
+				} catch (NumberFormatException e) {
+					throw new PrismException("Invalid value for -" + sw + " switch");
+				}
+			} else {
+				throw new PrismException("No value specified for -" + sw + " switch");
+			}
+		}
 		// Enable symmetry reduction
 		else if (sw.equals("symm")) {
 			if (i < args.length - 2) {
@@ -1593,6 +1708,94 @@ public class PrismSettings implements Observer
 				throw new PrismException("No value specified for -" + sw + " switch");
 			}
 		}
+		else if (sw.equals("faucache")) {
+			if (i < args.length - 1) {
+				try {
+					j = Integer.parseInt(args[++i]);
+					if (j < 0)
+						throw new NumberFormatException("");
+					set(PRISM_FAU_CACHE_SIZE, j);
+				} catch (NumberFormatException e) {
+					throw new PrismException("Invalid value for -" + sw + " switch");
+				}
+			} else {
+				throw new PrismException("No value specified for -" + sw + " switch");
+			}
+		}
+
+		// SIMULATION OPTIONS:
+		
+		// Random seed for the simulator
+		else if (sw.equals("simseed")) {
+			if (i < args.length - 1) {
+				try {
+					j = Integer.parseInt(args[++i]);
+					set(SIMULATOR_SEED, j);
+				} catch (NumberFormatException e) {
+					throw new PrismException("Invalid value for -" + sw + " switch");
+				}
+			} else {
+				throw new PrismException("No value specified for -" + sw + " switch");
+			}
+		}
+		// CTMC simulation method
+		else if (sw.equals("simctmc")) {
+			if (i < args.length - 1) {
+				s = args[++i];
+				if (s.equals("standard"))
+					set(SIMULATOR_CTMC_METHOD, "Standard");
+				else if (s.equals("nextreaction"))
+					set(SIMULATOR_CTMC_METHOD, "Next reaction");
+				else if (s.equals("tauleap"))
+					set(SIMULATOR_CTMC_METHOD, "Tau-leaping");
+				else
+					throw new PrismException("Unrecognised option for -" + sw + " switch (options are: standard, nextreaction, tauleap)");
+			} else {
+				throw new PrismException("No parameter specified for -" + sw + " switch");
+			}
+		}
+		// Tau-leaping epsilon
+		else if (sw.equals("simtaueps")) {
+			if (i < args.length - 1) {
+				try {
+					d = Double.parseDouble(args[++i]);
+					if (d <= 0 || d >= 1)
+						throw new NumberFormatException("");
+					set(SIMULATOR_TAU_LEAP_EPSILON, d);
+				} catch (NumberFormatException e) {
+					throw new PrismException("Invalid value for -" + sw + " switch");
+				}
+			} else {
+				throw new PrismException("No value specified for -" + sw + " switch");
+			}
+		}
+		// Antithetic path pairs
+		else if (sw.equals("simantithetic")) {
+			set(SIMULATOR_ANTITHETIC, true);
+		}
+		// Maximum number of path steps kept in memory
+		else if (sw.equals("simpathmem")) {
+			if (i < args.length - 1) {
+				try {
+					j = Integer.parseInt(args[++i]);
+					if (j < 0)
+						throw new NumberFormatException("");
+					set(SIMULATOR_PATH_MEMORY, j);
+				} catch (NumberFormatException e) {
+					throw new PrismException("Invalid value for -" + sw + " switch");
+				}
+			} else {
+				throw new PrismException("No value specified for -" + sw + " switch");
+			}
+		}
+		// Worker processes for distributed sampling
+		else if (sw.equals("simworkers")) {
+			if (i < args.length - 1) {
+				set(SIMULATOR_WORKERS, args[++i]);
+			} else {
+				throw new PrismException("No value specified for -" + sw + " switch");
+			}
+		}
 
 		// HIDDEN OPTIONS
 		
@@ -1722,6 +1925,11 @@ public class PrismSettings implements Observer
 		mainLog.println("-absolute (or -abs) ............ Use absolute error for detecting convergence");
 		mainLog.println("-epsilon <x> (or -e <x>) ....... Set value of epsilon (for convergence check) [default: 1e-6]");
 		mainLog.println("-maxiters <n> .................. Set max number of iterations [default: 10000]");
+		mainLog.println("-threads <n> ................... Use <n> worker threads (explicit engine/simulator) [default: 1]");
+		mainLog.println("-nopackstates .................. Do not store states in packed form during explicit model construction");
+		mainLog.println("-offheap ....................... Store explicit DTMCs/MDPs outside the Java heap");
+		mainLog.println("-offheapdir <dir> .............. Store explicit DTMCs/MDPs in memory-mapped files in <dir>");
+		mainLog.println("-probstorage <name> ............ Storage of explicit DTMC probabilities (double, table, float) [default: double]");
 		
 		mainLog.println();
 		mainLog.println("MODEL CHECKING OPTIONS:");
@@ -1735,9 +1943,11 @@ public class PrismSettings implements Observer
 		mainLog.println("-nofixdl ....................... Do not automatically put self-loops in deadlock states");
 		mainLog.println("-noprobchecks .................. Disable checks on model probabilities/rates");
 		mainLog.println("-sumroundoff <x> ............... Set probability sum threshold [default: 1-e5]");
+		mainLog.println("-nocompileexprs ................ Evaluate model expressions by interpretation, rather than compiling them");
 		mainLog.println("-zerorewardcheck ............... Check for absence of zero-reward loops");
 		mainLog.println("-nossdetect .................... Disable steady-state detection for CTMC transient computations");
 		mainLog.println("-sccmethod <name> .............. Specify (symbolic) SCC computation method (xiebeerel, lockstep, sccfind)");
+		mainLog.println("-sccparallelmin <n> ............ Min. states for multi-threaded (explicit) SCC computation [default: 100000]");
 		mainLog.println("-symm <string> ................. Symmetry reduction options string");
 		mainLog.println("-aroptions <string> ............ Abstraction-refinement engine options string");
 		mainLog.println("-pathviaautomata ............... Handle all path formulas via automata constructions");
@@ -1790,6 +2000,7 @@ public class PrismSettings implements Observer
 		mainLog.println("-fauarraythreshold <x> ......... Set threshold when to switch to sparse matrix in FAU [default: 100]");
 		mainLog.println("-fauintervals <x> .............. Set number of intervals to divide time intervals into for FAU [default: 1]");
 		mainLog.println("-fauinitival <x> ............... Set length of additional initial time interval for FAU [default: 1.0]");
+		mainLog.println("-faucache <n> .................. Cache the transitions of up to <n> states in FAU [default: 0]");
 	}
 
 	/**
@@ -0,0 +1,289 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package prism;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import parser.State;
+import parser.StatePacker;
+
+/**
+ * Storage for the outgoing transitions of a block of states, as written by
+ * {@link ModelGenerator#exploreStates(List, SuccessorBuffer)}.
+ * <br><br>
+ * Everything is stored in (growable) primitive arrays, which are reused across blocks:
+ * <ul>
+ * <li> the choices of the {@code s}th state are those with indices
+ *      {@code getChoiceStart(s)} to {@code getChoiceStart(s + 1) - 1};
+ * <li> the transitions of the {@code c}th choice are those with indices
+ *      {@code getTransitionStart(c)} to {@code getTransitionStart(c + 1) - 1};
+ * <li> each choice has an action index (see {@link #getAction(int)});
+ * <li> each transition has a probability/rate and a target state.
+ * </ul>
+ * If a {@link StatePacker} is given, target states are stored packed,
+ * {@code getNumWords()} words per transition, in the array returned by {@link #getTargetWords()};
+ * otherwise, they are stored as State objects (see {@link #getTargetState(int)}).
+ */
+public class SuccessorBuffer
+{
+	// Packer for target states (null if they are stored as State objects)
+	protected StatePacker packer;
+	// Number of words per packed state
+	protected int numWords;
+
+	// Number of states, choices and transitions stored
+	protected int numStates;
+	protected int numChoices;
+	protected int numTransitions;
+	// Index of the first choice of each state (plus one extra element for the end)
+	protected int stateChoiceStarts[] = new int[65];
+	// Index of the first transition of each choice (plus one extra element for the end)
+	protected int choiceTransitionStarts[] = new int[129];
+	// Action index of each choice
+	protected int choiceActions[] = new int[128];
+	// Probability/rate of each transition
+	protected double probs[] = new double[256];
+	// Target of each transition (packed, or as State objects)
+	protected long targetWords[];
+	protected State targetStates[];
+
+	// Actions seen so far, and their indices (index 0 is the absence of an action, i.e. null)
+	protected List<Object> actions = new ArrayList<Object>();
+	protected HashMap<Object, Integer> actionIndices = new HashMap<Object, Integer>();
+
+	/**
+	 * Create an empty buffer.
+	 * @param packer Packer used to store target states (if null, they are stored as State objects)
+	 */
+	public SuccessorBuffer(StatePacker packer)
+	{
+		this.packer = packer;
+		if (packer != null) {
+			numWords = packer.getNumWords();
+			targetWords = new long[probs.length * numWords];
+		} else {
+			targetStates = new State[probs.length];
+		}
+		actions.add(null);
+	}
+
+	/**
+	 * Remove all states/choices/transitions (but keep the action indices).
+	 */
+	public void clear()
+	{
+		if (targetStates != null) {
+			Arrays.fill(targetStates, 0, numTransitions, null);
+		}
+		numStates = numChoices = numTransitions = 0;
+	}
+
+	// Methods for writing to the buffer
+
+	/**
+	 * Start the outgoing transitions of a new state.
+	 */
+	public void startState()
+	{
+		if (numStates + 2 > stateChoiceStarts.length) {
+			stateChoiceStarts = Arrays.copyOf(stateChoiceStarts, 2 * stateChoiceStarts.length);
+		}
+		stateChoiceStarts[numStates++] = numChoices;
+		stateChoiceStarts[numStates] = numChoices;
+	}
+
+	/**
+	 * Start a new choice (of the last started state).
+	 * @param action The action label of the choice (null if none)
+	 */
+	public void startChoice(Object action)
+	{
+		startChoice(getActionIndex(action));
+	}
+
+	/**
+	 * Start a new choice (of the last started state).
+	 * @param actionIndex The index of action label of the choice (see {@link #getActionIndex(Object)})
+	 */
+	public void startChoice(int actionIndex)
+	{
+		if (numChoices + 2 > choiceTransitionStarts.length) {
+			choiceTransitionStarts = Arrays.copyOf(choiceTransitionStarts, 2 * choiceTransitionStarts.length);
+			choiceActions = Arrays.copyOf(choiceActions, choiceTransitionStarts.length);
+		}
+		choiceActions[numChoices] = actionIndex;
+		choiceTransitionStarts[numChoices++] = numTransitions;
+		choiceTransitionStarts[numChoices] = numTransitions;
+		stateChoiceStarts[numStates] = numChoices;
+	}
+
+	/**
+	 * Add a transition to the last started choice.
+	 * The target state is packed (or stored as is, if there is no packer, in which case
+	 * it should not be modified afterwards).
+	 * @param prob The probability/rate of the transition
+	 * @param target The target state of the transition
+	 */
+	public void addTransition(double prob, State target) throws PrismException
+	{
+		if (numTransitions == probs.length) {
+			probs = Arrays.copyOf(probs, 2 * probs.length);
+			if (packer != null) {
+				targetWords = Arrays.copyOf(targetWords, probs.length * numWords);
+			} else {
+				targetStates = Arrays.copyOf(targetStates, probs.length);
+			}
+		}
+		probs[numTransitions] = prob;
+		if (packer != null) {
+			packer.pack(target, targetWords, numTransitions * numWords);
+		} else {
+			targetStates[numTransitions] = target;
+		}
+		numTransitions++;
+		choiceTransitionStarts[numChoices] = numTransitions;
+	}
+
+	/**
+	 * Get the index of an action label (null if none), assigning a new one if it has not been seen before.
+	 */
+	public int getActionIndex(Object action)
+	{
+		if (action == null) {
+			return 0;
+		}
+		Integer index = actionIndices.get(action);
+		if (index == null) {
+			index = actions.size();
+			actions.add(action);
+			actionIndices.put(action, index);
+		}
+		return index;
+	}
+
+	// Methods for reading from the buffer
+
+	/**
+	 * Are target states stored packed?
+	 */
+	public boolean isPacked()
+	{
+		return packer != null;
+	}
+
+	/**
+	 * Get the number of words per packed target state.
+	 */
+	public int getNumWords()
+	{
+		return numWords;
+	}
+
+	/**
+	 * Get the number of states stored.
+	 */
+	public int getNumStates()
+	{
+		return numStates;
+	}
+
+	/**
+	 * Get the total number of choices stored.
+	 */
+	public int getNumChoices()
+	{
+		return numChoices;
+	}
+
+	/**
+	 * Get the total number of transitions stored.
+	 */
+	public int getNumTransitions()
+	{
+		return numTransitions;
+	}
+
+	/**
+	 * Get the index of the first choice of the {@code s}th state
+	 * ({@code s} can be {@code getNumStates()}, giving the end of the last state).
+	 */
+	public int getChoiceStart(int s)
+	{
+		return stateChoiceStarts[s];
+	}
+
+	/**
+	 * Get the index of the first transition of the {@code c}th choice
+	 * ({@code c} can be {@code getNumChoices()}, giving the end of the last choice).
+	 */
+	public int getTransitionStart(int c)
+	{
+		return choiceTransitionStarts[c];
+	}
+
+	/**
+	 * Get the action index of the {@code c}th choice (see {@link #getAction(int)}).
+	 */
+	public int getChoiceActionIndex(int c)
+	{
+		return choiceActions[c];
+	}
+
+	/**
+	 * Get the action label with index {@code index} (0 denotes no action, i.e., null).
+	 */
+	public Object getAction(int index)
+	{
+		return actions.get(index);
+	}
+
+	/**
+	 * Get the probability/rate of the {@code t}th transition.
+	 */
+	public double getProbability(int t)
+	{
+		return probs[t];
+	}
+
+	/**
+	 * Get the packed target states: the target of the {@code t}th transition
+	 * is stored in words {@code t * getNumWords()} onwards (only if {@link #isPacked()}).
+	 */
+	public long[] getTargetWords()
+	{
+		return targetWords;
+	}
+
+	/**
+	 * Get the target state of the {@code t}th transition (only if not {@link #isPacked()}).
+	 */
+	public State getTargetState(int t)
+	{
+		return targetStates[t];
+	}
+}
@@ -30,6 +30,7 @@ import java.util.*;
 
 import parser.*;
 import parser.ast.*;
+import parser.compiler.CompiledExpression;
 import prism.ModelType;
 import prism.PrismException;
 import prism.PrismLangException;
@@ -43,11 +44,18 @@ public class ChoiceListFlexi implements Choice
 	protected int moduleOrActionIndex;
 
 	// List of multiple updates and associated probabilities/rates
-	// Size of list is stored implicitly in target.length
+	// Size of list is stored explicitly in size (storage is kept on clear()
+	// so that a choice can be reused without further allocation)
 	// Probabilities/rates are already evaluated, target states are not
 	// but are just stored as lists of updates (for efficiency)
 	protected List<List<Update>> updates;
-	protected List<Double> probability;
+	protected double probability[];
+	protected int size;
+
+	// Context for evaluating updates (reused, rather than created for each evaluation)
+	private EvaluateContextState stateContext;
+	// Compiled versions of updates, where available (null if none)
+	private Map<Update, CompiledExpression[]> compiledUpdates;
 
 	/**
 	 * Create empty choice.
@@ -55,7 +63,19 @@ public class ChoiceListFlexi implements Choice
 	public ChoiceListFlexi()
 	{
 		updates = new ArrayList<List<Update>>();
-		probability = new ArrayList<Double>();
+		probability = new double[4];
+		size = 0;
+	}
+
+	/**
+	 * Create empty choice, whose target states are computed using compiled versions
+	 * of updates (one compiled expression per assignment), where available.
+	 * @param compiledUpdates Compiled updates (null if none)
+	 */
+	public ChoiceListFlexi(Map<Update, CompiledExpression[]> compiledUpdates)
+	{
+		this();
+		this.compiledUpdates = compiledUpdates;
 	}
 
 	/**
@@ -64,23 +84,38 @@ public class ChoiceListFlexi implements Choice
 	 */
 	public ChoiceListFlexi(ChoiceListFlexi ch)
 	{
-		moduleOrActionIndex = ch.moduleOrActionIndex;
-		updates = new ArrayList<List<Update>>(ch.updates.size());
-		for (List<Update> list : ch.updates) {
-			List<Update> listNew = new ArrayList<Update>(list.size()); 
-			updates.add(listNew);
-			for (Update up : list) {
-				listNew.add(up);
-			}
-		}
-		probability = new ArrayList<Double>(ch.size());
-		for (double p : ch.probability) {
-			probability.add(p);
-		}
+		this();
+		compiledUpdates = ch.compiledUpdates;
+		copyFrom(ch);
 	}
 
 	// Set methods
 
+	/**
+	 * Remove all transitions from this choice, keeping the allocated storage for reuse.
+	 */
+	public void clear()
+	{
+		for (int i = 0; i < size; i++) {
+			updates.get(i).clear();
+		}
+		size = 0;
+	}
+
+	/**
+	 * Make this choice a copy of another, reusing existing storage where possible.
+	 * NB: Does a shallow, not deep, copy with respect to references to Update objects.
+	 */
+	public void copyFrom(ChoiceListFlexi ch)
+	{
+		clear();
+		moduleOrActionIndex = ch.moduleOrActionIndex;
+		for (int i = 0; i < ch.size; i++) {
+			List<Update> list = addElement(ch.probability[i]);
+			appendUpdates(list, ch.updates.get(i));
+		}
+	}
+
 	/**
 	 * Set the module/action for this choice, encoded as an integer
 	 * (-i for independent in ith module, i for synchronous on ith action)
@@ -98,8 +133,45 @@ public class ChoiceListFlexi implements Choice
 	 */
 	public void add(double probability, List<Update> ups)
 	{
-		this.updates.add(ups);
-		this.probability.add(probability);
+		appendUpdates(addElement(probability), ups);
+	}
+
+	/**
+	 * Add a transition, comprising a single update, to this choice.
+	 * @param probability Probability (or rate) of the transition
+	 * @param up Update object defining transition
+	 */
+	public void add(double probability, Update up)
+	{
+		addElement(probability).add(up);
+	}
+
+	/**
+	 * Append a new (empty) element to this choice, with the given probability/rate,
+	 * and return its (reused, where possible) list of updates.
+	 */
+	private List<Update> addElement(double prob)
+	{
+		if (size == probability.length) {
+			probability = Arrays.copyOf(probability, 2 * size);
+		}
+		probability[size] = prob;
+		if (size == updates.size()) {
+			updates.add(new ArrayList<Update>());
+		}
+		return updates.get(size++);
+	}
+
+	/**
+	 * Append the updates in {@code src} to {@code dest}
+	 * (using indexed access, to avoid creating iterators/arrays).
+	 */
+	private static void appendUpdates(List<Update> dest, List<Update> src)
+	{
+		int n = src.size();
+		for (int i = 0; i < n; i++) {
+			dest.add(src.get(i));
+		}
 	}
 
 	@Override
@@ -108,7 +180,7 @@ public class ChoiceListFlexi implements Choice
 		int i, n;
 		n = size();
 		for (i = 0; i < n; i++) {
-			probability.set(i, probability.get(i) * d);
+			probability[i] *= d;
 		}
 	}
 
@@ -129,23 +201,16 @@ public class ChoiceListFlexi implements Choice
 			// Loop through each (jth) element of existing choice
 			for (j = 0; j < n2; j++) {
 				// Create new element (i,j) of product 
-				list = new ArrayList<Update>(updates.get(j).size() + ch.updates.get(i).size());
-				for (Update u : updates.get(j)) {
-					list.add(u);
-				}
-				for (Update u : ch.updates.get(i)) {
-					list.add(u);
-				}
-				add(pi * getProbability(j), list);
+				list = addElement(pi * getProbability(j));
+				appendUpdates(list, updates.get(j));
+				appendUpdates(list, ch.updates.get(i));
 			}
 		}
 		// Modify elements of current choice to get (0,j) elements of product
 		pi = ch.getProbability(0);
 		for (j = 0; j < n2; j++) {
-			for (Update u : ch.updates.get(0)) {
-				updates.get(j).add(u);
-			}
-			probability.set(j, pi * probability.get(j));
+			appendUpdates(updates.get(j), ch.updates.get(0));
+			probability[j] *= pi;
 		}
 	}
 
@@ -172,7 +237,7 @@ public class ChoiceListFlexi implements Choice
 	@Override
 	public int size()
 	{
-		return probability.size();
+		return size;
 	}
 
 	@Override
@@ -215,30 +280,45 @@ public class ChoiceListFlexi implements Choice
 	public State computeTarget(int i, State currentState) throws PrismLangException
 	{
 		State newState = new State(currentState);
-		for (Update up : updates.get(i))
-			up.update(currentState, newState);
+		computeTarget(i, currentState, newState);
 		return newState;
 	}
 
 	@Override
 	public void computeTarget(int i, State currentState, State newState) throws PrismLangException
 	{
-		for (Update up : updates.get(i))
-			up.update(currentState, newState);
+		if (stateContext == null) {
+			stateContext = new EvaluateContextState(currentState);
+		}
+		stateContext.setState(currentState);
+		List<Update> list = updates.get(i);
+		int n = list.size();
+		for (int j = 0; j < n; j++) {
+			Update up = list.get(j);
+			CompiledExpression compiled[] = compiledUpdates == null ? null : compiledUpdates.get(up);
+			int vals[] = compiled == null ? null : stateContext.getIntValues();
+			if (vals != null) {
+				int numElements = compiled.length;
+				for (int k = 0; k < numElements; k++)
+					newState.setValue(up.getVarIndex(k), compiled[k].evaluate(vals));
+			} else {
+				up.update(stateContext, newState);
+			}
+		}
 	}
 
 	@Override
 	public double getProbability(int i)
 	{
-		return probability.get(i);
+		return probability[i];
 	}
 
 	@Override
 	public double getProbabilitySum()
 	{
 		double sum = 0.0;
-		for (double d : probability)
-			sum += d;
+		for (int i = 0; i < size; i++)
+			sum += probability[i];
 		return sum;
 	}
 
@@ -250,7 +330,7 @@ public class ChoiceListFlexi implements Choice
 		n = size();
 		d = 0.0;
 		for (i = 0; x >= d && i < n; i++) {
-			d += probability.get(i);
+			d += probability[i];
 		}
 		return i - 1;
 	}
@@ -71,6 +71,9 @@ public class GenerateSimulationPath
 	private boolean simPathShowChangesOnly = false;
 	private boolean simPathSnapshots = false;
 	private double simPathSnapshotTime = 0.0;
+	private boolean simPathSeedGiven = false;
+	private long simPathSeed = 0;
+	private long simPathSample = -1;
 
 	public int getNumWarnings()
 	{
@@ -260,6 +263,23 @@ public class GenerateSimulationPath
 				} catch (NumberFormatException e) {
 					throw new PrismException("Value for \"snapshot\" option must be a positive double");
 				}
+			} else if (ss[i].indexOf("seed=") == 0) {
+				// seed for random number generation
+				try {
+					simPathSeed = Long.parseLong(ss[i].substring(5));
+					simPathSeedGiven = true;
+				} catch (NumberFormatException e) {
+					throw new PrismException("Value for \"seed\" option must be an integer");
+				}
+			} else if (ss[i].indexOf("sample=") == 0) {
+				// index of sample path (from approximate model checking) to regenerate
+				try {
+					simPathSample = Long.parseLong(ss[i].substring(7));
+					if (simPathSample < 0)
+						throw new NumberFormatException();
+				} catch (NumberFormatException e) {
+					throw new PrismException("Value for \"sample\" option must be a non-negative integer");
+				}
 			} else if (ss[i].indexOf("probs=") == 0) {
 				// display probabilities/rates?
 				String bool = ss[i].substring(6).toLowerCase();
@@ -309,6 +329,10 @@ public class GenerateSimulationPath
 			simPathShowChangesOnly = true;
 		}
 		
+		// A sample path can only be regenerated from its seed
+		if (simPathSample != -1 && !simPathSeedGiven)
+			throw new PrismException("The \"sample\" option requires the \"seed\" option");
+
 		// Display warning if attempt to use "repeat=" option and not "deadlock" option
 		if (simPathRepeat > 1 && simPathType != PathType.SIM_PATH_DEADLOCK) {
 			simPathRepeat = 1;
@@ -333,6 +357,8 @@ public class GenerateSimulationPath
 		mainLog.println(" * probs=<true|false> - display probability (or rate) of transitions taken");
 		mainLog.println(" * rewards=<true|false> - display state/transition rewards");
 		mainLog.println(" * changes=<true|false> - only display states where displayed variables change");
+		mainLog.println(" * seed=<n> - use <n> as the seed for random number generation");
+		mainLog.println(" * sample=<i> - regenerate sample path <i> of approximate model checking (needs seed=<n>)");
 	}
 
 	/**
@@ -404,6 +430,8 @@ public class GenerateSimulationPath
 
 		// Create path
 		engine.createNewOnTheFlyPath(modulesFile);
+		if (simPathSeedGiven)
+			engine.setRandomNumberStream(simPathSeed, Math.max(simPathSample, 0));
 		// Build path
 		path = engine.getPath();
 		engine.initialisePath(initialState);
@@ -476,6 +504,9 @@ public class GenerateSimulationPath
 		engine.createNewPath(modulesFile);
 		// Build path
 		for (j = 0; j < simPathRepeat; j++) {
+			// Each attempt uses its own random number stream
+			if (simPathSeedGiven)
+				engine.setRandomNumberStream(simPathSeed, Math.max(simPathSample, 0) + j);
 			path = engine.getPath();
 			engine.initialisePath(initialState);
 			i = 0;
@@ -16,6 +16,7 @@ import prism.ModelType;
 import prism.PrismComponent;
 import prism.PrismException;
 import prism.PrismLangException;
+import prism.SuccessorBuffer;
 
 public class ModulesFileModelGenerator extends DefaultModelGenerator
 {
@@ -43,6 +44,8 @@ public class ModulesFileModelGenerator extends DefaultModelGenerator
 	protected TransitionList transitionList;
 	// Has the transition list been built? 
 	protected boolean transitionListBuilt;
+	// Storage for transition targets (reused when exploring states in blocks)
+	private State targetState;
 	
 	/**
 	 * Build a ModulesFileModelGenerator for a particular PRISM model, represented by a ModuleFile instance.
@@ -83,6 +86,25 @@ public class ModulesFileModelGenerator extends DefaultModelGenerator
 		}
 	}
 	
+	/**
+	 * Copy constructor: build a ModulesFileModelGenerator for the same model (and constant values)
+	 * as {@code other}, so that it can be used concurrently. The ModulesFile objects are shared
+	 * at first, but {@link #initialise()} (called here if the constant values are known) replaces
+	 * {@code modulesFile} with a deep copy, so the two generators do not share any expressions
+	 * or data structures used for exploration.
+	 */
+	private ModulesFileModelGenerator(ModulesFileModelGenerator other) throws PrismException
+	{
+		this.parent = other.parent;
+		this.modulesFile = other.modulesFile;
+		this.originalModulesFile = other.originalModulesFile;
+		modelType = other.modelType;
+		mfConstants = other.mfConstants;
+		if (mfConstants != null) {
+			initialise();
+		}
+	}
+	
 	/**
 	 * (Re-)Initialise the class ready for model exploration
 	 * (can only be done once any constants needed have been provided)
@@ -101,6 +123,7 @@ public class ModulesFileModelGenerator extends DefaultModelGenerator
 		updater = new Updater(modulesFile, varList, parent);
 		transitionList = new TransitionList();
 		transitionListBuilt = false;
+		targetState = new State(varList.getNumVars());
 	}
 	
 	// Methods for ModelInfo interface
@@ -246,6 +269,12 @@ public class ModulesFileModelGenerator extends DefaultModelGenerator
 		return initStates;
 	}
 
+	@Override
+	public ModulesFileModelGenerator createCopy() throws PrismException
+	{
+		return new ModulesFileModelGenerator(this);
+	}
+
 	@Override
 	public void exploreState(State exploreState) throws PrismException
 	{
@@ -326,6 +355,43 @@ public class ModulesFileModelGenerator extends DefaultModelGenerator
 		return getTransitionList().computeTransitionTarget(index, exploreState);
 	}
 	
+	@Override
+	public void exploreStates(List<State> states, SuccessorBuffer buffer) throws PrismException
+	{
+		// Transition lists are consumed straight away, so Choice objects can be reused
+		updater.setReuseChoices(true);
+		try {
+			buffer.clear();
+			for (State state : states) {
+				exploreState(state);
+				TransitionList transitions = getTransitionList();
+				buffer.startState();
+				int nc = transitions.getNumChoices();
+				for (int i = 0; i < nc; i++) {
+					Choice ch = transitions.getChoice(i);
+					int a = ch.getModuleOrActionIndex();
+					buffer.startChoice(a < 0 ? null : modulesFile.getSynch(a - 1));
+					int nt = ch.size();
+					for (int j = 0; j < nt; j++) {
+						// When packing targets, the same State object can be used for each one
+						State target;
+						if (buffer.isPacked()) {
+							target = targetState;
+							target.copy(state);
+						} else {
+							target = new State(state);
+						}
+						ch.computeTarget(j, state, target);
+						buffer.addTransition(ch.getProbability(j), target);
+					}
+				}
+			}
+		} finally {
+			updater.setReuseChoices(false);
+			transitionListBuilt = false;
+		}
+	}
+
 	@Override
 	public boolean isLabelTrue(int i) throws PrismException
 	{
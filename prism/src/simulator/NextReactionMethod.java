@@ -0,0 +1,190 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package simulator;
+
+import parser.State;
+import prism.PrismLangException;
+
+/**
+ * Exact stochastic simulation of a CTMC, given as a {@link ReactionNetwork}, using the next reaction method
+ * (M. Gibson and J. Bruck, "Efficient exact stochastic simulation of chemical systems with many species
+ * and many channels", J. Phys. Chem. A, 104(9), 2000).
+ * The (absolute) time of the next occurrence of each reaction is kept in an indexed priority queue
+ * and, after each reaction, only the propensities of its dependents (see {@link ReactionNetwork#getDependents})
+ * are recomputed, with their times rescaled rather than redrawn.
+ * So, unlike {@link Updater#calculateTransitions}, the cost of a step does not depend on the total number of commands.
+ */
+public class NextReactionMethod
+{
+	private ReactionNetwork network;
+	private RandomNumberGenerator rng;
+	// Current time
+	private double time;
+	// Current propensity and time of next occurrence of each reaction
+	private double propensities[];
+	private double times[];
+	// Indexed binary heap (min time at root): heap[i] is a reaction; heapPos[r] is its position in the heap
+	private int heap[];
+	private int heapPos[];
+
+	public NextReactionMethod(ReactionNetwork network, RandomNumberGenerator rng)
+	{
+		this.network = network;
+		this.rng = rng;
+		int n = network.getNumReactions();
+		propensities = new double[n];
+		times = new double[n];
+		heap = new int[n];
+		heapPos = new int[n];
+	}
+
+	/**
+	 * (Re-)start simulation from a state, at time 0.
+	 */
+	public void initialise(State state) throws PrismLangException
+	{
+		int n = network.getNumReactions();
+		time = 0.0;
+		for (int r = 0; r < n; r++) {
+			propensities[r] = network.computePropensity(r, state);
+			times[r] = drawTime(propensities[r]);
+			heap[r] = r;
+			heapPos[r] = r;
+		}
+		for (int i = n / 2 - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+	}
+
+	/**
+	 * Get the reaction that occurs next, or -1 if there is none (i.e. a deadlock).
+	 */
+	public int getNextReaction()
+	{
+		if (heap.length == 0 || times[heap[0]] == Double.POSITIVE_INFINITY)
+			return -1;
+		return heap[0];
+	}
+
+	/**
+	 * Get the time until the next reaction occurs (infinite if there is none).
+	 */
+	public double getTimeToNextReaction()
+	{
+		return heap.length == 0 ? Double.POSITIVE_INFINITY : times[heap[0]] - time;
+	}
+
+	/**
+	 * Get the current propensity of reaction {@code r}.
+	 */
+	public double getPropensity(int r)
+	{
+		return propensities[r];
+	}
+
+	/**
+	 * Update after the next reaction ({@link #getNextReaction}) has occurred, leading to state {@code newState}.
+	 */
+	public void fireNextReaction(State newState) throws PrismLangException
+	{
+		int fired = heap[0];
+		time = times[fired];
+		for (int r : network.getDependents(fired)) {
+			double aOld = propensities[r];
+			double aNew = network.computePropensity(r, newState);
+			propensities[r] = aNew;
+			if (r == fired) {
+				times[r] = time + drawTime(aNew);
+			} else if (aNew == 0.0) {
+				times[r] = Double.POSITIVE_INFINITY;
+			} else if (aOld > 0.0) {
+				// Rescale the remaining time (this reuses the random number already drawn)
+				times[r] = time + (aOld / aNew) * (times[r] - time);
+			} else {
+				times[r] = time + drawTime(aNew);
+			}
+			updateHeap(r);
+		}
+		// The fired reaction might not depend on itself
+		if (times[fired] <= time) {
+			times[fired] = time + drawTime(propensities[fired]);
+			updateHeap(fired);
+		}
+	}
+
+	/**
+	 * Draw a (relative) time for a reaction with propensity {@code a}.
+	 */
+	private double drawTime(double a)
+	{
+		return a > 0.0 ? rng.randomExpDouble(a) : Double.POSITIVE_INFINITY;
+	}
+
+	// Heap operations
+
+	private void updateHeap(int r)
+	{
+		int i = heapPos[r];
+		if (i > 0 && times[heap[(i - 1) / 2]] > times[r])
+			siftUp(i);
+		else
+			siftDown(i);
+	}
+
+	private void siftUp(int i)
+	{
+		int r = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (times[heap[parent]] <= times[r])
+				break;
+			heap[i] = heap[parent];
+			heapPos[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = r;
+		heapPos[r] = i;
+	}
+
+	private void siftDown(int i)
+	{
+		int n = heap.length;
+		int r = heap[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= n)
+				break;
+			if (child + 1 < n && times[heap[child + 1]] < times[heap[child]])
+				child++;
+			if (times[heap[child]] >= times[r])
+				break;
+			heap[i] = heap[child];
+			heapPos[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = r;
+		heapPos[r] = i;
+	}
+}
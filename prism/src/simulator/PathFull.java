@@ -29,6 +29,7 @@ package simulator;
 import java.util.ArrayList;
 
 import parser.State;
+import parser.VarList;
 import parser.ast.ModulesFile;
 import prism.PrismException;
 import prism.PrismLog;
@@ -37,7 +38,9 @@ import userinterface.graph.Graph;
 /**
  * Stores and manipulates a path though a model.
  * The full path is stored, i.e. all info at all steps.
- * State objects and arrays are copied for storage.
+ * Steps are kept in a (columnar, bit-packed) {@link PathFullStorage},
+ * which writes older parts of very long paths to a temporary file,
+ * so State objects and arrays returned for arbitrary steps are created on demand.
  */
 public class PathFull extends Path implements PathFullInfo
 {
@@ -49,24 +52,38 @@ public class PathFull extends Path implements PathFullInfo
 	private int numRewardStructs;
 
 	// The path, i.e. list of states, etc.
-	private ArrayList<Step> steps;
+	private PathFullStorage steps;
 	// The path length (just for convenience; equal to steps.size() - 1)
 	private int size;
+	// Copies of the info for the current/previous steps (for fast access)
+	private State currentState;
+	private State previousState;
+	private double currentStateRewards[];
+	private double previousStateRewards[];
+	private double previousTransitionRewards[];
 
 	// Loop detector for path
 	protected LoopDetector loopDet;
 
 	/**
 	 * Constructor: creates a new (empty) PathFull object for a specific model.
+	 * @param modulesFile The model
+	 * @param varList Variable list for the model
+	 * @param maxStepsInMemory Number of steps after which older ones are written to disk (0 = never)
 	 */
-	public PathFull(ModulesFile modulesFile)
+	public PathFull(ModulesFile modulesFile, VarList varList, int maxStepsInMemory)
 	{
 		// Store model and info
 		this.modulesFile = modulesFile;
 		continuousTime = modulesFile.getModelType().continuousTime();
 		numRewardStructs = modulesFile.getNumRewardStructs();
-		// Create list to store path
-		steps = new ArrayList<Step>(100);
+		// Create storage for path
+		steps = new PathFullStorage(varList, numRewardStructs, maxStepsInMemory);
+		currentState = new State(varList.getNumVars());
+		previousState = new State(varList.getNumVars());
+		currentStateRewards = new double[numRewardStructs];
+		previousStateRewards = new double[numRewardStructs];
+		previousTransitionRewards = new double[numRewardStructs];
 		// Initialise variables
 		clear();
 		// Create loop detector
@@ -84,21 +101,24 @@ public class PathFull extends Path implements PathFullInfo
 
 	// MUTATORS (for Path)
 
+	/**
+	 * Release any resources (e.g. temporary files) used by the path.
+	 */
+	public void close()
+	{
+		steps.close();
+		size = 0;
+	}
+
 	@Override
 	public void initialise(State initialState, double[] initialStateRewards)
 	{
 		clear();
-		// Add new step item to the path
-		Step step = new Step();
-		steps.add(step);
-		// Add (copies of) initial state and state rewards to new step
-		step.state = new State(initialState);
-		step.stateRewards = initialStateRewards.clone();
-		// Set cumulative time/reward (up until entering this state)
-		step.timeCumul = 0.0;
-		for (int i = 0; i < numRewardStructs; i++) {
-			step.rewardsCumul[i] = 0.0;
-		}
+		// Add new step to the path, with the initial state and state rewards
+		// (cumulative time/reward up until entering this state are zero)
+		steps.append(initialState, initialStateRewards, 0.0, new double[numRewardStructs]);
+		currentState.copy(initialState);
+		System.arraycopy(initialStateRewards, 0, currentStateRewards, 0, numRewardStructs);
 		// Initialise loop detector
 		loopDet.initialise();
 	}
@@ -114,30 +134,31 @@ public class PathFull extends Path implements PathFullInfo
 	public void addStep(double time, int choice, int moduleOrActionIndex, double probability, double[] transitionRewards, State newState,
 			double[] newStateRewards, TransitionList transitionList)
 	{
-		Step stepOld, stepNew;
 		// Add info to last existing step
-		stepOld = steps.get(steps.size() - 1);
-		stepOld.time = time;
-		stepOld.choice = choice;
-		stepOld.moduleOrActionIndex = moduleOrActionIndex;
-		stepOld.probability = probability;
-		stepOld.transitionRewards = transitionRewards.clone();
-		// Add new step item to the path
-		stepNew = new Step();
-		steps.add(stepNew);
-		// Add (copies of) new state and state rewards to new step
-		stepNew.state = new State(newState);
-		stepNew.stateRewards = newStateRewards.clone();
-		// Set cumulative time/rewards (up until entering this state)
-		stepNew.timeCumul = stepOld.timeCumul + time;
+		steps.setTransition(size, time, choice, moduleOrActionIndex, probability, transitionRewards);
+		// Compute cumulative time/rewards (up until entering the new state)
+		double timeCumul = steps.getTimeCumul(size) + time;
+		double rewardsCumul[] = new double[numRewardStructs];
 		for (int i = 0; i < numRewardStructs; i++) {
-			stepNew.rewardsCumul[i] = stepOld.rewardsCumul[i];
+			rewardsCumul[i] = steps.getRewardCumul(size, i);
 			if (continuousTime)
-				stepNew.rewardsCumul[i] += stepOld.stateRewards[i] * time;
+				rewardsCumul[i] += currentStateRewards[i] * time;
 			else
-				stepNew.rewardsCumul[i] += stepOld.stateRewards[i];
-			stepNew.rewardsCumul[i] += transitionRewards[i];
+				rewardsCumul[i] += currentStateRewards[i];
+			rewardsCumul[i] += transitionRewards[i];
 		}
+		// Add new step to the path, with the new state and state rewards
+		steps.append(newState, newStateRewards, timeCumul, rewardsCumul);
+		// Update copies of current/previous step info
+		State tmpState = previousState;
+		previousState = currentState;
+		currentState = tmpState;
+		currentState.copy(newState);
+		double tmpRewards[] = previousStateRewards;
+		previousStateRewards = currentStateRewards;
+		currentStateRewards = tmpRewards;
+		System.arraycopy(newStateRewards, 0, currentStateRewards, 0, numRewardStructs);
+		System.arraycopy(transitionRewards, 0, previousTransitionRewards, 0, numRewardStructs);
 		// Update size too
 		size++;
 		// Update loop detector
@@ -152,21 +173,13 @@ public class PathFull extends Path implements PathFullInfo
 	 */
 	public void backtrack(int step)
 	{
-		int i, n;
 		// Remove steps after index 'step'
-		n = steps.size() - 1;
-		for (i = n; i > step; i--)
-			steps.remove(i);
+		steps.truncate(step);
 		// Update info in last step of path
-		Step last = steps.get(steps.size() - 1);
-		last.time = 0.0;
-		last.choice = -1;
-		last.moduleOrActionIndex = 0;
-		last.probability = 0.0;
-		for (i = 0; i < numRewardStructs; i++)
-			last.transitionRewards[i] = 0.0;
+		steps.setTransition(step, 0.0, -1, 0, 0.0, null);
 		// Update size too
 		size = step;
+		loadCurrentAndPreviousSteps();
 		// Update loop detector
 		loopDet.backtrack(this);
 	}
@@ -178,37 +191,31 @@ public class PathFull extends Path implements PathFullInfo
 	 */
 	public void removePrecedingStates(int step)
 	{
-		int i, j, numKeep, sizeOld;
-		double timeCumul, rewardsCumul[];
-
 		// Ignore trivial case
 		if (step == 0)
 			return;
-		// Get cumulative time/reward for index 'step'
-		timeCumul = getCumulativeTime(step);
-		rewardsCumul = new double[numRewardStructs];
-		for (j = 0; j < numRewardStructs; j++)
-			rewardsCumul[j] = getCumulativeReward(step, j);
-		// Move later steps of path 'step' places forward 
-		// and subtract time/reward as appropriate 
-		numKeep = steps.size() - step;
-		for (i = 0; i < numKeep; i++) {
-			Step tmp = steps.get(i + step);
-			tmp.timeCumul -= timeCumul;
-			for (j = 0; j < numRewardStructs; j++)
-				tmp.rewardsCumul[j] -= rewardsCumul[j];
-			steps.set(i, tmp);
-		}
-		// Remove steps after index 'step'
-		sizeOld = steps.size();
-		for (i = sizeOld - 1; i >= numKeep; i--)
-			steps.remove(i);
+		// Drop steps before 'step' (storage subtracts time/reward as appropriate)
+		steps.removePrefix(step);
 		// Update size too
 		size = steps.size() - 1;
 		// Update loop detector
 		loopDet.removePrecedingStates(this, step);
 	}
 
+	/**
+	 * Refresh the copies of the info for the current/previous steps from storage.
+	 */
+	private void loadCurrentAndPreviousSteps()
+	{
+		steps.getState(size, currentState);
+		steps.getStateRewards(size, currentStateRewards);
+		if (size > 0) {
+			steps.getState(size - 1, previousState);
+			steps.getStateRewards(size - 1, previousStateRewards);
+			steps.getTransitionRewards(size - 1, previousTransitionRewards);
+		}
+	}
+
 	// ACCESSORS (for Path (and some of PathFullInfo))
 
 	@Override
@@ -226,19 +233,19 @@ public class PathFull extends Path implements PathFullInfo
 	@Override
 	public State getPreviousState()
 	{
-		return steps.get(steps.size() - 2).state;
+		return previousState;
 	}
 
 	@Override
 	public State getCurrentState()
 	{
-		return steps.get(steps.size() - 1).state;
+		return currentState;
 	}
 
 	@Override
 	public int getPreviousModuleOrActionIndex()
 	{
-		return steps.get(steps.size() - 2).moduleOrActionIndex;
+		return steps.getModuleOrActionIndex(size - 1);
 	}
 
 	@Override
@@ -256,61 +263,61 @@ public class PathFull extends Path implements PathFullInfo
 	@Override
 	public double getPreviousProbability()
 	{
-		return steps.get(steps.size() - 2).probability;
+		return steps.getProbability(size - 1);
 	}
 
 	@Override
 	public double getTotalTime()
 	{
-		return size < 1 ? 0.0 : steps.get(steps.size() - 1).timeCumul;
+		return size < 1 ? 0.0 : steps.getTimeCumul(size);
 	}
 
 	@Override
 	public double getTimeInPreviousState()
 	{
-		return steps.get(steps.size() - 2).time;
+		return steps.getTime(size - 1);
 	}
 
 	@Override
 	public double getTotalCumulativeReward(int rsi)
 	{
-		return steps.get(steps.size() - 1).rewardsCumul[rsi];
+		return steps.getRewardCumul(size, rsi);
 	}
 
 	@Override
 	public double getPreviousStateReward(int rsi)
 	{
-		return steps.get(steps.size() - 2).stateRewards[rsi];
+		return previousStateRewards[rsi];
 	}
 
 	@Override
 	public double[] getPreviousStateRewards()
 	{
-		return steps.get(steps.size() - 2).stateRewards;
+		return previousStateRewards;
 	}
 
 	@Override
 	public double getPreviousTransitionReward(int rsi)
 	{
-		return steps.get(steps.size() - 2).transitionRewards[rsi];
+		return previousTransitionRewards[rsi];
 	}
 
 	@Override
 	public double[] getPreviousTransitionRewards()
 	{
-		return steps.get(steps.size() - 2).transitionRewards;
+		return previousTransitionRewards;
 	}
 
 	@Override
 	public double getCurrentStateReward(int rsi)
 	{
-		return steps.get(steps.size() - 1).stateRewards[rsi];
+		return currentStateRewards[rsi];
 	}
 
 	@Override
 	public double[] getCurrentStateRewards()
 	{
-		return steps.get(steps.size() - 1).stateRewards;
+		return currentStateRewards;
 	}
 
 	@Override
@@ -336,13 +343,13 @@ public class PathFull extends Path implements PathFullInfo
 	@Override
 	public State getState(int step)
 	{
-		return steps.get(step).state;
+		return steps.getState(step);
 	}
 
 	@Override
 	public double getStateReward(int step, int rsi)
 	{
-		return steps.get(step).stateRewards[rsi];
+		return steps.getStateReward(step, rsi);
 	}
 
 	/**
@@ -351,43 +358,45 @@ public class PathFull extends Path implements PathFullInfo
 	 */
 	protected double[] getStateRewards(int step)
 	{
-		return steps.get(step).stateRewards;
+		double rewards[] = new double[numRewardStructs];
+		steps.getStateRewards(step, rewards);
+		return rewards;
 	}
 
 	@Override
 	public double getCumulativeTime(int step)
 	{
-		return steps.get(step).timeCumul;
+		return steps.getTimeCumul(step);
 	}
 
 	@Override
 	public double getCumulativeReward(int step, int rsi)
 	{
-		return steps.get(step).rewardsCumul[rsi];
+		return steps.getRewardCumul(step, rsi);
 	}
 
 	@Override
 	public double getTime(int step)
 	{
-		return steps.get(step).time;
+		return steps.getTime(step);
 	}
 
 	@Override
 	public int getChoice(int step)
 	{
-		return steps.get(step).choice;
+		return steps.getChoice(step);
 	}
 
 	@Override
 	public int getModuleOrActionIndex(int step)
 	{
-		return steps.get(step).moduleOrActionIndex;
+		return steps.getModuleOrActionIndex(step);
 	}
 
 	@Override
 	public String getModuleOrAction(int step)
 	{
-		int i = steps.get(step).moduleOrActionIndex;
+		int i = steps.getModuleOrActionIndex(step);
 		if (i < 0)
 			return modulesFile.getModuleName(-i - 1);
 		else if (i > 0)
@@ -402,13 +411,13 @@ public class PathFull extends Path implements PathFullInfo
 	 */
 	public double getProbability(int step)
 	{
-		return steps.get(steps.size() - 2).probability;
+		return steps.getProbability(step);
 	}
 
 	@Override
 	public double getTransitionReward(int step, int rsi)
 	{
-		return steps.get(step).transitionRewards[rsi];
+		return steps.getTransitionReward(step, rsi);
 	}
 
 	/**
@@ -417,7 +426,9 @@ public class PathFull extends Path implements PathFullInfo
 	 */
 	protected double[] getTransitionRewards(int step)
 	{
-		return steps.get(step).transitionRewards;
+		double rewards[] = new double[numRewardStructs];
+		steps.getTransitionRewards(step, rewards);
+		return rewards;
 	}
 
 	@Override
@@ -471,7 +482,7 @@ public class PathFull extends Path implements PathFullInfo
 		int n = (int) nLong;
 		// Loop
 		for (int i = 1; i <= n; i++) {
-			displayer.step(getTime(i - 1), getCumulativeTime(i), getModuleOrAction(i - 1), getProbability(i - 1), getTransitionRewards(i), i, getState(i),
+			displayer.step(getTime(i - 1), getCumulativeTime(i), getModuleOrAction(i - 1), getProbability(i - 1), getTransitionRewards(i - 1), i, getState(i),
 					getStateRewards(i));
 		}
 		displayer.end();
@@ -528,46 +539,6 @@ public class PathFull extends Path implements PathFullInfo
 		return s;
 	}
 
-	/**
-	 * Inner class to store info about a single path step.
-	 */
-	class Step
-	{
-		public Step()
-		{
-			// Set (unknown) defaults and initialise arrays
-			state = null;
-			stateRewards = new double[numRewardStructs];
-			timeCumul = 0.0;
-			rewardsCumul = new double[numRewardStructs];
-			time = 0.0;
-			choice = -1;
-			moduleOrActionIndex = 0;
-			probability = 0.0;
-			transitionRewards = new double[numRewardStructs];
-		}
-
-		// Current state (before transition)
-		public State state;
-		// State rewards for current state
-		public double stateRewards[];
-		// Cumulative time spent up until entering this state
-		public double timeCumul;
-		// Cumulative rewards spent up until entering this state
-		public double rewardsCumul[];
-		// Time spent in state
-		public double time;
-		// Index of the choice taken
-		public int choice;
-		// Action label taken (i.e. the index in the model's list of all actions).
-		// This is 1-indexed, with 0 denoting an independent ("tau"-labelled) command.
-		public int moduleOrActionIndex;
-		// Probability or rate of step
-		public double probability;
-		// Transition rewards associated with step
-		public double transitionRewards[];
-	}
-
 	class DisplayThread extends Thread
 	{
 		private PathDisplayer displayer = null;
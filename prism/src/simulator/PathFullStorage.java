@@ -0,0 +1,651 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package simulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import parser.State;
+import parser.VarList;
+import parser.ast.DeclarationBool;
+import parser.ast.DeclarationInt;
+import parser.ast.DeclarationIntUnbounded;
+import parser.ast.DeclarationType;
+
+/**
+ * Columnar storage for the steps of a {@link PathFull}.
+ * <br><br>
+ * Steps are stored in fixed-size chunks of primitive arrays (one array per attribute,
+ * i.e. times, probabilities, rewards, etc.), rather than as one object per step.
+ * Variable values are bit-packed, using the ranges from the model's {@link VarList}.
+ * Once more than a given number of steps are stored, older chunks are written
+ * to a temporary file and re-read on demand, so that memory usage is bounded
+ * for arbitrarily long paths.
+ * <br><br>
+ * Steps are indexed from 0 (the initial state). Only the last step can be modified,
+ * except that the path can be truncated ({@link #truncate(int)}) or have a prefix
+ * removed ({@link #removePrefix(int)}).
+ */
+public class PathFullStorage
+{
+	// Number of steps per chunk (as a power of 2)
+	private static final int CHUNK_BITS = 14;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	// Model info
+	private int numVars;
+	private int numRewardStructs;
+
+	// Bit-packing of variable values: number of bits and offset for each variable,
+	// and whether it is a Boolean or unbounded integer (stored as 32 bits, unshifted).
+	// Bit 0 of each packed state flags a state with values that could not be packed
+	// (e.g. out of range), which is instead stored in full in 'unpackedStates'.
+	private int varBits[];
+	private int varLow[];
+	private boolean varIsBool[];
+	private int wordsPerState;
+	private HashMap<Long, State> unpackedStates;
+
+	// The chunks: step i (after any removed prefix) is at physical index 'base + i'
+	private ArrayList<Chunk> chunks;
+	private long base;
+	private int size;
+	// Cumulative time/rewards of the removed prefix (subtracted from stored values)
+	private double baseTimeCumul;
+	private double baseRewardsCumul[];
+
+	// Spilling of chunks to disk
+	private int maxResidentChunks;
+	private int chunkBytes;
+	private File spillFile;
+	private RandomAccessFile spillRaf;
+	private ByteBuffer spillBuffer;
+	private boolean spillFailed;
+	// Index of the (non-tail) chunk most recently read back from disk, or -1
+	private int loadedChunk;
+
+	/**
+	 * Create storage for paths of a model with the given variables/rewards.
+	 * @param varList Variable list for the model
+	 * @param numRewardStructs Number of reward structures
+	 * @param maxStepsInMemory Number of steps after which older steps are written to disk (0 = never)
+	 */
+	public PathFullStorage(VarList varList, int numRewardStructs, int maxStepsInMemory)
+	{
+		this.numRewardStructs = numRewardStructs;
+		// Work out bit-packing for states
+		numVars = varList.getNumVars();
+		varBits = new int[numVars];
+		varLow = new int[numVars];
+		varIsBool = new boolean[numVars];
+		int totalBits = 1;
+		for (int i = 0; i < numVars; i++) {
+			DeclarationType declType = varList.getDeclaration(i).getDeclType();
+			if (declType instanceof DeclarationBool) {
+				varIsBool[i] = true;
+				varBits[i] = 1;
+			} else if (declType instanceof DeclarationInt) {
+				varLow[i] = varList.getLow(i);
+				varBits[i] = 32 - Integer.numberOfLeadingZeros(varList.getHigh(i) - varList.getLow(i));
+			} else if (declType instanceof DeclarationIntUnbounded) {
+				varBits[i] = 32;
+			} else {
+				// Anything else (e.g. clocks) is never packed
+				varBits[i] = -1;
+			}
+			totalBits += Math.max(varBits[i], 0);
+		}
+		wordsPerState = (totalBits + 63) / 64;
+		unpackedStates = new HashMap<Long, State>();
+		// Set up chunk storage
+		chunks = new ArrayList<Chunk>();
+		baseRewardsCumul = new double[numRewardStructs];
+		maxResidentChunks = maxStepsInMemory <= 0 ? Integer.MAX_VALUE : Math.max(2, (maxStepsInMemory + CHUNK_SIZE - 1) / CHUNK_SIZE);
+		chunkBytes = CHUNK_SIZE * (8 * wordsPerState + 8 * (3 + 3 * numRewardStructs) + 4 * 2);
+		clear();
+	}
+
+	/**
+	 * Remove all steps.
+	 */
+	public void clear()
+	{
+		chunks.clear();
+		unpackedStates.clear();
+		base = 0;
+		size = 0;
+		baseTimeCumul = 0.0;
+		for (int j = 0; j < numRewardStructs; j++)
+			baseRewardsCumul[j] = 0.0;
+		loadedChunk = -1;
+		if (spillRaf != null) {
+			try {
+				spillRaf.setLength(0);
+			} catch (IOException e) {
+				spillFailed = true;
+			}
+		}
+	}
+
+	/**
+	 * Release any temporary file used by this storage.
+	 */
+	public void close()
+	{
+		clear();
+		if (spillRaf != null) {
+			try {
+				spillRaf.close();
+			} catch (IOException e) {
+				// Ignore
+			}
+			spillFile.delete();
+			spillRaf = null;
+			spillFile = null;
+		}
+	}
+
+	/**
+	 * Get the number of steps (states) stored.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Get the number of chunks of steps currently written to disk and not held in memory.
+	 */
+	public int getNumSpilledChunks()
+	{
+		int n = 0;
+		for (Chunk chunk : chunks)
+			if (chunk != null && chunk.choice == null)
+				n++;
+		return n;
+	}
+
+	// Mutators
+
+	/**
+	 * Add a new step at the end of the path, with no transition info (yet).
+	 * @param state State (values are copied)
+	 * @param stateRewards State rewards (values are copied)
+	 * @param timeCumul Cumulative time up until entering the state
+	 * @param rewardsCumul Cumulative rewards up until entering the state
+	 */
+	public void append(State state, double stateRewards[], double timeCumul, double rewardsCumul[])
+	{
+		long p = base + size;
+		int ci = (int) (p >>> CHUNK_BITS);
+		int off = (int) (p & CHUNK_MASK);
+		if (ci == chunks.size()) {
+			chunks.add(new Chunk());
+			spillOldChunk(ci - maxResidentChunks);
+		}
+		Chunk chunk = residentChunk(ci);
+		chunk.onDisk = false;
+		packState(state, chunk.stateBits, off * wordsPerState, p);
+		chunk.timeCumul[off] = timeCumul + baseTimeCumul;
+		for (int j = 0; j < numRewardStructs; j++) {
+			chunk.stateRewards[off * numRewardStructs + j] = stateRewards[j];
+			chunk.rewardsCumul[off * numRewardStructs + j] = rewardsCumul[j] + baseRewardsCumul[j];
+		}
+		size++;
+		setTransition(size - 1, 0.0, -1, 0, 0.0, null);
+	}
+
+	/**
+	 * Set the info about the transition taken from the last step of the path.
+	 * @param step Step index (must be the last one)
+	 * @param time Time spent in the state
+	 * @param choice Index of the choice taken
+	 * @param moduleOrActionIndex Module/action index of the transition taken
+	 * @param probability Probability or rate of the transition
+	 * @param transitionRewards Transition rewards (null = all zero)
+	 */
+	public void setTransition(int step, double time, int choice, int moduleOrActionIndex, double probability, double transitionRewards[])
+	{
+		long p = base + step;
+		Chunk chunk = residentChunk((int) (p >>> CHUNK_BITS));
+		int off = (int) (p & CHUNK_MASK);
+		chunk.onDisk = false;
+		chunk.time[off] = time;
+		chunk.choice[off] = choice;
+		chunk.moduleOrActionIndex[off] = moduleOrActionIndex;
+		chunk.probability[off] = probability;
+		for (int j = 0; j < numRewardStructs; j++)
+			chunk.transitionRewards[off * numRewardStructs + j] = transitionRewards == null ? 0.0 : transitionRewards[j];
+	}
+
+	/**
+	 * Remove all steps after index {@code step}.
+	 * Transition info for the (new) last step is left unchanged.
+	 */
+	public void truncate(int step)
+	{
+		long p = base + step;
+		int ci = (int) (p >>> CHUNK_BITS);
+		// Make sure the new last chunk is in memory, then drop the later ones
+		residentChunk(ci);
+		while (chunks.size() > ci + 1)
+			chunks.remove(chunks.size() - 1);
+		if (loadedChunk >= ci)
+			loadedChunk = -1;
+		if (!unpackedStates.isEmpty())
+			unpackedStates.keySet().removeIf(k -> k > p);
+		size = step + 1;
+	}
+
+	/**
+	 * Remove all steps before index {@code step}, which becomes step 0.
+	 * Cumulative times/rewards are adjusted to be relative to the new initial state.
+	 */
+	public void removePrefix(int step)
+	{
+		if (step == 0)
+			return;
+		// Subtract cumulative time/rewards up to the new initial state
+		baseTimeCumul += getTimeCumul(step);
+		for (int j = 0; j < numRewardStructs; j++)
+			baseRewardsCumul[j] += getRewardCumul(step, j);
+		base += step;
+		size -= step;
+		// Free any chunks no longer needed
+		int firstChunk = (int) (base >>> CHUNK_BITS);
+		for (int ci = 0; ci < firstChunk; ci++)
+			chunks.set(ci, null);
+		if (loadedChunk < firstChunk)
+			loadedChunk = -1;
+		if (!unpackedStates.isEmpty()) {
+			long b = base;
+			unpackedStates.keySet().removeIf(k -> k < b);
+		}
+	}
+
+	// Accessors
+
+	/**
+	 * Get (a new copy of) the state at a given step.
+	 */
+	public State getState(int step)
+	{
+		State state = new State(numVars);
+		getState(step, state);
+		return state;
+	}
+
+	/**
+	 * Get the state at a given step, copying its values into {@code state}.
+	 */
+	public void getState(int step, State state)
+	{
+		long p = base + step;
+		Chunk chunk = chunk(p);
+		unpackState(chunk.stateBits, (int) (p & CHUNK_MASK) * wordsPerState, p, state);
+	}
+
+	public double getStateReward(int step, int rsi)
+	{
+		long p = base + step;
+		return chunk(p).stateRewards[(int) (p & CHUNK_MASK) * numRewardStructs + rsi];
+	}
+
+	/**
+	 * Get the state rewards at a given step, copying them into {@code rewards}.
+	 */
+	public void getStateRewards(int step, double rewards[])
+	{
+		long p = base + step;
+		System.arraycopy(chunk(p).stateRewards, (int) (p & CHUNK_MASK) * numRewardStructs, rewards, 0, numRewardStructs);
+	}
+
+	public double getTimeCumul(int step)
+	{
+		long p = base + step;
+		return chunk(p).timeCumul[(int) (p & CHUNK_MASK)] - baseTimeCumul;
+	}
+
+	public double getRewardCumul(int step, int rsi)
+	{
+		long p = base + step;
+		return chunk(p).rewardsCumul[(int) (p & CHUNK_MASK) * numRewardStructs + rsi] - baseRewardsCumul[rsi];
+	}
+
+	public double getTime(int step)
+	{
+		long p = base + step;
+		return chunk(p).time[(int) (p & CHUNK_MASK)];
+	}
+
+	public int getChoice(int step)
+	{
+		long p = base + step;
+		return chunk(p).choice[(int) (p & CHUNK_MASK)];
+	}
+
+	public int getModuleOrActionIndex(int step)
+	{
+		long p = base + step;
+		return chunk(p).moduleOrActionIndex[(int) (p & CHUNK_MASK)];
+	}
+
+	public double getProbability(int step)
+	{
+		long p = base + step;
+		return chunk(p).probability[(int) (p & CHUNK_MASK)];
+	}
+
+	public double getTransitionReward(int step, int rsi)
+	{
+		long p = base + step;
+		return chunk(p).transitionRewards[(int) (p & CHUNK_MASK) * numRewardStructs + rsi];
+	}
+
+	/**
+	 * Get the transition rewards at a given step, copying them into {@code rewards}.
+	 */
+	public void getTransitionRewards(int step, double rewards[])
+	{
+		long p = base + step;
+		System.arraycopy(chunk(p).transitionRewards, (int) (p & CHUNK_MASK) * numRewardStructs, rewards, 0, numRewardStructs);
+	}
+
+	// State packing
+
+	private void packState(State state, long bits[], int word, long p)
+	{
+		for (int k = 0; k < wordsPerState; k++)
+			bits[word + k] = 0;
+		unpackedStates.remove(p);
+		int pos = 1;
+		for (int i = 0; i < numVars; i++) {
+			Object val = state.varValues[i];
+			long v;
+			if (varIsBool[i] && val instanceof Boolean) {
+				v = ((Boolean) val) ? 1 : 0;
+			} else if (varBits[i] > 0 && !varIsBool[i] && val instanceof Integer) {
+				v = (long) ((Integer) val) - varLow[i];
+				if (varBits[i] < 32 && (v < 0 || v >= (1L << varBits[i]))) {
+					v = -1;
+				} else {
+					v &= 0xFFFFFFFFL;
+				}
+			} else {
+				v = -1;
+			}
+			if (v < 0) {
+				// Can't pack: store a copy of the full state instead
+				bits[word] = 1;
+				unpackedStates.put(p, new State(state));
+				return;
+			}
+			writeBits(bits, word, pos, varBits[i], v);
+			pos += Math.max(varBits[i], 0);
+		}
+	}
+
+	private void unpackState(long bits[], int word, long p, State state)
+	{
+		if ((bits[word] & 1) != 0) {
+			state.copy(unpackedStates.get(p));
+			return;
+		}
+		int pos = 1;
+		for (int i = 0; i < numVars; i++) {
+			long v = readBits(bits, word, pos, varBits[i]);
+			pos += Math.max(varBits[i], 0);
+			if (varIsBool[i])
+				state.varValues[i] = (v != 0);
+			else
+				state.varValues[i] = (int) v + varLow[i];
+		}
+	}
+
+	private static void writeBits(long bits[], int word, int pos, int n, long v)
+	{
+		if (n <= 0)
+			return;
+		int w = word + (pos >>> 6);
+		int shift = pos & 63;
+		bits[w] |= v << shift;
+		if (shift + n > 64)
+			bits[w + 1] |= v >>> (64 - shift);
+	}
+
+	private static long readBits(long bits[], int word, int pos, int n)
+	{
+		if (n <= 0)
+			return 0;
+		int w = word + (pos >>> 6);
+		int shift = pos & 63;
+		long v = bits[w] >>> shift;
+		if (shift + n > 64)
+			v |= bits[w + 1] << (64 - shift);
+		return n == 64 ? v : v & ((1L << n) - 1);
+	}
+
+	// Chunk management
+
+	/**
+	 * Get the chunk containing physical index {@code p}, reading it from disk if needed.
+	 */
+	private Chunk chunk(long p)
+	{
+		int ci = (int) (p >>> CHUNK_BITS);
+		Chunk chunk = chunks.get(ci);
+		if (chunk.choice == null) {
+			// Re-use the arrays of the chunk last read from disk, if any
+			Chunk donor = null;
+			if (loadedChunk != -1 && loadedChunk != ci) {
+				donor = chunks.get(loadedChunk);
+				if (donor != null && !donor.onDisk)
+					donor = null;
+			}
+			if (donor != null) {
+				chunk.takeArrays(donor);
+			} else {
+				chunk.allocate();
+			}
+			readChunk(ci, chunk);
+			loadedChunk = ci;
+		}
+		return chunk;
+	}
+
+	/**
+	 * Get the chunk with index {@code ci}, which will be modified,
+	 * so is no longer treated as a (clean) copy of the data on disk.
+	 */
+	private Chunk residentChunk(int ci)
+	{
+		Chunk chunk = chunk((long) ci << CHUNK_BITS);
+		if (loadedChunk == ci)
+			loadedChunk = -1;
+		return chunk;
+	}
+
+	/**
+	 * Write chunk {@code ci} to disk (if needed) and release its memory.
+	 */
+	private void spillOldChunk(int ci)
+	{
+		if (ci < 0 || spillFailed)
+			return;
+		Chunk chunk = chunks.get(ci);
+		if (chunk == null || chunk.choice == null)
+			return;
+		if (!chunk.onDisk) {
+			try {
+				writeChunk(ci, chunk);
+			} catch (IOException e) {
+				// Just keep everything in memory from now on
+				spillFailed = true;
+				return;
+			}
+			chunk.onDisk = true;
+		}
+		if (loadedChunk == ci)
+			loadedChunk = -1;
+		chunk.release();
+	}
+
+	private void writeChunk(int ci, Chunk chunk) throws IOException
+	{
+		if (spillRaf == null) {
+			spillFile = File.createTempFile("prism-path", ".tmp");
+			spillFile.deleteOnExit();
+			spillRaf = new RandomAccessFile(spillFile, "rw");
+			spillBuffer = ByteBuffer.allocate(chunkBytes);
+		}
+		ByteBuffer buf = spillBuffer;
+		buf.clear();
+		buf.asLongBuffer().put(chunk.stateBits);
+		buf.position(buf.position() + 8 * chunk.stateBits.length);
+		for (double arr[] : chunk.doubleArrays()) {
+			buf.asDoubleBuffer().put(arr);
+			buf.position(buf.position() + 8 * arr.length);
+		}
+		buf.asIntBuffer().put(chunk.choice);
+		buf.position(buf.position() + 4 * CHUNK_SIZE);
+		buf.asIntBuffer().put(chunk.moduleOrActionIndex);
+		buf.position(buf.position() + 4 * CHUNK_SIZE);
+		buf.flip();
+		FileChannel channel = spillRaf.getChannel();
+		long pos = (long) ci * chunkBytes;
+		while (buf.hasRemaining())
+			pos += channel.write(buf, pos);
+	}
+
+	private void readChunk(int ci, Chunk chunk)
+	{
+		ByteBuffer buf = spillBuffer;
+		buf.clear();
+		try {
+			FileChannel channel = spillRaf.getChannel();
+			long pos = (long) ci * chunkBytes;
+			while (buf.hasRemaining()) {
+				int n = channel.read(buf, pos);
+				if (n < 0)
+					throw new IOException("Unexpected end of file");
+				pos += n;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read path from temporary file \"" + spillFile + "\"", e);
+		}
+		buf.flip();
+		buf.asLongBuffer().get(chunk.stateBits);
+		buf.position(buf.position() + 8 * chunk.stateBits.length);
+		for (double arr[] : chunk.doubleArrays()) {
+			buf.asDoubleBuffer().get(arr);
+			buf.position(buf.position() + 8 * arr.length);
+		}
+		buf.asIntBuffer().get(chunk.choice);
+		buf.position(buf.position() + 4 * CHUNK_SIZE);
+		buf.asIntBuffer().get(chunk.moduleOrActionIndex);
+		chunk.onDisk = true;
+	}
+
+	/**
+	 * A chunk of CHUNK_SIZE steps, stored as one array per attribute.
+	 * Arrays are null if the chunk is currently only stored on disk.
+	 */
+	private class Chunk
+	{
+		// Packed variable values
+		long stateBits[];
+		// State rewards (numRewardStructs per step)
+		double stateRewards[];
+		// Cumulative time/rewards up until entering the state
+		double timeCumul[];
+		double rewardsCumul[];
+		// Time spent in the state, index of choice taken, module/action index and probability/rate
+		double time[];
+		int choice[];
+		int moduleOrActionIndex[];
+		double probability[];
+		// Transition rewards (numRewardStructs per step)
+		double transitionRewards[];
+		// Is there an up-to-date copy of the chunk on disk?
+		boolean onDisk;
+
+		Chunk()
+		{
+			allocate();
+		}
+
+		void allocate()
+		{
+			stateBits = new long[CHUNK_SIZE * wordsPerState];
+			stateRewards = new double[CHUNK_SIZE * numRewardStructs];
+			timeCumul = new double[CHUNK_SIZE];
+			rewardsCumul = new double[CHUNK_SIZE * numRewardStructs];
+			time = new double[CHUNK_SIZE];
+			choice = new int[CHUNK_SIZE];
+			moduleOrActionIndex = new int[CHUNK_SIZE];
+			probability = new double[CHUNK_SIZE];
+			transitionRewards = new double[CHUNK_SIZE * numRewardStructs];
+		}
+
+		void takeArrays(Chunk other)
+		{
+			stateBits = other.stateBits;
+			stateRewards = other.stateRewards;
+			timeCumul = other.timeCumul;
+			rewardsCumul = other.rewardsCumul;
+			time = other.time;
+			choice = other.choice;
+			moduleOrActionIndex = other.moduleOrActionIndex;
+			probability = other.probability;
+			transitionRewards = other.transitionRewards;
+			other.release();
+		}
+
+		void release()
+		{
+			stateBits = null;
+			stateRewards = null;
+			timeCumul = null;
+			rewardsCumul = null;
+			time = null;
+			choice = null;
+			moduleOrActionIndex = null;
+			probability = null;
+			transitionRewards = null;
+		}
+
+		double[][] doubleArrays()
+		{
+			return new double[][] { stateRewards, timeCumul, rewardsCumul, time, probability, transitionRewards };
+		}
+	}
+}
@@ -27,31 +27,85 @@
 
 package simulator;
 
-import java.util.Date;
-
-import cern.jet.random.Exponential;
-import cern.jet.random.Uniform;
-import cern.jet.random.engine.MersenneTwister;
-
 /**
  * Random number generator for the simulator.
- * Currently, uses the Colt library.
+ * <br>
+ * Uses the xoroshiro128++ generator of Blackman and Vigna, whose state is initialised
+ * using SplitMix64. A generator can be (re)initialised to the start of a <i>stream</i>,
+ * identified by a seed and a stream index (e.g. the index of a sample path),
+ * see {@link #setStream(long, long)}. Different streams are statistically independent,
+ * so sample paths can be generated in any order (or in parallel) and any single path
+ * can be regenerated on its own, just from the seed and its index.
  */
 public class RandomNumberGenerator
 {
-	private MersenneTwister random;
-	private Uniform uniform;
-	private Exponential exponential;
+	/** Golden ratio increment used by SplitMix64 */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	// Generator state
+	private long s0;
+	private long s1;
+	// Produce the antithetic sequence (complement of all bits)?
+	private boolean antithetic;
 
 	/**
 	 * Create a new random number generator (seeded, by default, with the current time).
 	 */
 	public RandomNumberGenerator()
 	{
-		random = new MersenneTwister(new Date());
-		uniform = new Uniform(random);
-		// Create exponential generator (rate 1.0 but this is ignored from now on)
-		exponential = new Exponential(1.0, random);
+		this(System.currentTimeMillis() ^ System.nanoTime(), 0);
+	}
+
+	/**
+	 * Create a new random number generator, seeded with the given value.
+	 */
+	public RandomNumberGenerator(int seed)
+	{
+		this(seed, 0);
+	}
+
+	/**
+	 * Create a new random number generator, initialised to the start of the stream
+	 * with index {@code stream} for seed {@code seed}.
+	 */
+	public RandomNumberGenerator(long seed, long stream)
+	{
+		setStream(seed, stream);
+	}
+
+	/**
+	 * (Re-)initialise this generator to the start of the stream with index {@code stream}
+	 * for seed {@code seed}. The generator then produces exactly the same sequence
+	 * as a new one created with {@link #RandomNumberGenerator(long, long)}.
+	 */
+	public void setStream(long seed, long stream)
+	{
+		// Hash seed and stream index together, then expand to the state with SplitMix64
+		long x = mix64(mix64(seed + GOLDEN_GAMMA) + stream * GOLDEN_GAMMA);
+		s0 = mix64(x += GOLDEN_GAMMA);
+		s1 = mix64(x += GOLDEN_GAMMA);
+		// The all-zero state is not allowed (and practically impossible)
+		if ((s0 | s1) == 0)
+			s0 = GOLDEN_GAMMA;
+	}
+
+	/**
+	 * Switch to (or from) producing the antithetic version of this generator's sequence,
+	 * in which every bit is complemented. So, for example, {@link #randomUnifDouble()}
+	 * returns 1-u where it would have returned u. This is unaffected by {@link #setStream}.
+	 */
+	public void setAntithetic(boolean antithetic)
+	{
+		this.antithetic = antithetic;
+	}
+
+	/**
+	 * Create a new generator, which is (statistically) independent of this one,
+	 * seeded from the next value of this generator.
+	 */
+	public RandomNumberGenerator split()
+	{
+		return new RandomNumberGenerator(nextLong(), 0);
 	}
 
 	/**
@@ -59,7 +113,14 @@ public class RandomNumberGenerator
 	 */
 	public int randomUnifInt(int n)
 	{
-		return uniform.nextIntFromTo(0, n - 1);
+		// As for java.util.Random.nextInt(int): take 31 random bits, rejecting values that would cause bias
+		int r = (int) (nextLong() >>> 33);
+		int m = n - 1;
+		if ((n & m) == 0)
+			return (int) ((n * (long) r) >> 31);
+		for (int u = r; u - (r = u % n) + m < 0; u = (int) (nextLong() >>> 33))
+			;
+		return r;
 	}
 
 	/**
@@ -67,7 +128,8 @@ public class RandomNumberGenerator
 	 */
 	public double randomUnifDouble()
 	{
-		return random.nextDouble();
+		// 53 random bits, centred in the interval so that neither 0 nor 1 can occur
+		return ((nextLong() >>> 11) + 0.5) * 0x1.0p-53;
 	}
 
 	/**
@@ -75,7 +137,7 @@ public class RandomNumberGenerator
 	 */
 	public double randomUnifDouble(double x)
 	{
-		return x * random.nextDouble();
+		return x * randomUnifDouble();
 	}
 
 	/**
@@ -83,7 +145,87 @@ public class RandomNumberGenerator
 	 */
 	public double randomExpDouble(double x)
 	{
-		return exponential.nextDouble(x);
-		//return (-Math.log(random.nextDouble())) / x;
+		return (-Math.log(randomUnifDouble())) / x;
+	}
+
+	/**
+	 * Pick a random (non-negative) integer according to a Poisson distribution with mean x.
+	 * For small means, this uses inversion by sequential search; otherwise, the PTRS transformed rejection method
+	 * (W. Hormann, "The transformed rejection method for generating Poisson random variables", 1993).
+	 */
+	public long randomPoisson(double x)
+	{
+		if (x <= 0.0)
+			return 0;
+		if (x < 10.0) {
+			double p = Math.exp(-x);
+			double sum = p;
+			double u = randomUnifDouble();
+			long k = 0;
+			while (u > sum && p > 0.0) {
+				k++;
+				p *= x / k;
+				sum += p;
+			}
+			return k;
+		}
+		double sqrtX = Math.sqrt(x);
+		double logX = Math.log(x);
+		double b = 0.931 + 2.53 * sqrtX;
+		double a = -0.059 + 0.02483 * b;
+		double invAlpha = 1.1239 + 1.1328 / (b - 3.4);
+		double vr = 0.9277 - 3.6224 / (b - 2);
+		while (true) {
+			double u = randomUnifDouble() - 0.5;
+			double v = randomUnifDouble();
+			double us = 0.5 - Math.abs(u);
+			long k = (long) Math.floor((2 * a / us + b) * u + x + 0.43);
+			if (us >= 0.07 && v <= vr)
+				return k;
+			if (k < 0 || (us < 0.013 && v > us))
+				continue;
+			if (Math.log(v) + Math.log(invAlpha) - Math.log(a / (us * us) + b) <= -x + k * logX - logFactorial(k))
+				return k;
+		}
+	}
+
+	/**
+	 * Compute log(k!) (exactly for small k, otherwise using Stirling's series).
+	 */
+	private static double logFactorial(long k)
+	{
+		if (k < 10) {
+			double res = 0.0;
+			for (long i = 2; i <= k; i++)
+				res += Math.log(i);
+			return res;
+		}
+		double n = k + 1.0;
+		double n2 = n * n;
+		return (n - 0.5) * Math.log(n) - n + 0.5 * Math.log(2 * Math.PI) + (1.0 / 12.0 - (1.0 / 360.0 - 1.0 / (1260.0 * n2)) / n2) / n;
+	}
+
+	/**
+	 * Get the next 64 random bits (xoroshiro128++).
+	 */
+	private long nextLong()
+	{
+		final long t0 = s0;
+		long t1 = s1;
+		final long result = Long.rotateLeft(t0 + t1, 17) + t0;
+		t1 ^= t0;
+		s0 = Long.rotateLeft(t0, 49) ^ t1 ^ (t1 << 21);
+		s1 = Long.rotateLeft(t1, 28);
+		return antithetic ? ~result : result;
+	}
+
+	/**
+	 * The SplitMix64 mixing function.
+	 */
+	private static long mix64(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
 	}
 }
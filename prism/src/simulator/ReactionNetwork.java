@@ -0,0 +1,385 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package simulator;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import parser.EvaluateContextState;
+import parser.State;
+import parser.VarList;
+import parser.ast.Command;
+import parser.ast.Expression;
+import parser.ast.ExpressionBinaryOp;
+import parser.ast.ExpressionLiteral;
+import parser.ast.ExpressionVar;
+import parser.ast.Module;
+import parser.ast.ModulesFile;
+import parser.ast.Update;
+import parser.ast.Updates;
+import parser.type.TypeInt;
+import prism.ModelType;
+import prism.PrismException;
+import prism.PrismLangException;
+
+/**
+ * A CTMC described by a ModulesFile, flattened into a list of "reactions", for use by
+ * Gillespie-style simulation methods ({@link NextReactionMethod}, {@link TauLeaping}).
+ * Each reaction is one combination of a single update from each command taking part in a transition,
+ * i.e. one of the transitions that {@link Updater} would construct in a state where all those commands are enabled,
+ * with a propensity (rate) that is the product of the update rates when all the guards are true, and 0 otherwise.
+ * For models from Reactions2Prism/SBML2Prism, there is exactly one reaction per (forward/reverse) reaction.
+ * <br>
+ * Also stored is a dependency graph: the reactions whose guards/rates read a variable written by each reaction,
+ * which are the only ones whose propensities need recomputing after it occurs, and, where updates are of the
+ * form x'=x+c for constant c (as for reaction models), the change in each variable.
+ * <br>
+ * The ModulesFile should have had all constants replaced (e.g. as done in the {@link SimulatorEngine}).
+ */
+public class ReactionNetwork
+{
+	/** Maximum number of reactions (to avoid blow-up from many combinations of synchronising commands) */
+	public static final int MAX_REACTIONS = 1000000;
+
+	// Model info
+	private ModulesFile modulesFile;
+	private VarList varList;
+	// Reactions
+	private int numReactions;
+	private Expression guards[][];
+	private Expression rates[][];
+	private Update updates[][];
+	private int moduleOrActionIndex[];
+	// Dependency graph: for each reaction, those whose propensity it affects (including itself, if it does)
+	private int dependents[][];
+	// Change to each updated variable (for updates of the form x'=x+c), or null if not of this form
+	private int changeVars[][];
+	private int changeValues[][];
+	// Context for evaluating expressions in a state
+	private EvaluateContextState stateContext;
+
+	/**
+	 * Build the reaction network for a CTMC.
+	 * Throws an exception if the model is not a CTMC or there are too many reactions.
+	 */
+	public ReactionNetwork(ModulesFile modulesFile, VarList varList) throws PrismException
+	{
+		this.modulesFile = modulesFile;
+		this.varList = varList;
+		if (modulesFile.getModelType() != ModelType.CTMC) {
+			throw new PrismException("Gillespie-style simulation is only available for CTMCs");
+		}
+		List<Expression[]> guardsList = new ArrayList<Expression[]>();
+		List<Expression[]> ratesList = new ArrayList<Expression[]>();
+		List<Update[]> updatesList = new ArrayList<Update[]>();
+		List<Integer> indexList = new ArrayList<Integer>();
+		int numModules = modulesFile.getNumModules();
+		// Independent commands: one reaction per update
+		for (int m = 0; m < numModules; m++) {
+			Module module = modulesFile.getModule(m);
+			for (int c = 0; c < module.getNumCommands(); c++) {
+				Command command = module.getCommand(c);
+				if (!"".equals(command.getSynch()))
+					continue;
+				Updates ups = command.getUpdates();
+				for (int u = 0; u < ups.getNumUpdates(); u++) {
+					guardsList.add(new Expression[] { command.getGuard() });
+					ratesList.add(new Expression[] { ups.getProbability(u) });
+					updatesList.add(new Update[] { ups.getUpdate(u) });
+					indexList.add(-(m + 1));
+				}
+			}
+		}
+		// Synchronous commands: one reaction per combination of updates from all modules with the action
+		List<String> synchs = modulesFile.getSynchs();
+		for (int a = 0; a < synchs.size(); a++) {
+			List<List<Object[]>> options = new ArrayList<List<Object[]>>();
+			long count = 1;
+			for (int m = 0; m < numModules; m++) {
+				Module module = modulesFile.getModule(m);
+				if (!module.usesSynch(synchs.get(a)))
+					continue;
+				List<Object[]> moduleOptions = new ArrayList<Object[]>();
+				for (int c = 0; c < module.getNumCommands(); c++) {
+					Command command = module.getCommand(c);
+					if (command.getSynchIndex() != a + 1)
+						continue;
+					for (int u = 0; u < command.getUpdates().getNumUpdates(); u++) {
+						moduleOptions.add(new Object[] { command, u });
+					}
+				}
+				options.add(moduleOptions);
+				count *= moduleOptions.size();
+				if (guardsList.size() + count > MAX_REACTIONS) {
+					throw new PrismException("Too many reactions for Gillespie-style simulation");
+				}
+			}
+			// Enumerate combinations (first module varies slowest)
+			int n = options.size();
+			int choice[] = new int[n];
+			for (long k = 0; k < count; k++) {
+				Expression g[] = new Expression[n];
+				Expression r[] = new Expression[n];
+				Update up[] = new Update[n];
+				for (int i = 0; i < n; i++) {
+					Object option[] = options.get(i).get(choice[i]);
+					Command command = (Command) option[0];
+					int u = (Integer) option[1];
+					g[i] = command.getGuard();
+					r[i] = command.getUpdates().getProbability(u);
+					up[i] = command.getUpdates().getUpdate(u);
+				}
+				guardsList.add(g);
+				ratesList.add(r);
+				updatesList.add(up);
+				indexList.add(a + 1);
+				for (int i = n - 1; i >= 0; i--) {
+					if (++choice[i] < options.get(i).size())
+						break;
+					choice[i] = 0;
+				}
+			}
+		}
+		numReactions = guardsList.size();
+		guards = guardsList.toArray(new Expression[numReactions][]);
+		rates = ratesList.toArray(new Expression[numReactions][]);
+		updates = updatesList.toArray(new Update[numReactions][]);
+		moduleOrActionIndex = new int[numReactions];
+		for (int r = 0; r < numReactions; r++) {
+			moduleOrActionIndex[r] = indexList.get(r);
+		}
+		buildDependencies();
+		buildChanges();
+	}
+
+	/**
+	 * Build the dependency graph, from the variables read (by guards/rates) and written (by updates) by each reaction.
+	 */
+	private void buildDependencies() throws PrismLangException
+	{
+		int numVars = varList.getNumVars();
+		// For each variable, the reactions whose propensity reads it
+		List<List<Integer>> readers = new ArrayList<List<Integer>>(numVars);
+		for (int v = 0; v < numVars; v++) {
+			readers.add(new ArrayList<Integer>());
+		}
+		for (int r = 0; r < numReactions; r++) {
+			BitSet read = new BitSet();
+			for (Expression guard : guards[r]) {
+				addVars(guard, read);
+			}
+			for (Expression rate : rates[r]) {
+				if (rate != null)
+					addVars(rate, read);
+			}
+			for (int v = read.nextSetBit(0); v >= 0; v = read.nextSetBit(v + 1)) {
+				readers.get(v).add(r);
+			}
+		}
+		dependents = new int[numReactions][];
+		for (int r = 0; r < numReactions; r++) {
+			BitSet deps = new BitSet();
+			for (Update up : updates[r]) {
+				for (int i = 0; i < up.getNumElements(); i++) {
+					for (int r2 : readers.get(up.getVarIndex(i))) {
+						deps.set(r2);
+					}
+				}
+			}
+			dependents[r] = deps.stream().toArray();
+		}
+	}
+
+	/**
+	 * Add the indices of the variables appearing in an expression to a BitSet.
+	 */
+	private void addVars(Expression expr, BitSet vars) throws PrismLangException
+	{
+		for (String var : expr.getAllVars()) {
+			int v = varList.getIndex(var);
+			if (v != -1)
+				vars.set(v);
+		}
+	}
+
+	/**
+	 * Determine, for each reaction whose updates are all of the form x'=x+c (c constant, x integer),
+	 * the changes to the values of the variables.
+	 */
+	private void buildChanges() throws PrismLangException
+	{
+		changeVars = new int[numReactions][];
+		changeValues = new int[numReactions][];
+		for (int r = 0; r < numReactions; r++) {
+			List<Integer> vars = new ArrayList<Integer>();
+			List<Integer> values = new ArrayList<Integer>();
+			boolean ok = true;
+			for (Update up : updates[r]) {
+				for (int i = 0; i < up.getNumElements() && ok; i++) {
+					int v = up.getVarIndex(i);
+					Integer c = getIncrement(up.getExpression(i), v);
+					if (c == null || !(varList.getType(v) instanceof TypeInt)) {
+						ok = false;
+					} else if (c != 0) {
+						vars.add(v);
+						values.add(c);
+					}
+				}
+			}
+			if (ok) {
+				changeVars[r] = vars.stream().mapToInt(Integer::intValue).toArray();
+				changeValues[r] = values.stream().mapToInt(Integer::intValue).toArray();
+			}
+		}
+	}
+
+	/**
+	 * If {@code expr} is of the form x, x+c, c+x or x-c, where x is the variable with index {@code v}
+	 * and c is an integer literal, return the change to x (0, c, c or -c); otherwise return null.
+	 */
+	private static Integer getIncrement(Expression expr, int v) throws PrismLangException
+	{
+		if (isVar(expr, v))
+			return 0;
+		if (expr instanceof ExpressionBinaryOp) {
+			ExpressionBinaryOp op = (ExpressionBinaryOp) expr;
+			Expression e1 = op.getOperand1();
+			Expression e2 = op.getOperand2();
+			if (op.getOperator() == ExpressionBinaryOp.PLUS) {
+				if (isVar(e1, v) && isIntLiteral(e2))
+					return e2.evaluateInt();
+				if (isVar(e2, v) && isIntLiteral(e1))
+					return e1.evaluateInt();
+			} else if (op.getOperator() == ExpressionBinaryOp.MINUS) {
+				if (isVar(e1, v) && isIntLiteral(e2))
+					return -e2.evaluateInt();
+			}
+		}
+		return null;
+	}
+
+	private static boolean isVar(Expression expr, int v)
+	{
+		return expr instanceof ExpressionVar && ((ExpressionVar) expr).getIndex() == v;
+	}
+
+	private static boolean isIntLiteral(Expression expr)
+	{
+		return expr instanceof ExpressionLiteral && expr.getType() instanceof TypeInt;
+	}
+
+	// Accessors
+
+	/**
+	 * Get the number of reactions.
+	 */
+	public int getNumReactions()
+	{
+		return numReactions;
+	}
+
+	/**
+	 * Get the module/action for a reaction, encoded as an integer (as for {@link Choice#getModuleOrActionIndex()}).
+	 */
+	public int getModuleOrActionIndex(int r)
+	{
+		return moduleOrActionIndex[r];
+	}
+
+	/**
+	 * Get the indices of the reactions whose propensities may change when reaction {@code r} occurs.
+	 */
+	public int[] getDependents(int r)
+	{
+		return dependents[r];
+	}
+
+	/**
+	 * Get the indices of the variables changed by reaction {@code r}, or null if
+	 * its updates are not all of the form x'=x+c (see {@link #getChangeValues}).
+	 */
+	public int[] getChangeVars(int r)
+	{
+		return changeVars[r];
+	}
+
+	/**
+	 * Get the changes to the variables in {@link #getChangeVars} for reaction {@code r}.
+	 */
+	public int[] getChangeValues(int r)
+	{
+		return changeValues[r];
+	}
+
+	/**
+	 * Get the variable list for the model.
+	 */
+	public VarList getVarList()
+	{
+		return varList;
+	}
+
+	/**
+	 * Compute the propensity (rate) of reaction {@code r} in a state.
+	 */
+	public double computePropensity(int r, State state) throws PrismLangException
+	{
+		if (stateContext == null) {
+			stateContext = new EvaluateContextState(state);
+		}
+		stateContext.setState(state);
+		for (Expression guard : guards[r]) {
+			if (!guard.evaluateBoolean(stateContext))
+				return 0.0;
+		}
+		double a = 1.0;
+		for (Expression rate : rates[r]) {
+			if (rate == null)
+				continue;
+			double d = rate.evaluateDouble(stateContext);
+			if (Double.isNaN(d) || d < 0) {
+				throw new PrismLangException("Rate is invalid (" + d + ") in state " + state.toString(modulesFile), rate);
+			}
+			a *= d;
+		}
+		return a;
+	}
+
+	/**
+	 * Compute the target of reaction {@code r} from state {@code currentState}, storing it in {@code newState}
+	 * (which should be a copy of {@code currentState} when passed in).
+	 */
+	public void computeTarget(int r, State currentState, State newState) throws PrismLangException
+	{
+		if (stateContext == null) {
+			stateContext = new EvaluateContextState(currentState);
+		}
+		stateContext.setState(currentState);
+		for (Update up : updates[r]) {
+			up.update(stateContext, newState);
+		}
+	}
+}
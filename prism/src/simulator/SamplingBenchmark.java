@@ -0,0 +1,126 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package simulator;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import parser.ast.ModulesFile;
+import prism.Prism;
+import prism.PrismException;
+import prism.PrismLog;
+import prism.PrismPrintStreamLog;
+import prism.UndefinedConstants;
+
+/**
+ * Simple benchmark for path generation in the simulator:
+ * measures the number of steps per second (and bytes allocated per step)
+ * when sampling on-the-fly paths, both with reuse of Choice objects
+ * in the Updater disabled (as for full paths) and enabled (as for sampling).
+ * <br>
+ * Usage: {@code SamplingBenchmark <model-file> [num-paths] [path-length] [constants]}
+ */
+public class SamplingBenchmark
+{
+	/** Random seed used for all runs (so that identical paths are generated) */
+	private static final long SEED = 12345;
+
+	public static void main(String[] args)
+	{
+		try {
+			if (args.length < 1) {
+				System.out.println("Usage: SamplingBenchmark <model-file> [num-paths] [path-length] [constants]");
+				System.exit(1);
+			}
+			PrismLog mainLog = new PrismPrintStreamLog(System.out);
+			Prism prism = new Prism(mainLog);
+			prism.initialise();
+			ModulesFile modulesFile = prism.parseModelFile(new File(args[0]));
+			int numPaths = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+			int pathLength = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+			UndefinedConstants undefinedConstants = new UndefinedConstants(modulesFile, null);
+			if (args.length > 3)
+				undefinedConstants.defineUsingConstSwitch(args[3]);
+			modulesFile.setUndefinedConstants(undefinedConstants.getMFConstantValues());
+			SimulatorEngine engine = new SimulatorEngine(prism);
+			// Warm up (JIT), then time both versions, alternating
+			run(engine, modulesFile, false, numPaths / 10 + 1, pathLength, null);
+			run(engine, modulesFile, true, numPaths / 10 + 1, pathLength, null);
+			for (int i = 0; i < 2; i++) {
+				run(engine, modulesFile, false, numPaths, pathLength, mainLog);
+				run(engine, modulesFile, true, numPaths, pathLength, mainLog);
+			}
+			prism.closeDown();
+		} catch (FileNotFoundException e) {
+			System.out.println("Error: " + e.getMessage());
+			System.exit(1);
+		} catch (PrismException e) {
+			System.out.println("Error: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Generate {@code numPaths} paths of length (at most) {@code pathLength}
+	 * and, if {@code log} is non-null, report the number of steps per second.
+	 */
+	private static void run(SimulatorEngine engine, ModulesFile modulesFile, boolean reuseChoices, int numPaths, int pathLength, PrismLog log) throws PrismException
+	{
+		engine.createNewOnTheFlyPath(modulesFile);
+		engine.updater.setReuseChoices(reuseChoices);
+		long allocStart = getAllocatedBytes();
+		long timeStart = System.nanoTime();
+		long steps = 0;
+		for (int i = 0; i < numPaths; i++) {
+			engine.setRandomNumberStream(SEED, i);
+			engine.initialisePath(null);
+			steps += engine.automaticTransitions(pathLength, false);
+		}
+		long time = System.nanoTime() - timeStart;
+		long alloc = getAllocatedBytes() - allocStart;
+		if (log != null) {
+			log.print(reuseChoices ? "Reusing choices:   " : "Allocating choices:");
+			log.print(" " + steps + " steps in " + (time / 1000000) + " ms");
+			log.print(", " + (long) (steps / (time / 1e9)) + " steps/sec");
+			if (allocStart >= 0)
+				log.print(", " + String.format("%.1f", alloc / (double) steps) + " bytes/step");
+			log.println();
+		}
+	}
+
+	/**
+	 * Get the number of bytes allocated so far by the current thread, or -1 if not supported by this JVM.
+	 */
+	private static long getAllocatedBytes()
+	{
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,161 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package simulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import parser.State;
+import prism.PrismException;
+import simulator.sampler.Sampler;
+
+/**
+ * A worker for multi-threaded or distributed sampling: a separate simulator, plus the statistics
+ * for the paths generated in the most recent block of sampling (see {@link SimulatorEngine}).
+ * The statistics of the samplers in {@code engine} also cover only this block.
+ * <br>
+ * The simulator should already have an on-the-fly path created and the properties
+ * being sampled added (in the same order as for the simulator coordinating the sampling).
+ * The statistics are stored (until all blocks before them have been merged), or sent between
+ * processes, using {@link #writeStats} and {@link #readStats}, or {@link #getStats} and {@link #setStats}.
+ */
+public class SamplingWorker
+{
+	SimulatorEngine engine;
+	// Stats for paths in the last block
+	int numPaths;
+	long totalPathLength;
+	long minPathFound;
+	long maxPathFound;
+	boolean stoppedEarly;
+
+	public SamplingWorker(SimulatorEngine engine)
+	{
+		this.engine = engine;
+	}
+
+	/**
+	 * Generate {@code n} sample paths, with indices starting from {@code firstPathIndex}
+	 * (see {@link SimulatorEngine#generateSamplePath}), replacing any statistics from
+	 * the previous block. Stops early if the value of some sampler is unknown for one of the paths.
+	 */
+	public void generateSamplePaths(State initialState, long maxPathLength, long seed, long firstPathIndex, int n) throws PrismException
+	{
+		numPaths = 0;
+		totalPathLength = 0;
+		minPathFound = maxPathFound = 0;
+		stoppedEarly = false;
+		for (Sampler sampler : engine.propertySamplers) {
+			sampler.resetStats();
+		}
+		for (int k = 0; k < n; k++) {
+			long pathLength = engine.generateSamplePath(initialState, maxPathLength, seed, firstPathIndex + k);
+			if (pathLength == -1) {
+				stoppedEarly = true;
+				return;
+			}
+			totalPathLength += pathLength;
+			minPathFound = (numPaths == 0) ? pathLength : Math.min(minPathFound, pathLength);
+			maxPathFound = (numPaths == 0) ? pathLength : Math.max(maxPathFound, pathLength);
+			numPaths++;
+			for (Sampler sampler : engine.propertySamplers) {
+				sampler.updateStats();
+			}
+		}
+	}
+
+	/**
+	 * Did the last block stop early, because the value of some sampler was unknown for one of its paths?
+	 */
+	public boolean isStoppedEarly()
+	{
+		return stoppedEarly;
+	}
+
+	/**
+	 * Write the statistics for the last block (including those of the samplers) to an output stream.
+	 */
+	public void writeStats(DataOutput out) throws IOException
+	{
+		out.writeInt(numPaths);
+		out.writeLong(totalPathLength);
+		out.writeLong(minPathFound);
+		out.writeLong(maxPathFound);
+		out.writeBoolean(stoppedEarly);
+		for (Sampler sampler : engine.propertySamplers) {
+			sampler.writeStats(out);
+		}
+	}
+
+	/**
+	 * Replace the statistics for the last block (including those of the samplers)
+	 * with those read from an input stream, as written by {@link #writeStats}.
+	 */
+	public void readStats(DataInput in) throws IOException
+	{
+		numPaths = in.readInt();
+		totalPathLength = in.readLong();
+		minPathFound = in.readLong();
+		maxPathFound = in.readLong();
+		if (numPaths < 0 || totalPathLength < 0 || minPathFound < 0 || maxPathFound < minPathFound) {
+			throw new IOException("Invalid sampling statistics");
+		}
+		stoppedEarly = in.readBoolean();
+		for (Sampler sampler : engine.propertySamplers) {
+			sampler.readStats(in);
+		}
+	}
+
+	/**
+	 * Get the statistics for the last block (see {@link #writeStats}), as an array of bytes.
+	 */
+	public byte[] getStats() throws PrismException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			writeStats(out);
+		} catch (IOException e) {
+			throw new PrismException("Could not store sampling statistics: " + e.getMessage());
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Replace the statistics for the last block with ones from {@link #getStats}.
+	 */
+	public void setStats(byte stats[]) throws PrismException
+	{
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(stats))) {
+			readStats(in);
+		} catch (IOException e) {
+			throw new PrismException("Could not restore sampling statistics: " + e.getMessage());
+		}
+	}
+}
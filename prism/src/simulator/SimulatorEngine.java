@@ -30,6 +30,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
+import common.WorkerPool;
 import parser.State;
 import parser.Values;
 import parser.VarList;
@@ -48,11 +49,16 @@ import prism.PrismException;
 import prism.PrismFileLog;
 import prism.PrismLangException;
 import prism.PrismLog;
+import prism.PrismSettings;
 import prism.PrismUtils;
 import prism.ResultsCollection;
 import prism.UndefinedConstants;
+import simulator.method.ImportanceSplitting;
 import simulator.method.SimulationMethod;
+import simulator.networking.SamplingCoordinator;
 import simulator.sampler.Sampler;
+import simulator.sampler.SamplerControlVariate;
+import simulator.sampler.SamplerDouble;
 import strat.Strategy;
 import userinterface.graph.Graph;
 
@@ -114,7 +120,7 @@ public class SimulatorEngine extends PrismComponent
 	// Labels + properties info
 	protected List<Expression> labels;
 	private List<Expression> properties;
-	private List<Sampler> propertySamplers;
+	protected List<Sampler> propertySamplers;
 
 	// Current path info
 	protected Path path;
@@ -130,6 +136,8 @@ public class SimulatorEngine extends PrismComponent
 	// State for which transition list applies
 	// (if null, just the default - i.e. the last state in the current path)
 	protected State transitionListState;
+	// Reference to a transition in the transition list (reused to avoid per-step allocation)
+	protected TransitionList.Ref transitionRef;
 	// Temporary storage for manipulating states/rewards
 	protected double tmpStateRewards[];
 	protected double tmpTransitionRewards[];
@@ -138,6 +146,25 @@ public class SimulatorEngine extends PrismComponent
 	protected Updater updater;
 	// Random number generator
 	private RandomNumberGenerator rng;
+	// Gillespie-style CTMC simulation (for sampling), if in use
+	protected ReactionNetwork reactionNetwork;
+	protected NextReactionMethod nextReactionMethod;
+	protected TauLeaping tauLeaping;
+	// (Empty) transition list passed to samplers in deadlocks during Gillespie-style simulation
+	protected TransitionList deadlockTransitionList = new TransitionList();
+	// Temporary storage for transition rewards during tau-leaping
+	protected double tmpTransitionRewards2[];
+	// Variance reduction for sampling: use pairs of antithetic paths as samples?
+	protected boolean antitheticPairs = false;
+	// Variance reduction for sampling of reward properties: control variate (if any),
+	// i.e. property with known value controlVariateMean (constants from controlVariatePF)
+	protected Expression controlVariate = null;
+	protected PropertiesFile controlVariatePF = null;
+	protected double controlVariateMean = 0.0;
+
+	// Maximum number of paths in a round of sampling, and of blocks that a round is split into
+	private static final int SAMPLING_MAX_ROUND = 16000;
+	private static final int SAMPLING_MAX_BLOCKS = 64;
 
 	// ------------------------------------------------------------------------------
 	// Basic setup
@@ -199,12 +226,18 @@ public class SimulatorEngine extends PrismComponent
 		// Store model
 		loadModulesFile(modulesFile);
 		// Create empty (full) path object associated with this model
-		path = new PathFull(modulesFile);
+		// (discarding any previous one, which may be using a temporary file)
+		if (path instanceof PathFull)
+			((PathFull) path).close();
+		int maxStepsInMemory = (settings != null) ? settings.getInteger(PrismSettings.SIMULATOR_PATH_MEMORY) : 0;
+		path = new PathFull(modulesFile, varList, maxStepsInMemory);
 		onTheFly = false;
 	}
 
 	/**
 	 * Create a new on-the-fly path for a model.
+	 * Choice objects in the transition list are reused from step to step,
+	 * so are only valid until the next transition is taken.
 	 * Note: All constants in the model must have already been defined.
 	 * @param modulesFile Model for simulation
 	 */
@@ -215,6 +248,9 @@ public class SimulatorEngine extends PrismComponent
 		// Create empty (on-the-fly_ path object associated with this model
 		path = new PathOnTheFly(modulesFile);
 		onTheFly = true;
+		// Nothing from earlier steps is stored, so Choice objects can be reused
+		// across steps, meaning that no new objects are created when sampling
+		updater.setReuseChoices(true);
 	}
 
 	/**
@@ -248,6 +284,18 @@ public class SimulatorEngine extends PrismComponent
 		initialiseStrategy();
 	}
 
+	/**
+	 * Set the random number generator used for (random) path generation to the start of the
+	 * stream with index {@code stream} for seed {@code seed}. In particular, after calling this
+	 * (and then {@link #initialisePath}), generating a path by repeated calls to {@link #automaticTransition()}
+	 * reproduces the sample path with index {@code stream} from sampling-based model checking
+	 * with the same seed (or a prefix/extension of it).
+	 */
+	public void setRandomNumberStream(long seed, long stream)
+	{
+		rng.setStream(seed, stream);
+	}
+
 	/**
 	 * Execute a transition from the current transition list, specified by its index
 	 * within the (whole) list. If this is a continuous-time model, the time to be spent
@@ -299,12 +347,11 @@ public class SimulatorEngine extends PrismComponent
 			return false;
 		//throw new PrismException("Deadlock found at state " + path.getCurrentState().toString(modulesFile));
 
-		TransitionList.Ref ref;
+		TransitionList.Ref ref = transitionRef;
 		switch (modelType) {
 		case DTMC:
 			// Pick a random number to determine choice/transition
 			d = rng.randomUnifDouble();
-			ref = transitions.new Ref();
 			transitions.getChoiceIndexByProbabilitySum(d, ref);
 			// Execute
 			executeTransition(ref.i, ref.offset, -1);
@@ -324,7 +371,6 @@ public class SimulatorEngine extends PrismComponent
 			r = transitions.getProbabilitySum();
 			// Pick a random number to determine choice/transition
 			d = rng.randomUnifDouble(r);
-			ref = transitions.new Ref();
 			transitions.getChoiceIndexByProbabilitySum(d, ref);
 			// Execute
 			executeTimedTransition(ref.i, ref.offset, rng.randomExpDouble(r), -1);
@@ -603,6 +649,27 @@ public class SimulatorEngine extends PrismComponent
 	 * In case of error, the property is not added an exception is thrown.
 	 */
 	public int addProperty(Expression prop, PropertiesFile pf) throws PrismException
+	{
+		Expression propNew = processProperty(prop, pf);
+		// Create sampler
+		Sampler sampler = Sampler.createSampler(propNew, modulesFile);
+		// For reward properties, add the control variate, if there is one
+		if (controlVariate != null && sampler instanceof SamplerDouble) {
+			Sampler control = Sampler.createSampler(processProperty(controlVariate, controlVariatePF), modulesFile);
+			sampler = new SamplerControlVariate((SamplerDouble) sampler, control, controlVariateMean);
+		}
+		// Update lists and return index
+		// (do this right at the end so that lists only get updated if there are no errors)
+		properties.add(propNew);
+		propertySamplers.add(sampler);
+		return properties.size() - 1;
+	}
+
+	/**
+	 * Take a copy of a (path) property, expand property references/labels,
+	 * then replace constants and simplify, ready for creating a sampler.
+	 */
+	private Expression processProperty(Expression prop, PropertiesFile pf) throws PrismLangException
 	{
 		// Take a copy
 		Expression propNew = prop.deepCopy();
@@ -615,13 +682,34 @@ public class SimulatorEngine extends PrismComponent
 			propNew = (Expression) propNew.replaceConstants(pf.getConstantValues());
 		}
 		propNew = (Expression) propNew.simplify();
-		// Create sampler
-		Sampler sampler = Sampler.createSampler(propNew, modulesFile);
-		// Update lists and return index
-		// (do this right at the end so that lists only get updated if there are no errors)
-		properties.add(propNew);
-		propertySamplers.add(sampler);
-		return properties.size() - 1;
+		return propNew;
+	}
+
+	/**
+	 * Set a control variate to be used to reduce the variance of the estimates
+	 * for reward properties added subsequently (see {@link #addProperty(Expression, PropertiesFile)}):
+	 * a (P or R) property, whose exact value {@code mean} is known, which is sampled on the same paths.
+	 * Any constants/formulas etc. appearing in the property must have been defined in the current model
+	 * or be supplied in the (optional) passed in PropertiesFile.
+	 * Pass null for {@code expr} to stop using a control variate.
+	 */
+	public void setControlVariate(Expression expr, PropertiesFile pf, double mean)
+	{
+		controlVariate = expr;
+		controlVariatePF = pf;
+		controlVariateMean = mean;
+	}
+
+	/**
+	 * Set whether sampling uses pairs of antithetic paths, i.e. the second uses the complement
+	 * of the random numbers used by the first, each pair being a single sample whose value
+	 * (for reward properties) is the average over the two paths. This has no effect if all
+	 * properties are Boolean-valued (e.g. probabilistic ones): each sample is then a single path.
+	 * This is usually overridden by the corresponding setting when sampling starts.
+	 */
+	public void setAntitheticPairs(boolean antitheticPairs)
+	{
+		this.antitheticPairs = antitheticPairs;
 	}
 
 	/**
@@ -726,9 +814,13 @@ public class SimulatorEngine extends PrismComponent
 		tmpStateRewards = new double[modulesFile.getNumRewardStructs()];
 		tmpTransitionRewards = new double[modulesFile.getNumRewardStructs()];
 		transitionList = new TransitionList();
+		transitionRef = transitionList.new Ref();
 
 		// Create updater for model
 		updater = new Updater(modulesFile, varList, this);
+		reactionNetwork = null;
+		nextReactionMethod = null;
+		tauLeaping = null;
 
 		// Clear storage for strategy
 		strategy = null;
@@ -1490,7 +1582,6 @@ public class SimulatorEngine extends PrismComponent
 			try {
 				checkPropertyForSimulation(exprs.get(i));
 				indices[i] = addProperty(exprs.get(i), propertiesFile);
-				validPropsCount++;
 				// Attach a SimulationMethod object to each property's sampler
 				SimulationMethod simMethodNew = simMethod.clone();
 				propertySamplers.get(indices[i]).setSimulationMethod(simMethodNew);
@@ -1504,6 +1595,7 @@ public class SimulatorEngine extends PrismComponent
 					propertySamplers.remove(indices[i]);
 					throw e;
 				}
+				validPropsCount++;
 			} catch (PrismException e) {
 				results[i] = e;
 				indices[i] = -1;
@@ -1612,7 +1704,6 @@ public class SimulatorEngine extends PrismComponent
 			try {
 				checkPropertyForSimulation(expr);
 				indices[i] = addProperty(expr, propertiesFile);
-				validPropsCount++;
 				// Attach a SimulationMethod object to each property's sampler
 				SimulationMethod simMethodNew = simMethod.clone();
 				propertySamplers.get(indices[i]).setSimulationMethod(simMethodNew);
@@ -1627,6 +1718,7 @@ public class SimulatorEngine extends PrismComponent
 					propertySamplers.remove(indices[i]);
 					throw e;
 				}
+				validPropsCount++;
 			} catch (PrismException e) {
 				results[i] = e;
 				indices[i] = -1;
@@ -1680,22 +1772,34 @@ public class SimulatorEngine extends PrismComponent
 	 * Sample paths are from the specified initial state and maximum length.
 	 * Termination of the sampling process occurs when the SimulationMethod object
 	 * for all properties indicate that it is finished.
+	 * <br>
+	 * Each sample path uses its own stream of random numbers, determined by the seed
+	 * (the {@code simulator.seed} setting, or picked randomly if this is 0) and the index of the path,
+	 * so any path can later be regenerated on its own (see {@link #setRandomNumberStream(long, long)}).
+	 * <br>
+	 * Paths are generated in rounds, whose size only depends on the number of paths so far
+	 * (and the number still needed), and each round is split into blocks of consecutive paths.
+	 * The statistics for each block are computed separately, by a worker with its own copy
+	 * of the updater, path and samplers, and then merged, in order, into the main samplers,
+	 * with the stopping criteria checked after each block.
+	 * If multiple threads are requested (via the {@code prism.numThreads} setting),
+	 * or worker processes (via {@code simulator.workers}), they generate the blocks of each round
+	 * in parallel; otherwise, blocks are generated one at a time, as they are needed.
+	 * Either way, the same blocks are merged in the same order, so, for a fixed seed,
+	 * results do not depend on the number of threads or worker processes.
 	 * @param initialState Initial state (if null, is selected randomly)
 	 * @param maxPathLength The maximum path length for sampling
 	 */
 	private void doSampling(State initialState, long maxPathLength) throws PrismException
 	{
 		int iters;
-		long i;
 		// Flags
 		boolean stoppedEarly = false;
 		boolean deadlocksFound = false;
 		boolean allDone = false;
-		boolean allKnown = false;
-		boolean someUnknownButBounded = false;
 		boolean shouldStopSampling = false;
 		// Path stats
-		double avgPathLength = 0;
+		double totalPathLength = 0;
 		long minPathFound = 0, maxPathFound = 0;
 		// Progress info
 		int lastPercentageDone = 0;
@@ -1704,6 +1808,63 @@ public class SimulatorEngine extends PrismComponent
 		long start, stop;
 		double time_taken;
 
+		// Importance splitting is done separately
+		if (propertySamplers.get(0).getSimulationMethod() instanceof ImportanceSplitting) {
+			doImportanceSplitting(initialState, maxPathLength);
+			return;
+		}
+
+		// Get number of threads, worker processes and seed (0 means no fixed seed)
+		int numThreads = (settings != null) ? settings.getInteger(PrismSettings.PRISM_NUM_THREADS) : 1;
+		String workersSpec = (settings != null) ? settings.getString(PrismSettings.SIMULATOR_WORKERS).trim() : "";
+		int seed = (settings != null) ? settings.getInteger(PrismSettings.SIMULATOR_SEED) : 0;
+		// Strategies are not (yet) supported by the worker threads/processes
+		if (strategy != null) {
+			numThreads = 1;
+			workersSpec = "";
+		}
+		if (seed == 0)
+			seed = rng.randomUnifInt(Integer.MAX_VALUE) + 1;
+		final long samplingSeed = seed;
+		mainLog.println("\nRandom seed for sampling: " + seed);
+		if (settings != null)
+			antitheticPairs = settings.getBoolean(PrismSettings.SIMULATOR_ANTITHETIC);
+		if (antitheticPairs)
+			mainLog.println("Variance reduction: each sample is a pair of antithetic paths (for reward properties)");
+		if (controlVariate != null)
+			mainLog.println("Variance reduction: control variate " + controlVariate + " (expected value " + controlVariateMean + ") for reward properties");
+		if (setUpReactionSimulation()) {
+			mainLog.print("CTMC simulation method: " + settings.getString(PrismSettings.SIMULATOR_CTMC_METHOD));
+			mainLog.println(" (" + reactionNetwork.getNumReactions() + " reactions)");
+		}
+		// For distributed sampling, the local workers just hold the statistics sent back by the remote ones
+		SamplingCoordinator coordinator = null;
+		if (!"".equals(workersSpec)) {
+			coordinator = new SamplingCoordinator(this, workersSpec);
+			coordinator.connect();
+			try {
+				Expression control = (controlVariate == null) ? null : processProperty(controlVariate, controlVariatePF);
+				coordinator.setup(modulesFile, mfConstants, properties, control, controlVariateMean, initialState, maxPathLength, samplingSeed, settings);
+			} catch (PrismException e) {
+				coordinator.close();
+				throw e;
+			}
+			numThreads = coordinator.getNumWorkers();
+		}
+		// Workers (one per thread; for distributed sampling, just one, to hold the statistics sent back)
+		// (unless there is a strategy, in which case paths are generated one by one by this simulator)
+		SamplingWorker workers[] = null;
+		if (strategy == null) {
+			workers = createSamplingWorkers(coordinator != null ? 1 : numThreads);
+		}
+		// Current round: paths firstPathIndex + blockBounds[b] to firstPathIndex + blockBounds[b + 1] - 1 form
+		// block b, whose statistics are in blockStats[b] if they have already been generated
+		// (the blocks before nextBlock have been merged)
+		int blockBounds[] = null;
+		byte blockStats[][] = null;
+		long firstPathIndex = 0;
+		int nextBlock = 0;
+
 		// Start
 		start = System.currentTimeMillis();
 		mainLog.print("\nSampling progress: [");
@@ -1711,74 +1872,109 @@ public class SimulatorEngine extends PrismComponent
 
 		// Main sampling loop
 		iters = 0;
-		while (!shouldStopSampling) {
+		try {
+			while (!shouldStopSampling) {
 
-			// See if all properties are done; if so, stop sampling
-			allDone = true;
-			for (Sampler sampler : propertySamplers) {
-				if (!sampler.getSimulationMethod().shouldStopNow(iters, sampler))
-					allDone = false;
-			}
-			if (allDone)
-				break;
+				// See if all properties are done; if so, stop sampling
+				// (and, for those that are not, see if we know how many more samples they need)
+				allDone = true;
+				int maxRemaining = 0;
+				for (Sampler sampler : propertySamplers) {
+					SimulationMethod sm = sampler.getSimulationMethod();
+					if (!sm.shouldStopNow(iters, sampler)) {
+						allDone = false;
+						int remaining = sm.getMaxRemainingIterations(iters);
+						maxRemaining = (remaining == -1 || maxRemaining == -1) ? -1 : Math.max(maxRemaining, remaining);
+					}
+				}
+				if (allDone)
+					break;
 
-			// Display progress (of slowest property)
-			percentageDone = 100;
-			for (Sampler sampler : propertySamplers) {
-				percentageDone = Math.min(percentageDone, sampler.getSimulationMethod().getProgress(iters, sampler));
-			}
-			if (percentageDone > lastPercentageDone) {
-				lastPercentageDone = percentageDone;
-				mainLog.print(" " + lastPercentageDone + "%");
-				mainLog.flush();
-			}
+				// Display progress (of slowest property)
+				percentageDone = 100;
+				for (Sampler sampler : propertySamplers) {
+					percentageDone = Math.min(percentageDone, sampler.getSimulationMethod().getProgress(iters, sampler));
+				}
+				if (percentageDone > lastPercentageDone) {
+					lastPercentageDone = percentageDone;
+					mainLog.print(" " + lastPercentageDone + "%");
+					mainLog.flush();
+				}
 
-			iters++;
+				// No workers (strategy): generate a single path
+				if (workers == null) {
+					iters++;
+					long pathLength = generateSamplePath(initialState, maxPathLength, samplingSeed, iters - 1);
 
-			// Start the new path for this iteration (sample)
-			initialisePath(initialState);
+					// TODO: Detect deadlocks so we can report a warning
 
-			// Generate a path
-			allKnown = false;
-			someUnknownButBounded = false;
-			i = 0;
-			while ((!allKnown && i < maxPathLength) || someUnknownButBounded) {
-				// Check status of samplers
-				allKnown = true;
-				someUnknownButBounded = false;
-				for (Sampler sampler : propertySamplers) {
-					if (!sampler.isCurrentValueKnown()) {
-						allKnown = false;
-						if (sampler.needsBoundedNumSteps())
-							someUnknownButBounded = true;
+					// If not all samplers could produce values, this an error
+					if (pathLength == -1) {
+						stoppedEarly = true;
+						break;
 					}
-				}
-				// Stop when all answers are known or we have reached max path length
-				// (but don't stop yet if there are "bounded" samplers with unkown values)
-				if ((allKnown || i >= maxPathLength) && !someUnknownButBounded)
-					break;
-				// Make a random transition
-				automaticTransition();
-				i++;
-			}
 
-			// TODO: Detect deadlocks so we can report a warning
+					// Update path length statistics
+					totalPathLength += pathLength;
+					minPathFound = (iters == 1) ? pathLength : Math.min(minPathFound, pathLength);
+					maxPathFound = (iters == 1) ? pathLength : Math.max(maxPathFound, pathLength);
 
-			// Update path length statistics
-			avgPathLength = (avgPathLength * (iters - 1) + (i)) / iters;
-			minPathFound = (iters == 1) ? i : Math.min(minPathFound, i);
-			maxPathFound = (iters == 1) ? i : Math.max(maxPathFound, i);
+					// Update state of samplers based on last path
+					for (Sampler sampler : propertySamplers) {
+						sampler.updateStats();
+					}
+					continue;
+				}
 
-			// If not all samplers could produce values, this an error
-			if (!allKnown) {
-				stoppedEarly = true;
-				break;
-			}
+				// Start a new round, once all blocks of the last one have been merged
+				if (blockBounds == null || nextBlock == blockBounds.length - 1) {
+					// The number of paths grows with the number done so far
+					// (so that stopping criteria are checked often early on),
+					// but is never more than is known to be needed
+					int numPaths = Math.max(1, Math.min(iters / 8, SAMPLING_MAX_ROUND));
+					if (maxRemaining != -1)
+						numPaths = Math.min(numPaths, maxRemaining);
+					blockBounds = WorkerPool.splitRange(numPaths, SAMPLING_MAX_BLOCKS);
+					blockStats = null;
+					firstPathIndex = iters;
+					nextBlock = 0;
+					// Generate all blocks of the round in parallel, if required
+					if (coordinator != null) {
+						blockStats = coordinator.runRound(workers[0], firstPathIndex, blockBounds);
+					} else if (numThreads > 1) {
+						blockStats = generateBlocks(workers, initialState, maxPathLength, samplingSeed, firstPathIndex, blockBounds);
+					}
+				}
 
-			// Update state of samplers based on last path
-			for (Sampler sampler : propertySamplers) {
-				sampler.updateStats();
+				// Merge the statistics for the next block (generating it first, if needed)
+				SamplingWorker worker = workers[0];
+				if (blockStats == null) {
+					worker.generateSamplePaths(initialState, maxPathLength, samplingSeed, firstPathIndex + blockBounds[nextBlock],
+							blockBounds[nextBlock + 1] - blockBounds[nextBlock]);
+				} else {
+					worker.setStats(blockStats[nextBlock]);
+				}
+				nextBlock++;
+				if (worker.numPaths > 0) {
+					totalPathLength += worker.totalPathLength;
+					minPathFound = (iters == 0) ? worker.minPathFound : Math.min(minPathFound, worker.minPathFound);
+					maxPathFound = (iters == 0) ? worker.maxPathFound : Math.max(maxPathFound, worker.maxPathFound);
+					for (int j = 0; j < propertySamplers.size(); j++) {
+						propertySamplers.get(j).mergeStats(worker.engine.propertySamplers.get(j));
+					}
+					iters += worker.numPaths;
+				}
+				// If not all samplers could produce values, this an error
+				if (worker.stoppedEarly) {
+					iters++;
+					stoppedEarly = true;
+					break;
+				}
 			}
+		} finally {
+			// Shut down any worker processes
+			if (coordinator != null)
+				coordinator.close();
 		}
 
 		// Print details
@@ -1789,8 +1985,12 @@ public class SimulatorEngine extends PrismComponent
 			stop = System.currentTimeMillis();
 			time_taken = (stop - start) / 1000.0;
 			mainLog.print("\nSampling complete: ");
-			mainLog.print(iters + " iterations in " + time_taken + " seconds (average " + PrismUtils.formatDouble(2, time_taken / iters) + ")\n");
-			mainLog.print("Path length statistics: average " + PrismUtils.formatDouble(2, avgPathLength) + ", min " + minPathFound + ", max " + maxPathFound
+			mainLog.print(iters + " iterations in " + time_taken + " seconds (average " + PrismUtils.formatDouble(2, time_taken / iters) + ")");
+			if (coordinator != null)
+				mainLog.print(", using " + numThreads + " worker processes\n");
+			else
+				mainLog.print(numThreads > 1 ? ", using " + numThreads + " threads\n" : "\n");
+			mainLog.print("Path length statistics: average " + PrismUtils.formatDouble(2, totalPathLength / iters) + ", min " + minPathFound + ", max " + maxPathFound
 					+ "\n");
 		} else {
 			mainLog.print(" ...\n\nSampling terminated early after " + iters + " iterations.\n");
@@ -1813,6 +2013,307 @@ public class SimulatorEngine extends PrismComponent
 		}
 	}
 
+	/**
+	 * Execute (fixed-effort) importance splitting for each of the currently loaded properties
+	 * (whose simulation methods should all be {@link ImportanceSplitting} objects).
+	 * For each stage, the specified number of paths are started from the entry states
+	 * found in the previous stage, cycling through them in order, and the results are
+	 * passed back to the simulation method object.
+	 * As for {@link #doSampling}, each path uses its own random number stream.
+	 * @param initialState Initial state (if null, is selected randomly)
+	 * @param maxPathLength The maximum path length for each stage
+	 */
+	private void doImportanceSplitting(State initialState, long maxPathLength) throws PrismException
+	{
+		// Get seed (0 means no fixed seed)
+		int seed = (settings != null) ? settings.getInteger(PrismSettings.SIMULATOR_SEED) : 0;
+		if (seed == 0)
+			seed = rng.randomUnifInt(Integer.MAX_VALUE) + 1;
+		mainLog.println("\nRandom seed for sampling: " + seed);
+
+		long start = System.currentTimeMillis();
+		long pathIndex = 0;
+		long numTruncated = 0;
+		for (Sampler sampler : propertySamplers) {
+			ImportanceSplitting method = (ImportanceSplitting) sampler.getSimulationMethod();
+			int numLevels = method.getNumLevels();
+			int effort = method.getEffort();
+			// Get rid of any constants/labels in the importance function and simplify
+			Expression importance = method.getImportanceFunction().deepCopy();
+			importance = (Expression) importance.expandPropRefsAndLabels(null, modulesFile.getLabelList());
+			importance = (Expression) importance.replaceConstants(mfConstants);
+			importance = (Expression) importance.simplify();
+
+			mainLog.println("\nImportance splitting for " + properties.get(propertySamplers.indexOf(sampler)) + ":");
+			// Entry states for the current stage (initially, just the initial state)
+			initialisePath(initialState);
+			List<State> entryStates = new ArrayList<State>();
+			entryStates.add(new State(path.getCurrentState()));
+			for (int stage = 0; stage <= numLevels; stage++) {
+				double level = (stage < numLevels) ? method.getLevel(stage) : Double.POSITIVE_INFINITY;
+				List<State> nextEntryStates = new ArrayList<State>();
+				for (int j = 0; j < effort; j++) {
+					// Generate a path until it crosses the level or the property is decided
+					rng.setStream(seed, pathIndex++);
+					initialisePath(entryStates.get(j % entryStates.size()));
+					long i = 0;
+					boolean hit;
+					while (true) {
+						if (sampler.isCurrentValueKnown()) {
+							hit = (Boolean) sampler.getCurrentValue();
+							break;
+						}
+						if (importance.evaluateDouble(path.getCurrentState()) >= level) {
+							hit = true;
+							break;
+						}
+						if (i >= maxPathLength) {
+							numTruncated++;
+							hit = false;
+							break;
+						}
+						if (!automaticTransition()) {
+							hit = false;
+							break;
+						}
+						i++;
+					}
+					if (hit)
+						nextEntryStates.add(new State(path.getCurrentState()));
+				}
+				method.recordStage(stage, nextEntryStates.size());
+				mainLog.print((stage < numLevels) ? "Level " + (stage + 1) + " (importance >= " + level + ")" : "Target");
+				mainLog.println(": " + nextEntryStates.size() + "/" + effort + " paths");
+				if (nextEntryStates.isEmpty())
+					break;
+				entryStates = nextEntryStates;
+			}
+		}
+		double time_taken = (System.currentTimeMillis() - start) / 1000.0;
+		mainLog.println("\nSampling complete: " + pathIndex + " paths in " + time_taken + " seconds");
+
+		// Print a warning if paths were cut off
+		if (numTruncated > 0)
+			mainLog.printWarning(numTruncated + " paths reached the maximum path length and were treated as not satisfying the property.");
+	}
+
+	/**
+	 * Generate a single sample path, for sampling-based model checking, from the specified initial state,
+	 * using the stream of random numbers for the given seed and path index.
+	 * Path generation stops once the values of all samplers for loaded properties are known,
+	 * or the maximum path length has been reached (but continues beyond this
+	 * if there are "bounded" samplers whose values are still unknown).
+	 * Returns the length of the path, or -1 if the value of some sampler is still unknown.
+	 * @param initialState Initial state (if null, is selected randomly)
+	 * @param maxPathLength The maximum path length for sampling
+	 * @param seed Seed for the random number generator
+	 * @param pathIndex Index of the sample path
+	 */
+	long generateSamplePath(State initialState, long maxPathLength, long seed, long pathIndex) throws PrismException
+	{
+		// Antithetic pairs only reduce the variance of double-valued samplers (averaging
+		// the two values of a Boolean one would not give a Boolean), so, without any, just use one path
+		if (!antitheticPairs || !hasSamplerDouble())
+			return generateSamplePath(initialState, maxPathLength, seed, pathIndex, false);
+		// For antithetic pairs, generate both paths using the same stream,
+		// and use the average of their values for double-valued samplers
+		// (other samplers just take the value from the second path, which has the same distribution)
+		long length1 = generateSamplePath(initialState, maxPathLength, seed, pathIndex, false);
+		for (Sampler sampler : propertySamplers) {
+			if (sampler instanceof SamplerDouble)
+				((SamplerDouble) sampler).storeValue();
+		}
+		long length2 = generateSamplePath(initialState, maxPathLength, seed, pathIndex, true);
+		for (Sampler sampler : propertySamplers) {
+			if (sampler instanceof SamplerDouble)
+				((SamplerDouble) sampler).averageWithStoredValue();
+		}
+		return (length1 == -1 || length2 == -1) ? -1 : length1 + length2;
+	}
+
+	/**
+	 * Are any of the samplers for loaded properties double-valued (e.g. for reward properties)?
+	 */
+	private boolean hasSamplerDouble()
+	{
+		for (Sampler sampler : propertySamplers) {
+			if (sampler instanceof SamplerDouble)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Generate a single sample path (see {@link #generateSamplePath(State, long, long, long)}),
+	 * optionally using the antithetic version of the random number stream.
+	 */
+	private long generateSamplePath(State initialState, long maxPathLength, long seed, long pathIndex, boolean antithetic) throws PrismException
+	{
+		boolean allKnown = false;
+		boolean someUnknownButBounded = false;
+		long i = 0;
+
+		// Switch to the random number stream for this path
+		rng.setStream(seed, pathIndex);
+		rng.setAntithetic(antithetic);
+
+		// Start the new path for this iteration (sample)
+		initialisePath(initialState);
+		if (nextReactionMethod != null)
+			nextReactionMethod.initialise(path.getCurrentState());
+		if (tauLeaping != null)
+			tauLeaping.initialise(path.getCurrentState());
+
+		// Generate a path
+		while ((!allKnown && i < maxPathLength) || someUnknownButBounded) {
+			// Check status of samplers
+			allKnown = true;
+			someUnknownButBounded = false;
+			for (Sampler sampler : propertySamplers) {
+				if (!sampler.isCurrentValueKnown()) {
+					allKnown = false;
+					if (sampler.needsBoundedNumSteps())
+						someUnknownButBounded = true;
+				}
+			}
+			// Stop when all answers are known or we have reached max path length
+			// (but don't stop yet if there are "bounded" samplers with unkown values)
+			if ((allKnown || i >= maxPathLength) && !someUnknownButBounded)
+				break;
+			// Make a random transition
+			if (reactionNetwork != null)
+				reactionTransition();
+			else
+				automaticTransition();
+			i++;
+		}
+		rng.setAntithetic(false);
+
+		return allKnown ? i : -1;
+	}
+
+	/**
+	 * Set up Gillespie-style simulation of CTMCs for sampling (next reaction method or tau-leaping),
+	 * if selected in the settings and applicable (i.e. a CTMC and no strategy), or switch it off otherwise.
+	 * Returns true if it is in use.
+	 */
+	public boolean setUpReactionSimulation() throws PrismException
+	{
+		String method = (settings != null) ? settings.getString(PrismSettings.SIMULATOR_CTMC_METHOD) : "Standard";
+		reactionNetwork = null;
+		nextReactionMethod = null;
+		tauLeaping = null;
+		if (modelType != ModelType.CTMC || strategy != null || "Standard".equals(method))
+			return false;
+		// (as for the updater, constants are replaced in a copy of the model first)
+		reactionNetwork = new ReactionNetwork((ModulesFile) modulesFile.deepCopy().replaceConstants(mfConstants).simplify(), varList);
+		if ("Tau-leaping".equals(method)) {
+			tauLeaping = new TauLeaping(reactionNetwork, rng, settings.getDouble(PrismSettings.SIMULATOR_TAU_LEAP_EPSILON));
+			tmpTransitionRewards2 = new double[tmpTransitionRewards.length];
+		} else {
+			nextReactionMethod = new NextReactionMethod(reactionNetwork, rng);
+		}
+		return true;
+	}
+
+	/**
+	 * Make a random step in the current path using Gillespie-style simulation (see {@link #setUpReactionSimulation}):
+	 * a single transition (next reaction method) or possibly many (tau-leaping), whose transition rewards are summed.
+	 * Samplers are notified, as for {@link #automaticTransition}, but are not passed the
+	 * transition list for the new state (which is not computed) unless it is a deadlock.
+	 * If there is currently a deadlock, nothing is done and the function returns false.
+	 */
+	private boolean reactionTransition() throws PrismException
+	{
+		State state = path.getCurrentState();
+		double time, p;
+		int moduleOrActionIndex;
+		boolean deadlock;
+		if (nextReactionMethod != null) {
+			int r = nextReactionMethod.getNextReaction();
+			if (r == -1)
+				return false;
+			time = nextReactionMethod.getTimeToNextReaction();
+			p = nextReactionMethod.getPropensity(r);
+			moduleOrActionIndex = reactionNetwork.getModuleOrActionIndex(r);
+			updater.calculateTransitionRewards(state, moduleOrActionIndex, tmpTransitionRewards);
+			reactionNetwork.computeTarget(r, state, currentState);
+			nextReactionMethod.fireNextReaction(currentState);
+			deadlock = nextReactionMethod.getNextReaction() == -1;
+		} else {
+			if (tauLeaping.isDeadlock())
+				return false;
+			p = tauLeaping.getTotalPropensity();
+			time = tauLeaping.step(state, currentState);
+			// Sum transition rewards over all reactions that occurred
+			for (int j = 0; j < tmpTransitionRewards.length; j++)
+				tmpTransitionRewards[j] = 0.0;
+			for (int i = 0; i < tauLeaping.getNumFired(); i++) {
+				updater.calculateTransitionRewards(state, reactionNetwork.getModuleOrActionIndex(tauLeaping.getFiredReaction(i)), tmpTransitionRewards2);
+				for (int j = 0; j < tmpTransitionRewards.length; j++)
+					tmpTransitionRewards[j] += tauLeaping.getFiredCount(i) * tmpTransitionRewards2[j];
+			}
+			boolean single = tauLeaping.getNumFired() == 1 && tauLeaping.getFiredCount(0) == 1;
+			moduleOrActionIndex = single ? reactionNetwork.getModuleOrActionIndex(tauLeaping.getFiredReaction(0)) : 0;
+			deadlock = tauLeaping.isDeadlock();
+		}
+		// Compute state rewards for new state and update path
+		updater.calculateStateRewards(currentState, tmpStateRewards);
+		path.addStep(time, -1, moduleOrActionIndex, p, tmpTransitionRewards, currentState, tmpStateRewards, null);
+		transitionListBuilt = false;
+		transitionListState = null;
+		// Update samplers for any loaded properties
+		for (Sampler sampler : propertySamplers) {
+			sampler.update(path, deadlock ? deadlockTransitionList : null);
+		}
+		return true;
+	}
+
+	/**
+	 * Generate the blocks of paths of a round of sampling in parallel, splitting them between the workers
+	 * (one per thread), and return the statistics for each block (see {@link SamplingWorker#getStats()}).
+	 * Paths {@code firstPathIndex + blockBounds[b]} to {@code firstPathIndex + blockBounds[b + 1] - 1} form block {@code b}.
+	 * If a block stops early (see {@link SamplingWorker#generateSamplePaths}), the later blocks
+	 * of the same worker are not generated (and their statistics are null).
+	 */
+	private byte[][] generateBlocks(SamplingWorker workers[], State initialState, long maxPathLength, long seed, long firstPathIndex, int blockBounds[])
+			throws PrismException
+	{
+		byte blockStats[][] = new byte[blockBounds.length - 1][];
+		int workerBounds[] = WorkerPool.splitRange(blockBounds.length - 1, workers.length);
+		WorkerPool.run(workers.length, workerBounds.length - 1, w -> {
+			for (int b = workerBounds[w]; b < workerBounds[w + 1]; b++) {
+				workers[w].generateSamplePaths(initialState, maxPathLength, seed, firstPathIndex + blockBounds[b], blockBounds[b + 1] - blockBounds[b]);
+				blockStats[b] = workers[w].getStats();
+				if (workers[w].stoppedEarly)
+					break;
+			}
+		});
+		return blockStats;
+	}
+
+	/**
+	 * Create the workers for sampling of the currently loaded properties (see {@link #doSampling}).
+	 * Each one is a separate simulator (with its own updater, path, samplers and random number generator).
+	 */
+	private SamplingWorker[] createSamplingWorkers(int numThreads) throws PrismException
+	{
+		SamplingWorker workers[] = new SamplingWorker[numThreads];
+		for (int w = 0; w < numThreads; w++) {
+			SimulatorEngine engine = new SimulatorEngine(this);
+			engine.createNewOnTheFlyPath(modulesFile);
+			engine.setAntitheticPairs(antitheticPairs);
+			engine.setControlVariate(controlVariate, controlVariatePF, controlVariateMean);
+			// Properties have already been processed (constants replaced etc.)
+			for (Expression prop : properties) {
+				engine.addProperty(prop);
+			}
+			engine.setUpReactionSimulation();
+			workers[w] = new SamplingWorker(engine);
+		}
+		return workers;
+	}
+
 	/**
 	 * Halt the sampling algorithm in its tracks (not implemented).
 	 */
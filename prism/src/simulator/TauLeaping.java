@@ -0,0 +1,335 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package simulator;
+
+import java.util.Arrays;
+
+import parser.State;
+import parser.VarList;
+import prism.PrismLangException;
+
+/**
+ * Approximate stochastic simulation of a CTMC, given as a {@link ReactionNetwork}, using tau-leaping
+ * with the step size selection and handling of critical reactions from
+ * Y. Cao, D. Gillespie and L. Petzold, "Efficient step size selection for the tau-leaping simulation method",
+ * J. Chem. Phys. 124, 2006.
+ * Each step (leap) fires a Poisson-distributed number of occurrences of each non-critical reaction,
+ * over a time period chosen so that the propensities change by (roughly) at most a fraction epsilon,
+ * plus at most one occurrence of a critical reaction (one that could take a variable out of its range within
+ * a few occurrences, or whose updates are not of the form x'=x+c). When a leap is not worthwhile,
+ * a single reaction is simulated exactly instead.
+ */
+public class TauLeaping
+{
+	/** Number of occurrences within which a reaction that could exhaust a variable is considered critical */
+	private static final int NUM_CRITICAL = 10;
+	/** Leaps shorter than this multiple of the expected time to the next reaction are replaced by exact steps */
+	private static final double MIN_LEAP = 10.0;
+	/** Constant g_i for step size selection (a bound for the highest order of reaction in the variable) */
+	private static final double G = 2.0;
+
+	private ReactionNetwork network;
+	private RandomNumberGenerator rng;
+	private double epsilon;
+	private VarList varList;
+	// Propensities of reactions in the current state, and their sum
+	private double propensities[];
+	private double a0;
+	// Temporary storage
+	private int stamps[];
+	private int stamp;
+	private boolean critical[];
+	private double mu[];
+	private double sigma2[];
+	private long deltas[];
+	// Results of the last step: reactions that occurred, and how many times
+	private int numFired;
+	private int fired[];
+	private long counts[];
+
+	/**
+	 * Create a tau-leaping simulator.
+	 * @param epsilon Error control parameter (e.g. 0.03)
+	 */
+	public TauLeaping(ReactionNetwork network, RandomNumberGenerator rng, double epsilon)
+	{
+		this.network = network;
+		this.rng = rng;
+		this.epsilon = epsilon;
+		varList = network.getVarList();
+		int n = network.getNumReactions();
+		propensities = new double[n];
+		critical = new boolean[n];
+		stamps = new int[n];
+		fired = new int[n];
+		counts = new long[n];
+		int numVars = varList.getNumVars();
+		mu = new double[numVars];
+		sigma2 = new double[numVars];
+		deltas = new long[numVars];
+	}
+
+	/**
+	 * (Re-)start simulation from a state.
+	 */
+	public void initialise(State state) throws PrismLangException
+	{
+		for (int r = 0; r < propensities.length; r++) {
+			propensities[r] = network.computePropensity(r, state);
+		}
+		sumPropensities();
+	}
+
+	/**
+	 * Is the current state a deadlock, i.e. are no reactions enabled?
+	 */
+	public boolean isDeadlock()
+	{
+		return a0 == 0.0;
+	}
+
+	/**
+	 * Get the total propensity of all reactions in the current state.
+	 */
+	public double getTotalPropensity()
+	{
+		return a0;
+	}
+
+	/**
+	 * Perform a step (a leap, or a single exact reaction) from {@code currentState} (the current state),
+	 * storing the resulting state in {@code newState} (which should be a copy of {@code currentState} when passed in).
+	 * Returns the time taken by the step, or -1 if no reaction is enabled (i.e. a deadlock).
+	 * Afterwards, the reactions that occurred are available via {@link #getNumFired} etc.
+	 */
+	public double step(State currentState, State newState) throws PrismLangException
+	{
+		int n = network.getNumReactions();
+		numFired = 0;
+		if (a0 == 0.0)
+			return -1;
+		// Find critical reactions and compute mean/variance of change in each variable from non-critical ones
+		Arrays.fill(mu, 0.0);
+		Arrays.fill(sigma2, 0.0);
+		double a0c = 0.0;
+		boolean someNonCritical = false;
+		for (int r = 0; r < n; r++) {
+			if (propensities[r] == 0.0) {
+				critical[r] = false;
+				continue;
+			}
+			critical[r] = isCritical(r, currentState);
+			if (critical[r]) {
+				a0c += propensities[r];
+			} else {
+				someNonCritical = true;
+				int vars[] = network.getChangeVars(r);
+				int values[] = network.getChangeValues(r);
+				for (int i = 0; i < vars.length; i++) {
+					mu[vars[i]] += values[i] * propensities[r];
+					sigma2[vars[i]] += values[i] * (double) values[i] * propensities[r];
+				}
+			}
+		}
+		// Step size for non-critical reactions
+		double tau1 = Double.POSITIVE_INFINITY;
+		if (someNonCritical) {
+			for (int v = 0; v < mu.length; v++) {
+				if (mu[v] == 0.0 && sigma2[v] == 0.0)
+					continue;
+				double bound = Math.max(epsilon * Math.abs(getInt(currentState, v)) / G, 1.0);
+				tau1 = Math.min(tau1, bound / Math.abs(mu[v]));
+				tau1 = Math.min(tau1, bound * bound / sigma2[v]);
+			}
+		}
+		// If a leap is not worthwhile, just do an exact step
+		if (tau1 < MIN_LEAP / a0) {
+			return exactStep(currentState, newState);
+		}
+		// Leap (halving the step size for non-critical reactions if it would take a variable out of range)
+		while (true) {
+			double tau2 = a0c > 0.0 ? rng.randomExpDouble(a0c) : Double.POSITIVE_INFINITY;
+			double tau = Math.min(tau1, tau2);
+			numFired = 0;
+			Arrays.fill(deltas, 0);
+			for (int r = 0; r < n; r++) {
+				if (propensities[r] > 0.0 && !critical[r]) {
+					long k = rng.randomPoisson(propensities[r] * tau);
+					if (k > 0) {
+						fired[numFired] = r;
+						counts[numFired++] = k;
+						int vars[] = network.getChangeVars(r);
+						int values[] = network.getChangeValues(r);
+						for (int i = 0; i < vars.length; i++) {
+							deltas[vars[i]] += k * values[i];
+						}
+					}
+				}
+			}
+			// One critical reaction occurs, if it is first
+			int rCritical = -1;
+			if (tau2 <= tau1) {
+				rCritical = pickReaction(a0c, true);
+			}
+			// Check new values are in range
+			boolean ok = true;
+			for (int v = 0; v < deltas.length && ok; v++) {
+				if (deltas[v] != 0) {
+					long x = getInt(currentState, v) + deltas[v];
+					ok = x >= varList.getLow(v) && x <= varList.getHigh(v);
+				}
+			}
+			if (!ok) {
+				tau1 /= 2;
+				if (tau1 < MIN_LEAP / a0) {
+					return exactStep(currentState, newState);
+				}
+				continue;
+			}
+			// Apply changes
+			if (rCritical != -1) {
+				network.computeTarget(rCritical, currentState, newState);
+				fired[numFired] = rCritical;
+				counts[numFired++] = 1;
+			}
+			for (int v = 0; v < deltas.length; v++) {
+				if (deltas[v] != 0) {
+					newState.setValue(v, (int) (getInt(newState, v) + deltas[v]));
+				}
+			}
+			updatePropensities(newState);
+			return tau;
+		}
+	}
+
+	/**
+	 * Simulate a single reaction exactly (direct method).
+	 */
+	private double exactStep(State currentState, State newState) throws PrismLangException
+	{
+		int r = pickReaction(a0, false);
+		network.computeTarget(r, currentState, newState);
+		numFired = 1;
+		fired[0] = r;
+		counts[0] = 1;
+		double time = rng.randomExpDouble(a0);
+		updatePropensities(newState);
+		return time;
+	}
+
+	/**
+	 * Recompute the propensities that may have been affected by the reactions in the last step.
+	 */
+	private void updatePropensities(State newState) throws PrismLangException
+	{
+		stamp++;
+		for (int i = 0; i < numFired; i++) {
+			for (int r : network.getDependents(fired[i])) {
+				if (stamps[r] != stamp) {
+					stamps[r] = stamp;
+					propensities[r] = network.computePropensity(r, newState);
+				}
+			}
+		}
+		sumPropensities();
+	}
+
+	private void sumPropensities()
+	{
+		a0 = 0.0;
+		for (int r = 0; r < propensities.length; r++) {
+			a0 += propensities[r];
+		}
+	}
+
+	/**
+	 * Pick a reaction at random, in proportion to propensities, from all reactions
+	 * or just critical ones, whose propensities sum to {@code sum}.
+	 */
+	private int pickReaction(double sum, boolean criticalOnly)
+	{
+		double x = rng.randomUnifDouble(sum);
+		int last = -1;
+		for (int r = 0; r < propensities.length; r++) {
+			if (propensities[r] == 0.0 || (criticalOnly && !critical[r]))
+				continue;
+			last = r;
+			x -= propensities[r];
+			if (x < 0)
+				return r;
+		}
+		// In case of round-off
+		return last;
+	}
+
+	/**
+	 * Is (enabled) reaction {@code r} critical in a state?
+	 */
+	private boolean isCritical(int r, State state)
+	{
+		int vars[] = network.getChangeVars(r);
+		if (vars == null)
+			return true;
+		int values[] = network.getChangeValues(r);
+		for (int i = 0; i < vars.length; i++) {
+			int x = getInt(state, vars[i]);
+			int room = values[i] < 0 ? x - varList.getLow(vars[i]) : varList.getHigh(vars[i]) - x;
+			if (room / Math.abs(values[i]) < NUM_CRITICAL)
+				return true;
+		}
+		return false;
+	}
+
+	private static int getInt(State state, int v)
+	{
+		return (Integer) state.varValues[v];
+	}
+
+	// Results of last step
+
+	/**
+	 * Get the number of distinct reactions that occurred in the last step.
+	 */
+	public int getNumFired()
+	{
+		return numFired;
+	}
+
+	/**
+	 * Get the {@code i}th reaction that occurred in the last step.
+	 */
+	public int getFiredReaction(int i)
+	{
+		return fired[i];
+	}
+
+	/**
+	 * Get the number of occurrences of the {@code i}th reaction that occurred in the last step.
+	 */
+	public long getFiredCount(int i)
+	{
+		return counts[i];
+	}
+}
@@ -35,9 +35,9 @@ public class TransitionList
 {
 	private ArrayList<Choice> choices = new ArrayList<Choice>();
 	/** The index of the choice containing each transition. */
-	private ArrayList<Integer> transitionIndices = new ArrayList<Integer>();
+	private int[] transitionIndices = new int[16];
 	/** The offset with the choice containing each transition. */
-	private ArrayList<Integer> transitionOffsets = new ArrayList<Integer>();
+	private int[] transitionOffsets = new int[16];
 	private int numChoices = 0;
 	private int numTransitions = 0;
 	private double probSum = 0.0;
@@ -54,8 +54,6 @@ public class TransitionList
 	public void clear()
 	{
 		choices.clear();
-		transitionIndices.clear();
-		transitionOffsets.clear();
 		numChoices = 0;
 		numTransitions = 0;
 		probSum = 0.0;
@@ -66,9 +64,14 @@ public class TransitionList
 		int i, n;
 		choices.add(tr);
 		n = tr.size();
+		if (numTransitions + n > transitionIndices.length) {
+			int newLength = Math.max(2 * transitionIndices.length, numTransitions + n);
+			transitionIndices = Arrays.copyOf(transitionIndices, newLength);
+			transitionOffsets = Arrays.copyOf(transitionOffsets, newLength);
+		}
 		for (i = 0; i < n; i++) {
-			transitionIndices.add(choices.size() - 1);
-			transitionOffsets.add(i);
+			transitionIndices[numTransitions + i] = numChoices;
+			transitionOffsets[numTransitions + i] = i;
 		}
 		numChoices++;
 		numTransitions += tr.size();
@@ -126,7 +129,7 @@ public class TransitionList
 	 */
 	public Choice getChoiceOfTransition(int index)
 	{
-		return choices.get(transitionIndices.get(index));
+		return choices.get(transitionIndices[index]);
 	}
 
 	// Get index/offset info
@@ -136,7 +139,7 @@ public class TransitionList
 	 */
 	public int getChoiceIndexOfTransition(int index)
 	{
-		return transitionIndices.get(index);
+		return transitionIndices[index];
 	}
 
 	/**
@@ -144,7 +147,7 @@ public class TransitionList
 	 */
 	public int getChoiceOffsetOfTransition(int index)
 	{
-		return transitionOffsets.get(index);
+		return transitionOffsets[index];
 	}
 
 	/**
@@ -152,7 +155,11 @@ public class TransitionList
 	 */
 	public int getTotalIndexOfTransition(int i, int offset)
 	{
-		return transitionIndices.indexOf(i) + offset;
+		for (int j = 0; j < numTransitions; j++) {
+			if (transitionIndices[j] == i)
+				return j + offset;
+		}
+		return -1 + offset;
 	}
 
 	// Random selection of a choice 
@@ -220,7 +227,7 @@ public class TransitionList
 	 */
 	public double getTransitionProbability(int index)
 	{
-		return getChoiceOfTransition(index).getProbability(transitionOffsets.get(index));
+		return getChoiceOfTransition(index).getProbability(transitionOffsets[index]);
 	}
 
 	/**
@@ -231,7 +238,7 @@ public class TransitionList
 	 */
 	public String getTransitionUpdateString(int index, State currentState) throws PrismLangException
 	{
-		return getChoiceOfTransition(index).getUpdateString(transitionOffsets.get(index), currentState);
+		return getChoiceOfTransition(index).getUpdateString(transitionOffsets[index], currentState);
 	}
 
 	/**
@@ -243,7 +250,7 @@ public class TransitionList
 	 */
 	public String getTransitionUpdateStringFull(int index)
 	{
-		return getChoiceOfTransition(index).getUpdateStringFull(transitionOffsets.get(index));
+		return getChoiceOfTransition(index).getUpdateStringFull(transitionOffsets[index]);
 	}
 
 	/**
@@ -251,7 +258,7 @@ public class TransitionList
 	 */
 	public State computeTransitionTarget(int index, State currentState) throws PrismLangException
 	{
-		return getChoiceOfTransition(index).computeTarget(transitionOffsets.get(index), currentState);
+		return getChoiceOfTransition(index).computeTarget(transitionOffsets[index], currentState);
 	}
 	
 	// Other checks and queries
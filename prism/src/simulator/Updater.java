@@ -28,18 +28,24 @@ package simulator;
 
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Vector;
 
+import parser.EvaluateContextState;
 import parser.State;
 import parser.VarList;
 import parser.ast.Command;
+import parser.ast.Expression;
 import parser.ast.Module;
 import parser.ast.ModulesFile;
 import parser.ast.RewardStruct;
 import parser.ast.Update;
 import parser.ast.Updates;
+import parser.compiler.CompiledExpression;
+import parser.compiler.ExpressionCompiler;
 import prism.ModelType;
 import prism.PrismComponent;
 import prism.PrismException;
@@ -78,6 +84,83 @@ public class Updater extends PrismComponent
 	// (where j=0 denotes independent, otherwise 1-indexed action label)
 	protected BitSet enabledModules[];
 
+	// Whether to reuse Choice objects across calls to calculateTransitions
+	// (in which case, a TransitionList is only valid until the next call)
+	protected boolean reuseChoices = false;
+	// Pool of (reusable) Choice objects, and number currently in use
+	protected List<ChoiceListFlexi> choicePool = new ArrayList<ChoiceListFlexi>();
+	protected int choicePoolUsed = 0;
+	// Temporary storage for the synchronous choices for a single action
+	protected List<ChoiceListFlexi> chs = new ArrayList<ChoiceListFlexi>();
+	// Context for evaluating expressions in a state (reused, rather than created for each evaluation)
+	protected EvaluateContextState stateContext = null;
+
+	// Compiled versions of guards (per module/command), probabilities/rates (per Updates),
+	// updates (per Update) and reward structure items (per reward struct/item),
+	// or null if expressions are not compiled.
+	// Entries for individual expressions that could not be compiled are null
+	// (and updates are only compiled if all of their expressions can be).
+	protected CompiledExpression compiledGuards[][] = null;
+	protected IdentityHashMap<Updates, CompiledExpression[]> compiledProbs = null;
+	protected IdentityHashMap<Update, CompiledExpression[]> compiledUpdates = null;
+	protected CompiledExpression compiledRewardGuards[][] = null;
+	protected CompiledExpression compiledRewards[][] = null;
+	// Variable values of the state being explored, for compiled expressions
+	protected int stateValues[];
+	// Are the values in stateValues those of the state currently being explored?
+	protected boolean stateValuesOk = false;
+
+	// Index of the variables read by each module (see buildModuleIndex()), used to avoid re-evaluating
+	// guards and to cache the choices of modules, keyed by the values of the variables they read.
+	// Modules with fewer commands than this are not indexed
+	protected static final int INDEX_MIN_COMMANDS = 4;
+	// Maximum number of entries in the cache for each module
+	protected static final int MODULE_CACHE_MAX_SIZE = 1 << 16;
+	// Number of lookups for a module after which the usefulness of its index/cache is reviewed
+	protected static final int INDEX_REVIEW_LOOKUPS = 1 << 12;
+	// Indices of the variables read by the guards or probabilities/rates of each module (null if the module is not indexed)
+	protected int indexVars[][];
+	// For each module and each of its variables (position in indexVars), the commands whose guards read it
+	protected int indexVarCommands[][][];
+	// Multipliers to encode the values of each module's variables as a long (null if not possible)
+	protected long indexVarMultipliers[][];
+	// Lower/upper bounds of each module's variables (position in indexVars)
+	protected int indexVarLows[][];
+	protected int indexVarHighs[][];
+	// Number of lookups, cache hits and guard evaluations for each module so far
+	protected int indexLookups[];
+	protected int indexHits[];
+	protected long indexEvaluations[];
+	// Values of each module's variables when its guards were last evaluated
+	protected int lastIndexValues[][];
+	// Were all guards of each module evaluated last time (i.e., is lastEnabledCommands valid)?
+	protected boolean lastGuardsOk[];
+	// Commands of each module that were enabled when its guards were last evaluated
+	protected BitSet lastEnabledCommands[];
+	// Commands whose guards need to be re-evaluated (temporary storage)
+	protected BitSet dirtyCommands = new BitSet();
+	// Cache of the enabled commands and their choices for each module, keyed by the encoded values of its variables
+	protected List<HashMap<Long, ModuleCacheEntry>> moduleCache;
+	// Cache entry for each module in the state being explored (or null if there is none)
+	protected ModuleCacheEntry moduleEntries[];
+	// Variable values of the state being explored, for the index
+	protected int indexStateValues[];
+	// Are the values in indexStateValues those of the state currently being explored?
+	protected boolean indexStateValuesOk = false;
+
+	/**
+	 * Cached info about a module, for one valuation of the variables read by its guards and probabilities/rates.
+	 */
+	protected static class ModuleCacheEntry
+	{
+		// Indices of the enabled commands (in ascending order)
+		public int commands[];
+		// Updates of the enabled commands
+		public Updates updates[];
+		// Choice (without module/action index) for each enabled command, built when first needed (null until then)
+		public ChoiceListFlexi choices[];
+	}
+
 	public Updater(ModulesFile modulesFile, VarList varList)
 	{
 		this(modulesFile, varList, null);
@@ -128,6 +211,192 @@ public class Updater extends PrismComponent
 		for (int j = 0; j < numSynchs + 1; j++) {
 			enabledModules[j] = new BitSet(numModules);
 		}
+
+		// Compile model expressions, if required
+		if (parent.getSettings().getBoolean(PrismSettings.PRISM_COMPILE_EXPRESSIONS)) {
+			compileExpressions();
+		}
+		
+		// Index the variables read by guards
+		buildModuleIndex();
+	}
+
+	/**
+	 * Build, for each module with enough commands, an index from variables to the commands whose guards
+	 * read them, and set up a cache of enabled commands and their (local) choices, keyed by the values
+	 * of the variables read by the module's guards and probabilities/rates.
+	 * When exploring a state, guards then only need to be evaluated if the valuation is not in the cache,
+	 * and then only those which read a variable that changed since the last evaluation.
+	 * Likewise, the probabilities/rates of each enabled command are only evaluated once per valuation.
+	 * If the variables read by a module cannot be determined, the module is not indexed.
+	 */
+	protected void buildModuleIndex()
+	{
+		int numVars = varList.getNumVars();
+		indexVars = new int[numModules][];
+		indexVarCommands = new int[numModules][][];
+		indexVarMultipliers = new long[numModules][];
+		lastIndexValues = new int[numModules][];
+		lastGuardsOk = new boolean[numModules];
+		indexVarLows = new int[numModules][];
+		indexVarHighs = new int[numModules][];
+		indexLookups = new int[numModules];
+		indexHits = new int[numModules];
+		indexEvaluations = new long[numModules];
+		lastEnabledCommands = new BitSet[numModules];
+		moduleCache = new ArrayList<HashMap<Long, ModuleCacheEntry>>(numModules);
+		moduleEntries = new ModuleCacheEntry[numModules];
+		indexStateValues = new int[numVars];
+		for (int m = 0; m < numModules; m++) {
+			moduleCache.add(null);
+			Module module = modulesFile.getModule(m);
+			int numCommands = module.getNumCommands();
+			if (numCommands < INDEX_MIN_COMMANDS)
+				continue;
+			// Find the variables read by each guard, and by probabilities/rates
+			List<List<Integer>> commandsPerVar = new ArrayList<List<Integer>>(numVars);
+			for (int v = 0; v < numVars; v++)
+				commandsPerVar.add(new ArrayList<Integer>());
+			BitSet probVars = new BitSet(numVars);
+			boolean ok = true;
+			for (int c = 0; c < numCommands && ok; c++) {
+				try {
+					Command command = module.getCommand(c);
+					for (String name : command.getGuard().getAllVars()) {
+						int v = varList.getIndex(name);
+						if (v == -1) {
+							ok = false;
+							break;
+						}
+						commandsPerVar.get(v).add(c);
+					}
+					Updates ups = command.getUpdates();
+					for (int i = 0; i < ups.getNumUpdates() && ok; i++) {
+						Expression p = ups.getProbability(i);
+						if (p != null) {
+							for (String name : p.getAllVars()) {
+								int v = varList.getIndex(name);
+								if (v == -1) {
+									ok = false;
+									break;
+								}
+								probVars.set(v);
+							}
+						}
+					}
+				} catch (PrismLangException e) {
+					ok = false;
+				}
+			}
+			if (!ok)
+				continue;
+			// Store the index (for variables read by at least one guard or probability/rate)
+			List<Integer> vars = new ArrayList<Integer>();
+			for (int v = 0; v < numVars; v++)
+				if (!commandsPerVar.get(v).isEmpty() || probVars.get(v))
+					vars.add(v);
+			int n = vars.size();
+			indexVars[m] = new int[n];
+			indexVarCommands[m] = new int[n][];
+			indexVarLows[m] = new int[n];
+			indexVarHighs[m] = new int[n];
+			for (int p = 0; p < n; p++) {
+				int v = vars.get(p);
+				indexVars[m][p] = v;
+				indexVarLows[m][p] = varList.getLow(v);
+				indexVarHighs[m][p] = varList.getHigh(v);
+				List<Integer> cmds = commandsPerVar.get(v);
+				indexVarCommands[m][p] = new int[cmds.size()];
+				for (int k = 0; k < cmds.size(); k++)
+					indexVarCommands[m][p][k] = cmds.get(k);
+			}
+			lastIndexValues[m] = new int[n];
+			lastEnabledCommands[m] = new BitSet(numCommands);
+			// Set up the cache, if the valuations of the variables can be encoded as a long
+			long mult = 1;
+			long mults[] = new long[n];
+			for (int p = 0; p < n && mults != null; p++) {
+				mults[p] = mult;
+				long range = varList.getRange(indexVars[m][p]);
+				if (mult > Long.MAX_VALUE / range)
+					mults = null;
+				else
+					mult *= range;
+			}
+			if (mults != null) {
+				indexVarMultipliers[m] = mults;
+				moduleCache.set(m, new HashMap<Long, ModuleCacheEntry>());
+			}
+		}
+	}
+
+	/**
+	 * Compile the guards, probabilities/rates, updates and rewards of the model,
+	 * so that they can be evaluated without interpretation (and boxing of values).
+	 * Any expressions that cannot be compiled are left to be interpreted as usual.
+	 * Compiled updates are kept here (not in the model's Update objects, which may be shared
+	 * with other Updaters) and passed on to the choices that this Updater creates.
+	 */
+	protected void compileExpressions()
+	{
+		ExpressionCompiler compiler = new ExpressionCompiler(modulesFile.getConstantValues());
+		compiledGuards = new CompiledExpression[numModules][];
+		compiledProbs = new IdentityHashMap<Updates, CompiledExpression[]>();
+		compiledUpdates = new IdentityHashMap<Update, CompiledExpression[]>();
+		for (int m = 0; m < numModules; m++) {
+			Module module = modulesFile.getModule(m);
+			int numCommands = module.getNumCommands();
+			compiledGuards[m] = new CompiledExpression[numCommands];
+			for (int c = 0; c < numCommands; c++) {
+				Command command = module.getCommand(c);
+				compiledGuards[m][c] = compileOrNull(compiler, command.getGuard());
+				Updates ups = command.getUpdates();
+				int numUpdates = ups.getNumUpdates();
+				CompiledExpression probs[] = new CompiledExpression[numUpdates];
+				for (int i = 0; i < numUpdates; i++) {
+					// (a missing probability means 1, which is not worth compiling)
+					Expression p = ups.getProbability(i);
+					probs[i] = p == null ? null : compileOrNull(compiler, p);
+					// Updates are only compiled if all of their expressions can be
+					Update up = ups.getUpdate(i);
+					int numElements = up.getNumElements();
+					CompiledExpression exprs[] = new CompiledExpression[numElements];
+					for (int j = 0; j < numElements && exprs != null; j++) {
+						exprs[j] = compileOrNull(compiler, up.getExpression(j));
+						if (exprs[j] == null)
+							exprs = null;
+					}
+					if (exprs != null)
+						compiledUpdates.put(up, exprs);
+				}
+				compiledProbs.put(ups, probs);
+			}
+		}
+		compiledRewardGuards = new CompiledExpression[numRewardStructs][];
+		compiledRewards = new CompiledExpression[numRewardStructs][];
+		for (int r = 0; r < numRewardStructs; r++) {
+			RewardStruct rw = modulesFile.getRewardStruct(r);
+			int n = rw.getNumItems();
+			compiledRewardGuards[r] = new CompiledExpression[n];
+			compiledRewards[r] = new CompiledExpression[n];
+			for (int j = 0; j < n; j++) {
+				compiledRewardGuards[r][j] = compileOrNull(compiler, rw.getStates(j));
+				compiledRewards[r][j] = compileOrNull(compiler, rw.getReward(j));
+			}
+		}
+		stateValues = new int[varList.getNumVars()];
+	}
+
+	/**
+	 * Compile an expression, returning null if this is not possible.
+	 */
+	private static CompiledExpression compileOrNull(ExpressionCompiler compiler, Expression expr)
+	{
+		try {
+			return compiler.compile(expr);
+		} catch (PrismLangException e) {
+			return null;
+		}
 	}
 
 	/**
@@ -146,6 +415,19 @@ public class Updater extends PrismComponent
 		return sumRoundOff;
 	}
 
+	/**
+	 * Set whether Choice objects are reused across calls to {@link #calculateTransitions}.
+	 * This avoids creating new objects for every state explored, e.g. when sampling paths,
+	 * but means that the contents of a TransitionList (and its Choice objects)
+	 * are only valid until the next call to {@link #calculateTransitions}.
+	 */
+	public void setReuseChoices(boolean reuseChoices)
+	{
+		this.reuseChoices = reuseChoices;
+		choicePool.clear();
+		choicePoolUsed = 0;
+	}
+
 	/**
 	 * Determine the set of outgoing transitions from state 'state' and store in 'transitionList'.
 	 * @param state State from which to explore
@@ -153,11 +435,12 @@ public class Updater extends PrismComponent
 	 */
 	public void calculateTransitions(State state, TransitionList transitionList) throws PrismException
 	{
-		List<ChoiceListFlexi> chs;
+		List<Updates> upsList;
 		int i, j, k, l, n, count;
 
 		// Clear lists/bitsets
 		transitionList.clear();
+		choicePoolUsed = 0;
 		for (i = 0; i < numModules; i++) {
 			for (j = 0; j < numSynchs + 1; j++) {
 				updateLists.get(i).get(j).clear();
@@ -167,6 +450,9 @@ public class Updater extends PrismComponent
 		for (i = 0; i < numSynchs + 1; i++) {
 			enabledModules[i].clear();
 		}
+		// Get variable values for compiled expressions (if used) and the guard index
+		indexStateValuesOk = CompiledExpression.toIntValues(state, indexStateValues);
+		stateValuesOk = compiledGuards != null && CompiledExpression.toIntValues(state, stateValues);
 
 		// Calculate the available updates for each module/action
 		// (update information in updateLists, enabledSynchs and enabledModules)
@@ -177,14 +463,15 @@ public class Updater extends PrismComponent
 
 		// Add independent transitions for each (enabled) module to list
 		for (i = enabledModules[0].nextSetBit(0); i >= 0; i = enabledModules[0].nextSetBit(i + 1)) {
-			for (Updates ups : updateLists.get(i).get(0)) {
-				ChoiceListFlexi ch = processUpdatesAndCreateNewChoice(-(i + 1), ups, state);
+			upsList = updateLists.get(i).get(0);
+			n = upsList.size();
+			for (j = 0; j < n; j++) {
+				ChoiceListFlexi ch = createChoice(-(i + 1), i, upsList.get(j), state);
 				if (ch.size() > 0)
 					transitionList.add(ch);
 			}
 		}
 		// Add synchronous transitions to list
-		chs = new ArrayList<ChoiceListFlexi>();
 		for (i = enabledSynchs.nextSetBit(1); i >= 0; i = enabledSynchs.nextSetBit(i + 1)) {
 			chs.clear();
 			// Check counts to see if this action is blocked by some module
@@ -192,21 +479,23 @@ public class Updater extends PrismComponent
 				continue;
 			// If not, proceed...
 			for (j = enabledModules[i].nextSetBit(0); j >= 0; j = enabledModules[i].nextSetBit(j + 1)) {
-				count = updateLists.get(j).get(i).size();
+				upsList = updateLists.get(j).get(i);
+				count = upsList.size();
 				// Case where there is only 1 Updates for this module
 				if (count == 1) {
-					Updates ups = updateLists.get(j).get(i).get(0);
+					Updates ups = upsList.get(0);
 					// Case where this is the first Choice created
 					if (chs.size() == 0) {
-						ChoiceListFlexi ch = processUpdatesAndCreateNewChoice(i, ups, state);
+						ChoiceListFlexi ch = createChoice(i, j, ups, state);
 						if (ch.size() > 0)
 							chs.add(ch);
 					}
 					// Case where there are existing Choices
 					else {
 						// Product with all existing choices
-						for (ChoiceListFlexi ch : chs) {
-							processUpdatesAndAddToProduct(ups, state, ch);
+						n = chs.size();
+						for (l = 0; l < n; l++) {
+							processUpdatesAndAddToProduct(j, ups, state, chs.get(l));
 						}
 					}
 				}
@@ -214,8 +503,8 @@ public class Updater extends PrismComponent
 				else {
 					// Case where there are no existing choices
 					if (chs.size() == 0) {
-						for (Updates ups : updateLists.get(j).get(i)) {
-							ChoiceListFlexi ch = processUpdatesAndCreateNewChoice(i, ups, state);
+						for (k = 0; k < count; k++) {
+							ChoiceListFlexi ch = createChoice(i, j, upsList.get(k), state);
 							if (ch.size() > 0)
 								chs.add(ch);
 						}
@@ -226,20 +515,21 @@ public class Updater extends PrismComponent
 						n = chs.size();
 						for (k = 0; k < count - 1; k++)
 							for (l = 0; l < n; l++)
-								chs.add(new ChoiceListFlexi(chs.get(l)));
+								chs.add(copyChoice(chs.get(l)));
 						// Products with existing choices
 						for (k = 0; k < count; k++) {
-							Updates ups = updateLists.get(j).get(i).get(k);
+							Updates ups = upsList.get(k);
 							for (l = 0; l < n; l++) {
-								processUpdatesAndAddToProduct(ups, state, chs.get(k * n + l));
+								processUpdatesAndAddToProduct(j, ups, state, chs.get(k * n + l));
 							}
 						}
 					}
 				}
 			}
 			// Add all new choices to transition list
-			for (ChoiceListFlexi ch : chs) {
-				transitionList.add(ch);
+			n = chs.size();
+			for (l = 0; l < n; l++) {
+				transitionList.add(chs.get(l));
 			}
 		}
 		
@@ -271,14 +561,16 @@ public class Updater extends PrismComponent
 		int i, j, n;
 		double d;
 		RewardStruct rw;
+		boolean compiled = compiledRewards != null && CompiledExpression.toIntValues(state, stateValues);
+		stateValuesOk = false;
 		for (i = 0; i < numRewardStructs; i++) {
 			rw = modulesFile.getRewardStruct(i);
 			n = rw.getNumItems();
 			d = 0.0;
 			for (j = 0; j < n; j++) {
 				if (!rw.getRewardStructItem(j).isTransitionReward())
-					if (rw.getStates(j).evaluateBoolean(state))
-						d += rw.getReward(j).evaluateDouble(state);
+					if (evaluateRewardGuard(rw, i, j, state, compiled))
+						d += evaluateReward(rw, i, j, state, compiled);
 			}
 			store[i] = d;
 		}
@@ -291,23 +583,59 @@ public class Updater extends PrismComponent
 	 * @param store An array in which to store the rewards
 	 */
 	public void calculateTransitionRewards(State state, Choice ch, double[] store) throws PrismLangException
+	{
+		calculateTransitionRewards(state, ch.getModuleOrActionIndex(), store);
+	}
+
+	/**
+	 * Calculate the transition rewards for a given state and an outgoing transition
+	 * for a given module/action (encoded as an integer, see {@link Choice#getModuleOrActionIndex()}).
+	 * @param state The state to compute rewards for
+	 * @param moduleOrActionIndex The module/action of the transition
+	 * @param store An array in which to store the rewards
+	 */
+	public void calculateTransitionRewards(State state, int moduleOrActionIndex, double[] store) throws PrismLangException
 	{
 		int i, j, n;
 		double d;
 		RewardStruct rw;
+		boolean compiled = compiledRewards != null && CompiledExpression.toIntValues(state, stateValues);
+		stateValuesOk = false;
 		for (i = 0; i < numRewardStructs; i++) {
 			rw = modulesFile.getRewardStruct(i);
 			n = rw.getNumItems();
 			d = 0.0;
 			for (j = 0; j < n; j++) {
 				if (rw.getRewardStructItem(j).isTransitionReward())
-					if (rw.getRewardStructItem(j).getSynchIndex() == Math.max(0, ch.getModuleOrActionIndex()))
-						if (rw.getStates(j).evaluateBoolean(state))
-							d += rw.getReward(j).evaluateDouble(state);
+					if (rw.getRewardStructItem(j).getSynchIndex() == Math.max(0, moduleOrActionIndex))
+						if (evaluateRewardGuard(rw, i, j, state, compiled))
+							d += evaluateReward(rw, i, j, state, compiled);
 			}
 			store[i] = d;
 		}
 	}
+
+	/**
+	 * Evaluate the guard of the {@code j}th item of reward structure {@code rw} (with index {@code r}) in a state,
+	 * using the compiled version if available (and {@code compiled} is true, i.e. stateValues holds the state).
+	 */
+	private boolean evaluateRewardGuard(RewardStruct rw, int r, int j, State state, boolean compiled) throws PrismLangException
+	{
+		if (compiled && compiledRewardGuards[r][j] != null)
+			return compiledRewardGuards[r][j].evaluateBoolean(stateValues);
+		return rw.getStates(j).evaluateBoolean(getStateContext(state));
+	}
+
+	/**
+	 * Evaluate the reward of the {@code j}th item of reward structure {@code rw} (with index {@code r}) in a state,
+	 * using the compiled version if available (and {@code compiled} is true, i.e. stateValues holds the state).
+	 */
+	private double evaluateReward(RewardStruct rw, int r, int j, State state, boolean compiled) throws PrismLangException
+	{
+		if (compiled && compiledRewards[r][j] != null)
+			return compiledRewards[r][j].evaluateDouble(stateValues);
+		return rw.getReward(j).evaluateDouble(getStateContext(state));
+	}
 	
 	// Private helpers
 	
@@ -324,10 +652,25 @@ public class Updater extends PrismComponent
 		int i, j, n;
 
 		module = modulesFile.getModule(m);
+		moduleEntries[m] = null;
+		// If the module is indexed, get its enabled commands from there
+		if (indexStateValuesOk && indexVars[m] != null && ++indexLookups[m] == INDEX_REVIEW_LOOKUPS) {
+			reviewModuleIndex(m);
+		}
+		if (indexStateValuesOk && indexVars[m] != null) {
+			for (int c : getEnabledCommands(m, state)) {
+				command = module.getCommand(c);
+				j = command.getSynchIndex();
+				updateLists.get(m).get(j).add(command.getUpdates());
+				enabledSynchs.set(j);
+				enabledModules[j].set(m);
+			}
+			return;
+		}
 		n = module.getNumCommands();
 		for (i = 0; i < n; i++) {
 			command = module.getCommand(i);
-			if (command.getGuard().evaluateBoolean(state)) {
+			if (evaluateGuard(m, i, command, state)) {
 				j = command.getSynchIndex();
 				updateLists.get(m).get(j).add(command.getUpdates());
 				enabledSynchs.set(j);
@@ -336,6 +679,135 @@ public class Updater extends PrismComponent
 		}
 	}
 
+	/**
+	 * Get the (indices, in ascending order, of the) enabled commands of the 'm'th module,
+	 * which is assumed to be indexed (see {@link #buildModuleIndex()}), in the state being explored,
+	 * whose variable values are in indexStateValues. Also sets the module's entry in moduleEntries,
+	 * if the result is (or can be put) in the cache.
+	 * @param m The module index
+	 * @param state State from which to explore
+	 */
+	private int[] getEnabledCommands(int m, State state) throws PrismLangException
+	{
+		int vars[] = indexVars[m];
+		int last[] = lastIndexValues[m];
+		BitSet enabled = lastEnabledCommands[m];
+		int n = vars.length;
+		// Look up the valuation of the variables in the cache (if they are in range)
+		HashMap<Long, ModuleCacheEntry> cache = moduleCache.get(m);
+		Long key = null;
+		if (cache != null) {
+			long mults[] = indexVarMultipliers[m];
+			int lows[] = indexVarLows[m];
+			int highs[] = indexVarHighs[m];
+			long k = 0;
+			for (int p = 0; p < n && k >= 0; p++) {
+				int val = indexStateValues[vars[p]];
+				if (val < lows[p] || val > highs[p])
+					k = -1;
+				else
+					k += (val - lows[p]) * mults[p];
+			}
+			if (k >= 0) {
+				key = k;
+				ModuleCacheEntry entry = cache.get(key);
+				if (entry != null) {
+					indexHits[m]++;
+					moduleEntries[m] = entry;
+					return entry.commands;
+				}
+			}
+		}
+		// Otherwise, (re-)evaluate the guards that read some variable whose value has changed
+		Module module = modulesFile.getModule(m);
+		dirtyCommands.clear();
+		if (!lastGuardsOk[m]) {
+			dirtyCommands.set(0, module.getNumCommands());
+		} else {
+			for (int p = 0; p < n; p++) {
+				if (indexStateValues[vars[p]] != last[p]) {
+					for (int c : indexVarCommands[m][p])
+						dirtyCommands.set(c);
+				}
+			}
+		}
+		lastGuardsOk[m] = false;
+		indexEvaluations[m] += dirtyCommands.cardinality();
+		for (int c = dirtyCommands.nextSetBit(0); c >= 0; c = dirtyCommands.nextSetBit(c + 1)) {
+			enabled.set(c, evaluateGuard(m, c, module.getCommand(c), state));
+		}
+		for (int p = 0; p < n; p++) {
+			last[p] = indexStateValues[vars[p]];
+		}
+		lastGuardsOk[m] = true;
+		// Store the result (in the cache, if possible)
+		int result[] = new int[enabled.cardinality()];
+		for (int c = enabled.nextSetBit(0), k = 0; c >= 0; c = enabled.nextSetBit(c + 1)) {
+			result[k++] = c;
+		}
+		if (key != null && cache.size() < MODULE_CACHE_MAX_SIZE) {
+			ModuleCacheEntry entry = new ModuleCacheEntry();
+			entry.commands = result;
+			entry.updates = new Updates[result.length];
+			for (int k = 0; k < result.length; k++) {
+				entry.updates[k] = module.getCommand(result[k]).getUpdates();
+			}
+			entry.choices = new ChoiceListFlexi[result.length];
+			cache.put(key, entry);
+			moduleEntries[m] = entry;
+		}
+		return result;
+	}
+
+	/**
+	 * Review the usefulness of the index for the 'm'th module, once it has been used for a while.
+	 * The cache is dropped if it is rarely hit (e.g., because the module's guards read most of the
+	 * state) and then the whole index is dropped if most guards get re-evaluated anyway.
+	 * @param m The module index
+	 */
+	private void reviewModuleIndex(int m)
+	{
+		if (moduleCache.get(m) != null && indexHits[m] < INDEX_REVIEW_LOOKUPS / 2) {
+			moduleCache.set(m, null);
+		}
+		int numCommands = modulesFile.getModule(m).getNumCommands();
+		if (moduleCache.get(m) == null && indexEvaluations[m] > (long) numCommands * INDEX_REVIEW_LOOKUPS / 2) {
+			indexVars[m] = null;
+		}
+	}
+
+	/**
+	 * Evaluate the guard of the 'c'th command (command) of the 'm'th module in (global) state 'state',
+	 * using the compiled version if available.
+	 */
+	private boolean evaluateGuard(int m, int c, Command command, State state) throws PrismLangException
+	{
+		CompiledExpression guard = stateValuesOk ? compiledGuards[m][c] : null;
+		if (guard != null)
+			return guard.evaluateBoolean(stateValues);
+		return command.getGuard().evaluateBoolean(getStateContext(state));
+	}
+
+	/**
+	 * Create a new Choice object (currently ChoiceListFlexi) based on an Updates object
+	 * from the 'm'th module and a (global) state, using the module's cached choice if possible.
+	 * @param moduleOrActionIndex Module/action for the choice, encoded as an integer (see Choice)
+	 * @param m The module index
+	 * @param ups The Updates object 
+	 * @param state Global state
+	 */
+	private ChoiceListFlexi createChoice(int moduleOrActionIndex, int m, Updates ups, State state) throws PrismLangException
+	{
+		ChoiceListFlexi cached = getCachedChoice(m, ups, state);
+		if (cached == null) {
+			return processUpdatesAndCreateNewChoice(moduleOrActionIndex, ups, state);
+		}
+		ChoiceListFlexi ch = newChoice();
+		ch.copyFrom(cached);
+		ch.setModuleOrActionIndex(moduleOrActionIndex);
+		return ch;
+	}
+
 	/**
 	 * Create a new Choice object (currently ChoiceListFlexi) based on an Updates object
 	 * and a (global) state. Check for negative probabilities/rates and, if appropriate,
@@ -346,19 +818,33 @@ public class Updater extends PrismComponent
 	 */
 	private ChoiceListFlexi processUpdatesAndCreateNewChoice(int moduleOrActionIndex, Updates ups, State state) throws PrismLangException
 	{
-		ChoiceListFlexi ch;
-		List<Update> list;
+		ChoiceListFlexi ch = newChoice();
+		ch.setModuleOrActionIndex(moduleOrActionIndex);
+		processUpdates(ch, ups, state);
+		return ch;
+	}
+
+	/**
+	 * Add the transitions for an Updates object in a (global) state to an (empty) ChoiceListFlexi.
+	 * Check for negative probabilities/rates and, if appropriate, check probabilities sum to 1 too.
+	 * @param ch The (empty) Choice object
+	 * @param ups The Updates object 
+	 * @param state Global state
+	 */
+	private void processUpdates(ChoiceListFlexi ch, Updates ups, State state) throws PrismLangException
+	{
 		int i, n;
 		double p, sum;
 
-		// Create choice and add all info
-		ch = new ChoiceListFlexi();
-		ch.setModuleOrActionIndex(moduleOrActionIndex);
 		n = ups.getNumUpdates();
 		sum = 0;
+		CompiledExpression probs[] = stateValuesOk ? compiledProbs.get(ups) : null;
 		for (i = 0; i < n; i++) {
 			// Compute probability/rate
-			p = ups.getProbabilityInState(i, state);
+			if (probs != null && probs[i] != null)
+				p = probs[i].evaluateDouble(stateValues);
+			else
+				p = ups.getProbabilityInState(i, getStateContext(state));
 			// Check for negative/NaN probabilities/rates
 			if (Double.isNaN(p) || p < 0) {
 				String s = modelType.choicesSumToOne() ? "Probability" : "Rate";
@@ -371,9 +857,7 @@ public class Updater extends PrismComponent
 			if (p == 0)
 				continue;
 			sum += p;
-			list = new ArrayList<Update>();
-			list.add(ups.getUpdate(i));
-			ch.add(p, list);
+			ch.add(p, ups.getUpdate(i));
 		}
 		// For now, PRISM treats empty (all zero probs/rates) distributions as an error.
 		// Later, when errors in symbolic model construction are improved, this might be relaxed.
@@ -387,22 +871,97 @@ public class Updater extends PrismComponent
 		if (doProbChecks && ch.size() > 0 && modelType.choicesSumToOne() && Math.abs(sum - 1) > sumRoundOff) {
 			throw new PrismLangException("Probabilities sum to " + sum + " in state " + state.toString(modulesFile), ups);
 		}
-		return ch;
 	}
 
 	/**
 	 * Create a new Choice object (currently ChoiceListFlexi) based on the product
-	 * of an existing ChoiceListFlexi and an Updates object, for some (global) state.
+	 * of an existing ChoiceListFlexi and an Updates object from the 'm'th module, for some (global) state,
+	 * using the module's cached choice if possible.
 	 * If appropriate, check probabilities sum to 1 too.
+	 * @param m The module index
 	 * @param ups The Updates object 
 	 * @param state Global state
 	 * @param ch The existing Choices object
 	 */
-	private void processUpdatesAndAddToProduct(Updates ups, State state, ChoiceListFlexi ch) throws PrismLangException
+	private void processUpdatesAndAddToProduct(int m, Updates ups, State state, ChoiceListFlexi ch) throws PrismLangException
 	{
+		ChoiceListFlexi cached = getCachedChoice(m, ups, state);
+		if (cached != null) {
+			ch.productWith(cached);
+			return;
+		}
 		// Create new choice (action index is 0 - not needed)
 		ChoiceListFlexi chNew = processUpdatesAndCreateNewChoice(0, ups, state);
 		// Build product with existing
 		ch.productWith(chNew);
 	}
+
+	/**
+	 * Get the cached (local) choice for an Updates object of the 'm'th module in the state
+	 * being explored, building it if this has not been done yet. Returns null if the
+	 * module has no cache entry for the state (see {@link #getEnabledCommands(int, State)}).
+	 * The returned object is shared and should not be modified.
+	 * @param m The module index
+	 * @param ups The Updates object 
+	 * @param state Global state
+	 */
+	private ChoiceListFlexi getCachedChoice(int m, Updates ups, State state) throws PrismLangException
+	{
+		ModuleCacheEntry entry = moduleEntries[m];
+		if (entry == null)
+			return null;
+		int n = entry.updates.length;
+		for (int k = 0; k < n; k++) {
+			if (entry.updates[k] == ups) {
+				if (entry.choices[k] == null) {
+					ChoiceListFlexi ch = new ChoiceListFlexi(compiledUpdates);
+					processUpdates(ch, ups, state);
+					entry.choices[k] = ch;
+				}
+				return entry.choices[k];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get a context for evaluating expressions in a state,
+	 * reusing the same object each time, to avoid per-evaluation allocation.
+	 */
+	private EvaluateContextState getStateContext(State state)
+	{
+		if (stateContext == null) {
+			stateContext = new EvaluateContextState(state);
+		}
+		return stateContext.setState(state);
+	}
+
+	/**
+	 * Get an empty ChoiceListFlexi object: a new one or, if reuse is enabled, one from the pool.
+	 */
+	private ChoiceListFlexi newChoice()
+	{
+		if (!reuseChoices) {
+			return new ChoiceListFlexi(compiledUpdates);
+		}
+		if (choicePoolUsed == choicePool.size()) {
+			choicePool.add(new ChoiceListFlexi(compiledUpdates));
+		}
+		ChoiceListFlexi ch = choicePool.get(choicePoolUsed++);
+		ch.clear();
+		return ch;
+	}
+
+	/**
+	 * Get a (shallow) copy of a ChoiceListFlexi object, reusing a pooled one if reuse is enabled.
+	 */
+	private ChoiceListFlexi copyChoice(ChoiceListFlexi ch)
+	{
+		if (!reuseChoices) {
+			return new ChoiceListFlexi(ch);
+		}
+		ChoiceListFlexi chNew = newChoice();
+		chNew.copyFrom(ch);
+		return chNew;
+	}
 }
@@ -100,6 +100,12 @@ public final class ACIconfidence extends CIMethod
 		// Easy: percentage of iters done so far
 		return ((10 * iters) / numSamples) * 10;
 	}
+
+	@Override
+	public int getMaxRemainingIterations(int iters)
+	{
+		return Math.max(0, numSamples - iters);
+	}
 	
 	@Override
 	public SimulationMethod clone()
@@ -142,6 +142,12 @@ public abstract class APMCMethod extends SimulationMethod
 		return ((10 * iters) / numSamples) * 10;
 	}
 
+	@Override
+	public int getMaxRemainingIterations(int iters)
+	{
+		return Math.max(0, numSamples - iters);
+	}
+
 	@Override
 	public Object getResult(Sampler sampler) throws PrismException
 	{
@@ -0,0 +1,180 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package simulator.method;
+
+import parser.ast.Expression;
+import prism.PrismException;
+import simulator.sampler.Sampler;
+
+/**
+ * SimulationMethod class for batch-sequential sampling:
+ * wraps another (sequential) method, whose stopping rule is only checked
+ * once every {@code batchSize} samples, rather than after every sample.
+ * This reduces the overhead of checking expensive stopping rules,
+ * and the number of times an early, unreliable estimate can cause sampling to stop.
+ * It also makes the number of samples, and so the result, independent of how
+ * the samples are divided between threads or worker processes.
+ */
+public final class BatchSequentialMethod extends SimulationMethod
+{
+	// Underlying method
+	private SimulationMethod method;
+	// Number of samples between checks of the stopping rule
+	private int batchSize;
+	// Number of samples at which to next check the stopping rule
+	private int nextCheck;
+	// Has the underlying method decided to stop?
+	private boolean stopped;
+
+	/**
+	 * Construct a batch-sequential version of a SimulationMethod.
+	 * @param method The underlying method
+	 * @param batchSize Number of samples between checks of the stopping rule
+	 */
+	public BatchSequentialMethod(SimulationMethod method, int batchSize)
+	{
+		this.method = method;
+		this.batchSize = batchSize;
+		nextCheck = batchSize;
+		stopped = false;
+	}
+
+	/**
+	 * Get the underlying method.
+	 */
+	public SimulationMethod getMethod()
+	{
+		return method;
+	}
+
+	/**
+	 * Get the number of samples between checks of the stopping rule.
+	 */
+	public int getBatchSize()
+	{
+		return batchSize;
+	}
+
+	@Override
+	public String getName()
+	{
+		return method.getName();
+	}
+
+	@Override
+	public String getFullName()
+	{
+		return method.getFullName() + ", batch-sequential";
+	}
+
+	@Override
+	public void reset()
+	{
+		method.reset();
+		nextCheck = batchSize;
+		stopped = false;
+	}
+
+	@Override
+	public void computeMissingParameterBeforeSim() throws PrismException
+	{
+		if (batchSize < 1)
+			throw new PrismException("Invalid batch size " + batchSize + " for batch-sequential sampling");
+		method.computeMissingParameterBeforeSim();
+	}
+
+	@Override
+	public void setExpression(Expression expr) throws PrismException
+	{
+		method.setExpression(expr);
+	}
+
+	@Override
+	public void computeMissingParameterAfterSim()
+	{
+		method.computeMissingParameterAfterSim();
+	}
+
+	@Override
+	public Object getMissingParameter() throws PrismException
+	{
+		return method.getMissingParameter();
+	}
+
+	@Override
+	public String getParametersString()
+	{
+		return method.getParametersString() + ", batch size=" + batchSize;
+	}
+
+	@Override
+	public boolean shouldStopNow(int iters, Sampler sampler)
+	{
+		if (stopped)
+			return true;
+		if (iters < nextCheck)
+			return false;
+		// Next check is at the first multiple of the batch size after this one
+		nextCheck = (iters / batchSize + 1) * batchSize;
+		stopped = method.shouldStopNow(iters, sampler);
+		return stopped;
+	}
+
+	@Override
+	public int getProgress(int iters, Sampler sampler)
+	{
+		return stopped ? 100 : method.getProgress(iters, sampler);
+	}
+
+	@Override
+	public int getMaxRemainingIterations(int iters)
+	{
+		// Don't go past the next check
+		int remaining = method.getMaxRemainingIterations(iters);
+		int toCheck = Math.max(nextCheck - iters, 1);
+		return remaining == -1 ? toCheck : Math.min(remaining, toCheck);
+	}
+
+	@Override
+	public Object getResult(Sampler sampler) throws PrismException
+	{
+		return method.getResult(sampler);
+	}
+
+	@Override
+	public String getResultExplanation(Sampler sampler) throws PrismException
+	{
+		return method.getResultExplanation(sampler);
+	}
+
+	@Override
+	public SimulationMethod clone()
+	{
+		BatchSequentialMethod m = new BatchSequentialMethod(method.clone(), batchSize);
+		m.nextCheck = nextCheck;
+		m.stopped = stopped;
+		return m;
+	}
+}
@@ -0,0 +1,301 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package simulator.method;
+
+import parser.ast.Expression;
+import parser.ast.ExpressionProb;
+import parser.ast.RelOp;
+import prism.PrismException;
+import simulator.sampler.Sampler;
+import cern.jet.stat.Probability;
+
+/**
+ * SimulationMethod class for Bayesian statistical model checking of P properties,
+ * as proposed by Jha/Clarke/Langmead/Legay/Platzer/Zuliani (CMSB'09)
+ * and Zuliani/Platzer/Clarke (HSCC'10).
+ * The unknown probability is given a Beta prior, which is updated to a Beta posterior after each sample.
+ * For quantitative (=?) properties, sampling stops when the posterior probability of a (credible) interval
+ * of half-width {@code width} around the posterior mean reaches 1 - {@code confidence}.
+ * For bounded properties, sampling stops when the posterior probability of either p >= theta or p < theta
+ * reaches 1 - {@code confidence}, or when the posterior probability that p is within {@code width} of theta
+ * is that high, in which case either answer is acceptable and the posterior mean is used.
+ */
+public final class BayesianMethod extends SimulationMethod
+{
+	// Parameters
+	// Half-width of credible interval (for bounded properties, of the indifference region)
+	private double width;
+	// Confidence parameter (1 - required posterior probability)
+	private double confidence;
+	// Parameters of the Beta prior
+	private double priorAlpha;
+	private double priorBeta;
+
+	// Property info
+	// Operator in P: 0=quantitative, -1=lower bound, 1=upper bound
+	private int prOp;
+	// Probability bound (if any)
+	private double theta;
+
+	// Parameters of the posterior, and the credible interval, when sampling stopped
+	private double postAlpha;
+	private double postBeta;
+	private double intervalLow;
+	private double intervalHigh;
+	private double coverage;
+	// Decision (for bounded properties): is H0 (p >= theta) true?
+	private boolean h0true;
+	// Posterior probability of H0 when sampling stopped
+	private double postH0;
+	// Total number of iters (samples) needed
+	private int computedIterations;
+	// Is missing parameter (num iter) computed yet?
+	private boolean missingParameterComputed;
+
+	/**
+	 * Construct SimulationMethod for Bayesian estimation/hypothesis testing with a uniform prior.
+	 * @param confidence Confidence parameter (1 - required posterior probability)
+	 * @param width Half-width of credible interval (or of indifference region)
+	 */
+	public BayesianMethod(double confidence, double width)
+	{
+		this(confidence, width, 1.0, 1.0);
+	}
+
+	/**
+	 * Construct SimulationMethod for Bayesian estimation/hypothesis testing with a Beta(priorAlpha, priorBeta) prior.
+	 * @param confidence Confidence parameter (1 - required posterior probability)
+	 * @param width Half-width of credible interval (or of indifference region)
+	 * @param priorAlpha First parameter of Beta prior
+	 * @param priorBeta Second parameter of Beta prior
+	 */
+	public BayesianMethod(double confidence, double width, double priorAlpha, double priorBeta)
+	{
+		this.confidence = confidence;
+		this.width = width;
+		this.priorAlpha = priorAlpha;
+		this.priorBeta = priorBeta;
+		prOp = 0;
+		theta = -1.0;
+		reset();
+	}
+
+	@Override
+	public String getName()
+	{
+		return "Bayes";
+	}
+
+	@Override
+	public String getFullName()
+	{
+		return "Bayesian Estimation/Hypothesis Testing";
+	}
+
+	@Override
+	public void reset()
+	{
+		postAlpha = priorAlpha;
+		postBeta = priorBeta;
+		intervalLow = 0.0;
+		intervalHigh = 1.0;
+		coverage = 0.0;
+		h0true = false;
+		postH0 = 0.0;
+		computedIterations = 0;
+		missingParameterComputed = false;
+	}
+
+	@Override
+	public void computeMissingParameterBeforeSim() throws PrismException
+	{
+		if (width <= 0.0 || width >= 0.5)
+			throw new PrismException("Invalid width " + width + " for Bayesian method (must be in (0,0.5))");
+		if (confidence <= 0.0 || confidence >= 1.0)
+			throw new PrismException("Invalid confidence parameter " + confidence + " for Bayesian method (must be in (0,1))");
+		if (priorAlpha <= 0.0 || priorBeta <= 0.0)
+			throw new PrismException("Invalid prior Beta(" + priorAlpha + "," + priorBeta + ") for Bayesian method (parameters must be positive)");
+		// Nothing else to do (num iters computed on-the-fly)
+	}
+
+	@Override
+	public void setExpression(Expression expr) throws PrismException
+	{
+		if (!(expr instanceof ExpressionProb)) {
+			throw new PrismException("Cannot use the Bayesian method on " + expr + "; it only applies to P properties");
+		}
+		Expression bound = ((ExpressionProb) expr).getProb();
+		RelOp relOp = ((ExpressionProb) expr).getRelOp();
+		if (bound == null) {
+			prOp = 0;
+			theta = -1.0; // junk
+		} else {
+			prOp = relOp.isLowerBound() ? -1 : 1;
+			theta = bound.evaluateDouble();
+			if (theta <= 0.0 || theta >= 1.0) {
+				throw new PrismException("Cannot use the Bayesian method for probability bound " + theta + " (must be in (0,1))");
+			}
+		}
+	}
+
+	@Override
+	public void computeMissingParameterAfterSim()
+	{
+		// Nothing to do (this is done in shouldStopNow)
+	}
+
+	@Override
+	public Object getMissingParameter() throws PrismException
+	{
+		if (!missingParameterComputed)
+			throw new PrismException("Missing parameter not computed yet");
+		return computedIterations;
+	}
+
+	@Override
+	public String getParametersString()
+	{
+		String s = "width=" + width + ", confidence=" + confidence + ", prior=Beta(" + priorAlpha + "," + priorBeta + ")";
+		if (!missingParameterComputed)
+			return s + ", number of samples=unknown";
+		else
+			return s + ", number of samples=" + computedIterations;
+	}
+
+	@Override
+	public boolean shouldStopNow(int iters, Sampler sampler)
+	{
+		if (missingParameterComputed)
+			return true;
+		if (iters < 1)
+			return false;
+		// Compute posterior
+		double successes = Math.rint(sampler.getMeanValue() * iters);
+		double a = priorAlpha + successes;
+		double b = priorBeta + (iters - successes);
+		// Credible interval around posterior mean (shifted to stay within [0,1])
+		// or indifference region around bound
+		double low, high;
+		if (prOp == 0) {
+			double mean = a / (a + b);
+			low = mean - width;
+			high = mean + width;
+			if (high > 1.0) {
+				high = 1.0;
+				low = 1.0 - 2 * width;
+			} else if (low < 0.0) {
+				low = 0.0;
+				high = 2 * width;
+			}
+		} else {
+			low = Math.max(theta - width, 0.0);
+			high = Math.min(theta + width, 1.0);
+		}
+		double cov = Probability.beta(a, b, high) - Probability.beta(a, b, low);
+		boolean done = cov >= 1.0 - confidence;
+		if (prOp != 0) {
+			postH0 = 1.0 - Probability.beta(a, b, theta);
+			if (postH0 >= 1.0 - confidence) {
+				h0true = true;
+				done = true;
+			} else if (postH0 <= confidence) {
+				h0true = false;
+				done = true;
+			} else if (done) {
+				// Inside indifference region
+				h0true = a / (a + b) >= theta;
+			}
+		}
+		if (done) {
+			postAlpha = a;
+			postBeta = b;
+			intervalLow = low;
+			intervalHigh = high;
+			coverage = cov;
+			computedIterations = iters;
+			missingParameterComputed = true;
+		}
+		return done;
+	}
+
+	@Override
+	public int getProgress(int iters, Sampler sampler)
+	{
+		// For hypothesis testing, no good measure of progress unfortunately
+		if (prOp != 0 || iters < 1)
+			return 0;
+		// For estimation, approximate the posterior by a normal distribution
+		// to estimate the number of samples needed
+		double mean = sampler.getMeanValue();
+		double quantile = Probability.normalInverse(1.0 - confidence / 2.0);
+		double required = quantile * quantile * Math.max(mean * (1.0 - mean), 1.0 / iters) / (width * width) - priorAlpha - priorBeta;
+		if (required <= iters)
+			return 100;
+		return 10 * ((int) (100.0 * iters / required) / 10);
+	}
+
+	@Override
+	public Object getResult(Sampler sampler) throws PrismException
+	{
+		switch (prOp) {
+		case 0: // 0=quantitative
+			return new Double(postAlpha / (postAlpha + postBeta));
+		case -1: // -1=lower bound
+			return new Boolean(h0true);
+		case 1: // 1=upper bound
+			return new Boolean(!h0true);
+		default:
+			throw new PrismException("Unknown property type");
+		}
+	}
+
+	@Override
+	public String getResultExplanation(Sampler sampler) throws PrismException
+	{
+		String post = "Beta(" + postAlpha + "," + postBeta + ") posterior";
+		if (prOp == 0)
+			return "credible interval is [" + intervalLow + "," + intervalHigh + "] with posterior probability " + coverage + ", based on " + post;
+		else
+			return "posterior probability that probability >= " + theta + " is " + postH0 + ", based on " + post;
+	}
+
+	@Override
+	public SimulationMethod clone()
+	{
+		BayesianMethod m = new BayesianMethod(confidence, width, priorAlpha, priorBeta);
+		m.prOp = prOp;
+		m.theta = theta;
+		m.postAlpha = postAlpha;
+		m.postBeta = postBeta;
+		m.intervalLow = intervalLow;
+		m.intervalHigh = intervalHigh;
+		m.coverage = coverage;
+		m.h0true = h0true;
+		m.postH0 = postH0;
+		m.computedIterations = computedIterations;
+		m.missingParameterComputed = missingParameterComputed;
+		return m;
+	}
+}
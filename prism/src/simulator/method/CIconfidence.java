@@ -106,6 +106,12 @@ public final class CIconfidence extends CIMethod
 		return ((10 * iters) / numSamples) * 10;
 	}
 
+	@Override
+	public int getMaxRemainingIterations(int iters)
+	{
+		return Math.max(0, numSamples - iters);
+	}
+
 	@Override
 	public SimulationMethod clone()
 	{
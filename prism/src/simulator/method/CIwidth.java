@@ -102,6 +102,12 @@ public final class CIwidth extends CIMethod
 		return ((10 * iters) / numSamples) * 10;
 	}
 
+	@Override
+	public int getMaxRemainingIterations(int iters)
+	{
+		return Math.max(0, numSamples - iters);
+	}
+
 	@Override
 	public Object getResult(Sampler sampler) throws PrismException
 	{
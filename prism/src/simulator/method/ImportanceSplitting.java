@@ -0,0 +1,308 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+
+package simulator.method;
+
+import java.util.Arrays;
+
+import parser.ast.Expression;
+import parser.ast.ExpressionProb;
+import parser.ast.ExpressionTemporal;
+import parser.ast.ExpressionUnaryOp;
+import parser.ast.RelOp;
+import prism.PrismException;
+import prism.PrismUtils;
+import simulator.sampler.Sampler;
+
+/**
+ * SimulationMethod class for rare-event simulation using (fixed-effort) importance splitting.
+ * <br>
+ * This applies to (unbounded) reachability/until probabilities {@code P[ a U b ]}.
+ * Progress towards the target is measured by a user-supplied importance function
+ * (a numerical expression over the model's variables), together with a sequence of
+ * increasing thresholds (levels) for it. Sampling proceeds in stages: in stage k,
+ * a fixed number of paths (the "effort") are started, from the states in which paths
+ * of the previous stage first crossed level k-1 (the initial state for the first stage),
+ * and run until they cross level k, satisfy the property, or fail to satisfy it.
+ * The final stage runs until the property is decided. The probability is estimated
+ * by the product of the fractions of successful paths in each stage.
+ * <br>
+ * The stages are run by the simulator (see {@link simulator.SimulatorEngine}),
+ * which reports the number of successful paths of each one via {@link #recordStage(int, int)}.
+ */
+public class ImportanceSplitting extends SimulationMethod
+{
+	// Parameters:
+	// Importance function
+	private Expression importanceFunction;
+	// Levels (thresholds for the importance function, increasing)
+	private double levels[];
+	// Effort (number of paths per stage)
+	private int effort;
+
+	// Property info
+	// Operator in P: 0=quantitative, -1=lower bound, 1=upper bound
+	private int prOp;
+	// Probability bound (if any)
+	private double theta;
+
+	// Results:
+	// Number of successful paths for each stage (numLevels + 1 stages)
+	private int hits[];
+	// Number of stages completed so far
+	private int numStagesDone;
+	// Is sampling finished?
+	private boolean done;
+
+	/**
+	 * Constructor.
+	 * @param importanceFunction Importance function (numerical expression over model variables)
+	 * @param levels Increasing thresholds for the importance function
+	 * @param effort Number of paths generated in each stage
+	 */
+	public ImportanceSplitting(Expression importanceFunction, double levels[], int effort)
+	{
+		this.importanceFunction = importanceFunction;
+		this.levels = levels.clone();
+		this.effort = effort;
+		prOp = 0;
+		theta = -1.0;
+		reset();
+	}
+
+	/**
+	 * Get the importance function.
+	 */
+	public Expression getImportanceFunction()
+	{
+		return importanceFunction;
+	}
+
+	/**
+	 * Get the number of levels (the number of stages is one more than this).
+	 */
+	public int getNumLevels()
+	{
+		return levels.length;
+	}
+
+	/**
+	 * Get the threshold for the {@code i}th level.
+	 */
+	public double getLevel(int i)
+	{
+		return levels[i];
+	}
+
+	/**
+	 * Get the effort, i.e., the number of paths generated in each stage.
+	 */
+	public int getEffort()
+	{
+		return effort;
+	}
+
+	/**
+	 * Record the result of a stage of sampling: the number of the paths
+	 * (out of {@link #getEffort()}) that reached the next level (or satisfied the property).
+	 * If there were none, or this was the final stage, sampling is finished.
+	 */
+	public void recordStage(int stage, int numHits)
+	{
+		hits[stage] = numHits;
+		numStagesDone = stage + 1;
+		if (numHits == 0 || numStagesDone == hits.length)
+			done = true;
+	}
+
+	/**
+	 * Get the estimate for the probability (based on the stages completed so far).
+	 */
+	public double getEstimate()
+	{
+		double estimate = 1.0;
+		for (int i = 0; i < numStagesDone; i++) {
+			estimate *= hits[i] / (double) effort;
+		}
+		return estimate;
+	}
+
+	/**
+	 * Get an estimate of the relative error (standard deviation over mean) of the estimate for the probability.
+	 * This uses the approximation sqrt(sum_k (1-p_k)/(N*p_k)) for conditional probabilities p_k
+	 * and effort N, which assumes that the stages are independent (so can be optimistic).
+	 * Returns infinity if the estimate is 0.
+	 */
+	public double getRelativeError()
+	{
+		double sum = 0.0;
+		for (int i = 0; i < numStagesDone; i++) {
+			if (hits[i] == 0)
+				return Double.POSITIVE_INFINITY;
+			double p = hits[i] / (double) effort;
+			sum += (1.0 - p) / (effort * p);
+		}
+		return Math.sqrt(sum);
+	}
+
+	@Override
+	public String getName()
+	{
+		return "Splitting";
+	}
+
+	@Override
+	public String getFullName()
+	{
+		return "Importance splitting (fixed effort)";
+	}
+
+	@Override
+	public void reset()
+	{
+		hits = new int[levels.length + 1];
+		numStagesDone = 0;
+		done = false;
+	}
+
+	@Override
+	public void computeMissingParameterBeforeSim() throws PrismException
+	{
+		if (effort < 1)
+			throw new PrismException("The effort (number of samples per level) for importance splitting must be positive");
+		for (int i = 1; i < levels.length; i++) {
+			if (levels[i] <= levels[i - 1])
+				throw new PrismException("Levels for importance splitting must be strictly increasing");
+		}
+	}
+
+	@Override
+	public void setExpression(Expression expr) throws PrismException
+	{
+		if (!(expr instanceof ExpressionProb))
+			throw new PrismException("Importance splitting can only be used for P properties");
+		ExpressionProb exprProb = (ExpressionProb) expr;
+		// Check the path formula is an unbounded F or U
+		// (samples are restarted from intermediate states, so the path formula must not depend on the history)
+		Expression exprPath = exprProb.getExpression();
+		while (exprPath instanceof ExpressionUnaryOp && ((ExpressionUnaryOp) exprPath).getOperator() == ExpressionUnaryOp.PARENTH)
+			exprPath = ((ExpressionUnaryOp) exprPath).getOperand();
+		boolean ok = false;
+		if (exprPath instanceof ExpressionTemporal) {
+			ExpressionTemporal exprTemp = (ExpressionTemporal) exprPath;
+			int op = exprTemp.getOperator();
+			ok = (op == ExpressionTemporal.P_F || op == ExpressionTemporal.P_U) && !exprTemp.hasBounds();
+		}
+		if (!ok)
+			throw new PrismException("Importance splitting can only be used for unbounded F or U properties");
+
+		// Process bound/relop
+		Expression bound = exprProb.getProb();
+		RelOp relOp = exprProb.getRelOp();
+		if (bound == null) {
+			prOp = 0;
+			theta = -1.0; // junk
+		} else {
+			prOp = relOp.isLowerBound() ? -1 : 1;
+			theta = bound.evaluateDouble();
+		}
+	}
+
+	@Override
+	public void computeMissingParameterAfterSim()
+	{
+		// Nothing to do (no missing parameter)
+	}
+
+	@Override
+	public Object getMissingParameter() throws PrismException
+	{
+		// There is no missing parameter, but the relative error is only known afterwards
+		if (!done)
+			throw new PrismException("Relative error not computed yet");
+		return getRelativeError();
+	}
+
+	@Override
+	public String getParametersString()
+	{
+		String s = "importance=" + importanceFunction + ", levels=" + Arrays.toString(levels) + ", effort=" + effort;
+		if (done)
+			s += ", relative error=" + PrismUtils.formatDouble(3, getRelativeError());
+		return s;
+	}
+
+	@Override
+	public boolean shouldStopNow(int iters, Sampler sampler)
+	{
+		return done;
+	}
+
+	@Override
+	public int getProgress(int iters, Sampler sampler)
+	{
+		// Percentage of stages done so far
+		return done ? 100 : ((10 * numStagesDone) / hits.length) * 10;
+	}
+
+	@Override
+	public Object getResult(Sampler sampler) throws PrismException
+	{
+		double estimate = getEstimate();
+		switch (prOp) {
+		case 0: // 0=quantitative
+			return new Double(estimate);
+		case -1: // -1=lower bound
+			return new Boolean(estimate >= theta);
+		case 1: // 1=upper bound
+			return new Boolean(estimate <= theta);
+		default:
+			throw new PrismException("Unknown property type");
+		}
+	}
+
+	@Override
+	public String getResultExplanation(Sampler sampler) throws PrismException
+	{
+		String s = getEstimate() + " = product of level probabilities [";
+		for (int i = 0; i < numStagesDone; i++) {
+			s += (i > 0 ? ", " : "") + hits[i] + "/" + effort;
+		}
+		s += "], relative error approx. " + PrismUtils.formatDouble(3, getRelativeError());
+		return s;
+	}
+
+	@Override
+	public SimulationMethod clone()
+	{
+		ImportanceSplitting m = new ImportanceSplitting(importanceFunction, levels, effort);
+		m.prOp = prOp;
+		m.theta = theta;
+		m.hits = hits.clone();
+		m.numStagesDone = numStagesDone;
+		m.done = done;
+		return m;
+	}
+}
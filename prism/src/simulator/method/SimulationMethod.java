@@ -118,6 +118,17 @@ public abstract class SimulationMethod implements Cloneable
 	 */
 	public abstract int getProgress(int iters, Sampler sampler);
 
+	/**
+	 * Get the maximum number of further iterations (samples) that this method will need,
+	 * if this is known in advance (e.g. because the number of samples is fixed), or -1 otherwise.
+	 * This is used to avoid generating more samples than needed when sampling in parallel.
+	 * @param iters The number of iterations (samples) done so far
+	 */
+	public int getMaxRemainingIterations(int iters)
+	{
+		return -1;
+	}
+
 	/**
 	 * Get the (approximate) result for the property that simulation is being used to approximate.
 	 * This should be a Boolean/Double for bounded/quantitative properties, respectively.
@@ -0,0 +1,303 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package simulator.networking;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import common.WorkerPool;
+import parser.State;
+import parser.Values;
+import parser.ast.Expression;
+import parser.ast.ModulesFile;
+import prism.PrismComponent;
+import prism.PrismException;
+import prism.PrismSettings;
+import simulator.SamplingWorker;
+
+/**
+ * Coordinator for distributed sampling: connects over sockets to a set of worker processes
+ * ({@link SamplingWorkerServer}), either already running somewhere or started by the coordinator
+ * on the local machine, and farms out rounds of sample path generation to them.
+ * The partial sampler statistics sent back by each worker are read into a local {@link SamplingWorker}
+ * object, so that the caller (see {@link simulator.SimulatorEngine}) can merge them
+ * and apply the stopping criterion globally, exactly as for multi-threaded sampling.
+ * <br>
+ * Workers are specified as a comma-separated list of {@code host:port} addresses,
+ * or as {@code local:<n>} to start {@code n} new worker processes on this machine.
+ */
+public class SamplingCoordinator extends PrismComponent
+{
+	/** Time (in seconds) to wait for a local worker process to exit after the end of its session */
+	private static final long WORKER_EXIT_TIMEOUT = 10;
+
+	// Addresses of workers
+	private List<String> hosts = new ArrayList<String>();
+	private List<Integer> ports = new ArrayList<Integer>();
+	// Number of local worker processes to start
+	private int numLocal = 0;
+	// Local worker processes that were started
+	private List<Process> processes = new ArrayList<Process>();
+	// Connections to workers
+	private List<Socket> sockets = new ArrayList<Socket>();
+	private List<DataInputStream> ins = new ArrayList<DataInputStream>();
+	private List<DataOutputStream> outs = new ArrayList<DataOutputStream>();
+
+	/**
+	 * Create a coordinator for a list of workers (see class documentation for the format).
+	 */
+	public SamplingCoordinator(PrismComponent parent, String workers) throws PrismException
+	{
+		super(parent);
+		workers = workers.trim();
+		if (workers.startsWith("local:")) {
+			try {
+				numLocal = Integer.parseInt(workers.substring(6).trim());
+			} catch (NumberFormatException e) {
+				numLocal = 0;
+			}
+			if (numLocal <= 0)
+				throw new PrismException("Invalid number of local sampling workers \"" + workers.substring(6) + "\"");
+			return;
+		}
+		for (String worker : workers.split(",")) {
+			worker = worker.trim();
+			int colon = worker.lastIndexOf(':');
+			try {
+				if (colon <= 0)
+					throw new NumberFormatException();
+				ports.add(Integer.parseInt(worker.substring(colon + 1)));
+				hosts.add(worker.substring(0, colon));
+			} catch (NumberFormatException e) {
+				throw new PrismException("Invalid sampling worker address \"" + worker + "\" (should be host:port)");
+			}
+		}
+	}
+
+	/**
+	 * Get the number of workers.
+	 */
+	public int getNumWorkers()
+	{
+		return numLocal > 0 ? numLocal : hosts.size();
+	}
+
+	/**
+	 * Start any local worker processes, then connect to all workers.
+	 */
+	public void connect() throws PrismException
+	{
+		try {
+			if (numLocal > 0) {
+				startLocalWorkers();
+			}
+			for (int w = 0; w < hosts.size(); w++) {
+				Socket socket = new Socket(hosts.get(w), ports.get(w));
+				socket.setTcpNoDelay(true);
+				sockets.add(socket);
+				ins.add(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				outs.add(out);
+				out.writeInt(SamplingProtocol.MAGIC);
+				out.writeInt(SamplingProtocol.VERSION);
+				out.flush();
+			}
+		} catch (IOException e) {
+			close();
+			throw new PrismException("Could not connect to sampling workers: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Start {@code numLocal} worker processes on this machine, using the same Java installation
+	 * and class path as this one, and find out which ports they are listening on.
+	 */
+	private void startLocalWorkers() throws IOException
+	{
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		for (int w = 0; w < numLocal; w++) {
+			ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "-Djava.library.path="
+					+ System.getProperty("java.library.path"), SamplingWorkerServer.class.getName(), "-once", "0");
+			builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+			processes.add(builder.start());
+		}
+		for (Process process : processes) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+			String line = reader.readLine();
+			if (line == null || !line.startsWith(SamplingProtocol.PORT_PREFIX))
+				throw new IOException("Local sampling worker failed to start");
+			// (local workers only listen on the loopback interface)
+			hosts.add(InetAddress.getLoopbackAddress().getHostAddress());
+			ports.add(Integer.parseInt(line.substring(SamplingProtocol.PORT_PREFIX.length()).trim()));
+		}
+		mainLog.println("Started " + numLocal + " local sampling worker" + (numLocal > 1 ? "s" : ""));
+	}
+
+	/**
+	 * Send the details of a sampling task to all workers.
+	 * @param modulesFile The model (with all constants replaced)
+	 * @param constantValues Values of the model's constants
+	 * @param properties Properties to be sampled (with all constants replaced), in order
+	 * @param controlVariate Control variate for reward properties (with all constants replaced), or null if none
+	 * @param controlVariateMean Known expected value of the control variate
+	 * @param initialState Initial state for all paths (if null, is selected randomly)
+	 * @param maxPathLength The maximum path length for sampling
+	 * @param seed Seed for the random number generator
+	 * @param settings Settings (those affecting path generation are passed on to the workers)
+	 */
+	public void setup(ModulesFile modulesFile, Values constantValues, List<Expression> properties, Expression controlVariate, double controlVariateMean,
+			State initialState, long maxPathLength, long seed, PrismSettings settings) throws PrismException
+	{
+		// Values for (originally) undefined constants, as for -const
+		String constString = "";
+		for (String name : modulesFile.getUndefinedConstants()) {
+			if (constString.length() > 0)
+				constString += ",";
+			constString += name + "=" + constantValues.getValue(constantValues.getIndexOf(name));
+		}
+		try {
+			for (DataOutputStream out : outs) {
+				out.writeByte(SamplingProtocol.SETUP);
+				SamplingProtocol.writeString(out, modulesFile.toString());
+				SamplingProtocol.writeString(out, constString);
+				out.writeInt(properties.size());
+				for (Expression prop : properties) {
+					SamplingProtocol.writeString(out, prop.toString());
+				}
+				SamplingProtocol.writeState(out, initialState);
+				out.writeLong(maxPathLength);
+				out.writeLong(seed);
+				SamplingProtocol.writeString(out, settings.getString(PrismSettings.SIMULATOR_CTMC_METHOD));
+				out.writeDouble(settings.getDouble(PrismSettings.SIMULATOR_TAU_LEAP_EPSILON));
+				out.writeBoolean(settings.getBoolean(PrismSettings.SIMULATOR_ANTITHETIC));
+				SamplingProtocol.writeString(out, controlVariate == null ? "" : controlVariate.toString());
+				out.writeDouble(controlVariateMean);
+				out.flush();
+			}
+			for (int w = 0; w < ins.size(); w++) {
+				readReply(w);
+			}
+		} catch (IOException e) {
+			throw new PrismException("Error communicating with sampling workers: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Perform a round of sampling: the paths with indices {@code firstPathIndex + blockBounds[b]}
+	 * to {@code firstPathIndex + blockBounds[b + 1] - 1} form block {@code b}, and the blocks
+	 * are split (in consecutive groups) between the workers, which generate them in parallel.
+	 * Returns the statistics for each block (see {@link SamplingWorker#getStats()}),
+	 * which are read via {@code worker}. If a block stops early (see {@link SamplingWorker#generateSamplePaths}),
+	 * the later blocks of the same worker are not generated (and their statistics are null).
+	 */
+	public byte[][] runRound(SamplingWorker worker, long firstPathIndex, int blockBounds[]) throws PrismException
+	{
+		int numBlocks = blockBounds.length - 1;
+		byte blockStats[][] = new byte[numBlocks][];
+		int workerBounds[] = WorkerPool.splitRange(numBlocks, outs.size());
+		try {
+			for (int w = 0; w < workerBounds.length - 1; w++) {
+				DataOutputStream out = outs.get(w);
+				out.writeByte(SamplingProtocol.ROUND);
+				out.writeLong(firstPathIndex + blockBounds[workerBounds[w]]);
+				out.writeInt(workerBounds[w + 1] - workerBounds[w]);
+				for (int b = workerBounds[w]; b < workerBounds[w + 1]; b++) {
+					out.writeInt(blockBounds[b + 1] - blockBounds[b]);
+				}
+				out.flush();
+			}
+			for (int w = 0; w < workerBounds.length - 1; w++) {
+				readReply(w);
+				for (int b = workerBounds[w]; b < workerBounds[w + 1]; b++) {
+					worker.readStats(ins.get(w));
+					blockStats[b] = worker.getStats();
+					if (worker.isStoppedEarly())
+						break;
+				}
+			}
+		} catch (IOException e) {
+			throw new PrismException("Error communicating with sampling workers: " + e.getMessage());
+		}
+		return blockStats;
+	}
+
+	/**
+	 * Read the status at the start of a reply from worker {@code w}, throwing an exception for an error.
+	 */
+	private void readReply(int w) throws IOException, PrismException
+	{
+		DataInputStream in = ins.get(w);
+		if (in.readByte() == SamplingProtocol.ERROR) {
+			throw new PrismException("Sampling worker " + hosts.get(w) + ":" + ports.get(w) + " failed: " + SamplingProtocol.readString(in));
+		}
+	}
+
+	/**
+	 * End the sessions with all workers and wait for any local worker processes to exit.
+	 * Local workers that were never connected to (e.g. because another one failed to start)
+	 * are still waiting for a connection, so they are terminated instead; so are any
+	 * that do not exit within {@link #WORKER_EXIT_TIMEOUT} seconds.
+	 */
+	public void close()
+	{
+		int numConnected = sockets.size();
+		for (int w = 0; w < numConnected; w++) {
+			try {
+				outs.get(w).writeByte(SamplingProtocol.DONE);
+				outs.get(w).flush();
+				sockets.get(w).close();
+			} catch (IOException e) {
+				// Ignore: worker has probably already gone
+			}
+		}
+		sockets.clear();
+		ins.clear();
+		outs.clear();
+		// (local workers are connected to in the order they were started)
+		for (int w = 0; w < processes.size(); w++) {
+			Process process = processes.get(w);
+			try {
+				process.getInputStream().close();
+				if (w >= numConnected || !process.waitFor(WORKER_EXIT_TIMEOUT, TimeUnit.SECONDS)) {
+					process.destroyForcibly().waitFor();
+				}
+			} catch (IOException | InterruptedException e) {
+				process.destroyForcibly();
+			}
+		}
+		processes.clear();
+	}
+}
@@ -0,0 +1,160 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package simulator.networking;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import parser.State;
+
+/**
+ * Constants and helper methods for the socket protocol used for distributed sampling,
+ * between a {@link SamplingCoordinator} and {@link SamplingWorkerServer} processes.
+ * <br>
+ * A session starts with the coordinator sending {@link #MAGIC} and the protocol {@link #VERSION},
+ * followed by a {@link #SETUP} message (model, constants, properties, initial state, maximum path length, seed,
+ * CTMC simulation settings).
+ * Each round of sampling is a {@link #ROUND} message (index of first path, number of blocks, size of each block),
+ * which the worker answers with the statistics for each block of consecutive paths
+ * (see {@link simulator.SamplingWorker#writeStats}), up to and including the first one that stops early.
+ * Every reply starts with {@link #OK} or {@link #ERROR} (followed by an error message).
+ * The session ends with a {@link #DONE} message.
+ */
+final class SamplingProtocol
+{
+	static final int MAGIC = 0x50534d43;
+	static final int VERSION = 3;
+
+	// Messages (coordinator to worker)
+	static final byte SETUP = 1;
+	static final byte ROUND = 2;
+	static final byte DONE = 3;
+
+	// Replies (worker to coordinator)
+	static final byte OK = 0;
+	static final byte ERROR = 1;
+
+	// Line printed by a worker (on stdout) to report its port, when started with port 0
+	static final String PORT_PREFIX = "PRISM sampling worker listening on port ";
+
+	// Limits on the sizes read from a stream (to reject corrupt or malicious messages
+	// before allocating anything for them)
+	static final int MAX_STRING_LENGTH = 1 << 28;
+	static final int MAX_COUNT = 1 << 20;
+
+	private SamplingProtocol()
+	{
+	}
+
+	/**
+	 * Write a string (of arbitrary length, unlike {@link DataOutputStream#writeUTF}).
+	 */
+	static void writeString(DataOutputStream out, String s) throws IOException
+	{
+		byte bytes[] = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Read a string, as written by {@link #writeString}.
+	 */
+	static String readString(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		if (length < 0 || length > MAX_STRING_LENGTH) {
+			throw new IOException("Invalid string length " + length);
+		}
+		byte bytes[] = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Read a count (e.g. of properties), checking that it is between 0 and {@link #MAX_COUNT}.
+	 */
+	static int readCount(DataInputStream in, String what) throws IOException
+	{
+		int n = in.readInt();
+		if (n < 0 || n > MAX_COUNT) {
+			throw new IOException("Invalid number of " + what + " " + n);
+		}
+		return n;
+	}
+
+	/**
+	 * Write a (possibly null) state, whose variables are all integers or Booleans.
+	 */
+	static void writeState(DataOutputStream out, State state) throws IOException
+	{
+		if (state == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(state.varValues.length);
+		for (Object value : state.varValues) {
+			if (value instanceof Integer) {
+				out.writeByte('i');
+				out.writeInt((Integer) value);
+			} else if (value instanceof Boolean) {
+				out.writeByte('b');
+				out.writeBoolean((Boolean) value);
+			} else {
+				throw new IOException("Unsupported value \"" + value + "\" in state");
+			}
+		}
+	}
+
+	/**
+	 * Read a (possibly null) state, as written by {@link #writeState}.
+	 */
+	static State readState(DataInputStream in) throws IOException
+	{
+		int n = in.readInt();
+		if (n == -1) {
+			return null;
+		}
+		if (n < 0 || n > MAX_COUNT) {
+			throw new IOException("Invalid number of variables " + n + " in state");
+		}
+		State state = new State(n);
+		for (int i = 0; i < n; i++) {
+			byte type = in.readByte();
+			switch (type) {
+			case 'i':
+				state.setValue(i, in.readInt());
+				break;
+			case 'b':
+				state.setValue(i, in.readBoolean());
+				break;
+			default:
+				throw new IOException("Unexpected value type in state");
+			}
+		}
+		return state;
+	}
+}
@@ -0,0 +1,228 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package simulator.networking;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import parser.State;
+import parser.ast.ModulesFile;
+import parser.ast.PropertiesFile;
+import prism.Prism;
+import prism.PrismDevNullLog;
+import prism.PrismException;
+import prism.PrismLog;
+import prism.PrismSettings;
+import prism.UndefinedConstants;
+import simulator.SamplingWorker;
+import simulator.SimulatorEngine;
+
+/**
+ * Worker process for distributed sampling: listens on a socket for a {@link SamplingCoordinator},
+ * sets up a simulator for the model/properties that it is sent and then generates batches
+ * of sample paths on request, streaming the resulting (partial) sampler statistics back.
+ * Since each path uses its own random number stream (see {@link SimulatorEngine}),
+ * the overall results do not depend on how the paths are split between workers.
+ * <br>
+ * Can be started with {@code prism -simworker [<address>:]<port>} or, as done for workers
+ * started automatically by a coordinator ({@code -simworkers local:<n>}), via {@link #main}.
+ * Workers do not authenticate coordinators, so by default they only listen on the loopback
+ * interface; a worker meant to be used from other machines needs an explicit bind address,
+ * and should only be exposed on a trusted network.
+ */
+public class SamplingWorkerServer
+{
+	/**
+	 * Run a worker process, listening on the loopback interface.
+	 * Usage: {@code SamplingWorkerServer [-once] <port>}.
+	 * If the port is 0, a free one is picked, and reported on stdout.
+	 * With {@code -once}, the process exits after its first session with a coordinator.
+	 */
+	public static void main(String[] args)
+	{
+		boolean once = args.length > 1 && args[0].equals("-once");
+		try {
+			int port = Integer.parseInt(args[args.length - 1]);
+			serve(InetAddress.getLoopbackAddress(), port, once, new Prism(new PrismDevNullLog()), new PrismDevNullLog());
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			System.err.println("Usage: SamplingWorkerServer [-once] <port>");
+			System.exit(1);
+		} catch (IOException e) {
+			System.err.println("Error: " + e.getMessage());
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Listen for coordinators on a port (or a free one, if {@code port} is 0) and serve them, one at a time.
+	 * @param bindAddress Address of the interface to listen on (null means all interfaces)
+	 * @param port Port to listen on
+	 * @param once Return after the first session?
+	 * @param prism Prism object (used for parsing and as the parent of the simulators)
+	 * @param log Log for (brief) progress messages
+	 */
+	public static void serve(InetAddress bindAddress, int port, boolean once, Prism prism, PrismLog log) throws IOException
+	{
+		try (ServerSocket serverSocket = new ServerSocket(port, 0, bindAddress)) {
+			// Report port (on stdout, which is where a coordinator that started us will look for it)
+			System.out.println(SamplingProtocol.PORT_PREFIX + serverSocket.getLocalPort());
+			System.out.flush();
+			do {
+				try (Socket socket = serverSocket.accept()) {
+					log.println("Sampling session started with " + socket.getRemoteSocketAddress());
+					serveSession(socket, prism);
+					log.println("Sampling session finished");
+				} catch (IOException e) {
+					log.printWarning("Sampling session failed: " + e.getMessage());
+				}
+				log.flush();
+			} while (!once);
+		}
+	}
+
+	/**
+	 * Serve a single session with a coordinator.
+	 */
+	private static void serveSession(Socket socket, Prism prism) throws IOException
+	{
+		socket.setTcpNoDelay(true);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		if (in.readInt() != SamplingProtocol.MAGIC || in.readInt() != SamplingProtocol.VERSION) {
+			throw new IOException("Unknown protocol");
+		}
+		SamplingWorker worker = null;
+		State initialState = null;
+		long maxPathLength = 0;
+		long seed = 0;
+		while (true) {
+			byte message;
+			try {
+				message = in.readByte();
+			} catch (EOFException e) {
+				return;
+			}
+			try {
+				switch (message) {
+				case SamplingProtocol.SETUP:
+					// Read everything first, so that we stay in sync with the coordinator if setup fails
+					String modelString = SamplingProtocol.readString(in);
+					String constString = SamplingProtocol.readString(in);
+					int numProps = SamplingProtocol.readCount(in, "properties");
+					String props[] = new String[numProps];
+					for (int i = 0; i < numProps; i++) {
+						props[i] = SamplingProtocol.readString(in);
+					}
+					initialState = SamplingProtocol.readState(in);
+					maxPathLength = in.readLong();
+					seed = in.readLong();
+					String ctmcMethod = SamplingProtocol.readString(in);
+					double tauLeapEpsilon = in.readDouble();
+					boolean antithetic = in.readBoolean();
+					String controlVariate = SamplingProtocol.readString(in);
+					double controlVariateMean = in.readDouble();
+					worker = null;
+					prism.getSettings().set(PrismSettings.SIMULATOR_CTMC_METHOD, ctmcMethod);
+					prism.getSettings().set(PrismSettings.SIMULATOR_TAU_LEAP_EPSILON, tauLeapEpsilon);
+					prism.getSettings().set(PrismSettings.SIMULATOR_ANTITHETIC, antithetic);
+					worker = createWorker(prism, modelString, constString, props, controlVariate, controlVariateMean);
+					out.writeByte(SamplingProtocol.OK);
+					break;
+				case SamplingProtocol.ROUND:
+					long firstPathIndex = in.readLong();
+					int numBlocks = SamplingProtocol.readCount(in, "blocks");
+					int blockSizes[] = new int[numBlocks];
+					for (int b = 0; b < numBlocks; b++) {
+						blockSizes[b] = in.readInt();
+						if (blockSizes[b] < 0) {
+							throw new IOException("Invalid sampling round");
+						}
+					}
+					if (firstPathIndex < 0) {
+						throw new IOException("Invalid sampling round");
+					}
+					if (worker == null) {
+						throw new PrismException("No model has been set up");
+					}
+					// Generate the blocks in turn, sending back the statistics for each
+					// (up to the first one that stops early)
+					out.writeByte(SamplingProtocol.OK);
+					for (int b = 0; b < numBlocks; b++) {
+						worker.generateSamplePaths(initialState, maxPathLength, seed, firstPathIndex, blockSizes[b]);
+						worker.writeStats(out);
+						if (worker.isStoppedEarly())
+							break;
+						firstPathIndex += blockSizes[b];
+					}
+					break;
+				case SamplingProtocol.DONE:
+					return;
+				default:
+					throw new IOException("Unknown message " + message);
+				}
+			} catch (PrismException e) {
+				out.writeByte(SamplingProtocol.ERROR);
+				SamplingProtocol.writeString(out, e.getMessage());
+			}
+			out.flush();
+		}
+	}
+
+	/**
+	 * Create a sampling worker for a model and list of properties, sent as strings,
+	 * plus a control variate for reward properties (or "" if none) and its known expected value.
+	 * The properties, and the model (apart from its constant declarations),
+	 * should have had all constants replaced already.
+	 */
+	private static SamplingWorker createWorker(Prism prism, String modelString, String constString, String props[], String controlVariate,
+			double controlVariateMean) throws PrismException
+	{
+		ModulesFile modulesFile = prism.parseModelString(modelString);
+		UndefinedConstants undefinedConstants = new UndefinedConstants(modulesFile, null);
+		undefinedConstants.defineUsingConstSwitch(constString);
+		modulesFile.setUndefinedConstants(undefinedConstants.getMFConstantValues());
+		SimulatorEngine engine = new SimulatorEngine(prism);
+		engine.createNewOnTheFlyPath(modulesFile);
+		engine.setAntitheticPairs(prism.getSettings().getBoolean(PrismSettings.SIMULATOR_ANTITHETIC));
+		if (!"".equals(controlVariate)) {
+			PropertiesFile propertiesFile = prism.parsePropertiesString(modulesFile, controlVariate);
+			engine.setControlVariate(propertiesFile.getProperty(0), propertiesFile, controlVariateMean);
+		}
+		for (String prop : props) {
+			PropertiesFile propertiesFile = prism.parsePropertiesString(modulesFile, prop);
+			engine.addProperty(propertiesFile.getProperty(0), propertiesFile);
+		}
+		engine.setUpReactionSimulation();
+		return new SamplingWorker(engine);
+	}
+}
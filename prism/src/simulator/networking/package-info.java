@@ -1,4 +1,6 @@
 /**
- * (not used)
+ * Distributed sampling for the simulator: a coordinator ({@link simulator.networking.SamplingCoordinator})
+ * and worker processes ({@link simulator.networking.SamplingWorkerServer}) communicating over sockets.
+ * (The older SSH/file-based classes in this package are not used.)
  */
 package simulator.networking;
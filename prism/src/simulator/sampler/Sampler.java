@@ -27,6 +27,10 @@
 
 package simulator.sampler;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import simulator.*;
 import simulator.method.SimulationMethod;
 import parser.ast.*;
@@ -87,6 +91,26 @@ public abstract class Sampler
 	 */
 	public abstract void updateStats();
 
+	/**
+	 * Merge the statistics of another sampler for the same property into those of this one,
+	 * as if the paths seen by {@code other} had also been seen by this sampler.
+	 * This is used to combine the results of samplers running in separate threads.
+	 * The current value of this sampler is not affected.
+	 */
+	public abstract void mergeStats(Sampler other);
+
+	/**
+	 * Write the statistics for the sampler to an output stream,
+	 * e.g. to send them to another process (see {@link #readStats}).
+	 */
+	public abstract void writeStats(DataOutput out) throws IOException;
+
+	/**
+	 * Replace the statistics for the sampler with those read from an input stream,
+	 * as written by {@link #writeStats} for a sampler for the same property.
+	 */
+	public abstract void readStats(DataInput in) throws IOException;
+
 	/**
 	 * Get the current value of the sampler.
 	 */
@@ -26,6 +26,10 @@
 
 package simulator.sampler;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import simulator.*;
 import prism.PrismException;
 import prism.PrismLangException;
@@ -69,6 +73,31 @@ public abstract class SamplerBoolean extends Sampler
 			numTrue++;
 	}
 
+	@Override
+	public void mergeStats(Sampler other)
+	{
+		SamplerBoolean otherBoolean = (SamplerBoolean) other;
+		numSamples += otherBoolean.numSamples;
+		numTrue += otherBoolean.numTrue;
+	}
+
+	@Override
+	public void writeStats(DataOutput out) throws IOException
+	{
+		out.writeInt(numSamples);
+		out.writeInt(numTrue);
+	}
+
+	@Override
+	public void readStats(DataInput in) throws IOException
+	{
+		numSamples = in.readInt();
+		numTrue = in.readInt();
+		if (numSamples < 0 || numTrue < 0 || numTrue > numSamples) {
+			throw new IOException("Invalid sampler statistics");
+		}
+	}
+
 	@Override
 	public Object getCurrentValue()
 	{
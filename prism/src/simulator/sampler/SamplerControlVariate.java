@@ -0,0 +1,284 @@
+//==============================================================================
+//
+//	Copyright (c) 2018-
+//
+//------------------------------------------------------------------------------
+//
+//	This file is part of PRISM.
+//
+//	PRISM is free software; you can redistribute it and/or modify
+//	it under the terms of the GNU General Public License as published by
+//	the Free Software Foundation; either version 2 of the License, or
+//	(at your option) any later version.
+//
+//	PRISM is distributed in the hope that it will be useful,
+//	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//	GNU General Public License for more details.
+//
+//	You should have received a copy of the GNU General Public License
+//	along with PRISM; if not, write to the Free Software Foundation,
+//	Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//==============================================================================
+
+package simulator.sampler;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import prism.PrismException;
+import prism.PrismLangException;
+import simulator.Path;
+import simulator.TransitionList;
+
+/**
+ * Sampler for a (reward) property that uses a control variate to reduce the variance of its estimate.
+ * The control variate is another property, whose exact value (expectation) is known,
+ * sampled on the same paths. The estimate of the mean is adjusted by the (estimated) optimal multiple
+ * of the difference between the control variate's sample mean and its known expectation,
+ * and the variance reported is that of the residual, i.e. the variance of the property
+ * not explained by the control variate, which is lower if the two are correlated.
+ */
+public class SamplerControlVariate extends SamplerDouble
+{
+	/** Sampler for the property itself */
+	private SamplerDouble sampler;
+	/** Sampler for the control variate */
+	private Sampler control;
+	/** Known expected value of the control variate */
+	private double controlMean;
+
+	/** Value of the control variate for the current path */
+	private double controlValue;
+	/** Stored value of the control variate (see {@link #storeValue()}) */
+	private double storedControlValue;
+
+	// Stats over all paths (as for the property, see SamplerDouble)
+
+	/** Sum of control variate values */
+	private double controlSum;
+	/** Correction value used when tracking (co)variance */
+	private double controlCorrectionTerm;
+	/** Sum of control variate values, each shifted by the correction term */
+	private double controlSumShifted;
+	/** Sum of squares of control variate values, each shifted by the correction term */
+	private double controlSumShiftedSq;
+	/** Sum of products of (shifted) property and control variate values */
+	private double crossSumShifted;
+
+	/**
+	 * Construct a sampler for a property, using a control variate.
+	 * @param sampler Sampler for the property
+	 * @param control Sampler for the control variate
+	 * @param controlMean Known expected value of the control variate
+	 */
+	public SamplerControlVariate(SamplerDouble sampler, Sampler control, double controlMean)
+	{
+		this.sampler = sampler;
+		this.control = control;
+		this.controlMean = controlMean;
+		reset();
+		resetStats();
+	}
+
+	@Override
+	public boolean needsBoundedNumSteps()
+	{
+		return sampler.needsBoundedNumSteps() || control.needsBoundedNumSteps();
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		sampler.reset();
+		control.reset();
+		controlValue = 0.0;
+	}
+
+	@Override
+	public void resetStats()
+	{
+		super.resetStats();
+		sampler.resetStats();
+		control.resetStats();
+		controlSum = 0.0;
+		controlSumShifted = 0.0;
+		controlSumShiftedSq = 0.0;
+		crossSumShifted = 0.0;
+	}
+
+	@Override
+	public boolean update(Path path, TransitionList transList) throws PrismLangException
+	{
+		// If the answer is already known we should do nothing
+		if (valueKnown)
+			return true;
+		// Update both samplers
+		boolean known = sampler.update(path, transList);
+		known = control.update(path, transList) && known;
+		if (known) {
+			valueKnown = true;
+			value = sampler.value;
+			Object v = control.getCurrentValue();
+			controlValue = (v instanceof Boolean) ? (((Boolean) v) ? 1.0 : 0.0) : ((Double) v).doubleValue();
+		}
+		return valueKnown;
+	}
+
+	@Override
+	public void storeValue()
+	{
+		super.storeValue();
+		storedControlValue = controlValue;
+	}
+
+	@Override
+	public void averageWithStoredValue()
+	{
+		super.averageWithStoredValue();
+		controlValue = (controlValue + storedControlValue) / 2;
+	}
+
+	@Override
+	public void updateStats()
+	{
+		if (numSamples == 0) {
+			correctionTerm = value;
+			controlCorrectionTerm = controlValue;
+		}
+		double controlShifted = controlValue - controlCorrectionTerm;
+		controlSum += controlValue;
+		controlSumShifted += controlShifted;
+		controlSumShiftedSq += controlShifted * controlShifted;
+		crossSumShifted += (value - correctionTerm) * controlShifted;
+		super.updateStats();
+	}
+
+	@Override
+	public void mergeStats(Sampler other)
+	{
+		SamplerControlVariate otherCV = (SamplerControlVariate) other;
+		if (otherCV.numSamples == 0)
+			return;
+		if (numSamples == 0) {
+			correctionTerm = otherCV.correctionTerm;
+			controlCorrectionTerm = otherCV.controlCorrectionTerm;
+		}
+		// Re-shift the other sampler's sums to use our correction terms (see SamplerDouble)
+		double shift = otherCV.correctionTerm - correctionTerm;
+		double controlShift = otherCV.controlCorrectionTerm - controlCorrectionTerm;
+		crossSumShifted += otherCV.crossSumShifted + controlShift * otherCV.valueSumShifted + shift * otherCV.controlSumShifted
+				+ otherCV.numSamples * shift * controlShift;
+		controlSum += otherCV.controlSum;
+		controlSumShiftedSq += otherCV.controlSumShiftedSq + 2 * controlShift * otherCV.controlSumShifted + otherCV.numSamples * controlShift * controlShift;
+		controlSumShifted += otherCV.controlSumShifted + otherCV.numSamples * controlShift;
+		super.mergeStats(other);
+	}
+
+	@Override
+	public void writeStats(DataOutput out) throws IOException
+	{
+		super.writeStats(out);
+		out.writeDouble(controlSum);
+		out.writeDouble(controlCorrectionTerm);
+		out.writeDouble(controlSumShifted);
+		out.writeDouble(controlSumShiftedSq);
+		out.writeDouble(crossSumShifted);
+	}
+
+	@Override
+	public void readStats(DataInput in) throws IOException
+	{
+		super.readStats(in);
+		controlSum = in.readDouble();
+		controlCorrectionTerm = in.readDouble();
+		controlSumShifted = in.readDouble();
+		controlSumShiftedSq = in.readDouble();
+		crossSumShifted = in.readDouble();
+	}
+
+	/**
+	 * Get the sample variance of the property (without the control variate).
+	 */
+	private double getPropertyVariance()
+	{
+		return super.getVariance();
+	}
+
+	/**
+	 * Get the sample variance of the control variate.
+	 */
+	private double getControlVariance()
+	{
+		if (numSamples <= 1)
+			return 0.0;
+		double meanShifted = controlSumShifted / numSamples;
+		return (controlSumShiftedSq - numSamples * meanShifted * meanShifted) / (numSamples - 1.0);
+	}
+
+	/**
+	 * Get the sample covariance of the property and the control variate.
+	 */
+	private double getCovariance()
+	{
+		if (numSamples <= 1)
+			return 0.0;
+		return (crossSumShifted - valueSumShifted * controlSumShifted / numSamples) / (numSamples - 1.0);
+	}
+
+	/**
+	 * Get the (estimated) optimal coefficient for the control variate.
+	 */
+	public double getControlCoefficient()
+	{
+		double controlVariance = getControlVariance();
+		return controlVariance > 0.0 ? getCovariance() / controlVariance : 0.0;
+	}
+
+	/**
+	 * Get the sample correlation between the property and the control variate.
+	 */
+	public double getCorrelation()
+	{
+		double denom = Math.sqrt(getPropertyVariance() * getControlVariance());
+		return denom > 0.0 ? getCovariance() / denom : 0.0;
+	}
+
+	@Override
+	public double getMeanValue()
+	{
+		return valueSum / numSamples - getControlCoefficient() * (controlSum / numSamples - controlMean);
+	}
+
+	@Override
+	public double getVariance()
+	{
+		double controlVariance = getControlVariance();
+		if (numSamples <= 2 || controlVariance <= 0.0)
+			return getPropertyVariance();
+		double covariance = getCovariance();
+		double residual = getPropertyVariance() - covariance * covariance / controlVariance;
+		// Account for the coefficient having been estimated from the same samples
+		return Math.max(residual, 0.0) * (numSamples - 1.0) / (numSamples - 2.0);
+	}
+
+	@Override
+	public double getLikelihoodRatio(double p1, double p0) throws PrismException
+	{
+		// As for SamplerDouble, but using the adjusted mean and residual variance
+		if (numSamples <= 1)
+			return 0.0;
+		double MLE = getVariance() * (numSamples - 1.0) / numSamples;
+		if (MLE == 0)
+			throw new PrismException("Cannot compute likelihood ratio with null variance");
+		double mean = getMeanValue();
+		double lr = (-numSamples / (2 * MLE)) * ((p1 - mean) * (p1 - mean) - (p0 - mean) * (p0 - mean));
+		if (Double.isNaN(lr)) {
+			throw new PrismException("Error computing likelihood ratio");
+		}
+		return Math.exp(lr);
+	}
+}
@@ -28,6 +28,10 @@
 
 package simulator.sampler;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import simulator.*;
 import prism.PrismException;
 import prism.PrismLangException;
@@ -39,6 +43,8 @@ public abstract class SamplerDouble extends Sampler
 {
 	/** Value of current path */
 	protected double value;
+	/** Value of a previous path, stored to be combined with this one (see {@link #storeValue()}) */
+	protected double storedValue;
 	
 	// Stats over all paths
 	
@@ -90,6 +96,64 @@ public abstract class SamplerDouble extends Sampler
 		numSamples++;
 	}
 
+	@Override
+	public void mergeStats(Sampler other)
+	{
+		SamplerDouble otherDouble = (SamplerDouble) other;
+		if (otherDouble.numSamples == 0)
+			return;
+		if (numSamples == 0)
+			correctionTerm = otherDouble.correctionTerm;
+		// The other sampler's sums are shifted by its own correction term,
+		// so re-shift them to use ours before adding them on
+		double shift = otherDouble.correctionTerm - correctionTerm;
+		valueSum += otherDouble.valueSum;
+		valueSumShiftedSq += otherDouble.valueSumShiftedSq + 2 * shift * otherDouble.valueSumShifted + otherDouble.numSamples * shift * shift;
+		valueSumShifted += otherDouble.valueSumShifted + otherDouble.numSamples * shift;
+		numSamples += otherDouble.numSamples;
+	}
+
+	@Override
+	public void writeStats(DataOutput out) throws IOException
+	{
+		out.writeInt(numSamples);
+		out.writeDouble(valueSum);
+		out.writeDouble(correctionTerm);
+		out.writeDouble(valueSumShifted);
+		out.writeDouble(valueSumShiftedSq);
+	}
+
+	@Override
+	public void readStats(DataInput in) throws IOException
+	{
+		numSamples = in.readInt();
+		if (numSamples < 0) {
+			throw new IOException("Invalid sampler statistics");
+		}
+		valueSum = in.readDouble();
+		correctionTerm = in.readDouble();
+		valueSumShifted = in.readDouble();
+		valueSumShiftedSq = in.readDouble();
+	}
+
+	/**
+	 * Store the value of the current path, to be averaged with that of the next one
+	 * (see {@link #averageWithStoredValue()}), e.g. for a pair of antithetic paths.
+	 */
+	public void storeValue()
+	{
+		storedValue = value;
+	}
+
+	/**
+	 * Replace the value of the current path with the average of it and the value stored by {@link #storeValue()}.
+	 * The statistics then treat the pair of paths as a single sample.
+	 */
+	public void averageWithStoredValue()
+	{
+		value = (value + storedValue) / 2;
+	}
+
 	@Override
 	public Object getCurrentValue()
 	{
@@ -0,0 +1,34 @@
+// Model whose guards, probabilities, updates and rewards use operators and
+// functions with both integer and double arguments, to check that compiled
+// expressions evaluate exactly as the interpreted ones (see exprs.pm.args)
+
+dtmc
+
+const int K = 7;
+const double q = 0.3;
+
+module m
+
+	x : [-6..12] init 0;
+	y : [0..20] init 1;
+	b : bool init false;
+
+	[] !b & x<10 -> q : (x'=x+1) + (1-q)/2 : (x'=max(-6, x-floor(K/2))) + (1-q)/2 : (x'=min(12, x+ceil(K/3)));
+	[] !b & x>=10 -> (x/K<1.5 ? 0.25 : 0.75) : (b'=true) & (y'=min(20, pow(2, mod(x, 5)+2)))
+	                 + (x/K<1.5 ? 0.75 : 0.25) : (x'=mod(x*3, 13)-6);
+	[] b & y>1 -> pow(0.5, 1) : (y'=max(1, ceil(y/3))) + 0.5 : (y'=floor(y*2/5)+1);
+	[] b & y=1 -> min(1.0, K/5) : (b'=false) & (x'=max(-6, mod(x-3*K, 4)-K));
+
+endmodule
+
+rewards "mixed"
+	!b : x/4 + (x>0 ? 1 : 2.5);
+	b : pow(2.0, -1) * y + log(y+1, 2);
+endrewards
+
+rewards "ints"
+	mod(x, 2)=0 : max(x, 1);
+	b & floor(y/K)=0 : min(y, K);
+endrewards
+
+label "done" = b & y=1;
@@ -0,0 +1,19 @@
+// DTMC with labels and several variables, used to check that
+// exporting to and importing from a binary model file gives the same model
+
+dtmc
+
+const int N = 8;
+
+module chain
+
+	s : [0..N] init 0;
+	b : bool init false;
+
+	[] s<N -> 0.5 : (s'=s+1) + 0.25 : (b'=!b) + 0.25 : (s'=0);
+	[] s=N -> true;
+
+endmodule
+
+label "end" = s=N;
+label "flip" = b;
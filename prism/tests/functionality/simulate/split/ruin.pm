@@ -0,0 +1,18 @@
+// Gambler's ruin with a rare goal, used to check importance splitting
+// (with a fixed seed)
+
+dtmc
+
+const int N = 20;
+
+module walk
+
+	x : [0..N] init 1;
+
+	[] x>0 & x<N -> 0.3 : (x'=x+1) + 0.7 : (x'=x-1);
+	[] x=0 | x=N -> true;
+
+endmodule
+
+label "goal" = x=N;
+label "ruin" = x=0;
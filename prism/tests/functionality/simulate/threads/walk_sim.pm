@@ -0,0 +1,22 @@
+// Random walk with a reward, used to check that fixed-seed simulation
+// results do not depend on the number of threads or worker processes
+
+dtmc
+
+const int N = 10;
+
+module walk
+
+	x : [0..N] init 5;
+
+	[] x>0 & x<N -> 0.45 : (x'=x-1) + 0.55 : (x'=x+1);
+	[] x=0 | x=N -> (x'=x);
+
+endmodule
+
+rewards "pos"
+	true : x;
+endrewards
+
+label "left" = x=0;
+label "right" = x=N;
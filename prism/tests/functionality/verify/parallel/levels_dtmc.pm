@@ -0,0 +1,31 @@
+// DTMC with many SCCs, arranged in a grid (one SCC per level (x,y)),
+// used to check that multi-threaded value iteration gives the same
+// results as the sequential methods
+
+dtmc
+
+const int K = 20;
+const int M = 20;
+
+module levels
+
+	x : [0..K] init 0;
+	y : [0..K] init 0;
+	u : [0..M] init 0;
+	fail : bool init false;
+
+	// walk within a level (with a small chance of failure)
+	[] !fail & u<M -> 0.6 : (u'=u+1) + 0.3999 : (u'=max(u-1,0)) + 0.0001 : (fail'=true) & (x'=0) & (y'=0) & (u'=0);
+	// move up to the next level
+	[] !fail & u=M & (x<K | y<K) -> 0.5 : (x'=min(x+1,K)) & (u'=0) + 0.5 : (y'=min(y+1,K)) & (u'=0);
+	// the top and failure are absorbing
+	[] !fail & u=M & x=K & y=K -> true;
+	[] fail -> true;
+
+endmodule
+
+label "top" = x=K & y=K & u=M;
+
+rewards "steps"
+	!fail & !(x=K & y=K & u=M) : 1;
+endrewards